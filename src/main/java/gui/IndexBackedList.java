@@ -0,0 +1,219 @@
+package gui;
+
+import model.FileInfo;
+import service.ScanIndex;
+import service.SelectionPolicy;
+
+import java.io.Closeable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Список результатов, читающий строки из отображенного в память {@link ScanIndex}.
+ * Объекты {@link FileInfo} создаются только для строк, к которым обращается таблица,
+ * и хранятся в небольшом кеше недавно использованных строк. Поэтому даже индекс
+ * с миллионами записей открывается мгновенно и не занимает место в куче.
+ * <p>
+ * Отметки "удалить" хранятся в битовом множестве по номерам записей,
+ * так что изменения сохраняются, даже если объект строки был вытеснен из кеша.
+ */
+class IndexBackedList extends AbstractList<FileInfo> implements ResultModel.Rows, Closeable {
+
+    /** Количество строк, которые удерживаются в кеше (примерно несколько экранов таблицы). */
+    private static final int CACHE_SIZE = 512;
+
+    private final ScanIndex index;
+    /** Отметки "удалить" по номерам записей индекса. */
+    private final BitSet selection;
+    /** Номера видимых записей (null — видны все записи в порядке индекса). */
+    private int[] view;
+    /** Недавно созданные строки по номеру записи. */
+    private final Map<Integer, FileInfo> recent = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, FileInfo> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * @param index открытый индекс. Список закрывает его в {@link #close()}.
+     */
+    IndexBackedList(ScanIndex index) {
+        this.index = index;
+        this.selection = new BitSet(index.size());
+        for (int record = 0; record < index.size(); record++) {
+            if (index.isSelected(record)) {
+                selection.set(record);
+            }
+        }
+    }
+
+    /**
+     * @return индекс, из которого читаются строки.
+     */
+    ScanIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public FileInfo get(int position) {
+        int record = recordAt(position);
+        FileInfo info = recent.get(record);
+        if (info == null) {
+            info = index.toFileInfo(record);
+            info.setSelected(selection.get(record));
+            info.selectedProperty().addListener((obs, was, now) -> selection.set(record, now));
+            recent.put(record, info);
+        }
+        return info;
+    }
+
+    @Override
+    public int size() {
+        return view == null ? index.size() : view.length;
+    }
+
+    @Override
+    public int rowCount() {
+        return size();
+    }
+
+    @Override
+    public long rowSize(int row) {
+        return index.fileSize(recordAt(row));
+    }
+
+    @Override
+    public String rowPath(int row) {
+        return index.path(recordAt(row));
+    }
+
+    /**
+     * Пока строки не удалялись, порядок по путям берется из индекса готовым.
+     */
+    @Override
+    public int[] pathOrder() {
+        if (view != null) {
+            return null;
+        }
+        int[] order = new int[index.size()];
+        for (int position = 0; position < order.length; position++) {
+            order[position] = index.recordByPath(position);
+        }
+        return order;
+    }
+
+    /**
+     * Удаляет из видимых строк те, что удовлетворяют условию. Сам индекс не изменяется.
+     */
+    @Override
+    public boolean removeIf(Predicate<? super FileInfo> filter) {
+        int size = size();
+        int[] remaining = new int[size];
+        int kept = 0;
+        for (int position = 0; position < size; position++) {
+            if (!filter.test(get(position))) {
+                remaining[kept++] = recordAt(position);
+            }
+        }
+        if (kept == size) {
+            return false;
+        }
+        view = Arrays.copyOf(remaining, kept);
+        recent.clear();
+        return true;
+    }
+
+    /**
+     * @return текущий набор видимых записей для {@link #restoreView(int[])}.
+     */
+    int[] saveView() {
+        return view;
+    }
+
+    /**
+     * Возвращает набор видимых записей, сохраненный {@link #saveView()} (например, при отмене удаления).
+     */
+    void restoreView(int[] saved) {
+        view = saved;
+    }
+
+    /**
+     * Возвращает строки, отмеченные для удаления. Объекты создаются только для отмеченных строк.
+     *
+     * @return отмеченные строки в порядке индекса.
+     */
+    List<FileInfo> selectedFiles() {
+        List<FileInfo> selected = new ArrayList<>();
+        for (int position = 0; position < size(); position++) {
+            if (selection.get(recordAt(position))) {
+                selected.add(get(position));
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Возвращает строки, которые можно читать из другого потока: объекты создаются заново
+     * при каждом обращении, несут отметки на момент вызова и не связаны с отметками списка.
+     *
+     * @return копия текущего набора видимых строк.
+     */
+    List<FileInfo> detachedRows() {
+        int[] records = view;
+        int size = size();
+        BitSet marks = (BitSet) selection.clone();
+        return new AbstractList<>() {
+            @Override
+            public FileInfo get(int position) {
+                int record = records == null ? position : records[position];
+                FileInfo info = index.toFileInfo(record);
+                info.setSelected(marks.get(record));
+                return info;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Переносит план выбора, построенный по {@link #detachedRows()}, на отметки строк.
+     *
+     * @throws IllegalArgumentException если план построен для другого количества строк.
+     */
+    void applySelection(SelectionPolicy.Plan plan) {
+        if (plan.getRowCount() != size()) {
+            throw new IllegalArgumentException("Plan was built for " + plan.getRowCount() + " rows, got " + size());
+        }
+        for (int position = 0; position < size(); position++) {
+            selection.set(recordAt(position), plan.isSelected(position));
+        }
+        for (Map.Entry<Integer, FileInfo> cached : recent.entrySet()) {
+            cached.getValue().setSelected(selection.get(cached.getKey()));
+        }
+    }
+
+    @Override
+    public void close() {
+        index.close();
+    }
+
+    private int recordAt(int position) {
+        if (view == null) {
+            return position;
+        }
+        if (position < 0 || position >= view.length) {
+            throw new IndexOutOfBoundsException("Index " + position + " out of bounds for length " + view.length);
+        }
+        return view[position];
+    }
+}
@@ -1,5 +1,8 @@
 package gui;
 
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.CheckBoxTableCell;
@@ -7,14 +10,23 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.stage.DirectoryChooser;
+import javafx.stage.FileChooser;
 import model.FileInfo;
 import service.FileDeduplicationService;
+import service.LinkConsolidator;
+import service.ScanIndex;
 import service.ScanTask;
+import service.SelectionPolicy;
+import util.CustomHashMap;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Класс, отвечающий за создание и управление главным окном приложения.
@@ -23,6 +35,19 @@ import java.util.List;
  */
 public class MainWindow {
 
+    /** Файл, в котором сохраняется индекс результатов последнего сканирования. */
+    private static final Path LAST_SCAN_INDEX =
+            Path.of(System.getProperty("user.home"), ".file-deduplicator", "last-scan.idx");
+    /** Журнал контрольных точек, по которому продолжается прерванное сканирование. */
+    private static final Path SCAN_JOURNAL = LAST_SCAN_INDEX.resolveSibling("scan.journal");
+    /** Пункт фильтра расширений, показывающий все файлы. */
+    private static final String ALL_EXTENSIONS = "Все расширения";
+    /** Пункт фильтра расширений для файлов без расширения. */
+    private static final String NO_EXTENSION = "(без расширения)";
+    /** Названия правил выбора оставляемого файла в порядке {@link SelectionPolicy.Keep}. */
+    private static final List<String> KEEP_RULES =
+            List.of("Оставлять первый", "Оставлять самый старый", "Оставлять самый новый", "Оставлять с самым коротким путем");
+
     // UI Элементы
 
     /** Корневой контейнер окна, располагающий элементы вертикально. */
@@ -37,10 +62,24 @@ public class MainWindow {
     private final Button scanButton;
     /** Кнопка для удаления выбранных дубликатов. */
     private final Button deleteButton;
+    /** Кнопка для возврата файлов, перемещенных в корзину последним удалением. */
+    private final Button undoButton;
+    /** Кнопка для замены выбранных дубликатов жесткими ссылками. */
+    private final Button linkButton;
+    /** Кнопка для открытия сохраненного индекса результатов. */
+    private final Button openIndexButton;
     /** Индикатор прогресса для длительных операций. */
     private final ProgressBar progressBar;
     /** Таблица для отображения найденных файлов-дубликатов. */
     private final TableView<FileInfo> resultTable;
+    /** Поле поиска по пути (подстрока или префикс пути). */
+    private final TextField searchField;
+    /** Фильтр по расширению файла. */
+    private final ComboBox<String> extensionBox;
+    /** Правило выбора файла, который остается в каждой группе. */
+    private final ComboBox<String> keepRuleBox;
+    /** Кнопка для отметки файлов во всех группах по выбранному правилу. */
+    private final Button applyRuleButton;
 
 
     /** Путь к папке, выбранной пользователем для сканирования. */
@@ -49,6 +88,12 @@ public class MainWindow {
     private final FileDeduplicationService service;
     /** Список найденных дубликатов, который является источником данных для таблицы. */
     private List<FileInfo> foundDuplicates = new ArrayList<>();
+    /** Модель, сортирующая и фильтрующая результаты в фоновом потоке. */
+    private ResultModel resultModel;
+    /** Строки, переданные на удаление последним удалением (null, если отменять в таблице нечего). */
+    private List<FileInfo> lastDeletedRows;
+    /** Возвращает в результаты строки, убранные последним удалением. */
+    private Runnable restoreDeletedRows;
 
     /**
      * Конструктор главного окна. Инициализирует все UI-компоненты,
@@ -64,6 +109,9 @@ public class MainWindow {
         chooseButton = new Button("Выбрать папку");
         scanButton = new Button("Сканировать");
         deleteButton = new Button("Удалить дубликаты");
+        undoButton = new Button("Отменить удаление");
+        linkButton = new Button("Заменить ссылками");
+        openIndexButton = new Button("Открыть результаты...");
 
         progressBar = new ProgressBar(0);
         progressBar.setMaxWidth(Double.MAX_VALUE); // Растягиваем прогресс-бар на всю ширину
@@ -72,18 +120,41 @@ public class MainWindow {
         resultTable = createTable(); // Создаем и настраиваем таблицу
         service = new FileDeduplicationService();
 
+        searchField = new TextField();
+        searchField.setPromptText("Поиск по пути (или префикс пути, например /home/user/photos)");
+        // Поиск по мере ввода: каждый символ запускает фоновый запрос, устаревшие запросы прерываются
+        searchField.textProperty().addListener((obs, was, now) -> resultModel.setSearch(now));
+        HBox.setHgrow(searchField, Priority.ALWAYS);
+        extensionBox = new ComboBox<>();
+        extensionBox.setPromptText("Все расширения");
+        extensionBox.setOnAction(e -> resultModel.setExtension(toExtension(extensionBox.getValue())));
+        keepRuleBox = new ComboBox<>(FXCollections.observableArrayList(KEEP_RULES));
+        keepRuleBox.getSelectionModel().selectFirst();
+        applyRuleButton = new Button("Отметить по правилу");
+        applyRuleButton.setOnAction(e -> applySelectionPolicy());
+
         // Настройка обработчиков событий
         chooseButton.setOnAction(e -> chooseDirectory());
         scanButton.setOnAction(e -> scan());
         deleteButton.setOnAction(e -> delete());
+        undoButton.setOnAction(e -> undoDelete());
+        linkButton.setOnAction(e -> link());
+        openIndexButton.setOnAction(e -> chooseIndex());
 
         // Кнопки располагаем горизонтально в контейнере HBox
-        HBox buttons = new HBox(10, chooseButton, scanButton, deleteButton);
-        root.getChildren().addAll(folderLabel, buttons, progressBar, statusLabel, resultTable);
+        HBox buttons = new HBox(10, chooseButton, scanButton, deleteButton, undoButton, linkButton, openIndexButton);
+        HBox filters = new HBox(10, searchField, extensionBox, keepRuleBox, applyRuleButton);
+        root.getChildren().addAll(folderLabel, buttons, progressBar, statusLabel, filters, resultTable);
 
         // Указываем, что таблица должна растягиваться по вертикали, занимая все доступное место
         VBox.setVgrow(resultTable, Priority.ALWAYS);
 
+        showResults(foundDuplicates);
+        // Если есть результаты предыдущего сканирования, сразу показываем их
+        if (Files.isRegularFile(LAST_SCAN_INDEX)) {
+            openIndex(LAST_SCAN_INDEX);
+        }
+
         // Начальная настройка состояния кнопок
         updateButtonStates();
     }
@@ -132,6 +203,23 @@ public class MainWindow {
         );
 
         table.getColumns().addAll(selectCol, pathCol, sizeCol, hashCol);
+
+        // Сортировка выполняется моделью в фоновом потоке, а не самой таблицей в потоке интерфейса
+        selectCol.setSortable(false);
+        table.setSortPolicy(sorted -> {
+            ResultModel.SortKey key = ResultModel.SortKey.GROUP;
+            boolean descending = false;
+            if (!sorted.getSortOrder().isEmpty()) {
+                TableColumn<FileInfo, ?> column = sorted.getSortOrder().get(0);
+                key = column == pathCol ? ResultModel.SortKey.PATH
+                        : column == sizeCol ? ResultModel.SortKey.SIZE : ResultModel.SortKey.GROUP;
+                descending = column.getSortType() == TableColumn.SortType.DESCENDING;
+            }
+            if (resultModel != null) {
+                resultModel.setSort(key, descending);
+            }
+            return true;
+        });
         return table;
     }
 
@@ -157,12 +245,11 @@ public class MainWindow {
             return;
         }
 
-        ScanTask scanTask = new ScanTask(selectedFolder);
+        ScanTask scanTask = new ScanTask(selectedFolder, LAST_SCAN_INDEX, SCAN_JOURNAL);
 
         // Задача успешно завершилась
         scanTask.setOnSucceeded(event -> {
-            foundDuplicates = scanTask.getValue(); // Получаем результат из фонового потока
-            resultTable.getItems().setAll(foundDuplicates);
+            showResults(scanTask.getValue()); // Получаем результат из фонового потока
             statusLabel.textProperty().unbind(); // Отвязываем метку от задачи
             statusLabel.setText("Сканирование завершено. Найдено дубликатов: " + foundDuplicates.size());
             updateButtonStates(); // Обновляем состояние кнопок
@@ -191,32 +278,294 @@ public class MainWindow {
         // Подготовка UI к запуску задачи
         progressBar.setVisible(true);
         scanButton.setDisable(true);
-        resultTable.getItems().clear();
-        foundDuplicates.clear();
+        showResults(new ArrayList<>());
 
         new Thread(scanTask).start(); // Запускаем задачу в новом потоке
     }
 
     /**
      * Запускает процесс удаления выбранных дубликатов.
+     * Если часть отмеченных строк скрыта поиском или фильтром, пользователь выбирает, удалять ли и их.
      */
     private void delete() {
-        long selectedCount = foundDuplicates.stream().filter(FileInfo::isSelected).count();
-        if (selectedCount == 0) {
+        // Для индекса отмеченные строки выбираются без создания объектов для всех записей
+        List<FileInfo> selected = foundDuplicates instanceof IndexBackedList
+                ? ((IndexBackedList) foundDuplicates).selectedFiles()
+                : foundDuplicates.stream().filter(FileInfo::isSelected).collect(Collectors.toList());
+        if (selected.isEmpty()) {
             showAlert(Alert.AlertType.INFORMATION, "Файлы не выбраны", "Пожалуйста, отметьте галочками файлы, которые нужно удалить.");
             return;
         }
 
-        int count = service.deleteSelectedDuplicates(foundDuplicates);
+        // Отмеченные строки, скрытые поиском или фильтром, удаляются только после явного подтверждения
+        List<FileInfo> visible = resultTable.getItems().stream().filter(FileInfo::isSelected).collect(Collectors.toList());
+        int hidden = selected.size() - visible.size();
+        if (hidden > 0) {
+            ButtonType visibleOnly = new ButtonType("Только видимые");
+            ButtonType all = new ButtonType("Все отмеченные");
+            Alert confirm = new Alert(Alert.AlertType.CONFIRMATION, "", visibleOnly, all, ButtonType.CANCEL);
+            confirm.setTitle("File Deduplicator");
+            confirm.setHeaderText("Часть отмеченных файлов скрыта");
+            confirm.setContentText("Отмечено файлов: " + selected.size() + ", из них скрыто поиском или фильтром: " + hidden + ".");
+            ButtonType choice = confirm.showAndWait().orElse(ButtonType.CANCEL);
+            if (choice == visibleOnly) {
+                selected = visible;
+            } else if (choice != all) {
+                return;
+            }
+        }
+        if (selected.isEmpty()) {
+            return;
+        }
+
+        int count = service.deleteSelectedDuplicates(selected);
         showAlert(Alert.AlertType.INFORMATION, "Удаление завершено", "Перемещено в корзину: " + count + " файлов.");
 
-        // Обновляем UI, удаляя из модели и таблицы только что удаленные файлы
-        foundDuplicates.removeIf(FileInfo::isSelected);
-        resultTable.getItems().setAll(foundDuplicates);
+        // Состояние результатов запоминается, чтобы отмена удаления вернула строки на прежние места
+        if (foundDuplicates instanceof IndexBackedList) {
+            IndexBackedList rows = (IndexBackedList) foundDuplicates;
+            int[] view = rows.saveView();
+            restoreDeletedRows = () -> rows.restoreView(view);
+        } else {
+            List<FileInfo> rows = foundDuplicates;
+            List<FileInfo> before = new ArrayList<>(rows);
+            restoreDeletedRows = () -> {
+                rows.clear();
+                rows.addAll(before);
+            };
+        }
+        lastDeletedRows = selected;
+
+        // Обновляем UI, удаляя из модели и таблицы только переданные на удаление строки
+        CustomHashMap<Path, Boolean> deleted = new CustomHashMap<>();
+        for (FileInfo info : selected) {
+            deleted.put(info.getPath(), Boolean.TRUE);
+        }
+        foundDuplicates.removeIf(info -> deleted.get(info.getPath()) != null);
+        showResults(foundDuplicates);
 
         updateButtonStates();
     }
 
+    /**
+     * Возвращает из корзины файлы, перемещенные последним удалением, и их строки в результаты.
+     * Строки файлов, которые восстановить не удалось, в результаты не возвращаются.
+     */
+    private void undoDelete() {
+        int restored = service.undoLastDelete();
+        if (restoreDeletedRows != null) {
+            restoreDeletedRows.run();
+            CustomHashMap<Path, Boolean> missing = new CustomHashMap<>();
+            boolean anyMissing = false;
+            for (FileInfo info : lastDeletedRows) {
+                if (!Files.exists(info.getPath(), LinkOption.NOFOLLOW_LINKS)) {
+                    missing.put(info.getPath(), Boolean.TRUE);
+                    anyMissing = true;
+                }
+            }
+            if (anyMissing) {
+                foundDuplicates.removeIf(info -> missing.get(info.getPath()) != null);
+            }
+            showResults(foundDuplicates);
+        }
+        restoreDeletedRows = null;
+        lastDeletedRows = null;
+        showAlert(Alert.AlertType.INFORMATION, "Удаление отменено", "Восстановлено файлов: " + restored + ".");
+        updateButtonStates();
+    }
+
+    /**
+     * Заменяет выбранные дубликаты жесткими ссылками на оставляемый файл группы.
+     * Пути файлов сохраняются, а место освобождается. Замена выполняется в фоновом потоке;
+     * из результатов убираются только файлы, которые удалось заменить.
+     */
+    private void link() {
+        List<FileInfo> results = foundDuplicates;
+        // Ссылкам нужен оставляемый файл группы, поэтому передаются все строки, а не только отмеченные.
+        // Фоновый поток получает снимок строк с текущими отметками
+        List<FileInfo> rows = results instanceof IndexBackedList
+                ? ((IndexBackedList) results).detachedRows()
+                : new ArrayList<>(results);
+
+        Task<List<Path>> linkTask = new Task<>() {
+            @Override
+            protected List<Path> call() {
+                return service.linkSelectedDuplicates(rows, LinkConsolidator.Mode.HARD_LINK);
+            }
+        };
+        linkTask.setOnSucceeded(e -> {
+            List<Path> replaced = linkTask.getValue();
+            statusLabel.setText("Заменено жесткими ссылками: " + replaced.size() + " файлов.");
+            if (results == foundDuplicates) {
+                CustomHashMap<Path, Boolean> linked = new CustomHashMap<>();
+                for (Path path : replaced) {
+                    linked.put(path, Boolean.TRUE);
+                }
+                foundDuplicates.removeIf(info -> linked.get(info.getPath()) != null);
+                showResults(foundDuplicates);
+            }
+            updateButtonStates();
+            showAlert(Alert.AlertType.INFORMATION, "Замена завершена", "Заменено жесткими ссылками: " + replaced.size() + " файлов.");
+        });
+        linkTask.setOnFailed(e -> {
+            updateButtonStates();
+            statusLabel.setText("Не удалось заменить файлы: " + linkTask.getException().getMessage());
+        });
+        deleteButton.setDisable(true);
+        undoButton.setDisable(true);
+        linkButton.setDisable(true);
+        applyRuleButton.setDisable(true);
+        statusLabel.setText("Замена копий жесткими ссылками...");
+        Thread thread = new Thread(linkTask, "dedup-link");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Отмечает файлы во всех группах по выбранному правилу. План строится в фоновом потоке,
+     * и отметки меняются только после того, как пользователь подтвердит объем освобождаемого места.
+     */
+    private void applySelectionPolicy() {
+        List<FileInfo> results = foundDuplicates;
+        // Индекс читается в фоне через отдельные объекты строк, чтобы не трогать кеш списка
+        List<FileInfo> rows = results instanceof IndexBackedList
+                ? ((IndexBackedList) results).detachedRows()
+                : new ArrayList<>(results);
+        // Набор строк на момент снимка: план применим только к тем же строкам
+        int[] view = results instanceof IndexBackedList ? ((IndexBackedList) results).saveView() : null;
+        int rowCount = results.size();
+        SelectionPolicy policy = new SelectionPolicy(
+                SelectionPolicy.Keep.values()[keepRuleBox.getSelectionModel().getSelectedIndex()]);
+
+        Task<SelectionPolicy.Plan> planTask = new Task<>() {
+            @Override
+            protected SelectionPolicy.Plan call() {
+                return policy.plan(rows);
+            }
+        };
+        planTask.setOnSucceeded(e -> {
+            updateButtonStates();
+            SelectionPolicy.Plan plan = planTask.getValue();
+            if (results != foundDuplicates || results.size() != rowCount
+                    || results instanceof IndexBackedList && ((IndexBackedList) results).saveView() != view) {
+                // Пока строился план, результаты сменились: номера строк плана больше не соответствуют строкам
+                statusLabel.setText("Результаты изменились, правило не применено. Повторите отметку.");
+                return;
+            }
+            Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+            confirm.setTitle("File Deduplicator");
+            confirm.setHeaderText("Отметить файлы по правилу?");
+            confirm.setContentText("Групп: " + plan.getGroupCount() + ". Будет отмечено файлов: " + plan.getSelectedCount()
+                    + ", освободится " + String.format("%.1f", plan.getReclaimableBytes() / (1024.0 * 1024.0)) + " МБ.");
+            if (confirm.showAndWait().filter(ButtonType.OK::equals).isPresent()) {
+                if (results instanceof IndexBackedList) {
+                    ((IndexBackedList) results).applySelection(plan);
+                } else {
+                    plan.apply(results);
+                }
+                resultTable.refresh();
+            }
+        });
+        planTask.setOnFailed(e -> {
+            updateButtonStates();
+            statusLabel.setText("Не удалось применить правило: " + planTask.getException().getMessage());
+        });
+        // Удаление и замена ссылками меняют набор строк, поэтому недоступны, пока строится план
+        applyRuleButton.setDisable(true);
+        deleteButton.setDisable(true);
+        undoButton.setDisable(true);
+        linkButton.setDisable(true);
+        Thread thread = new Thread(planTask, "dedup-selection");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Открывает диалог выбора сохраненного индекса результатов.
+     */
+    private void chooseIndex() {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Выберите индекс результатов сканирования");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Индекс сканирования", "*.idx"));
+        if (Files.isDirectory(LAST_SCAN_INDEX.getParent())) {
+            chooser.setInitialDirectory(LAST_SCAN_INDEX.getParent().toFile());
+        }
+        File file = chooser.showOpenDialog(root.getScene().getWindow());
+        if (file != null) {
+            openIndex(file.toPath());
+            updateButtonStates();
+        }
+    }
+
+    /**
+     * Показывает результаты из сохраненного индекса. Индекс отображается в память,
+     * и строки таблицы читаются из него по мере прокрутки.
+     */
+    private void openIndex(Path indexFile) {
+        try {
+            ScanIndex index = ScanIndex.open(indexFile);
+            showResults(new IndexBackedList(index));
+            selectedFolder = index.getRoot();
+            folderLabel.setText("Выбранная папка: " + selectedFolder);
+            statusLabel.setText("Загружены результаты сканирования. Найдено дубликатов: " + index.size());
+        } catch (IOException e) {
+            statusLabel.setText("Не удалось открыть результаты сканирования: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Делает список источником данных таблицы без копирования элементов.
+     * Таблица показывает представление, которое модель результатов строит в фоновом потоке
+     * с текущими поиском, фильтром и сортировкой. Ранее открытый индекс закрывается.
+     */
+    private void showResults(List<FileInfo> results) {
+        if (foundDuplicates instanceof IndexBackedList && foundDuplicates != results) {
+            ((IndexBackedList) foundDuplicates).close();
+        }
+        if (resultModel != null) {
+            resultModel.close();
+        }
+        if (foundDuplicates != results) {
+            // Строки прежних результатов в новые не возвращаются; сами файлы восстановить по-прежнему можно
+            restoreDeletedRows = null;
+            lastDeletedRows = null;
+        }
+        foundDuplicates = results;
+        if (!(results instanceof java.util.RandomAccess)) {
+            foundDuplicates = results = new ArrayList<>(results);
+        }
+        resultModel = ResultModel.of(results, Platform::runLater);
+        resultModel.setListener(view -> {
+            resultTable.setItems(FXCollections.observableList(view));
+            if (extensionBox.getItems().isEmpty()) {
+                List<String> extensions = new ArrayList<>();
+                extensions.add(ALL_EXTENSIONS);
+                for (String extension : resultModel.getExtensions()) {
+                    extensions.add(extension.isEmpty() ? NO_EXTENSION : extension);
+                }
+                extensionBox.getItems().setAll(extensions);
+            }
+            if (view.size() != foundDuplicates.size() && !statusLabel.textProperty().isBound()) {
+                statusLabel.setText("Показано " + view.size() + " из " + foundDuplicates.size());
+            }
+        });
+        extensionBox.getItems().clear();
+        // Параметры поиска переносятся на новые результаты
+        resultModel.setExtension(toExtension(extensionBox.getValue()));
+        resultModel.setSearch(searchField.getText());
+        resultTable.getSortPolicy().call(resultTable);
+    }
+
+    /**
+     * Переводит пункт списка расширений в параметр фильтра модели.
+     */
+    private static String toExtension(String item) {
+        if (item == null || item.equals(ALL_EXTENSIONS)) {
+            return null;
+        }
+        return item.equals(NO_EXTENSION) ? "" : item;
+    }
+
     /**
      * Централизованно обновляет состояние кнопок в зависимости от состояния приложения.
      */
@@ -224,6 +573,9 @@ public class MainWindow {
         boolean duplicatesFound = foundDuplicates != null && !foundDuplicates.isEmpty();
         // Кнопка удаления активна только если найдены дубликаты и удаление поддерживается системой
         deleteButton.setDisable(!duplicatesFound || !service.isTrashSupported());
+        applyRuleButton.setDisable(!duplicatesFound);
+        linkButton.setDisable(!duplicatesFound);
+        undoButton.setDisable(!service.canUndoDelete());
     }
 
     /**
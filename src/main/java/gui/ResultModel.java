@@ -0,0 +1,404 @@
+package gui;
+
+import model.FileInfo;
+import util.CustomHashMap;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Модель таблицы результатов: сортировка, фильтрация и поиск выполняются в фоновом потоке.
+ * <p>
+ * При первом запросе модель один раз строит индексы по строкам источника: порядок по размеру,
+ * порядок по пути (по нему же фильтр по префиксу пути находит непрерывный диапазон двоичным поиском)
+ * и номер расширения каждой строки. Порядок по группам совпадает с порядком строк источника.
+ * Каждый запрос превращается в массив номеров строк, который публикуется как легкий список-представление:
+ * объекты {@link FileInfo} создаются источником только для строк, которые таблица действительно показывает.
+ * <p>
+ * Запросы выполняются по одному; если во время выполнения пришел новый запрос (например, пользователь
+ * набрал еще один символ поиска), устаревший прерывается и не публикуется.
+ */
+class ResultModel implements AutoCloseable {
+
+    /** Порядок строк. */
+    enum SortKey { GROUP, SIZE, PATH }
+
+    /**
+     * Доступ к полям строк без создания объектов {@link FileInfo}.
+     */
+    interface Rows {
+        int rowCount();
+
+        long rowSize(int row);
+
+        String rowPath(int row);
+
+        /**
+         * @return строки, упорядоченные по пути, если источник уже хранит такой порядок, иначе null.
+         */
+        default int[] pathOrder() {
+            return null;
+        }
+    }
+
+    /** Сравнение строк по номерам. */
+    private interface RowComparator {
+        int compare(int a, int b);
+    }
+
+    /** Как часто фоновый запрос проверяет, не устарел ли он. */
+    private static final int CANCEL_CHECK_INTERVAL = 4096;
+
+    private final List<FileInfo> source;
+    private final Rows rows;
+    private final Executor publisher;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "dedup-results");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /** Номер последнего запроса; запросы с меньшим номером прерываются. */
+    private final AtomicLong generation = new AtomicLong();
+
+    private Consumer<List<FileInfo>> listener = view -> {};
+
+    // Параметры запроса (меняются в потоке интерфейса)
+    private SortKey sortKey = SortKey.GROUP;
+    private boolean descending;
+    private String search = "";
+    private String extension;
+
+    // Индексы (строятся и читаются только в фоновом потоке)
+    private int[] bySize;
+    private int[] byPath;
+    private short[] extensionOf;
+    private List<String> extensions;
+
+    /**
+     * @param source    строки результатов; список должен поддерживать быстрый доступ по номеру.
+     * @param rows      доступ к полям строк источника.
+     * @param publisher исполнитель, в котором публикуются результаты (поток интерфейса).
+     */
+    ResultModel(List<FileInfo> source, Rows rows, Executor publisher) {
+        this.source = source;
+        this.rows = rows;
+        this.publisher = publisher;
+    }
+
+    /**
+     * Модель для списка объектов {@link FileInfo} в памяти.
+     */
+    static ResultModel of(List<FileInfo> source, Executor publisher) {
+        if (source instanceof Rows) {
+            return new ResultModel(source, (Rows) source, publisher);
+        }
+        return new ResultModel(source, new Rows() {
+            @Override
+            public int rowCount() {
+                return source.size();
+            }
+
+            @Override
+            public long rowSize(int row) {
+                return source.get(row).getSize();
+            }
+
+            @Override
+            public String rowPath(int row) {
+                return source.get(row).getPath().toString();
+            }
+        }, publisher);
+    }
+
+    /**
+     * @param listener получатель нового представления; вызывается в исполнителе публикации.
+     */
+    void setListener(Consumer<List<FileInfo>> listener) {
+        this.listener = listener;
+    }
+
+    void setSort(SortKey sortKey, boolean descending) {
+        this.sortKey = sortKey;
+        this.descending = descending;
+        refresh();
+    }
+
+    /**
+     * Поиск по пути: строка, начинающаяся с корня файловой системы, ищется как префикс пути,
+     * остальные строки — как подстрока без учета регистра.
+     */
+    void setSearch(String search) {
+        this.search = search == null ? "" : search.trim();
+        refresh();
+    }
+
+    /**
+     * @param extension расширение без точки (пустая строка — файлы без расширения) или null для всех файлов.
+     */
+    void setExtension(String extension) {
+        this.extension = extension;
+        refresh();
+    }
+
+    /**
+     * Запускает пересчет представления с текущими параметрами.
+     */
+    void refresh() {
+        long request = generation.incrementAndGet();
+        SortKey sortKey = this.sortKey;
+        boolean descending = this.descending;
+        String search = this.search;
+        String extension = this.extension;
+        worker.execute(() -> {
+            if (generation.get() != request) {
+                return;
+            }
+            int[] view = query(sortKey, descending, search, extension, request);
+            if (view == null) {
+                return;
+            }
+            publisher.execute(() -> {
+                if (generation.get() == request) {
+                    listener.accept(new View(view));
+                }
+            });
+        });
+    }
+
+    /**
+     * @return расширения, встречающиеся в результатах (пустой список, пока индексы не построены).
+     */
+    List<String> getExtensions() {
+        List<String> known = extensions;
+        return known != null ? known : new ArrayList<>();
+    }
+
+    @Override
+    public void close() {
+        generation.incrementAndGet();
+        worker.shutdownNow();
+    }
+
+    /**
+     * Вычисляет представление.
+     *
+     * @return номера строк или null, если запрос устарел.
+     */
+    int[] query(SortKey sortKey, boolean descending, String search, String extension, long request) {
+        if (!buildIndexes(request)) {
+            return null;
+        }
+        int count = rows.rowCount();
+        boolean prefix = isPathPrefix(search);
+        String needle = search.toLowerCase(Locale.ROOT);
+        int extensionId = extension == null ? -1 : extensions.indexOf(extension);
+        if (extension != null && extensionId < 0) {
+            return new int[0];
+        }
+
+        // Префикс пути задает непрерывный диапазон в порядке по путям; без префикса просматриваются
+        // все строки сразу в нужном порядке, и сортировать отобранные строки не нужно
+        int[] order = sortKey == SortKey.SIZE ? bySize : sortKey == SortKey.PATH ? byPath : null;
+        int from = 0;
+        int to = count;
+        if (prefix) {
+            order = byPath;
+            from = lowerBound(search);
+            to = from;
+            while (to < count && rows.rowPath(byPath[to]).startsWith(search)) {
+                to++;
+            }
+        }
+        boolean unfiltered = search.isEmpty() && extension == null;
+
+        int[] view = new int[to - from];
+        int kept = 0;
+        for (int i = from; i < to; i++) {
+            if ((i - from) % CANCEL_CHECK_INTERVAL == 0 && generation.get() != request) {
+                return null;
+            }
+            int row = order != null ? order[i] : i;
+            if (unfiltered || matches(row, prefix, needle, extensionId)) {
+                view[kept++] = row;
+            }
+        }
+        int[] result = Arrays.copyOf(view, kept);
+        if (prefix && sortKey != SortKey.PATH) {
+            // Строки префикса отобраны в порядке путей: возвращаем их к выбранному порядку
+            sortRows(result, sortKey == SortKey.SIZE ? sizeComparator() : Integer::compare);
+        }
+        if (descending) {
+            reverse(result);
+        }
+        return result;
+    }
+
+    private boolean matches(int row, boolean prefix, String needle, int extensionId) {
+        if (extensionId >= 0 && extensionOf[row] != extensionId) {
+            return false;
+        }
+        return prefix || needle.isEmpty() || rows.rowPath(row).toLowerCase(Locale.ROOT).contains(needle);
+    }
+
+    /**
+     * Строит индексы при первом запросе.
+     *
+     * @return false, если запрос устарел во время построения.
+     */
+    private boolean buildIndexes(long request) {
+        if (extensionOf != null) {
+            return true;
+        }
+        int count = rows.rowCount();
+
+        int[] sizeOrder = identity(count);
+        sortRows(sizeOrder, sizeComparator());
+        if (generation.get() != request) {
+            return false;
+        }
+
+        int[] pathOrder = rows.pathOrder();
+        if (pathOrder == null) {
+            pathOrder = identity(count);
+            sortRows(pathOrder, (a, b) -> rows.rowPath(a).compareTo(rows.rowPath(b)));
+        }
+        if (generation.get() != request) {
+            return false;
+        }
+
+        CustomHashMap<String, Integer> ids = new CustomHashMap<>();
+        List<String> names = new ArrayList<>();
+        short[] extensionIds = new short[count];
+        for (int row = 0; row < count; row++) {
+            String name = extensionOf(rows.rowPath(row));
+            Integer id = ids.get(name);
+            if (id == null) {
+                // Редкие расширения сверх лимита объединяются с последним, чтобы номер поместился в short
+                id = Math.min(names.size(), Short.MAX_VALUE);
+                if (id == names.size()) {
+                    names.add(name);
+                }
+                ids.put(name, id);
+            }
+            extensionIds[row] = (short) (int) id;
+        }
+        bySize = sizeOrder;
+        byPath = pathOrder;
+        extensions = names;
+        extensionOf = extensionIds;
+        return true;
+    }
+
+    private RowComparator sizeComparator() {
+        // По возрастанию размера (убывание дает разворот в query); внутри размера — по группам
+        return (a, b) -> {
+            int bySize = Long.compare(rows.rowSize(a), rows.rowSize(b));
+            return bySize != 0 ? bySize : Integer.compare(a, b);
+        };
+    }
+
+    /**
+     * @return первая позиция в порядке путей, путь на которой не меньше префикса.
+     */
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = byPath.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (rows.rowPath(byPath[middle]).compareTo(prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    static boolean isPathPrefix(String search) {
+        return search.startsWith("/") || search.startsWith("\\\\") || search.matches("^[A-Za-z]:[\\\\/].*");
+    }
+
+    static String extensionOf(String path) {
+        int slash = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+        int dot = path.lastIndexOf('.');
+        return dot > slash + 1 ? path.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+    }
+
+    private static int[] identity(int count) {
+        int[] rows = new int[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = i;
+        }
+        return rows;
+    }
+
+    private static void reverse(int[] rows) {
+        for (int i = 0, j = rows.length - 1; i < j; i++, j--) {
+            int row = rows[i];
+            rows[i] = rows[j];
+            rows[j] = row;
+        }
+    }
+
+    /**
+     * Устойчивая сортировка слиянием массива номеров строк без упаковки в {@link Integer}.
+     */
+    private static void sortRows(int[] rows, RowComparator comparator) {
+        int[] buffer = new int[rows.length];
+        int[] from = rows;
+        int[] to = buffer;
+        for (int width = 1; width < rows.length; width *= 2) {
+            for (int low = 0; low < rows.length; low += 2 * width) {
+                int middle = Math.min(low + width, rows.length);
+                int high = Math.min(low + 2 * width, rows.length);
+                int i = low;
+                int j = middle;
+                int k = low;
+                while (i < middle && j < high) {
+                    to[k++] = comparator.compare(from[i], from[j]) <= 0 ? from[i++] : from[j++];
+                }
+                while (i < middle) {
+                    to[k++] = from[i++];
+                }
+                while (j < high) {
+                    to[k++] = from[j++];
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != rows) {
+            System.arraycopy(from, 0, rows, 0, rows.length);
+        }
+    }
+
+    /**
+     * Представление: строки источника в порядке, вычисленном запросом.
+     */
+    private class View extends AbstractList<FileInfo> {
+        private final int[] view;
+
+        View(int[] view) {
+            this.view = view;
+        }
+
+        @Override
+        public FileInfo get(int position) {
+            return source.get(view[position]);
+        }
+
+        @Override
+        public int size() {
+            return view.length;
+        }
+    }
+}
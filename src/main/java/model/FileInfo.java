@@ -33,6 +33,18 @@ public class FileInfo {
     /** Свойство JavaFX, указывающее, выбран ли данный файл для удаления (например, с помощью чекбокса в таблице). */
     private final BooleanProperty selected;
 
+    /** Время последнего изменения файла (миллисекунды с начала эпохи, 0 — неизвестно). */
+    private long lastModified;
+
+    /** Номер группы дубликатов, к которой относится файл (0 — не назначен). */
+    private int groupId;
+
+    /** Является ли файл записью внутри zip- или jar-архива (такие записи нельзя удалить). */
+    private boolean archiveEntry;
+
+    /** Представляет ли объект целую директорию (размер — суммарный размер ее файлов). */
+    private boolean directory;
+
     /**
      * Конструктор для создания нового объекта FileInfo.
      *
@@ -85,6 +97,55 @@ public class FileInfo {
         this.selected.set(selected);
     }
 
+    /**
+     * Возвращает время последнего изменения файла.
+     * @return миллисекунды с начала эпохи или 0, если время неизвестно.
+     */
+    public long getLastModified() { return lastModified; }
+
+    /**
+     * Устанавливает время последнего изменения файла.
+     * @param lastModified миллисекунды с начала эпохи.
+     */
+    public void setLastModified(long lastModified) { this.lastModified = lastModified; }
+
+    /**
+     * Возвращает номер группы дубликатов.
+     * Файлы с одинаковым номером имеют одинаковое содержимое.
+     * @return номер группы или 0, если он не назначен.
+     */
+    public int getGroupId() { return groupId; }
+
+    /**
+     * Устанавливает номер группы дубликатов.
+     * @param groupId номер группы.
+     */
+    public void setGroupId(int groupId) { this.groupId = groupId; }
+
+    /**
+     * Проверяет, является ли файл записью архива. Путь такой записи имеет вид {@code архив.jar!/запись}.
+     * @return true для записи архива.
+     */
+    public boolean isArchiveEntry() { return archiveEntry; }
+
+    /**
+     * Отмечает файл как запись архива.
+     * @param archiveEntry true для записи архива.
+     */
+    public void setArchiveEntry(boolean archiveEntry) { this.archiveEntry = archiveEntry; }
+
+    /**
+     * Проверяет, представляет ли объект директорию из группы одинаковых директорий.
+     * @return true для директории.
+     */
+    public boolean isDirectory() { return directory; }
+
+    /**
+     * Отмечает объект как директорию.
+     * @param directory true для директории.
+     */
+    public void setDirectory(boolean directory) { this.directory = directory; }
+
 
     // Геттеры для JavaFX Properties
     // Эти методы необходимы для механизма привязки данных в JavaFX.
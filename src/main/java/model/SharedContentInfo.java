@@ -0,0 +1,52 @@
+package model;
+
+import java.nio.file.Path;
+
+/**
+ * Результат поблочного анализа одного файла: сколько байт его содержимого
+ * встречается также в других файлах.
+ */
+public class SharedContentInfo {
+
+    /** Путь к файлу. */
+    private final Path path;
+    /** Размер файла в байтах. */
+    private final long size;
+    /** Количество байт в блоках, которые есть хотя бы в одном другом файле. */
+    private final long sharedBytes;
+    /** Количество блоков, на которые был разбит файл. */
+    private final int chunkCount;
+
+    /**
+     * @param path        путь к файлу.
+     * @param size        размер файла в байтах.
+     * @param sharedBytes количество общих с другими файлами байт.
+     * @param chunkCount  количество блоков.
+     */
+    public SharedContentInfo(Path path, long size, long sharedBytes, int chunkCount) {
+        this.path = path;
+        this.size = size;
+        this.sharedBytes = sharedBytes;
+        this.chunkCount = chunkCount;
+    }
+
+    /** @return путь к файлу. */
+    public Path getPath() { return path; }
+
+    /** @return размер файла в байтах. */
+    public long getSize() { return size; }
+
+    /** @return количество байт, общих с другими файлами. */
+    public long getSharedBytes() { return sharedBytes; }
+
+    /** @return количество блоков, на которые был разбит файл. */
+    public int getChunkCount() { return chunkCount; }
+
+    /**
+     * Возвращает долю содержимого, общую с другими файлами.
+     * @return значение от 0.0 до 1.0.
+     */
+    public double getSharedRatio() {
+        return size == 0 ? 0.0 : (double) sharedBytes / size;
+    }
+}
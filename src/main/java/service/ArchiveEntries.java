@@ -0,0 +1,224 @@
+package service;
+
+import util.CustomHashMap;
+import util.FileHasher;
+import util.HashState;
+import util.ReadBuffers;
+import util.StorageKind;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Записи zip- и jar-архивов как виртуальные файлы сканирования.
+ * <p>
+ * Запись представлена путем вида {@code /путь/к/архиву.jar!/путь/в/архиве}. При обходе читается
+ * только центральный каталог архива: несжатые размеры записей участвуют в группировке по размеру
+ * наравне с обычными файлами, поэтому распаковываются только записи, размер которых совпал
+ * с размером другого файла или записи. Содержимое распаковывается потоком в памяти,
+ * на диск ничего не извлекается.
+ * <p>
+ * Открытые архивы кешируются (не больше {@link #MAX_OPEN_ARCHIVES}), так как записи одной группы
+ * размера обычно лежат в разных архивах, а повторное открытие требует повторного чтения центрального каталога.
+ * В реестр попадают только записи, которые могут понадобиться при хешировании (см. {@link #register(Entry)}).
+ * Реестр заполняется при обходе в одном потоке и затем только читается, поэтому хеширование
+ * может выполняться из нескольких потоков.
+ */
+class ArchiveEntries implements Closeable {
+
+    /** Разделитель пути архива и пути записи внутри него. */
+    static final String SEPARATOR = "!/";
+
+    /** Максимальное количество одновременно открытых архивов. */
+    private static final int MAX_OPEN_ARCHIVES = 16;
+
+    /** Запись архива. */
+    static class Entry {
+        final Path archive;
+        final String name;
+        final long size;
+        /** Виртуальный путь записи. */
+        final Path path;
+
+        /**
+         * @throws InvalidPathException если имя записи не образует допустимый путь.
+         */
+        Entry(Path archive, String name, long size) {
+            this.archive = archive;
+            this.name = name;
+            this.size = size;
+            this.path = Path.of(archive + SEPARATOR + name);
+        }
+    }
+
+    /** Открытый архив со счетчиком читающих потоков. */
+    private static class OpenArchive {
+        final ZipFile zip;
+        int users;
+        boolean evicted;
+
+        OpenArchive(ZipFile zip) {
+            this.zip = zip;
+        }
+    }
+
+    private final CustomHashMap<Path, Entry> entries = new CustomHashMap<>();
+    private final LinkedHashMap<Path, OpenArchive> openArchives = new LinkedHashMap<>(MAX_OPEN_ARCHIVES, 0.75f, true);
+
+    /**
+     * @return true, если по имени файла это zip- или jar-архив.
+     */
+    static boolean isArchive(Path file) {
+        Path name = file.getFileName();
+        if (name == null) {
+            return false;
+        }
+        String lower = name.toString().toLowerCase(Locale.ROOT);
+        return lower.endsWith(".zip") || lower.endsWith(".jar");
+    }
+
+    /**
+     * Читает центральный каталог архива. Директории и записи, имя которых не образует допустимый путь
+     * (например, содержит недопустимые в файловой системе символы), пропускаются.
+     *
+     * @param archive файл архива.
+     * @return записи архива в порядке центрального каталога.
+     * @throws IOException если архив поврежден или не читается.
+     */
+    List<Entry> list(Path archive) throws IOException {
+        List<Entry> result = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry zipEntry = zipEntries.nextElement();
+                if (zipEntry.isDirectory() || zipEntry.getSize() < 0) {
+                    continue;
+                }
+                try {
+                    result.add(new Entry(archive, zipEntry.getName(), zipEntry.getSize()));
+                } catch (InvalidPathException e) {
+                    System.err.println("Warning: skipping archive entry with invalid name: " + archive + SEPARATOR + zipEntry.getName());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Регистрирует запись, чтобы ее можно было найти по виртуальному пути при хешировании.
+     * Регистрируются только записи-кандидаты: записи с уникальным размером никогда не хешируются.
+     */
+    void register(Entry entry) {
+        entries.put(entry.path, entry);
+    }
+
+    /**
+     * @return виртуальный путь записи.
+     */
+    static Path virtualPath(Entry entry) {
+        return entry.path;
+    }
+
+    /**
+     * @return запись по виртуальному пути или null, если путь не относится к записи архива.
+     */
+    Entry get(Path file) {
+        return entries.get(file);
+    }
+
+    /**
+     * Вычисляет хеш распакованного содержимого записи.
+     */
+    String digest(Entry entry, FileHasher hasher) throws IOException {
+        HashState state = hasher.newState();
+        byte[] buffer = ReadBuffers.acquire(ReadBuffers.bufferSize(entry.size, StorageKind.UNKNOWN));
+        OpenArchive archive = acquire(entry.archive);
+        try (InputStream in = open(archive, entry)) {
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                state.update(buffer, 0, len);
+            }
+        } finally {
+            release(archive);
+        }
+        return state.finish();
+    }
+
+    /**
+     * Распаковывает запись в память целиком (для маленьких записей).
+     */
+    byte[] readAllBytes(Entry entry) throws IOException {
+        OpenArchive archive = acquire(entry.archive);
+        try (InputStream in = open(archive, entry)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.max(0, Math.min(entry.size, Integer.MAX_VALUE - 8)));
+            in.transferTo(out);
+            return out.toByteArray();
+        } finally {
+            release(archive);
+        }
+    }
+
+    /**
+     * Закрывает все кешированные архивы.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (OpenArchive archive : openArchives.values()) {
+            archive.evicted = true;
+            if (archive.users == 0) {
+                archive.zip.close();
+            }
+        }
+        openArchives.clear();
+    }
+
+    private static InputStream open(OpenArchive archive, Entry entry) throws IOException {
+        ZipEntry zipEntry = archive.zip.getEntry(entry.name);
+        if (zipEntry == null) {
+            throw new IOException("Entry disappeared from archive: " + entry.archive + SEPARATOR + entry.name);
+        }
+        return archive.zip.getInputStream(zipEntry);
+    }
+
+    /**
+     * Берет архив из кеша или открывает его. Если кеш переполнен, самый давно использованный архив
+     * закрывается, как только его перестанут читать.
+     */
+    private synchronized OpenArchive acquire(Path file) throws IOException {
+        OpenArchive archive = openArchives.get(file);
+        if (archive == null) {
+            archive = new OpenArchive(new ZipFile(file.toFile()));
+            openArchives.put(file, archive);
+            if (openArchives.size() > MAX_OPEN_ARCHIVES) {
+                Iterator<Map.Entry<Path, OpenArchive>> eldest = openArchives.entrySet().iterator();
+                OpenArchive evicted = eldest.next().getValue();
+                eldest.remove();
+                evicted.evicted = true;
+                if (evicted.users == 0) {
+                    evicted.zip.close();
+                }
+            }
+        }
+        archive.users++;
+        return archive;
+    }
+
+    private synchronized void release(OpenArchive archive) throws IOException {
+        if (--archive.users == 0 && archive.evicted) {
+            archive.zip.close();
+        }
+    }
+}
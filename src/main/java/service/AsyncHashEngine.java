@@ -0,0 +1,179 @@
+package service;
+
+import util.FileHasher;
+import util.HashState;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Асинхронное хеширование файлов на основе {@link AsynchronousFileChannel}.
+ * <p>
+ * Движок держит в работе заданное количество чтений одновременно, по одному на файл:
+ * каждый файл получает буфер из общего пула, и следующее чтение файла запускается,
+ * как только предыдущий прочитанный блок захеширован. Завершения чтений обрабатываются
+ * небольшим пулом потоков хеширования, поэтому глубина очереди накопителя определяется
+ * количеством буферов, а не количеством потоков.
+ * <p>
+ * Если все буферы заняты, {@link #submit(Path, FileHasher)} ждет освобождения одного из них,
+ * так что объем памяти под чтение ограничен {@code readsInFlight * bufferSize}.
+ */
+public class AsyncHashEngine implements AutoCloseable {
+
+    /** Размер буфера одного чтения по умолчанию. */
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    /** Пул потоков, в котором обрабатываются завершения чтений и выполняется хеширование. */
+    private final ExecutorService hashPool;
+    /** Свободные буферы. Количество буферов ограничивает число чтений в полете. */
+    private final BlockingQueue<ByteBuffer> buffers;
+
+    /**
+     * @param readsInFlight максимальное количество одновременных чтений.
+     * @param hashThreads   количество потоков хеширования.
+     */
+    public AsyncHashEngine(int readsInFlight, int hashThreads) {
+        this(readsInFlight, hashThreads, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param readsInFlight максимальное количество одновременных чтений.
+     * @param hashThreads   количество потоков хеширования.
+     * @param bufferSize    размер буфера одного чтения.
+     */
+    public AsyncHashEngine(int readsInFlight, int hashThreads, int bufferSize) {
+        if (readsInFlight < 1 || hashThreads < 1 || bufferSize < 1) {
+            throw new IllegalArgumentException("readsInFlight, hashThreads and bufferSize must be positive");
+        }
+        this.buffers = new ArrayBlockingQueue<>(readsInFlight);
+        for (int i = 0; i < readsInFlight; i++) {
+            buffers.add(ByteBuffer.allocate(bufferSize));
+        }
+        this.hashPool = Executors.newFixedThreadPool(hashThreads, task -> {
+            Thread thread = new Thread(task, "dedup-hash");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Запускает асинхронное хеширование файла. Если все буферы заняты, ждет освобождения одного из них.
+     *
+     * @param file   файл.
+     * @param hasher алгоритм хеширования; результат совпадает с {@link FileHasher#digest(Path)}.
+     * @return future с хешем файла; завершается исключением, если файл не удалось прочитать.
+     * @throws InterruptedIOException если ожидание свободного буфера было прервано.
+     */
+    public CompletableFuture<String> submit(Path file, FileHasher hasher) throws InterruptedIOException {
+        ByteBuffer buffer;
+        try {
+            buffer = buffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a read buffer");
+        }
+
+        CompletableFuture<String> result = new CompletableFuture<>();
+        AsynchronousFileChannel channel;
+        try {
+            channel = AsynchronousFileChannel.open(file, Set.of(StandardOpenOption.READ), hashPool);
+        } catch (IOException | RuntimeException e) {
+            buffers.add(buffer);
+            result.completeExceptionally(e);
+            return result;
+        }
+        new FileRead(channel, hasher.newState(), buffer, result).readFrom(0);
+        return result;
+    }
+
+    /**
+     * Останавливает потоки хеширования. Незавершенные чтения прерываются.
+     */
+    @Override
+    public void close() {
+        hashPool.shutdownNow();
+    }
+
+    /**
+     * Последовательное асинхронное чтение одного файла: каждый завершенный блок
+     * хешируется в потоке пула, после чего запускается чтение следующего блока.
+     */
+    private class FileRead implements CompletionHandler<Integer, Void> {
+        private final AsynchronousFileChannel channel;
+        private final HashState state;
+        private final ByteBuffer buffer;
+        private final CompletableFuture<String> result;
+        private long position;
+
+        FileRead(AsynchronousFileChannel channel, HashState state, ByteBuffer buffer, CompletableFuture<String> result) {
+            this.channel = channel;
+            this.state = state;
+            this.buffer = buffer;
+            this.result = result;
+        }
+
+        void readFrom(long position) {
+            this.position = position;
+            buffer.clear();
+            try {
+                channel.read(buffer, position, null, this);
+            } catch (RuntimeException e) {
+                failed(e, null);
+            }
+        }
+
+        @Override
+        public void completed(Integer read, Void attachment) {
+            if (result.isDone()) {
+                // Задача отменена: прекращаем чтение
+                release();
+                return;
+            }
+            if (read < 0) {
+                String hash;
+                try {
+                    hash = state.finish();
+                } catch (RuntimeException e) {
+                    failed(e, null);
+                    return;
+                }
+                release();
+                result.complete(hash);
+                return;
+            }
+            try {
+                state.update(buffer.array(), 0, read);
+            } catch (RuntimeException e) {
+                failed(e, null);
+                return;
+            }
+            readFrom(position + read);
+        }
+
+        @Override
+        public void failed(Throwable error, Void attachment) {
+            release();
+            result.completeExceptionally(error);
+        }
+
+        private void release() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Файл открыт только для чтения, ошибка закрытия не влияет на результат
+            }
+            buffers.add(buffer);
+        }
+    }
+}
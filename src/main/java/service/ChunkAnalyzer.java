@@ -0,0 +1,181 @@
+package service;
+
+import model.SharedContentInfo;
+import util.ContentChunker;
+import util.FileHasher;
+import util.Hash128Index;
+import util.HashState;
+import util.Murmur3Hasher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Поблочный анализ частичного дублирования файлов.
+ * Каждый файл потоково разбивается на блоки с границами по содержимому ({@link ContentChunker}),
+ * блоки хешируются и заносятся в индекс на примитивных массивах ({@link Hash128Index}).
+ * Для каждого файла вычисляется, сколько байт его содержимого встречается в других файлах.
+ * Так можно найти большие файлы, которые почти совпадают (образы ВМ, дампы БД),
+ * хотя их полные хеши различаются.
+ */
+public class ChunkAnalyzer {
+
+    /** Колбэк для обновления прогресса (значение от 0.0 до 1.0). */
+    private final Consumer<Double> progressConsumer;
+    /** Колбэк для отправки текстовых сообщений о статусе. */
+    private final Consumer<String> messageConsumer;
+    /** Разбивщик на блоки. */
+    private final ContentChunker chunker;
+    /** Алгоритм хеширования блоков. */
+    private final FileHasher chunkHasher;
+
+    /**
+     * Владельцы блоков по номерам из {@link Hash128Index}: номер первого файла, в котором встретился блок,
+     * и количество вхождений блока в этот файл, пока блок не встретился в другом файле (-1 — блок общий).
+     */
+    private static class ChunkOwners {
+        int[] firstFile = new int[1024];
+        int[] firstFileOccurrences = new int[1024];
+
+        void add(int chunk, int file) {
+            if (chunk == firstFile.length) {
+                firstFile = Arrays.copyOf(firstFile, chunk * 2);
+                firstFileOccurrences = Arrays.copyOf(firstFileOccurrences, chunk * 2);
+            }
+            firstFile[chunk] = file;
+            firstFileOccurrences[chunk] = 1;
+        }
+    }
+
+    /**
+     * Создает анализатор с параметрами по умолчанию (блоки 2/8/64 КБ, хеш MurmurHash3).
+     *
+     * @param progressConsumer функция для обновления прогресса.
+     * @param messageConsumer  функция для обновления статусных сообщений.
+     */
+    public ChunkAnalyzer(Consumer<Double> progressConsumer, Consumer<String> messageConsumer) {
+        this(progressConsumer, messageConsumer, new ContentChunker(), new Murmur3Hasher());
+    }
+
+    /**
+     * @param progressConsumer функция для обновления прогресса.
+     * @param messageConsumer  функция для обновления статусных сообщений.
+     * @param chunker          разбивщик на блоки.
+     * @param chunkHasher      алгоритм хеширования блоков.
+     */
+    public ChunkAnalyzer(Consumer<Double> progressConsumer, Consumer<String> messageConsumer,
+                         ContentChunker chunker, FileHasher chunkHasher) {
+        this.progressConsumer = progressConsumer;
+        this.messageConsumer = messageConsumer;
+        this.chunker = chunker;
+        this.chunkHasher = chunkHasher;
+    }
+
+    /**
+     * Анализирует все файлы директории размером не меньше указанного.
+     *
+     * @param root        корневая директория.
+     * @param minFileSize минимальный размер анализируемого файла.
+     * @return результаты по файлам, отсортированные по убыванию количества общих байт.
+     * @throws IOException если не удалось обойти директорию.
+     */
+    public List<SharedContentInfo> analyze(Path root, long minFileSize) throws IOException {
+        messageConsumer.accept("Сбор списка файлов...");
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(root)) {
+            Iterator<Path> iterator = walk.filter(Files::isRegularFile).iterator();
+            while (iterator.hasNext()) {
+                Path file = iterator.next();
+                try {
+                    if (Files.size(file) >= minFileSize) {
+                        files.add(file);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Could not get file size for: " + file + ". Skipping file.");
+                }
+            }
+        }
+        return analyze(files);
+    }
+
+    /**
+     * Анализирует указанные файлы.
+     *
+     * @param files файлы для анализа.
+     * @return результаты по файлам, отсортированные по убыванию количества общих байт.
+     */
+    public List<SharedContentInfo> analyze(List<Path> files) {
+        messageConsumer.accept("Поблочный анализ файлов...");
+        Hash128Index index = new Hash128Index();
+        ChunkOwners owners = new ChunkOwners();
+        // Хеш блока записывается сразу в два числа, без шестнадцатеричной строки
+        long[] bits = new long[2];
+        // Общие байты считаются по ходу анализа: вхождения в первый файл засчитываются ему,
+        // когда блок впервые встречается в другом файле, поэтому списки блоков по файлам не хранятся
+        long[] sizes = new long[files.size()];
+        long[] sharedBytes = new long[files.size()];
+        int[] chunkCounts = new int[files.size()];
+
+        for (int fileIndex = 0; fileIndex < files.size(); fileIndex++) {
+            Path file = files.get(fileIndex);
+            final int current = fileIndex;
+            long[] shared = {0};
+            int[] chunks = {0};
+            try (InputStream in = Files.newInputStream(file)) {
+                long[] size = {0};
+                chunker.chunk(in, (data, offset, length) -> {
+                    HashState state = chunkHasher.newState();
+                    state.update(data, offset, length);
+                    state.finish(bits);
+                    // Длина входит в ключ, чтобы исключить совпадение блоков разной длины
+                    int known = index.size();
+                    int chunk = index.add(bits[0], bits[1], length);
+                    if (chunk == known) {
+                        owners.add(chunk, current);
+                    } else if (owners.firstFile[chunk] == current) {
+                        // Файлы анализируются по очереди, поэтому блок первого файла еще не встречался в других
+                        owners.firstFileOccurrences[chunk]++;
+                    } else {
+                        int occurrences = owners.firstFileOccurrences[chunk];
+                        if (occurrences >= 0) {
+                            sharedBytes[owners.firstFile[chunk]] += (long) occurrences * length;
+                            owners.firstFileOccurrences[chunk] = -1;
+                        }
+                        shared[0] += length;
+                    }
+                    chunks[0]++;
+                    size[0] += length;
+                });
+                sizes[fileIndex] = size[0];
+                sharedBytes[fileIndex] += shared[0];
+                chunkCounts[fileIndex] = chunks[0];
+            } catch (IOException e) {
+                System.err.println("Could not read file: " + file + ". Skipping file.");
+                sizes[fileIndex] = -1;
+            }
+            progressConsumer.accept((double) (fileIndex + 1) / files.size());
+        }
+
+        List<SharedContentInfo> result = new ArrayList<>();
+        for (int fileIndex = 0; fileIndex < files.size(); fileIndex++) {
+            if (sizes[fileIndex] < 0) {
+                continue;
+            }
+            result.add(new SharedContentInfo(files.get(fileIndex), sizes[fileIndex], sharedBytes[fileIndex],
+                    chunkCounts[fileIndex]));
+        }
+        result.sort(Comparator.comparingLong(SharedContentInfo::getSharedBytes).reversed());
+
+        messageConsumer.accept("Поблочный анализ завершен.");
+        return result;
+    }
+}
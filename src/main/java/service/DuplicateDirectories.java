@@ -0,0 +1,196 @@
+package service;
+
+import model.FileInfo;
+import util.CustomHashMap;
+import util.FileHasher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Поиск одинаковых поддеревьев директорий по хешам файлов (дерево Меркла).
+ * <p>
+ * Хеш директории вычисляется снизу вверх по отсортированному списку ее элементов:
+ * для файла — имя и хеш содержимого, для поддиректории — имя и ее хеш. Директория может совпасть
+ * с другой, только если каждый ее файл входит в какую-либо группу дубликатов, поэтому хеши считаются
+ * лишь для предков файлов-дубликатов; если хотя бы один элемент директории не имеет хеша
+ * (уникальный файл, пустая или нечитаемая поддиректория), у директории и всех ее предков хеша нет.
+ * <p>
+ * Одинаковые директории сообщаются одной группой (только самые верхние: группа вложенной директории
+ * не сообщается, если все ее копии лежат внутри одинаковых родителей), а файлы внутри них
+ * из файловых групп убираются. Если у файла есть копия вне одинаковых директорий, в группе
+ * остается одна копия из такой директории, чтобы было видно, что файл не уникален.
+ */
+class DuplicateDirectories {
+
+    /** Хеш директории вместе с суммарным размером файлов поддерева. */
+    private static class Digest {
+        final String hash;
+        final long size;
+
+        Digest(String hash, long size) {
+            this.hash = hash;
+            this.size = size;
+        }
+    }
+
+    private final FileHasher hasher;
+
+    /**
+     * @param hasher алгоритм, которым хешируется описание содержимого директории.
+     */
+    DuplicateDirectories(FileHasher hasher) {
+        this.hasher = hasher;
+    }
+
+    /**
+     * Сворачивает группы дубликатов одинаковых директорий.
+     *
+     * @param root   корень сканирования; директории выше него не рассматриваются.
+     * @param groups группы файлов-дубликатов.
+     * @return группы одинаковых директорий (в порядке убывания места, которое можно освободить),
+     * за которыми следуют оставшиеся группы файлов в исходном порядке.
+     */
+    List<List<FileInfo>> collapse(Path root, List<List<FileInfo>> groups) {
+        CustomHashMap<Path, String> hashByFile = new CustomHashMap<>();
+        CustomHashMap<Path, Boolean> seenDirectories = new CustomHashMap<>();
+        List<Path> directories = new ArrayList<>();
+        for (List<FileInfo> group : groups) {
+            for (FileInfo info : group) {
+                if (info.isArchiveEntry()) {
+                    continue;
+                }
+                hashByFile.put(info.getPath(), info.getHash());
+                for (Path directory = info.getPath().getParent();
+                     directory != null && directory.startsWith(root) && seenDirectories.get(directory) == null;
+                     directory = directory.getParent()) {
+                    seenDirectories.put(directory, Boolean.TRUE);
+                    directories.add(directory);
+                }
+            }
+        }
+
+        // Сначала самые глубокие директории, чтобы хеши поддиректорий были готовы к моменту обработки родителя
+        directories.sort(Comparator.comparingInt(Path::getNameCount).reversed());
+        CustomHashMap<Path, Digest> digests = new CustomHashMap<>();
+        CustomHashMap<String, List<Path>> directoriesByHash = new CustomHashMap<>();
+        List<List<Path>> directoryGroups = new ArrayList<>();
+        for (Path directory : directories) {
+            Digest digest = digest(directory, hashByFile, digests);
+            if (digest == null) {
+                continue;
+            }
+            digests.put(directory, digest);
+            List<Path> same = directoriesByHash.get(digest.hash);
+            if (same == null) {
+                same = new ArrayList<>();
+                directoriesByHash.put(digest.hash, same);
+                directoryGroups.add(same);
+            }
+            same.add(directory);
+        }
+
+        List<List<FileInfo>> collapsed = new ArrayList<>();
+        for (List<Path> same : directoryGroups) {
+            if (same.size() < 2 || same.stream().allMatch(directory -> isInsideDuplicate(directory, digests, directoriesByHash))) {
+                continue;
+            }
+            same.sort(Comparator.comparing(Path::toString));
+            List<FileInfo> group = new ArrayList<>(same.size());
+            for (Path directory : same) {
+                Digest digest = digests.get(directory);
+                FileInfo info = new FileInfo(directory, digest.size, digest.hash);
+                info.setDirectory(true);
+                group.add(info);
+            }
+            collapsed.add(group);
+        }
+        collapsed.sort(Comparator.comparingLong(
+                (List<FileInfo> group) -> DuplicateScanner.reclaimableBytes(group.get(0).getSize(), group.size())).reversed());
+
+        for (List<FileInfo> group : groups) {
+            List<FileInfo> remaining = new ArrayList<>(group.size());
+            FileInfo representative = null;
+            for (FileInfo info : group) {
+                if (!info.isArchiveEntry() && isInsideDuplicate(info.getPath(), digests, directoriesByHash)) {
+                    if (representative == null) {
+                        representative = info;
+                    }
+                } else {
+                    remaining.add(info);
+                }
+            }
+            if (remaining.isEmpty()) {
+                continue;
+            }
+            if (representative != null) {
+                remaining.add(0, representative);
+            }
+            if (remaining.size() > 1) {
+                collapsed.add(remaining);
+            }
+        }
+        return collapsed;
+    }
+
+    /**
+     * @return true, если родительская директория пути совпадает с какой-либо другой директорией.
+     */
+    private static boolean isInsideDuplicate(Path path, CustomHashMap<Path, Digest> digests,
+                                             CustomHashMap<String, List<Path>> directoriesByHash) {
+        Path parent = path.getParent();
+        Digest digest = parent != null ? digests.get(parent) : null;
+        return digest != null && directoriesByHash.get(digest.hash).size() > 1;
+    }
+
+    /**
+     * Вычисляет хеш директории по ее элементам.
+     *
+     * @return хеш или null, если директория не может совпасть ни с какой другой.
+     */
+    private Digest digest(Path directory, CustomHashMap<Path, String> hashByFile, CustomHashMap<Path, Digest> digests) {
+        List<Path> children;
+        try (Stream<Path> list = Files.list(directory)) {
+            children = list.sorted(Comparator.comparing(child -> child.getFileName().toString())).collect(Collectors.toList());
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+        if (children.isEmpty()) {
+            return null;
+        }
+
+        ByteArrayOutputStream description = new ByteArrayOutputStream();
+        long size = 0;
+        for (Path child : children) {
+            String name = child.getFileName().toString();
+            Digest childDigest = digests.get(child);
+            String line;
+            if (childDigest != null) {
+                line = "D " + name + '\0' + childDigest.hash + '\n';
+                size += childDigest.size;
+            } else {
+                String hash = hashByFile.get(child);
+                if (hash == null || !Files.isRegularFile(child)) {
+                    return null;
+                }
+                line = "F " + name + '\0' + hash + '\n';
+                try {
+                    size += Files.size(child);
+                } catch (IOException e) {
+                    return null;
+                }
+            }
+            description.writeBytes(line.getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] bytes = description.toByteArray();
+        return new Digest(hasher.digest(bytes, 0, bytes.length), size);
+    }
+}
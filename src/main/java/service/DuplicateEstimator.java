@@ -0,0 +1,355 @@
+package service;
+
+import util.CustomHashMap;
+import util.FileHasher;
+import util.StorageKind;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Быстрая оценка места, которое освободит полное сканирование, по выборке групп размера.
+ * <p>
+ * Обход дерева и группировка по размеру выполняются полностью и тем же кодом, что и в
+ * {@link DuplicateScanner} (в памяти или во внешней сортировке, в один или два прохода):
+ * это операции над метаданными. Хешируется только случайная выборка групп-кандидатов (групп
+ * из двух и более файлов одного размера).
+ * <p>
+ * Выборка стратифицирована: группы делятся на слои по порядку величины верхней границы
+ * ({@code размер × (файлов − 1)}), и в каждом слое выбирается доля групп, но не меньше заданного
+ * минимума. Так в выборку всегда попадают редкие крупные группы, которые дают основную часть
+ * объема. Чтобы такие группы не читались целиком, в группе хешируется не больше
+ * {@link #setMaxBytesPerGroup(long) заданного объема}: если группа больше, хешируется случайная
+ * выборка ее файлов (не меньше двух), и объем лишних копий группы оценивается по доле совпадений
+ * в выборке. Доверительный интервал строится по формуле двухступенчатой выборки: к дисперсии
+ * выбора групп добавляется дисперсия оценок внутри групп, ограниченная сверху по известным
+ * границам группы. Интервал ограничивается подтвержденным объемом снизу и верхней границей сверху.
+ */
+public class DuplicateEstimator {
+
+    /** Квантиль нормального распределения для 95% доверительного интервала. */
+    private static final double Z_95 = 1.96;
+    /** Объем чтения одной группы по умолчанию. */
+    public static final long DEFAULT_MAX_BYTES_PER_GROUP = 64L * 1024 * 1024;
+
+    /**
+     * Результат оценки.
+     */
+    public static class Estimate {
+        private final int files;
+        private final int candidateGroups;
+        private final long candidateFiles;
+        private final long upperBoundBytes;
+        private final int sampledGroups;
+        private final long bytesHashed;
+        private final long confirmedBytes;
+        private final double estimatedBytes;
+        private final double lowerBound;
+        private final double upperBound;
+
+        Estimate(int files, int candidateGroups, long candidateFiles, long upperBoundBytes, int sampledGroups,
+                 long bytesHashed, long confirmedBytes, double estimatedBytes, double lowerBound, double upperBound) {
+            this.files = files;
+            this.candidateGroups = candidateGroups;
+            this.candidateFiles = candidateFiles;
+            this.upperBoundBytes = upperBoundBytes;
+            this.sampledGroups = sampledGroups;
+            this.bytesHashed = bytesHashed;
+            this.confirmedBytes = confirmedBytes;
+            this.estimatedBytes = estimatedBytes;
+            this.lowerBound = lowerBound;
+            this.upperBound = upperBound;
+        }
+
+        /** @return количество найденных файлов. */
+        public int getFiles() {
+            return files;
+        }
+
+        /** @return количество групп-кандидатов. */
+        public int getCandidateGroups() {
+            return candidateGroups;
+        }
+
+        /** @return количество файлов в группах-кандидатах. */
+        public long getCandidateFiles() {
+            return candidateFiles;
+        }
+
+        /** @return место, которое освободилось бы, если бы все файлы одного размера совпадали. */
+        public long getUpperBoundBytes() {
+            return upperBoundBytes;
+        }
+
+        /** @return количество захешированных групп. */
+        public int getSampledGroups() {
+            return sampledGroups;
+        }
+
+        /** @return количество прочитанных байт. */
+        public long getBytesHashed() {
+            return bytesHashed;
+        }
+
+        /** @return место, занятое лишними копиями в захешированных группах (известно точно). */
+        public long getConfirmedBytes() {
+            return confirmedBytes;
+        }
+
+        /** @return оценка места, занятого лишними копиями во всех группах. */
+        public double getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        /** @return нижняя граница 95% доверительного интервала. */
+        public double getLowerBound() {
+            return lowerBound;
+        }
+
+        /** @return верхняя граница 95% доверительного интервала. */
+        public double getUpperBound() {
+            return upperBound;
+        }
+    }
+
+    /** Группа файлов одного размера и результат ее хеширования. */
+    private static class SizeGroup {
+        final long size;
+        final int files;
+        /** Оценка места, занятого лишними копиями. */
+        double estimate;
+        /** Верхняя граница дисперсии оценки (0, если группа захеширована целиком). */
+        double variance;
+        /** Место, занятое лишними копиями, найденными в выборке файлов (известно точно). */
+        long confirmed;
+        long bytesHashed;
+
+        SizeGroup(long size, int files) {
+            this.size = size;
+            this.files = files;
+        }
+
+        long upperBound() {
+            return DuplicateScanner.reclaimableBytes(size, files);
+        }
+    }
+
+    private final FileHasher hasher;
+    private final double sampleFraction;
+    private final int minGroupsPerStratum;
+    private final long seed;
+    private final Random random;
+    private DuplicateScanner grouping;
+    private long maxBytesPerGroup = DEFAULT_MAX_BYTES_PER_GROUP;
+
+    /**
+     * @param hasher              алгоритм хеширования.
+     * @param sampleFraction      доля групп каждого слоя, которая хешируется (от 0 до 1).
+     * @param minGroupsPerStratum минимальное количество групп слоя в выборке.
+     * @param seed                начальное значение генератора выборки.
+     */
+    public DuplicateEstimator(FileHasher hasher, double sampleFraction, int minGroupsPerStratum, long seed) {
+        if (sampleFraction <= 0 || sampleFraction > 1) {
+            throw new IllegalArgumentException("sampleFraction must be in (0, 1]");
+        }
+        if (minGroupsPerStratum < 2) {
+            throw new IllegalArgumentException("minGroupsPerStratum must be at least 2");
+        }
+        this.hasher = hasher;
+        this.sampleFraction = sampleFraction;
+        this.minGroupsPerStratum = minGroupsPerStratum;
+        this.seed = seed;
+        this.random = new Random(seed);
+        this.grouping = new DuplicateScanner(progress -> { }, message -> { }, hasher);
+    }
+
+    /**
+     * Задает сканер, настройки группировки которого (порог внешней группировки, временная директория,
+     * подсчет размеров в два прохода, параллельный обход) используются при оценке.
+     *
+     * @param scanner сканер с настройками группировки.
+     */
+    public void setSizeGrouping(DuplicateScanner scanner) {
+        this.grouping = scanner;
+    }
+
+    /**
+     * Задает объем чтения одной группы. В группе большего объема хешируется выборка файлов.
+     *
+     * @param maxBytesPerGroup количество байт.
+     */
+    public void setMaxBytesPerGroup(long maxBytesPerGroup) {
+        if (maxBytesPerGroup < 1) {
+            throw new IllegalArgumentException("maxBytesPerGroup must be positive");
+        }
+        this.maxBytesPerGroup = maxBytesPerGroup;
+    }
+
+    /**
+     * Оценивает место, занятое дубликатами.
+     *
+     * @param root корневая директория.
+     * @return оценка.
+     * @throws IOException если дерево не удалось обойти.
+     */
+    public Estimate estimate(Path root) throws IOException {
+        try (DuplicateScanner.SizeGroups groups = grouping.groupBySize(root)) {
+            return estimate(groups);
+        }
+    }
+
+    private Estimate estimate(DuplicateScanner.SizeGroups groups) throws IOException {
+        // Слои по порядку величины верхней границы группы; пустые файлы ничего не занимают.
+        // Пути на этом шаге не сохраняются: для выбора групп достаточно размера и количества файлов
+        CustomHashMap<Integer, List<SizeGroup>> strata = new CustomHashMap<>();
+        List<Integer> layers = new ArrayList<>();
+        int[] candidateGroups = {0};
+        long[] candidateFiles = {0};
+        long[] upperBoundBytes = {0};
+        groups.forEachCandidateGroup((size, count, files) -> {
+            if (size == 0) {
+                return;
+            }
+            SizeGroup sizeGroup = new SizeGroup(size, count);
+            int layer = 63 - Long.numberOfLeadingZeros(sizeGroup.upperBound());
+            List<SizeGroup> stratum = strata.get(layer);
+            if (stratum == null) {
+                stratum = new ArrayList<>();
+                strata.put(layer, stratum);
+                layers.add(layer);
+            }
+            stratum.add(sizeGroup);
+            candidateGroups[0]++;
+            candidateFiles[0] += count;
+            upperBoundBytes[0] = saturatingAdd(upperBoundBytes[0], sizeGroup.upperBound());
+        });
+        // Порядок групп в слое зависит только от дерева, чтобы выборка воспроизводилась по seed
+        Collections.sort(layers);
+
+        CustomHashMap<Long, SizeGroup> sampledBySize = new CustomHashMap<>();
+        for (int layer : layers) {
+            List<SizeGroup> stratum = strata.get(layer);
+            stratum.sort((a, b) -> Long.compare(a.size, b.size));
+            int population = stratum.size();
+            int sample = sampleSize(population);
+            // Частичное перемешивание Фишера — Йетса: первые sample элементов — случайная выборка без повторений
+            for (int i = 0; i < sample; i++) {
+                Collections.swap(stratum, i, i + random.nextInt(population - i));
+                sampledBySize.put(stratum.get(i).size, stratum.get(i));
+            }
+        }
+        groups.forEachCandidateGroup((size, count, files) -> {
+            SizeGroup group = sampledBySize.get(size);
+            if (group != null) {
+                // Пути загружаются в память только для групп, попавших в выборку
+                List<Path> paths = new ArrayList<>(count);
+                files.forEach(paths::add);
+                hashGroup(group, paths);
+            }
+        });
+
+        int sampledGroups = 0;
+        long bytesHashed = 0;
+        long confirmedBytes = 0;
+        double estimatedBytes = 0;
+        double variance = 0;
+        for (int layer : layers) {
+            List<SizeGroup> stratum = strata.get(layer);
+            int population = stratum.size();
+            int sample = sampleSize(population);
+            double sum = 0;
+            double sumOfSquares = 0;
+            double withinVariance = 0;
+            for (int i = 0; i < sample; i++) {
+                SizeGroup group = stratum.get(i);
+                bytesHashed += group.bytesHashed;
+                confirmedBytes += group.confirmed;
+                sum += group.estimate;
+                sumOfSquares += group.estimate * group.estimate;
+                withinVariance += group.variance;
+            }
+            double mean = sum / sample;
+            estimatedBytes += population * mean;
+            if (sample < population) {
+                double sampleVariance = Math.max(0, (sumOfSquares - sample * mean * mean) / (sample - 1));
+                variance += (double) population * population * (1 - (double) sample / population) * sampleVariance / sample;
+            }
+            // Вклад выборки файлов внутри групп (вторая ступень)
+            variance += (double) population / sample * withinVariance;
+            sampledGroups += sample;
+        }
+
+        double margin = Z_95 * Math.sqrt(variance);
+        double lowerBound = Math.max(confirmedBytes, estimatedBytes - margin);
+        double upperBound = Math.min(upperBoundBytes[0], estimatedBytes + margin);
+        return new Estimate(groups.files(), candidateGroups[0], candidateFiles[0], upperBoundBytes[0], sampledGroups,
+                bytesHashed, confirmedBytes, estimatedBytes, lowerBound, Math.max(lowerBound, upperBound));
+    }
+
+    /**
+     * @return количество групп слоя в выборке.
+     */
+    private int sampleSize(int population) {
+        return Math.min(population, Math.max(minGroupsPerStratum, (int) Math.ceil(sampleFraction * population)));
+    }
+
+    /**
+     * Хеширует файлы группы: все или, если группа больше допустимого объема чтения, случайную выборку.
+     * <p>
+     * Если из {@code n} файлов захешировано {@code m} и среди них {@code d} различных, лишние копии
+     * группы занимают от {@code (m − d) × размер} до {@code (n − d) × размер}; оценка
+     * {@code (n − 1) × (m − d) / (m − 1) × размер} лежит в этих границах и точна, когда все файлы
+     * совпадают или все различны. Дисперсия оценки ограничивается квадратом половины ширины границ.
+     * Нечитаемые файлы считаются уникальными.
+     */
+    private void hashGroup(SizeGroup group, List<Path> files) {
+        int sample = (int) Math.min(files.size(), Math.max(2, maxBytesPerGroup / group.size));
+        List<Path> sampled = files;
+        if (sample < files.size()) {
+            // Выборка файлов зависит только от seed и содержимого группы, а не от порядка обхода групп
+            sampled = new ArrayList<>(files);
+            sampled.sort(null);
+            Random groupRandom = new Random(seed ^ group.size * 0x9E3779B97F4A7C15L);
+            for (int i = 0; i < sample; i++) {
+                Collections.swap(sampled, i, i + groupRandom.nextInt(sampled.size() - i));
+            }
+            sampled = sampled.subList(0, sample);
+        }
+
+        CustomHashMap<String, Boolean> seen = new CustomHashMap<>();
+        int distinct = 0;
+        for (Path file : sampled) {
+            String hash;
+            try {
+                hash = hasher.digest(file, group.size, StorageKind.UNKNOWN);
+            } catch (IOException e) {
+                distinct++;
+                continue;
+            }
+            group.bytesHashed += group.size;
+            if (seen.get(hash) == null) {
+                seen.put(hash, Boolean.TRUE);
+                distinct++;
+            }
+        }
+
+        group.confirmed = (long) (sample - distinct) * group.size;
+        if (sample == files.size()) {
+            group.estimate = group.confirmed;
+            return;
+        }
+        double upper = (double) (files.size() - distinct) * group.size;
+        group.estimate = (double) (files.size() - 1) * (sample - distinct) / (sample - 1) * group.size;
+        double halfWidth = (upper - group.confirmed) / 2;
+        group.variance = halfWidth * halfWidth;
+    }
+
+    private static long saturatingAdd(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+}
@@ -3,14 +3,28 @@ package service;
 import model.FileInfo;
 import util.CustomHashMap;
 import util.CustomHasher;
+import util.ExternalGroupSorter;
+import util.FileHasher;
+import util.LongCountSet;
+import util.SegmentedHasher;
+import util.StorageKind;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -19,20 +33,97 @@ import java.util.stream.Stream;
  */
 public class DuplicateScanner {
 
+    /** Порог переключения на внешнюю группировку по умолчанию (количество файлов). */
+    public static final long DEFAULT_EXTERNAL_GROUPING_THRESHOLD = 500_000;
+    /** Максимальное количество файлов, одновременно находящихся в очереди хеширования. */
+    private static final int HASH_QUEUE_WINDOW = 1024;
+    /** Порог размера "маленьких" файлов по умолчанию (байт). */
+    public static final long DEFAULT_SMALL_FILE_THRESHOLD = 32 * 1024;
+    /** Максимальный объем содержимого, удерживаемого для прямого сравнения в одной группе размера. */
+    private static final long SMALL_FILE_BATCH_BYTES = 64L * 1024 * 1024;
+
     /** Колбэк для обновления прогресса сканирования (значение от 0.0 до 1.0). */
     private final Consumer<Double> progressConsumer;
     /** Колбэк для отправки текстовых сообщений о текущем статусе операции. */
     private final Consumer<String> messageConsumer;
+    /** Стратегия хеширования содержимого файлов. */
+    private final FileHasher hasher;
+
+    /** Количество файлов, после которого группировка переключается на внешнюю сортировку. */
+    private long externalGroupingThreshold = DEFAULT_EXTERNAL_GROUPING_THRESHOLD;
+    /** Директория для временных файлов внешней сортировки. */
+    private Path tempDirectory = Path.of(System.getProperty("java.io.tmpdir"));
+
+    /** Минимальный размер файла для сегментированного хеширования ({@link Long#MAX_VALUE} — режим выключен). */
+    private long segmentedMinFileSize = Long.MAX_VALUE;
+    /** Размер сегмента при сегментированном хешировании. */
+    private long segmentSize;
+    /** Количество потоков для хеширования сегментов. */
+    private int segmentThreads;
+    /** Сегментированный хешер, существующий только на время сканирования. */
+    private SegmentedHasher segmentedHasher;
+    /** Планировщик чтений по устройствам (null — последовательное хеширование). */
+    private IoScheduler ioScheduler;
+    /** Асинхронный движок хеширования (null — не используется). */
+    private AsyncHashEngine asyncHashEngine;
+    /** Количество потоков хеширования в конвейерном режиме (0 — режим выключен). */
+    private int pipelineThreads;
+    /** Емкость очередей между стадиями конвейера. */
+    private int pipelineQueueCapacity;
+    /** Файлы меньше этого размера читаются целиком и сравниваются напрямую (0 — режим выключен). */
+    private long smallFileThreshold = DEFAULT_SMALL_FILE_THRESHOLD;
+    /** Файл журнала контрольных точек (null — журнал не ведется). */
+    private Path journalFile;
+    /** Журнал текущего сканирования. */
+    private ScanJournal journal;
+    /** Количество еще не захешированных файлов в группах по размеру (только при ведении журнала). */
+    private CustomHashMap<Long, int[]> unfinishedGroups;
+    /** Получатель групп дубликатов по мере их подтверждения. */
+    private Consumer<List<FileInfo>> groupListener;
+    /** Бюджет сканирования или null без ограничений. */
+    private ScanBudget budget;
+    /** Сравнивать ли записи zip- и jar-архивов. */
+    private boolean archiveScanning;
+    /** Записи архивов текущего сканирования или null, если архивы не сканируются. */
+    private ArchiveEntries archives;
+    /** Устройства хранения текущего сканирования: тип накопителя определяется один раз на устройство. */
+    private StorageDevices storageDevices;
+    /** Сворачивать ли одинаковые директории в одну группу. */
+    private boolean directoryGrouping;
+    /** Количество потоков параллельного обхода (0 — обход в одном потоке через {@link Files#walk}). */
+    private int walkThreads;
+    /** Подсчитывать ли размеры отдельным проходом перед группировкой. */
+    private boolean twoPassSizeCounting;
+    /** Правила выбора файлов для удаления в каждой группе. */
+    private SelectionPolicy selectionPolicy = SelectionPolicy.keepFirst();
+    /** Порядок передачи файлов на хеширование. */
+    private HashOrder hashOrder = HashOrder.DISCOVERY;
+    /** Файл, в который сохраняется индекс результатов (null — индекс не сохраняется). */
+    private Path indexFile;
+    /** Номер последней сформированной группы дубликатов в текущем сканировании. */
+    private int lastGroupId;
 
     /**
-     * Конструктор сканера.
+     * Конструктор сканера. Использует алгоритм хеширования по умолчанию ({@link CustomHasher}).
      *
      * @param progressConsumer функция, которая будет вызываться для обновления прогресса.
      * @param messageConsumer  функция, которая будет вызываться для обновления статусных сообщений.
      */
     public DuplicateScanner(Consumer<Double> progressConsumer, Consumer<String> messageConsumer) {
+        this(progressConsumer, messageConsumer, new CustomHasher());
+    }
+
+    /**
+     * Конструктор сканера с указанной стратегией хеширования.
+     *
+     * @param progressConsumer функция, которая будет вызываться для обновления прогресса.
+     * @param messageConsumer  функция, которая будет вызываться для обновления статусных сообщений.
+     * @param hasher           алгоритм хеширования содержимого файлов.
+     */
+    public DuplicateScanner(Consumer<Double> progressConsumer, Consumer<String> messageConsumer, FileHasher hasher) {
         this.progressConsumer = progressConsumer;
         this.messageConsumer = messageConsumer;
+        this.hasher = hasher;
     }
 
     /**
@@ -41,90 +132,1193 @@ public class DuplicateScanner {
      * 1. Сбор всех файлов в директории.
      * 2. Группировка файлов по размеру.
      * 3. Хеширование файлов в группах с одинаковым размером и поиск дубликатов по хешу.
+     * <p>
+     * Если количество файлов превышает {@link #setExternalGroupingThreshold(long) порог},
+     * группировка переключается на внешнюю сортировку ({@link ExternalGroupSorter}),
+     * и объем используемой памяти перестает зависеть от размера дерева.
      *
      * @param root корневая директория для сканирования.
      * @return список всех файлов, которые являются частью группы дубликатов.
      * @throws IOException если возникает ошибка при доступе к файлам.
      */
     public List<FileInfo> findDuplicates(Path root) throws IOException {
+        lastGroupId = 0;
+        if (budget != null) {
+            budget.start();
+        }
+        if (pipelineThreads > 0 && hashOrder == HashOrder.DISCOVERY && budget == null && !archiveScanning
+                && !twoPassSizeCounting) {
+            return findDuplicatesPipelined(root);
+        }
         messageConsumer.accept("Сбор списка файлов...");
-        List<Path> allFiles;
-        try (Stream<Path> walk = Files.walk(root)) {
-            allFiles = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        journal = journalFile != null ? ScanJournal.open(journalFile, root, hashConfiguration()) : null;
+        archives = archiveScanning ? new ArchiveEntries() : null;
+        storageDevices = new StorageDevices();
+        try {
+            List<FileInfo> result = scanInPhases(root);
+            // Журнал сканирования, остановленного по бюджету, сохраняется для продолжения
+            if (journal != null && !isBudgetExhausted()) {
+                journal.complete();
+            }
+            return result;
+        } finally {
+            unfinishedGroups = null;
+            storageDevices = null;
+            if (archives != null) {
+                archives.close();
+                archives = null;
+            }
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+        }
+    }
+
+    /**
+     * Сканирование по этапам: обход с группировкой по размеру, затем хеширование групп.
+     */
+    private List<FileInfo> scanInPhases(Path root) throws IOException {
+        SizeGroups groups = new SizeGroups();
+        // Обход и группировка по размеру выполняются за один проход,
+        // чтобы не держать в памяти полный список файлов
+        try {
+            if (journal != null) {
+                walkWithJournal(root, groups);
+            } else {
+                if (twoPassSizeCounting) {
+                    groups.candidateSizes = countSizes(root);
+                }
+                walk(root, groups);
+            }
+        } catch (IOException | RuntimeException e) {
+            groups.close();
+            throw e;
         }
 
-        final int totalFiles = allFiles.size();
-        if (totalFiles == 0) {
-            messageConsumer.accept("Файлы не найдены.");
+        if (groups.totalFiles == 0) {
+            messageConsumer.accept(groups.uniqueFiles > 0 ? "Дубликаты не найдены." : "Файлы не найдены.");
             progressConsumer.accept(1.0);
             return new ArrayList<>();
         }
-        int processedFiles = 0;
 
-        // Группировка по размеру
-        messageConsumer.accept("Группировка файлов по размеру...");
-        CustomHashMap<Long, List<Path>> filesBySizemap = new CustomHashMap<>();
-        for (Path file : allFiles) {
-            try {
-                long size = Files.size(file);
-                List<Path> list = filesBySizemap.get(size);
-                if (list == null) {
-                    list = new ArrayList<>();
-                    filesBySizemap.put(size, list);
+        List<FileInfo> result;
+        ExecutorService segmentPool = startSegmentedHashing();
+        try {
+            if (groups.external != null) {
+                try (ExternalGroupSorter sizes = groups.external) {
+                    result = hashExternalGroups(sizes, groups.totalFiles);
                 }
-                list.add(file);
-            } catch (IOException e) {
-                System.err.println("Could not get file size for: " + file + ". Skipping file.");
+            } else {
+                result = hashInMemoryGroups(groups.inMemory, groups.totalFiles);
             }
+        } finally {
+            stopSegmentedHashing(segmentPool);
         }
 
-        // Хеширование и группировка по хешу
-        CustomHashMap<String, List<FileInfo>> filesByHashMap = new CustomHashMap<>();
-        messageConsumer.accept("Хеширование файлов и поиск дубликатов...");
+        finishScan(root, result);
+        return result;
+    }
 
-        for (List<Path> group : filesBySizemap.values()) {
-            if (group.size() < 2) {
-                processedFiles += group.size();
-                updateProgress(processedFiles, totalFiles);
-                continue;
+    /**
+     * Обходит дерево и группирует файлы по размеру с текущими настройками группировки
+     * (внешняя группировка, подсчет размеров в два прохода, параллельный обход), не хешируя файлы.
+     *
+     * @param root корневая директория.
+     * @return группировка; ее нужно закрыть, чтобы удалить временные файлы внешней группировки.
+     * @throws IOException если дерево не удалось обойти.
+     */
+    SizeGroups groupBySize(Path root) throws IOException {
+        SizeGroups groups = new SizeGroups();
+        try {
+            if (twoPassSizeCounting) {
+                groups.candidateSizes = countSizes(root);
+            }
+            walk(root, groups);
+        } catch (IOException | RuntimeException e) {
+            groups.close();
+            throw e;
+        }
+        return groups;
+    }
+
+    /**
+     * Обходит дерево и передает все обычные файлы в группировку по размеру.
+     */
+    private void walk(Path root, SizeGroups groups) throws IOException {
+        forEachFile(root, (file, size) -> {
+            if (budget != null && budget.checkExhausted()) {
+                budget.walkStopped();
+                return false;
+            }
+            groups.add(file, size);
+            addArchiveEntries(file, groups);
+            return true;
+        });
+    }
+
+    /**
+     * Передает получателю все обычные файлы дерева: через {@link Files#walk} или, если включен
+     * параллельный обход, через {@link ParallelWalker} (в порядке имен).
+     */
+    private void forEachFile(Path root, ParallelWalker.Visitor visitor) throws IOException {
+        if (walkThreads > 0) {
+            new ParallelWalker(walkThreads, false).walk(root, visitor);
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(root)) {
+            Iterator<Path> iterator = walk.filter(Files::isRegularFile).iterator();
+            while (iterator.hasNext()) {
+                Path file = iterator.next();
+                long size;
+                try {
+                    size = Files.size(file);
+                } catch (IOException e) {
+                    System.err.println("Could not get file size for: " + file + ". Skipping file.");
+                    continue;
+                }
+                if (!visitor.visitFile(file, size)) {
+                    return;
+                }
             }
+        }
+    }
 
-            for (Path file : group) {
+    /**
+     * Первый проход группировки в два прохода: подсчитывает, сколько раз встречается каждый размер.
+     */
+    private LongCountSet countSizes(Path root) throws IOException {
+        messageConsumer.accept("Подсчет размеров файлов...");
+        LongCountSet sizes = new LongCountSet();
+        forEachFile(root, (file, size) -> {
+            sizes.add(size);
+            if (archives != null && ArchiveEntries.isArchive(file)) {
                 try {
-                    String hash = CustomHasher.hash(file);
-                    long size = Files.size(file);
-                    FileInfo info = new FileInfo(file, size, hash);
-
-                    List<FileInfo> list = filesByHashMap.get(hash);
-                    if (list == null) {
-                        list = new ArrayList<>();
-                        filesByHashMap.put(hash, list);
+                    for (ArchiveEntries.Entry entry : archives.list(file)) {
+                        sizes.add(entry.size);
                     }
-                    list.add(info);
                 } catch (IOException e) {
-                    System.err.println("Could not read or hash file: " + file + ". Skipping file.");
+                    // Архив будет пропущен и при втором проходе
                 }
-                processedFiles++;
-                updateProgress(processedFiles, totalFiles);
             }
+            return budget == null || !budget.checkExhausted();
+        });
+        messageConsumer.accept("Сбор файлов-кандидатов...");
+        return sizes;
+    }
+
+    /**
+     * Если сканирование архивов включено и файл — архив, добавляет его записи в группировку по размеру.
+     * Записи не попадают в журнал: при продолжении сканирования центральный каталог читается заново.
+     */
+    private void addArchiveEntries(Path file, SizeGroups groups) throws IOException {
+        if (archives == null || !ArchiveEntries.isArchive(file)) {
+            return;
+        }
+        List<ArchiveEntries.Entry> entries;
+        try {
+            entries = archives.list(file);
+        } catch (IOException e) {
+            System.err.println("Could not read archive: " + file + ". Skipping archive entries.");
+            return;
+        }
+        for (ArchiveEntries.Entry entry : entries) {
+            // При подсчете размеров в два прохода записи с уникальным размером не регистрируются
+            if (groups.candidateSizes == null || groups.candidateSizes.count(entry.size) >= 2) {
+                archives.register(entry);
+            }
+            groups.add(ArchiveEntries.virtualPath(entry), entry.size);
         }
+    }
 
-        // Формирование списка дубликатов
+    /**
+     * Обход с журналом: найденные файлы и завершенные директории записываются в журнал,
+     * а директории, обход которых завершился до прерывания, не обходятся повторно —
+     * их файлы берутся из журнала в том же порядке, в котором были найдены.
+     */
+    private void walkWithJournal(Path root, SizeGroups groups) throws IOException {
+        if (journal.getRestoredFiles() > 0) {
+            messageConsumer.accept("Продолжение прерванного сканирования...");
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                if (journal.isDirectoryDone(directory)) {
+                    for (ScanJournal.FileRecord record : journal.restoredFiles(directory)) {
+                        groups.add(record.file, record.size);
+                        addArchiveEntries(record.file, groups);
+                    }
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                if (budget != null && budget.checkExhausted()) {
+                    budget.walkStopped();
+                    return FileVisitResult.TERMINATE;
+                }
+                long size;
+                if (attributes.isRegularFile()) {
+                    size = attributes.size();
+                } else if (attributes.isSymbolicLink() && Files.isRegularFile(file)) {
+                    // Как и при обычном обходе, ссылка на файл учитывается с размером цели
+                    size = sizeOrMinusOne(file);
+                    if (size < 0) {
+                        System.err.println("Could not get file size for: " + file + ". Skipping file.");
+                        return FileVisitResult.CONTINUE;
+                    }
+                } else {
+                    return FileVisitResult.CONTINUE;
+                }
+                journal.fileFound(file, size);
+                groups.add(file, size);
+                addArchiveEntries(file, groups);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException error) throws IOException {
+                if (error != null) {
+                    throw error;
+                }
+                journal.directoryDone(directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Конвейерный вариант сканирования ({@link ScanPipeline}): хеширование файлов
+     * с уже совпавшими размерами идет одновременно с обходом дерева.
+     */
+    private List<FileInfo> findDuplicatesPipelined(Path root) throws IOException {
         List<FileInfo> result = new ArrayList<>();
-        for (List<FileInfo> duplicateGroup : filesByHashMap.values()) {
-            if (duplicateGroup.size() > 1) {
-                duplicateGroup.get(0).setSelected(false);
-                for (int i = 1; i < duplicateGroup.size(); i++) {
-                    duplicateGroup.get(i).setSelected(true);
+        ExecutorService segmentPool = startSegmentedHashing();
+        try {
+            ScanPipeline pipeline = new ScanPipeline(this::hashFile, pipelineThreads, pipelineQueueCapacity,
+                    progressConsumer, messageConsumer);
+            for (List<FileInfo> group : pipeline.run(root)) {
+                addDuplicateGroup(group, result);
+            }
+        } finally {
+            stopSegmentedHashing(segmentPool);
+        }
+        progressConsumer.accept(1.0);
+        finishScan(root, result);
+        return result;
+    }
+
+    /**
+     * Создает пул сегментированного хеширования, если этот режим включен.
+     *
+     * @return пул потоков или null.
+     */
+    private ExecutorService startSegmentedHashing() {
+        if (segmentedMinFileSize == Long.MAX_VALUE) {
+            return null;
+        }
+        ExecutorService segmentPool = Executors.newFixedThreadPool(segmentThreads, DuplicateScanner::newDaemonThread);
+        segmentedHasher = new SegmentedHasher(hasher, segmentSize, segmentPool);
+        return segmentPool;
+    }
+
+    private void stopSegmentedHashing(ExecutorService segmentPool) {
+        if (segmentPool != null) {
+            segmentPool.shutdownNow();
+            segmentedHasher = null;
+        }
+    }
+
+    /**
+     * Завершающий этап сканирования: сохранение индекса и итоговое сообщение.
+     * Ошибка записи индекса не отменяет результат: о ней сообщается в итоговом сообщении.
+     */
+    private void finishScan(Path root, List<FileInfo> result) throws IOException {
+        if (directoryGrouping && !result.isEmpty()) {
+            messageConsumer.accept("Поиск одинаковых директорий...");
+            collapseDirectories(root, result);
+        }
+        String indexWarning = "";
+        if (indexFile != null) {
+            messageConsumer.accept("Сохранение индекса результатов...");
+            try {
+                // Хеши сравнимы только при тех же настройках хеширования
+                ScanIndex.write(indexFile, root, hashConfiguration(), result);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Warning: could not write scan index " + indexFile + ": " + e.getMessage());
+                indexWarning = " Индекс результатов не сохранен: " + e.getMessage();
+            }
+        }
+        if (isBudgetExhausted()) {
+            progressConsumer.accept(1.0);
+            messageConsumer.accept(String.format("Бюджет сканирования исчерпан: не проверено %d файлов (%.1f МБ)%s.",
+                    budget.getUnexploredFiles(), budget.getUnexploredBytes() / (1024.0 * 1024.0),
+                    budget.isWalkComplete() ? "" : ", обход не завершен") + indexWarning);
+        } else {
+            messageConsumer.accept("Сканирование завершено." + indexWarning);
+        }
+    }
+
+    private boolean isBudgetExhausted() {
+        return budget != null && budget.isExhausted();
+    }
+
+    /**
+     * Проверяет бюджет перед чтением файла-кандидата.
+     *
+     * @return true, если файл можно читать; иначе файл учитывается в бюджете как непроверенный.
+     */
+    private boolean withinBudget(long size) {
+        return budget == null || budget.tryRead(size);
+    }
+
+    /**
+     * Устанавливает количество файлов, начиная с которого группировка выполняется
+     * через внешнюю сортировку на диске, а не в {@link CustomHashMap}.
+     *
+     * @param threshold порог количества файлов.
+     */
+    public void setExternalGroupingThreshold(long threshold) {
+        this.externalGroupingThreshold = threshold;
+    }
+
+    /**
+     * Устанавливает директорию для временных run-файлов внешней сортировки.
+     * По умолчанию используется системная временная директория.
+     *
+     * @param tempDirectory директория для временных файлов.
+     */
+    public void setTempDirectory(Path tempDirectory) {
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * Включает сегментированное хеширование больших файлов: файл делится на сегменты,
+     * которые хешируются параллельно в нескольких потоках ({@link SegmentedHasher}).
+     * Так один очень большой файл может использовать всю пропускную способность быстрого накопителя.
+     * Все файлы одной группы имеют одинаковый размер, поэтому их хеши всегда вычисляются одним способом.
+     *
+     * @param minFileSize минимальный размер файла, начиная с которого используется сегментирование.
+     * @param segmentSize размер сегмента в байтах.
+     * @param threads     количество потоков для хеширования сегментов.
+     */
+    public void setSegmentedHashing(long minFileSize, long segmentSize, int threads) {
+        if (segmentSize < 1 || threads < 1) {
+            throw new IllegalArgumentException("segmentSize and threads must be positive");
+        }
+        this.segmentedMinFileSize = minFileSize;
+        this.segmentSize = segmentSize;
+        this.segmentThreads = threads;
+    }
+
+    /**
+     * Направляет хеширование через планировщик чтений, который распределяет файлы
+     * по очередям устройств хранения с отдельным параллелизмом для каждого устройства.
+     * Жизненным циклом планировщика управляет вызывающий код.
+     * Без планировщика (по умолчанию) файлы хешируются последовательно.
+     *
+     * @param ioScheduler планировщик или null для последовательного хеширования.
+     */
+    public void setIoScheduler(IoScheduler ioScheduler) {
+        this.ioScheduler = ioScheduler;
+    }
+
+    /**
+     * Направляет хеширование через асинхронный движок ({@link AsyncHashEngine}),
+     * который держит много чтений в полете при небольшом числе потоков.
+     * Если задан движок, {@link #setIoScheduler(IoScheduler) планировщик} не используется.
+     * Жизненным циклом движка управляет вызывающий код.
+     *
+     * @param asyncHashEngine движок или null, чтобы отключить асинхронное хеширование.
+     */
+    public void setAsyncHashEngine(AsyncHashEngine asyncHashEngine) {
+        this.asyncHashEngine = asyncHashEngine;
+    }
+
+    /**
+     * Включает конвейерное сканирование: обход, группировка по размеру, хеширование
+     * и сбор результатов работают одновременно и связаны ограниченными очередями ({@link ScanPipeline}).
+     * Файлы начинают читаться, как только у их размера появляется второй файл, не дожидаясь конца обхода.
+     * <p>
+     * Конвейер группирует файлы в памяти и хеширует их в собственном пуле потоков,
+     * поэтому порог внешней группировки, планировщик чтений и асинхронный движок в этом режиме не используются.
+     * Конвейер применяется только при порядке хеширования {@link HashOrder#DISCOVERY}:
+     * другие порядки требуют полного списка кандидатов до начала чтения.
+     *
+     * @param hashThreads   количество потоков хеширования или 0, чтобы выключить режим.
+     * @param queueCapacity емкость очередей между стадиями.
+     */
+    public void setPipelinedScan(int hashThreads, int queueCapacity) {
+        if (hashThreads < 0 || (hashThreads > 0 && queueCapacity < 1)) {
+            throw new IllegalArgumentException("hashThreads must not be negative and queueCapacity must be positive");
+        }
+        this.pipelineThreads = hashThreads;
+        this.pipelineQueueCapacity = queueCapacity;
+    }
+
+    /**
+     * Устанавливает порог "маленьких" файлов. Группы одинакового размера меньше порога
+     * обрабатываются без потокового хеширования: каждый файл читается целиком одним вызовом,
+     * совпадающее содержимое обнаруживается прямым сравнением байтов, и хеш вычисляется
+     * только один раз для каждого различного содержимого. Значение хеша совпадает с обычным путем.
+     *
+     * @param threshold размер в байтах; 0 выключает быстрый путь.
+     */
+    public void setSmallFileThreshold(long threshold) {
+        this.smallFileThreshold = threshold;
+    }
+
+    /**
+     * Устанавливает порядок, в котором файлы-кандидаты читаются при хешировании.
+     * Для архивов на жестких дисках порядок {@link HashOrder#FILE_KEY} или {@link HashOrder#DIRECTORY}
+     * делает чтение преимущественно последовательным.
+     *
+     * @param hashOrder порядок хеширования.
+     */
+    public void setHashOrder(HashOrder hashOrder) {
+        this.hashOrder = hashOrder;
+    }
+
+    /**
+     * Включает сохранение индекса результатов ({@link ScanIndex}) после сканирования.
+     * Индекс позволяет позже открыть результаты без повторного сканирования.
+     *
+     * @param indexFile путь к файлу индекса или null, чтобы не сохранять индекс.
+     */
+    public void setIndexFile(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Включает журнал контрольных точек ({@link ScanJournal}). Если сканирование того же корня
+     * было прервано, следующий запуск продолжит его: завершенные директории не обходятся заново,
+     * а уже вычисленные хеши неизмененных файлов берутся из журнала.
+     * После успешного сканирования журнал удаляется. Конвейерный режим журнал не использует.
+     *
+     * @param journalFile файл журнала или null, чтобы не вести журнал.
+     */
+    public void setJournalFile(Path journalFile) {
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * Устанавливает получателя групп дубликатов, который вызывается для каждой группы, как только она подтверждена.
+     * Группы размеров, собранные в памяти, хешируются в порядке убывания места, которое можно освободить
+     * (размер × (количество файлов − 1)), и передаются получателю сразу после хеширования своей группы размера,
+     * поэтому самые ценные дубликаты становятся известны первыми. При внешней группировке, конвейерном режиме
+     * и порядке хеширования по расположению на диске группы передаются после окончания хеширования.
+     *
+     * @param groupListener получатель групп или null.
+     */
+    public void setGroupListener(Consumer<List<FileInfo>> groupListener) {
+        this.groupListener = groupListener;
+    }
+
+    /**
+     * Ограничивает сканирование по времени и/или объему прочитанных данных.
+     * Когда бюджет исчерпан, сканирование останавливается и возвращает только полностью проверенные группы;
+     * сводку по непроверенным кандидатам можно получить из самого бюджета.
+     * Поскольку группы хешируются по убыванию места, которое можно освободить, самые ценные
+     * дубликаты находятся первыми. Конвейерный режим при заданном бюджете не используется.
+     *
+     * @param budget бюджет или null без ограничений.
+     */
+    public void setBudget(ScanBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Включает поиск дубликатов среди записей zip- и jar-архивов ({@link ArchiveEntries}).
+     * Записи участвуют в группировке наравне с файлами под путями вида {@code архив.jar!/запись};
+     * размеры берутся из центрального каталога, поэтому распаковываются только записи с совпавшим размером.
+     * Записи никогда не отмечаются для удаления. Вложенные архивы не просматриваются.
+     * Конвейерный режим при сканировании архивов не используется.
+     *
+     * @param archiveScanning true, чтобы сравнивать записи архивов.
+     */
+    public void setArchiveScanning(boolean archiveScanning) {
+        this.archiveScanning = archiveScanning;
+    }
+
+    /**
+     * Включает поиск одинаковых поддеревьев ({@link DuplicateDirectories}). Одинаковые директории
+     * сообщаются одной группой (объекты {@link FileInfo} с признаком директории), а файлы внутри них
+     * не перечисляются по отдельности. Получатель групп ({@link #setGroupListener(Consumer)})
+     * по-прежнему получает файловые группы по мере их подтверждения.
+     *
+     * @param directoryGrouping true, чтобы сворачивать одинаковые директории.
+     */
+    public void setDirectoryGrouping(boolean directoryGrouping) {
+        this.directoryGrouping = directoryGrouping;
+    }
+
+    /**
+     * Включает параллельный обход дерева ({@link ParallelWalker}): директории читаются одновременно
+     * в нескольких потоках, а группировка по размеру получает файлы в вызывающем потоке по мере готовности
+     * листингов. Файлы приходят в порядке обхода в глубину с сортировкой по имени, поэтому результат
+     * не зависит от количества потоков. Сканирование с журналом и конвейерный режим обходят дерево по-прежнему.
+     *
+     * @param threads количество потоков обхода; 0 — обход в одном потоке.
+     */
+    public void setParallelWalk(int threads) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("threads must not be negative");
+        }
+        this.walkThreads = threads;
+    }
+
+    /**
+     * Включает группировку в два прохода. Первый проход только подсчитывает, сколько раз встречается
+     * каждый размер ({@link LongCountSet}: примитивные массивы, около 18 байт на различный размер);
+     * второй проход сохраняет пути только файлов, размер которых встретился хотя бы дважды.
+     * Так память под пути растет с количеством кандидатов, а не всех файлов, ценой повторного обхода
+     * метаданных (и повторного чтения центральных каталогов архивов). Файлы, появившиеся между проходами,
+     * в группировку не попадают. Не действует при сканировании с журналом и в конвейерном режиме.
+     *
+     * @param twoPassSizeCounting true, чтобы подсчитывать размеры отдельным проходом.
+     */
+    public void setTwoPassSizeCounting(boolean twoPassSizeCounting) {
+        this.twoPassSizeCounting = twoPassSizeCounting;
+    }
+
+    /**
+     * Задает правила, по которым в каждой группе выбираются файлы для удаления.
+     * По умолчанию остается первый файл группы, остальные отмечаются.
+     *
+     * @param selectionPolicy правила выбора.
+     */
+    public void setSelectionPolicy(SelectionPolicy selectionPolicy) {
+        this.selectionPolicy = selectionPolicy;
+    }
+
+    /**
+     * Описание настроек, от которых зависят значения хешей. Журнал с другими настройками не используется.
+     */
+    private String hashConfiguration() {
+        String configuration = hasher.getClass().getName();
+        if (segmentedMinFileSize != Long.MAX_VALUE) {
+            configuration += ";segmented=v" + SegmentedHasher.FORMAT_VERSION + ":" + segmentedMinFileSize + "/" + segmentSize;
+        }
+        return configuration;
+    }
+
+    /**
+     * Если группа была полностью захеширована до прерывания и ее файлы не изменились,
+     * передает получателю хеши из журнала.
+     *
+     * @return true, если группа восстановлена из журнала и хешировать ее не нужно.
+     */
+    private boolean restoreGroup(Iterable<Path> files, int fileCount, long size,
+                                 OrderedHashQueue.ResultConsumer consumer) throws IOException {
+        if (journal == null || !journal.isGroupDone(size)) {
+            return false;
+        }
+        String[] hashes = new String[fileCount];
+        int i = 0;
+        for (Path file : files) {
+            hashes[i] = journal.knownDigest(file, size);
+            if (hashes[i++] == null) {
+                return false;
+            }
+        }
+        i = 0;
+        for (Path file : files) {
+            consumer.accept(file, size, hashes[i++]);
+        }
+        return true;
+    }
+
+    /**
+     * Запоминает, сколько файлов группы должно быть захешировано, чтобы распознать ее завершение.
+     */
+    private void expectGroup(long size, int files) {
+        if (unfinishedGroups == null) {
+            unfinishedGroups = new CustomHashMap<>();
+        }
+        unfinishedGroups.put(size, new int[]{files});
+    }
+
+    /**
+     * @return запись архива по виртуальному пути или null для обычного файла.
+     */
+    private ArchiveEntries.Entry archiveEntry(Path file) {
+        return archives != null ? archives.get(file) : null;
+    }
+
+    /**
+     * @return true, если все файлы группы размера уже захешированы.
+     */
+    private boolean isGroupComplete(long size) {
+        int[] remaining = unfinishedGroups != null ? unfinishedGroups.get(size) : null;
+        return remaining != null && remaining[0] == 0;
+    }
+
+    /**
+     * Отмечает в журнале начало чтения файла: время изменения запоминается до чтения,
+     * чтобы файл, измененный во время хеширования, не получил в журнале новое время со старым хешем.
+     */
+    private void beforeHashing(Path file) throws IOException {
+        if (journal != null && archiveEntry(file) == null) {
+            journal.hashStarted(file);
+        }
+    }
+
+    /**
+     * Записывает вычисленный хеш в журнал и учитывает файл в его группе размера.
+     *
+     * @return true, если это был последний файл группы.
+     */
+    private boolean recordDigest(Path file, long size, String hash) throws IOException {
+        if (journal != null && archiveEntry(file) == null) {
+            journal.digestComputed(file, size, hash);
+        }
+        int[] remaining = unfinishedGroups != null ? unfinishedGroups.get(size) : null;
+        if (remaining == null || --remaining[0] != 0) {
+            return false;
+        }
+        if (journal != null) {
+            journal.groupDone(size);
+        }
+        return true;
+    }
+
+    /**
+     * Ключ упорядочивания файла для выбранного порядка хеширования.
+     * Если атрибуты прочитать не удалось, файл упорядочивается по пути.
+     */
+    private String localityKey(Path file) {
+        ArchiveEntries.Entry entry = archiveEntry(file);
+        if (entry != null) {
+            // Записи одного архива читаются подряд
+            return localityKey(entry.archive) + ArchiveEntries.SEPARATOR + entry.name;
+        }
+        try {
+            return hashOrder.localityKey(file);
+        } catch (IOException e) {
+            return "~" + file.toAbsolutePath();
+        }
+    }
+
+    /**
+     * Создает очередь хеширования для текущего сканирования.
+     */
+    private OrderedHashQueue newHashQueue() {
+        if (asyncHashEngine != null) {
+            // Сегментированный хешер дает тот же результат и при последовательном чтении
+            return new OrderedHashQueue((file, size) -> {
+                if (archiveEntry(file) != null) {
+                    return CompletableFuture.completedFuture(hashFile(file, size, StorageKind.UNKNOWN));
                 }
-                result.addAll(duplicateGroup);
+                String known = journal != null ? journal.knownDigest(file, size) : null;
+                return known != null ? CompletableFuture.completedFuture(known) : asyncHashEngine.submit(file, hasherFor(size));
+            }, HASH_QUEUE_WINDOW);
+        }
+        return new OrderedHashQueue(this::hashFile, ioScheduler, storageDevices, HASH_QUEUE_WINDOW);
+    }
+
+    /**
+     * Вычисляет хеш файла, выбирая сегментированный режим для больших файлов.
+     *
+     * @param storage тип накопителя, заранее определенный для устройства файла.
+     */
+    private String hashFile(Path file, long size, StorageKind storage) throws IOException {
+        ArchiveEntries.Entry entry = archiveEntry(file);
+        if (entry != null) {
+            return archives.digest(entry, hasherFor(size));
+        }
+        String known = journal != null ? journal.knownDigest(file, size) : null;
+        if (known != null) {
+            return known;
+        }
+        if (size < smallFileThreshold) {
+            byte[] content = Files.readAllBytes(file);
+            return hasherFor(size).digest(content, 0, content.length);
+        }
+        return hasherFor(size).digest(file, size, storage);
+    }
+
+    /**
+     * Алгоритм для файлов данного размера: сегментированный для больших файлов, если этот режим включен.
+     */
+    private FileHasher hasherFor(long size) {
+        return segmentedHasher != null && size >= segmentedMinFileSize ? segmentedHasher : hasher;
+    }
+
+    /**
+     * Быстрый путь для группы маленьких файлов одного размера. Файлы читаются целиком и сравниваются
+     * побайтно. Если группа помещается в память целиком, хеш вычисляется только для содержимого,
+     * которое встретилось хотя бы дважды: файлы с уникальным содержимым передаются получателю без хеша
+     * (как не ставшие дубликатами). Большие группы читаются потоком, и хеш вычисляется для каждого
+     * нового содержимого. Результат передается получателю в порядке файлов.
+     */
+    private void hashSmallFiles(Iterable<Path> files, int fileCount, long size,
+                                OrderedHashQueue.ResultConsumer consumer) throws IOException {
+        if (size * fileCount > SMALL_FILE_BATCH_BYTES) {
+            streamSmallFiles(files, size, consumer);
+            return;
+        }
+        // Первый проход: чтение и подсчет одинакового содержимого
+        Content[] contents = new Content[fileCount];
+        boolean[] skipped = new boolean[fileCount];
+        CustomHashMap<Content, int[]> copies = new CustomHashMap<>();
+        int i = -1;
+        for (Path file : files) {
+            i++;
+            if (!withinBudget(size)) {
+                skipped[i] = true;
+                continue;
+            }
+            byte[] bytes = readSmallFile(file, size);
+            if (bytes == null) {
+                continue;
+            }
+            contents[i] = new Content(bytes);
+            int[] count = copies.get(contents[i]);
+            if (count == null) {
+                copies.put(contents[i], new int[]{1});
+            } else {
+                count[0]++;
             }
         }
 
-        messageConsumer.accept("Сканирование завершено.");
+        // Второй проход: хеш вычисляется один раз для каждого повторяющегося содержимого
+        CustomHashMap<Content, String> digestByContent = new CustomHashMap<>();
+        i = -1;
+        for (Path file : files) {
+            i++;
+            if (skipped[i]) {
+                continue;
+            }
+            String hash = null;
+            if (contents[i] != null && copies.get(contents[i])[0] > 1) {
+                hash = digestByContent.get(contents[i]);
+                if (hash == null) {
+                    hash = hasherFor(size).digest(contents[i].bytes, 0, contents[i].bytes.length);
+                    digestByContent.put(contents[i], hash);
+                }
+            }
+            consumer.accept(file, size, hash);
+        }
+    }
+
+    /**
+     * Потоковый вариант быстрого пути для групп, которые не помещаются в память: содержимое
+     * сравнивается с уже встречавшимся напрямую, и хеш вычисляется только для нового содержимого.
+     */
+    private void streamSmallFiles(Iterable<Path> files, long size, OrderedHashQueue.ResultConsumer consumer) throws IOException {
+        CustomHashMap<Content, String> digestByContent = new CustomHashMap<>();
+        long retainedBytes = 0;
+        for (Path file : files) {
+            if (!withinBudget(size)) {
+                continue;
+            }
+            byte[] bytes = readSmallFile(file, size);
+            if (bytes == null) {
+                consumer.accept(file, size, null);
+                continue;
+            }
+
+            Content content = new Content(bytes);
+            String hash = digestByContent.get(content);
+            if (hash == null) {
+                hash = hasherFor(size).digest(bytes, 0, bytes.length);
+                // Содержимое удерживается для сравнения, пока не исчерпан бюджет памяти
+                if (retainedBytes + size <= SMALL_FILE_BATCH_BYTES) {
+                    digestByContent.put(content, hash);
+                    retainedBytes += size;
+                }
+            }
+            consumer.accept(file, size, hash);
+        }
+    }
+
+    /**
+     * Читает маленький файл (или запись архива) целиком.
+     *
+     * @return содержимое или null, если файл не читается или его размер изменился после обхода.
+     */
+    private byte[] readSmallFile(Path file, long size) throws IOException {
+        beforeHashing(file);
+        byte[] bytes;
+        try {
+            ArchiveEntries.Entry entry = archiveEntry(file);
+            bytes = entry != null ? archives.readAllBytes(entry) : Files.readAllBytes(file);
+        } catch (IOException e) {
+            System.err.println("Could not read or hash file: " + file + ". Skipping file.");
+            return null;
+        }
+        if (bytes.length != size) {
+            // Файл изменился после обхода; его размер больше не совпадает с группой
+            System.err.println("File changed during scan: " + file + ". Skipping file.");
+            return null;
+        }
+        return bytes;
+    }
+
+    /**
+     * Создает фоновый поток, который не мешает завершению приложения.
+     */
+    private static Thread newDaemonThread(Runnable task) {
+        Thread thread = new Thread(task, "dedup-worker");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Хеширует группы одинакового размера, собранные в памяти, и формирует список дубликатов.
+     * Группы хешируются в порядке убывания места, которое можно освободить, а дубликаты каждой группы
+     * размера добавляются в результат, как только захеширован ее последний файл.
+     */
+    private List<FileInfo> hashInMemoryGroups(CustomHashMap<Long, List<Path>> filesBySizemap, int totalFiles) throws IOException {
+        int[] processedFiles = {0};
+        List<FileInfo> result = new ArrayList<>();
+
+        // Захешированные файлы по группам размера; группа удаляется после ее завершения
+        CustomHashMap<Long, List<FileInfo>> hashedBySize = new CustomHashMap<>();
+        messageConsumer.accept("Хеширование файлов и поиск дубликатов...");
+
+        OrderedHashQueue.ResultConsumer collector = (file, size, hash) -> {
+            List<FileInfo> hashed = hashedBySize.get(size);
+            if (hash != null) {
+                hashed.add(new FileInfo(file, size, hash));
+            }
+            if (recordDigest(file, size, hash)) {
+                addDuplicateGroups(hashed, result);
+                hashedBySize.put(size, null);
+            }
+            processedFiles[0]++;
+            updateProgress(processedFiles[0], totalFiles);
+        };
+
+        List<Long> sizes = filesBySizemap.keys();
+        sizes.sort(Comparator.comparingLong((Long size) -> reclaimableBytes(size, filesBySizemap.get(size).size()))
+                .reversed());
+
+        OrderedHashQueue queue = newHashQueue();
+        // Для упорядочивания по расположению на диске сначала собираем всех кандидатов
+        List<Candidate> ordered = hashOrder == HashOrder.DISCOVERY ? null : new ArrayList<>();
+        try {
+            for (long groupSize : sizes) {
+                List<Path> group = filesBySizemap.get(groupSize);
+                if (group.size() < 2) {
+                    processedFiles[0] += group.size();
+                    updateProgress(processedFiles[0], totalFiles);
+                    continue;
+                }
+                hashedBySize.put(groupSize, new ArrayList<>());
+                expectGroup(groupSize, group.size());
+                if (restoreGroup(group, group.size(), groupSize, collector)) {
+                    continue;
+                }
+                if (groupSize < smallFileThreshold) {
+                    hashSmallFiles(group, group.size(), groupSize, collector);
+                    continue;
+                }
+
+                for (Path file : group) {
+                    if (archiveEntry(file) == null && sizeOrMinusOne(file) < 0) {
+                        System.err.println("Could not read or hash file: " + file + ". Skipping file.");
+                        collector.accept(file, groupSize, null);
+                        continue;
+                    }
+                    if (ordered != null) {
+                        ordered.add(new Candidate(file, groupSize, localityKey(file)));
+                    } else if (withinBudget(groupSize)) {
+                        beforeHashing(file);
+                        queue.submit(file, groupSize, collector);
+                    }
+                }
+            }
+            if (ordered != null) {
+                ordered.sort(Comparator.comparing(candidate -> candidate.localityKey));
+                for (Candidate candidate : ordered) {
+                    if (withinBudget(candidate.size)) {
+                        beforeHashing(candidate.file);
+                        queue.submit(candidate.file, candidate.size, collector);
+                    }
+                }
+            }
+            queue.finish();
+        } finally {
+            queue.cancel();
+        }
         return result;
     }
 
+    /**
+     * Хеширует группы одинакового размера, полученные слиянием отсортированных run-файлов.
+     * Пары "размер+хеш / путь" также проходят через внешнюю сортировку,
+     * поэтому в памяти находится только начало текущей группы, а остальные ее пути читаются с диска при переборе.
+     * <p>
+     * Группы размеров пересортировываются еще одним проходом внешней сортировки по убыванию места,
+     * которое можно освободить, и хешируются в этом порядке; группы дубликатов в результате
+     * упорядочены так же.
+     */
+    private List<FileInfo> hashExternalGroups(ExternalGroupSorter sizes, int totalFiles) throws IOException {
+        messageConsumer.accept("Хеширование файлов и поиск дубликатов...");
+        int[] processedFiles = {0};
+
+        try (ExternalGroupSorter digests = new ExternalGroupSorter(tempDirectory);
+             ExternalGroupSorter prioritized = new ExternalGroupSorter(tempDirectory)) {
+            OrderedHashQueue.ResultConsumer collector = (file, size, hash) -> {
+                recordDigest(file, size, hash);
+                if (hash != null) {
+                    digests.add(sizeKey(size) + ':' + hash, file.toString());
+                }
+                processedFiles[0]++;
+                updateProgress(processedFiles[0], totalFiles);
+            };
+
+            OrderedHashQueue queue = newHashQueue();
+            // Упорядочивание по расположению на диске также выполняется внешней сортировкой
+            ExternalGroupSorter ordered = hashOrder == HashOrder.DISCOVERY ? null : new ExternalGroupSorter(tempDirectory);
+            try {
+                sizes.forEachGroup((key, paths) -> {
+                    if (paths.size() < 2) {
+                        processedFiles[0] += paths.size();
+                        updateProgress(processedFiles[0], totalFiles);
+                        return;
+                    }
+                    String priority = priorityKey(Long.parseLong(key, 16), paths.size());
+                    for (String path : paths) {
+                        prioritized.add(priority, path);
+                    }
+                });
+                prioritized.forEachGroup((priority, paths) -> {
+                    long size = Long.parseLong(priority.substring(priority.indexOf(':') + 1), 16);
+                    // Пути не собираются в список: большая группа читается из внешней сортировки по мере перебора
+                    Iterable<Path> files = asPaths(paths);
+                    if (journal != null || budget != null) {
+                        expectGroup(size, paths.size());
+                    }
+                    if (restoreGroup(files, paths.size(), size, collector)) {
+                        return;
+                    }
+                    if (size < smallFileThreshold) {
+                        hashSmallFiles(files, paths.size(), size, collector);
+                        return;
+                    }
+                    for (Path file : files) {
+                        if (ordered != null) {
+                            ordered.add(localityKey(file), sizeKey(size) + ':' + file);
+                        } else if (withinBudget(size)) {
+                            beforeHashing(file);
+                            queue.submit(file, size, collector);
+                        }
+                    }
+                });
+                if (ordered != null) {
+                    ordered.forEachGroup((localityKey, values) -> {
+                        for (String value : values) {
+                            int separator = value.indexOf(':');
+                            long size = Long.parseLong(value.substring(0, separator), 16);
+                            if (withinBudget(size)) {
+                                Path file = Path.of(value.substring(separator + 1));
+                                beforeHashing(file);
+                                queue.submit(file, size, collector);
+                            }
+                        }
+                    });
+                }
+                queue.finish();
+            } finally {
+                queue.cancel();
+                if (ordered != null) {
+                    ordered.close();
+                }
+            }
+
+            List<List<FileInfo>> duplicateGroups = new ArrayList<>();
+            digests.forEachGroup((key, paths) -> {
+                if (paths.size() < 2) {
+                    return;
+                }
+                int separator = key.indexOf(':');
+                long size = Long.parseLong(key.substring(0, separator), 16);
+                if (isBudgetExhausted() && !isGroupComplete(size)) {
+                    // Часть файлов группы не прочитана: группа не подтверждена полностью
+                    return;
+                }
+                String hash = key.substring(separator + 1);
+                List<FileInfo> duplicateGroup = new ArrayList<>(paths.size());
+                for (String pathString : paths) {
+                    duplicateGroup.add(new FileInfo(Path.of(pathString), size, hash));
+                }
+                duplicateGroups.add(duplicateGroup);
+            });
+            duplicateGroups.sort(Comparator.comparingLong(
+                    (List<FileInfo> group) -> reclaimableBytes(group.get(0).getSize(), group.size())).reversed());
+
+            List<FileInfo> result = new ArrayList<>();
+            for (List<FileInfo> duplicateGroup : duplicateGroups) {
+                addDuplicateGroup(duplicateGroup, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Представляет строки путей из внешней сортировки как пути без копирования в список.
+     */
+    private static Iterable<Path> asPaths(Iterable<String> values) {
+        return () -> {
+            Iterator<String> iterator = values.iterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Path next() {
+                    return Path.of(iterator.next());
+                }
+            };
+        };
+    }
+
+    /**
+     * Переносит уже накопленные в памяти группы во внешний сортировщик.
+     */
+    private ExternalGroupSorter spillToDisk(CustomHashMap<Long, List<Path>> filesBySizemap) throws IOException {
+        ExternalGroupSorter sorter = new ExternalGroupSorter(tempDirectory);
+        try {
+            for (Long size : filesBySizemap.keys()) {
+                // Размер берется из ключа: файл мог исчезнуть после обхода, а у записей архивов нет пути на диске
+                String key = sizeKey(size);
+                for (Path file : filesBySizemap.get(size)) {
+                    sorter.add(key, file.toString());
+                }
+            }
+        } catch (IOException e) {
+            sorter.close();
+            throw e;
+        }
+        return sorter;
+    }
+
+    /**
+     * Если группа содержит больше одного файла, отмечает файлы для удаления по правилам выбора,
+     * назначает группе номер, добавляет ее в результат и передает получателю групп.
+     */
+    private void addDuplicateGroup(List<FileInfo> duplicateGroup, List<FileInfo> result) {
+        if (duplicateGroup.size() > 1) {
+            markGroup(duplicateGroup);
+            result.addAll(duplicateGroup);
+            if (groupListener != null) {
+                groupListener.accept(duplicateGroup);
+            }
+        }
+    }
+
+    /**
+     * Назначает группе следующий номер и отмечает ее элементы для удаления по правилам выбора.
+     */
+    private void markGroup(List<FileInfo> duplicateGroup) {
+        int groupId = ++lastGroupId;
+        for (FileInfo info : duplicateGroup) {
+            ArchiveEntries.Entry entry = archiveEntry(info.getPath());
+            // Записи архивов только показываются: удалить запись из архива нельзя
+            info.setArchiveEntry(entry != null);
+            info.setGroupId(groupId);
+            info.setLastModified(lastModified(entry != null ? entry.archive : info.getPath()));
+        }
+        selectionPolicy.apply(duplicateGroup);
+    }
+
+    /**
+     * Заменяет группы файлов внутри одинаковых директорий группами самих директорий и заново нумерует группы.
+     */
+    private void collapseDirectories(Path root, List<FileInfo> result) {
+        List<List<FileInfo>> groups = new ArrayList<>();
+        for (FileInfo info : result) {
+            if (groups.isEmpty() || groups.get(groups.size() - 1).get(0).getGroupId() != info.getGroupId()) {
+                groups.add(new ArrayList<>());
+            }
+            groups.get(groups.size() - 1).add(info);
+        }
+        result.clear();
+        lastGroupId = 0;
+        for (List<FileInfo> group : new DuplicateDirectories(hasher).collapse(root, groups)) {
+            markGroup(group);
+            result.addAll(group);
+        }
+        // Группы выбирают оставляемую копию независимо; согласование не дает оставить копию внутри отмеченной директории
+        selectionPolicy.plan(result).apply(result);
+    }
+
+    /**
+     * Разбивает захешированные файлы одного размера по хешу и добавляет группы дубликатов в результат
+     * в порядке первого появления хеша.
+     */
+    private void addDuplicateGroups(List<FileInfo> hashed, List<FileInfo> result) {
+        CustomHashMap<String, List<FileInfo>> filesByHash = new CustomHashMap<>();
+        List<List<FileInfo>> groups = new ArrayList<>();
+        for (FileInfo info : hashed) {
+            List<FileInfo> group = filesByHash.get(info.getHash());
+            if (group == null) {
+                group = new ArrayList<>();
+                filesByHash.put(info.getHash(), group);
+                groups.add(group);
+            }
+            group.add(info);
+        }
+        for (List<FileInfo> group : groups) {
+            addDuplicateGroup(group, result);
+        }
+    }
+
+    /**
+     * Место, которое освобождается, если из группы одинаковых файлов оставить один: размер × (файлов − 1).
+     * При переполнении возвращается {@link Long#MAX_VALUE}.
+     */
+    static long reclaimableBytes(long size, int files) {
+        if (files < 2) {
+            return 0;
+        }
+        return size > Long.MAX_VALUE / (files - 1) ? Long.MAX_VALUE : size * (files - 1);
+    }
+
+    /**
+     * Время последнего изменения файла или 0, если его не удалось прочитать.
+     */
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Размер файла или -1, если его не удалось прочитать.
+     */
+    private static long sizeOrMinusOne(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Ключ группы размера во внешней сортировке по приоритету: сначала группы, освобождающие больше места.
+     * Размер хранится после двоеточия.
+     */
+    private static String priorityKey(long size, int files) {
+        return String.format("%016x:%016x", Long.MAX_VALUE - reclaimableBytes(size, files), size);
+    }
+
+    /**
+     * Кодирует размер в ключ фиксированной длины, чтобы лексикографический порядок
+     * совпадал с числовым.
+     */
+    private static String sizeKey(long size) {
+        return String.format("%016x", size);
+    }
+
     /**
      * Метод для корректного обновления прогресса.
      * @param processedFiles количество обработанных файлов.
@@ -135,4 +1329,127 @@ public class DuplicateScanner {
             progressConsumer.accept((double) processedFiles / totalFiles);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Получатель группы файлов одного размера.
+     */
+    interface SizeGroupVisitor {
+        /**
+         * @param size  размер файлов группы.
+         * @param count количество файлов группы (не меньше двух).
+         * @param files файлы группы; для групп из внешней сортировки они читаются с диска по мере перебора
+         *              и действительны только до возврата из метода.
+         * @throws IOException ошибка обработки группы; перебор прекращается.
+         */
+        void visit(long size, int count, Iterable<Path> files) throws IOException;
+    }
+
+    /**
+     * Группировка найденных файлов по размеру: в памяти ({@link CustomHashMap}),
+     * а после превышения порога количества файлов — во внешней сортировке.
+     */
+    class SizeGroups implements Closeable {
+        CustomHashMap<Long, List<Path>> inMemory = new CustomHashMap<>();
+        ExternalGroupSorter external;
+        int totalFiles;
+        /** Количество вхождений размеров, подсчитанное первым проходом, или null при группировке в один проход. */
+        LongCountSet candidateSizes;
+        /** Файлы с уникальным размером, отброшенные без сохранения пути. */
+        int uniqueFiles;
+
+        void add(Path file, long size) throws IOException {
+            if (candidateSizes != null && candidateSizes.count(size) < 2) {
+                uniqueFiles++;
+                return;
+            }
+            totalFiles++;
+            if (external == null && totalFiles > externalGroupingThreshold) {
+                messageConsumer.accept("Слишком много файлов, группировка переключена на диск...");
+                external = spillToDisk(inMemory);
+                inMemory = null;
+            }
+            if (external != null) {
+                external.add(sizeKey(size), file.toString());
+            } else {
+                List<Path> list = inMemory.get(size);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    inMemory.put(size, list);
+                }
+                list.add(file);
+            }
+        }
+
+        /**
+         * @return количество найденных файлов, включая отброшенные файлы с уникальным размером.
+         */
+        int files() {
+            return totalFiles + uniqueFiles;
+        }
+
+        /**
+         * Передает получателю группы из двух и более файлов. Перебор можно повторять.
+         */
+        void forEachCandidateGroup(SizeGroupVisitor visitor) throws IOException {
+            if (external != null) {
+                external.forEachGroup((key, paths) -> {
+                    if (paths.size() >= 2) {
+                        visitor.visit(Long.parseLong(key, 16), paths.size(), asPaths(paths));
+                    }
+                });
+                return;
+            }
+            for (Long size : inMemory.keys()) {
+                List<Path> files = inMemory.get(size);
+                if (files.size() >= 2) {
+                    visitor.visit(size, files.size(), files);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (external != null) {
+                external.close();
+            }
+        }
+    }
+
+    /**
+     * Файл-кандидат на хеширование вместе с ключом упорядочивания.
+     */
+    private static class Candidate {
+        final Path file;
+        final long size;
+        final String localityKey;
+
+        Candidate(Path file, long size, String localityKey) {
+            this.file = file;
+            this.size = size;
+            this.localityKey = localityKey;
+        }
+    }
+
+    /**
+     * Содержимое файла как ключ {@link CustomHashMap}: равенство определяется сравнением байтов.
+     */
+    private static class Content {
+        final byte[] bytes;
+        final int hashCode;
+
+        Content(byte[] bytes) {
+            this.bytes = bytes;
+            this.hashCode = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Content && Arrays.equals(bytes, ((Content) other).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -2,13 +2,38 @@ package service;
 
 import model.FileInfo;
 import java.awt.Desktop;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Сервисный класс, отвечающий за удаление файлов.
+ * <p>
+ * На Linux и BSD файлы перемещаются во встроенную корзину freedesktop.org ({@link FreedesktopTrash}),
+ * которая работает и без графического окружения; на остальных платформах используется {@link Desktop}.
  */
 public class FileDeduplicationService {
 
+    /** Встроенная корзина или null, если используется корзина {@link Desktop}. */
+    private final FreedesktopTrash trash;
+    /** Пути в корзине файлов, удаленных последним вызовом (только для встроенной корзины). */
+    private List<Path> lastTrashed = new ArrayList<>();
+
+    /**
+     * Сервис с корзиной, подходящей для текущей платформы.
+     */
+    public FileDeduplicationService() {
+        this(FreedesktopTrash.isSupported() ? new FreedesktopTrash() : null);
+    }
+
+    /**
+     * @param trash встроенная корзина или null, чтобы использовать корзину {@link Desktop}.
+     */
+    public FileDeduplicationService(FreedesktopTrash trash) {
+        this.trash = trash;
+    }
+
     /**
      * Удаляет файлы, отмеченные для удаления, путем перемещения их в системную корзину.
      * Метод выполняет удаление, только если операционная система
@@ -28,13 +53,16 @@ public class FileDeduplicationService {
         // Проверяем, поддерживается ли перемещение в корзину
         if (isTrashSupported()) {
             int deletedCount = 0;
+            List<Path> trashed = new ArrayList<>();
             for (FileInfo fileInfo : allFiles) {
-                if (fileInfo.isSelected()) {
-                    if (Desktop.getDesktop().moveToTrash(fileInfo.getPath().toFile())) {
+                // Записи архивов не удаляются, даже если отмечены
+                if (fileInfo.isSelected() && !fileInfo.isArchiveEntry()) {
+                    if (moveToTrash(fileInfo.getPath(), trashed)) {
                         deletedCount++;
                     }
                 }
             }
+            lastTrashed = trashed;
             return deletedCount;
         } else {
             // Если корзина не поддерживается, выводим сообщение для разработчика в консоль
@@ -44,6 +72,21 @@ public class FileDeduplicationService {
         }
     }
 
+    /**
+     * Заменяет отмеченные файлы ссылками на оставляемый файл их группы вместо удаления:
+     * место освобождается, а все пути продолжают существовать. Подробности — в {@link LinkConsolidator}.
+     *
+     * @param allFiles строки результатов, сгруппированные по номеру группы.
+     * @param mode     жесткие ссылки или копии с общими блоками.
+     * @return пути замененных файлов; файлы, которые заменить не удалось, в список не входят.
+     */
+    public List<Path> linkSelectedDuplicates(List<FileInfo> allFiles, LinkConsolidator.Mode mode) {
+        if (allFiles == null || allFiles.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return new LinkConsolidator(mode, Math.max(2, Runtime.getRuntime().availableProcessors())).consolidate(allFiles);
+    }
+
     /**
      * Вспомогательный публичный метод, который позволяет UI заранее проверить,
      * будет ли работать функция удаления.
@@ -52,6 +95,53 @@ public class FileDeduplicationService {
      * @return true, если перемещение в корзину поддерживается, иначе false.
      */
     public boolean isTrashSupported() {
-        return Desktop.isDesktopSupported() && Desktop.getDesktop().isSupported(Desktop.Action.MOVE_TO_TRASH);
+        return trash != null
+                || Desktop.isDesktopSupported() && Desktop.getDesktop().isSupported(Desktop.Action.MOVE_TO_TRASH);
+    }
+
+    /**
+     * @return true, если последнее удаление можно отменить ({@link #undoLastDelete()}).
+     */
+    public boolean canUndoDelete() {
+        return !lastTrashed.isEmpty();
+    }
+
+    /**
+     * Возвращает на место файлы, перемещенные в корзину последним вызовом
+     * {@link #deleteSelectedDuplicates(List)}. Отмена доступна только для встроенной корзины.
+     *
+     * @return количество восстановленных файлов.
+     */
+    public int undoLastDelete() {
+        int restored = 0;
+        for (Path trashed : lastTrashed) {
+            try {
+                trash.restore(trashed);
+                restored++;
+            } catch (IOException e) {
+                System.err.println("Warning: could not restore " + trashed + ": " + e.getMessage());
+            }
+        }
+        lastTrashed = new ArrayList<>();
+        return restored;
+    }
+
+    /**
+     * Перемещает один файл в корзину.
+     *
+     * @param trashed список, в который добавляется путь файла во встроенной корзине.
+     * @return true, если файл перемещен.
+     */
+    private boolean moveToTrash(Path file, List<Path> trashed) {
+        if (trash == null) {
+            return Desktop.getDesktop().moveToTrash(file.toFile());
+        }
+        try {
+            trashed.add(trash.moveToTrash(file));
+            return true;
+        } catch (IOException e) {
+            System.err.println("Warning: could not move " + file + " to trash: " + e.getMessage());
+            return false;
+        }
     }
 }
\ No newline at end of file
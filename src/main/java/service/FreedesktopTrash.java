@@ -0,0 +1,267 @@
+package service;
+
+import util.CustomHashMap;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Корзина по спецификации freedesktop.org Trash без зависимости от {@link java.awt.Desktop}.
+ * <p>
+ * Файл перемещается в корзину того же тома атомарным переименованием, поэтому перемещение
+ * в корзину — операция над метаданными, не зависящая от размера файла. Для файлов тома домашней
+ * директории используется домашняя корзина ({@code $XDG_DATA_HOME/Trash}), для файлов других томов —
+ * корзина в корне тома: {@code $topdir/.Trash/$uid}, если общая директория {@code .Trash} существует
+ * и защищена sticky-битом, иначе {@code $topdir/.Trash-$uid}. Между томами файлы не копируются:
+ * если корзину тома использовать нельзя, перемещение завершается ошибкой.
+ * <p>
+ * Рядом с каждым файлом в {@code info/} записывается {@code .trashinfo} с исходным путем и временем
+ * удаления; файл описания создается первым и резервирует имя в корзине, так что одновременные
+ * удаления не перезаписывают друг друга. По описанию файл можно вернуть на место ({@link #restore(Path)}).
+ */
+public class FreedesktopTrash {
+
+    private static final String INFO_SUFFIX = ".trashinfo";
+    private static final DateTimeFormatter DELETION_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    /** Домашняя корзина. */
+    private final Path homeTrash;
+    /** Корзины уже встреченных томов по номеру устройства. */
+    private final CustomHashMap<Object, Path> trashByDevice = new CustomHashMap<>();
+    /** Создана ли домашняя корзина (она создается при первом удалении). */
+    private boolean homeTrashReady;
+
+    /**
+     * Корзина текущего пользователя: {@code $XDG_DATA_HOME/Trash} или {@code ~/.local/share/Trash}.
+     *
+     */
+    public FreedesktopTrash() {
+        this(defaultHomeTrash());
+    }
+
+    /**
+     * @param homeTrash директория домашней корзины; создается при первом удалении, если ее нет.
+     */
+    public FreedesktopTrash(Path homeTrash) {
+        this.homeTrash = homeTrash.toAbsolutePath().normalize();
+    }
+
+    /**
+     * @return true, если платформа использует корзину freedesktop.org (Linux и BSD).
+     */
+    public static boolean isSupported() {
+        String os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+        return os.contains("linux") || os.contains("bsd");
+    }
+
+    /**
+     * @return директория домашней корзины.
+     */
+    public Path getHomeTrash() {
+        return homeTrash;
+    }
+
+    /**
+     * Перемещает файл или директорию в корзину его тома.
+     *
+     * @param file путь к файлу.
+     * @return путь файла внутри корзины ({@code .../files/имя}).
+     * @throws IOException если файл не удалось переместить; в этом случае он остается на месте.
+     */
+    public Path moveToTrash(Path file) throws IOException {
+        Path source = file.toAbsolutePath().normalize();
+        Path trash = trashFor(source);
+        String originalPath = trash.equals(homeTrash) ? source.toString() : topDirectory(trash).relativize(source).toString();
+        String name = source.getFileName().toString();
+
+        // Имя в корзине резервируется созданием файла описания: CREATE_NEW атомарен
+        Path info;
+        Path trashed;
+        for (int attempt = 1; ; attempt++) {
+            String candidate = attempt == 1 ? name : name + "." + attempt;
+            info = trash.resolve("info").resolve(candidate + INFO_SUFFIX);
+            trashed = trash.resolve("files").resolve(candidate);
+            if (Files.exists(trashed, LinkOption.NOFOLLOW_LINKS)) {
+                continue;
+            }
+            try (Writer writer = Files.newBufferedWriter(info, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                writer.write("[Trash Info]\nPath=" + encodePath(originalPath) + "\nDeletionDate="
+                        + DELETION_DATE.format(LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS)) + "\n");
+                break;
+            } catch (FileAlreadyExistsException e) {
+                // Имя занято другим удаленным файлом, пробуем следующее
+            }
+        }
+
+        try {
+            Files.move(source, trashed, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(info);
+            throw e;
+        }
+        return trashed;
+    }
+
+    /**
+     * Возвращает файл из корзины на исходное место.
+     *
+     * @param trashed путь файла внутри корзины, полученный из {@link #moveToTrash(Path)}.
+     * @return исходный путь файла.
+     * @throws IOException если описание не найдено, исходный путь занят или файл не удалось переместить.
+     */
+    public Path restore(Path trashed) throws IOException {
+        Path trash = trashed.getParent().getParent();
+        Path info = trash.resolve("info").resolve(trashed.getFileName() + INFO_SUFFIX);
+        Path original = null;
+        for (String line : Files.readAllLines(info, StandardCharsets.UTF_8)) {
+            if (line.startsWith("Path=")) {
+                original = Path.of(decodePath(line.substring("Path=".length())));
+            }
+        }
+        if (original == null) {
+            throw new IOException("No original path in " + info);
+        }
+        if (!original.isAbsolute()) {
+            original = topDirectory(trash).resolve(original);
+        }
+        // Переименование заменило бы существующий файл, поэтому занятый путь проверяется заранее
+        if (Files.exists(original, LinkOption.NOFOLLOW_LINKS)) {
+            throw new FileAlreadyExistsException(original.toString());
+        }
+        Files.move(trashed, original, StandardCopyOption.ATOMIC_MOVE);
+        Files.delete(info);
+        return original;
+    }
+
+    /**
+     * Находит (и при необходимости создает) корзину тома, на котором лежит файл.
+     */
+    private synchronized Path trashFor(Path file) throws IOException {
+        if (!homeTrashReady) {
+            createTrash(homeTrash);
+            trashByDevice.put(device(homeTrash), homeTrash);
+            homeTrashReady = true;
+        }
+        Object device = device(file);
+        Path trash = trashByDevice.get(device);
+        if (trash != null) {
+            return trash;
+        }
+
+        // Корень тома — самый верхний предок на том же устройстве
+        Path top = file;
+        for (Path parent = file.getParent(); parent != null && device.equals(device(parent)); parent = parent.getParent()) {
+            top = parent;
+        }
+        String uid = String.valueOf(currentUid());
+        Path shared = top.resolve(".Trash");
+        trash = null;
+        if (Files.isDirectory(shared, LinkOption.NOFOLLOW_LINKS) && isSticky(shared)) {
+            try {
+                createTrash(shared.resolve(uid));
+                trash = shared.resolve(uid);
+            } catch (IOException e) {
+                // По спецификации, если $topdir/.Trash/$uid создать нельзя, используется $topdir/.Trash-$uid
+                System.err.println("Warning: could not use " + shared.resolve(uid) + ": " + e.getMessage());
+            }
+        }
+        if (trash == null) {
+            trash = top.resolve(".Trash-" + uid);
+            createTrash(trash);
+        }
+        trashByDevice.put(device, trash);
+        return trash;
+    }
+
+    /**
+     * @return директория, относительно которой записаны пути в корзине тома.
+     */
+    private Path topDirectory(Path trash) {
+        Path parent = trash.getParent();
+        return parent.getFileName() != null && parent.getFileName().toString().equals(".Trash") ? parent.getParent() : parent;
+    }
+
+    private static void createTrash(Path trash) throws IOException {
+        for (Path directory : List.of(trash, trash.resolve("files"), trash.resolve("info"))) {
+            if (!Files.isDirectory(directory)) {
+                try {
+                    Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+                } catch (UnsupportedOperationException e) {
+                    Files.createDirectories(directory);
+                }
+            }
+        }
+    }
+
+    private static Object device(Path path) throws IOException {
+        return Files.getAttribute(path, "unix:dev", LinkOption.NOFOLLOW_LINKS);
+    }
+
+    private static boolean isSticky(Path directory) throws IOException {
+        int mode = (Integer) Files.getAttribute(directory, "unix:mode", LinkOption.NOFOLLOW_LINKS);
+        return (mode & 01000) != 0;
+    }
+
+    /**
+     * @return идентификатор пользователя процесса (владелец {@code /proc/self}) или владельца домашней директории.
+     */
+    private static int currentUid() throws IOException {
+        Path self = Path.of("/proc/self");
+        Path owner = Files.exists(self) ? self : Path.of(System.getProperty("user.home"));
+        return (Integer) Files.getAttribute(owner, "unix:uid");
+    }
+
+    private static Path defaultHomeTrash() {
+        String dataHome = System.getenv("XDG_DATA_HOME");
+        if (dataHome == null || dataHome.isEmpty()) {
+            return Path.of(System.getProperty("user.home"), ".local", "share", "Trash");
+        }
+        return Path.of(dataHome, "Trash");
+    }
+
+    /**
+     * Кодирует путь для {@code .trashinfo}: байты UTF-8 вне безопасного набора записываются как {@code %XX}.
+     */
+    static String encodePath(String path) {
+        StringBuilder encoded = new StringBuilder(path.length());
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            int c = b & 0xff;
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || "/-_.~".indexOf(c) >= 0) {
+                encoded.append((char) c);
+            } else {
+                encoded.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(c & 0xf, 16)));
+            }
+        }
+        return encoded.toString();
+    }
+
+    static String decodePath(String encoded) {
+        byte[] bytes = new byte[encoded.length()];
+        int length = 0;
+        for (int i = 0; i < encoded.length(); i++) {
+            char c = encoded.charAt(i);
+            if (c == '%' && i + 2 < encoded.length()) {
+                bytes[length++] = (byte) Integer.parseInt(encoded.substring(i + 1, i + 3), 16);
+                i += 2;
+            } else {
+                bytes[length++] = (byte) c;
+            }
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,55 @@
+package service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Порядок, в котором файлы-кандидаты передаются на хеширование.
+ * На вращающихся дисках порядок чтения определяет количество перемещений головки,
+ * поэтому чтение в порядке физического расположения файлов может быть в разы быстрее.
+ */
+public enum HashOrder {
+
+    /** Порядок обнаружения: группа за группой, как их вернула группировка по размеру. */
+    DISCOVERY,
+    /** Порядок путей: файлы одной директории читаются подряд. */
+    DIRECTORY,
+    /**
+     * Порядок идентификаторов файлов ({@link BasicFileAttributes#fileKey()}, на Unix — устройство и inode).
+     * Номера inode обычно коррелируют с расположением данных на диске.
+     * Если файловая система не предоставляет идентификатор, используется порядок путей.
+     */
+    FILE_KEY;
+
+    /** Формат ключа файла на Unix-системах: "(dev=803,ino=1234567)". */
+    private static final Pattern UNIX_FILE_KEY = Pattern.compile("\\(dev=([0-9a-fA-F]+),ino=(\\d+)\\)");
+
+    /**
+     * Вычисляет ключ, по которому файлы упорядочиваются в этом режиме.
+     * Ключи сравниваются лексикографически.
+     *
+     * @param file файл.
+     * @return ключ упорядочивания.
+     * @throws IOException если не удалось прочитать атрибуты файла.
+     */
+    public String localityKey(Path file) throws IOException {
+        if (this == FILE_KEY) {
+            Object fileKey = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+            if (fileKey != null) {
+                Matcher matcher = UNIX_FILE_KEY.matcher(fileKey.toString());
+                if (matcher.matches()) {
+                    // Фиксированная ширина, чтобы строковый порядок совпадал с числовым
+                    return String.format("%016x%016x",
+                            Long.parseUnsignedLong(matcher.group(1), 16),
+                            Long.parseUnsignedLong(matcher.group(2)));
+                }
+            }
+        }
+        // Для DIRECTORY и как запасной вариант: '~' больше любого символа шестнадцатеричного ключа
+        return "~" + file.toAbsolutePath();
+    }
+}
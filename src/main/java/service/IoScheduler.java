@@ -0,0 +1,279 @@
+package service;
+
+import util.CustomHashMap;
+
+import java.nio.file.FileStore;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Планировщик операций чтения с учетом устройств хранения.
+ * Каждое устройство ({@link FileStore}) получает собственную очередь с отдельным
+ * ограничением параллелизма и бюджетом памяти под буферы, находящиеся "в полете".
+ * Очереди различаются по номеру устройства, а не по имени хранилища: разные tmpfs
+ * или overlay имеют одинаковые имена, но обслуживаются независимо.
+ * Благодаря этому NVMe-накопитель может обрабатывать много файлов одновременно,
+ * а жесткий диск на том же сканировании не тратит время на лишние перемещения головки.
+ * <p>
+ * В адаптивном режиме степень параллелизма каждого устройства подбирается
+ * по измеренной пропускной способности ({@link ThroughputTuner}).
+ * Методы постановки задач предназначены для вызова из одного потока сканера.
+ */
+public class IoScheduler implements AutoCloseable {
+
+    /** Параллелизм устройства по умолчанию. */
+    public static final int DEFAULT_CONCURRENCY = 4;
+    /** Бюджет памяти под буферы одного устройства по умолчанию (байт). */
+    public static final long DEFAULT_BUFFER_BUDGET = 64L * 1024 * 1024;
+
+    /** Параллелизм для устройств без индивидуальной настройки. */
+    private final int defaultConcurrency;
+    /** Бюджет буферов для устройств без индивидуальной настройки. */
+    private final long defaultBufferBudget;
+    /** Определяет, к какому устройству относится файл. */
+    private final Function<Path, StorageDevices.Device> deviceResolver;
+
+    /** Индивидуальные настройки устройств по имени хранилища, заданные до начала работы. */
+    private final CustomHashMap<String, long[]> deviceLimits = new CustomHashMap<>();
+    /** Очереди устройств по ключу устройства. */
+    private final CustomHashMap<Object, DeviceQueue> queues = new CustomHashMap<>();
+
+    /** Включен ли адаптивный подбор параллелизма. */
+    private boolean adaptive;
+    /** Верхняя граница параллелизма в адаптивном режиме. */
+    private int maxAdaptiveConcurrency = 32;
+
+    /**
+     * Создает планировщик с настройками по умолчанию.
+     */
+    public IoScheduler() {
+        this(DEFAULT_CONCURRENCY, DEFAULT_BUFFER_BUDGET);
+    }
+
+    /**
+     * @param defaultConcurrency  максимальное количество одновременных чтений на одном устройстве.
+     * @param defaultBufferBudget максимальный суммарный объем буферов в полете на одном устройстве.
+     */
+    public IoScheduler(int defaultConcurrency, long defaultBufferBudget) {
+        // Хранилище запрашивается один раз на директорию, тип накопителя — один раз на устройство
+        this(defaultConcurrency, defaultBufferBudget, new StorageDevices()::of);
+    }
+
+    /**
+     * Конструктор с явным способом определения устройства (используется в тестах).
+     */
+    IoScheduler(int defaultConcurrency, long defaultBufferBudget,
+                Function<Path, StorageDevices.Device> deviceResolver) {
+        if (defaultConcurrency < 1 || defaultBufferBudget < 1) {
+            throw new IllegalArgumentException("Concurrency and buffer budget must be positive");
+        }
+        this.defaultConcurrency = defaultConcurrency;
+        this.defaultBufferBudget = defaultBufferBudget;
+        this.deviceResolver = deviceResolver;
+    }
+
+    /**
+     * Задает индивидуальные ограничения для устройства. Ограничения применяются
+     * ко всем устройствам с таким именем хранилища.
+     *
+     * @param device       имя устройства ({@link FileStore#name()}).
+     * @param concurrency  количество одновременных чтений.
+     * @param bufferBudget бюджет буферов в байтах.
+     */
+    public synchronized void setDeviceLimits(String device, int concurrency, long bufferBudget) {
+        if (concurrency < 1 || bufferBudget < 1) {
+            throw new IllegalArgumentException("Concurrency and buffer budget must be positive");
+        }
+        deviceLimits.put(device, new long[]{concurrency, bufferBudget});
+        for (DeviceQueue queue : queues.values()) {
+            if (queue.device.name.equals(device)) {
+                queue.setConcurrency(concurrency);
+                queue.bufferBudget = bufferBudget;
+            }
+        }
+    }
+
+    /**
+     * Включает или выключает адаптивный подбор параллелизма по измеренной пропускной способности.
+     *
+     * @param adaptive       true для включения адаптивного режима.
+     * @param maxConcurrency верхняя граница параллелизма одного устройства.
+     */
+    public synchronized void setAdaptive(boolean adaptive, int maxConcurrency) {
+        this.adaptive = adaptive;
+        this.maxAdaptiveConcurrency = Math.max(1, maxConcurrency);
+    }
+
+    /**
+     * Ставит задачу чтения в очередь устройства, на котором находится файл.
+     *
+     * @param file        файл, который будет прочитан задачей.
+     * @param readBytes   количество байт, которое задача прочитает (для замера пропускной способности).
+     * @param bufferBytes объем буферов, который задача займет на время выполнения.
+     * @param task        сама задача.
+     * @param <T>         тип результата задачи.
+     * @return {@link Future} с результатом задачи.
+     */
+    public synchronized <T> Future<T> submit(Path file, long readBytes, long bufferBytes, Callable<T> task) {
+        return submit(deviceOf(file), readBytes, bufferBytes, task);
+    }
+
+    /**
+     * Ставит задачу чтения в очередь заранее определенного устройства.
+     *
+     * @param device      устройство, полученное из {@link #deviceOf(Path)}.
+     * @param readBytes   количество байт, которое задача прочитает.
+     * @param bufferBytes объем буферов, который задача займет на время выполнения.
+     * @param task        сама задача.
+     * @param <T>         тип результата задачи.
+     * @return {@link Future} с результатом задачи.
+     */
+    synchronized <T> Future<T> submit(StorageDevices.Device device, long readBytes, long bufferBytes,
+                                      Callable<T> task) {
+        DeviceQueue queue = queueFor(device);
+        return queue.executor.submit(() -> {
+            long reserved = queue.acquireBuffers(bufferBytes);
+            try {
+                return task.call();
+            } finally {
+                queue.releaseBuffers(reserved);
+                queue.recordCompletion(readBytes);
+            }
+        });
+    }
+
+    /**
+     * Возвращает текущее ограничение параллелизма устройства.
+     *
+     * @param device имя устройства.
+     * @return количество одновременных чтений или 0, если устройство еще не использовалось.
+     */
+    public synchronized int getConcurrency(String device) {
+        for (DeviceQueue queue : queues.values()) {
+            if (queue.device.name.equals(device)) {
+                return queue.concurrency;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Останавливает потоки всех устройств. Невыполненные задачи отменяются.
+     */
+    @Override
+    public synchronized void close() {
+        for (DeviceQueue queue : queues.values()) {
+            List<Runnable> dropped = queue.executor.shutdownNow();
+            dropped.forEach(r -> ((Future<?>) r).cancel(false));
+        }
+    }
+
+    /**
+     * Определяет устройство файла. Тип накопителя устройства совпадает с тем,
+     * который следует использовать при выборе буфера чтения.
+     *
+     * @param file файл.
+     * @return устройство, на котором лежит файл.
+     */
+    synchronized StorageDevices.Device deviceOf(Path file) {
+        return deviceResolver.apply(file);
+    }
+
+    private DeviceQueue queueFor(StorageDevices.Device device) {
+        DeviceQueue queue = queues.get(device.key);
+        if (queue == null) {
+            long[] limits = deviceLimits.get(device.name);
+            int concurrency = limits != null ? (int) limits[0] : defaultConcurrency;
+            long budget = limits != null ? limits[1] : defaultBufferBudget;
+            queue = new DeviceQueue(device, concurrency, budget, adaptive && limits == null);
+            queues.put(device.key, queue);
+        }
+        return queue;
+    }
+
+    /**
+     * Очередь одного устройства: пул потоков с изменяемым размером и счетчик занятых буферов.
+     */
+    private class DeviceQueue {
+        /** Интервал между замерами пропускной способности в адаптивном режиме. */
+        private static final long SAMPLE_INTERVAL_NANOS = 500_000_000L;
+
+        final StorageDevices.Device device;
+        final ThreadPoolExecutor executor;
+        volatile int concurrency;
+        volatile long bufferBudget;
+        private long buffersInFlight = 0;
+
+        private final ThroughputTuner tuner;
+        private long sampleBytes = 0;
+        private long sampleStart = System.nanoTime();
+
+        DeviceQueue(StorageDevices.Device device, int concurrency, long bufferBudget, boolean adaptive) {
+            this.device = device;
+            this.concurrency = concurrency;
+            this.bufferBudget = bufferBudget;
+            this.executor = new ThreadPoolExecutor(concurrency, concurrency, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), task -> {
+                Thread thread = new Thread(task, "dedup-io-" + device.name);
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.tuner = adaptive ? new ThroughputTuner(concurrency, 1, maxAdaptiveConcurrency) : null;
+        }
+
+        /**
+         * Резервирует буферы. Задача ждет, пока бюджет не освободится,
+         * но одна задача всегда может выполняться, даже если ее буфер больше бюджета.
+         */
+        synchronized long acquireBuffers(long bytes) throws InterruptedException {
+            while (buffersInFlight > 0 && buffersInFlight + bytes > bufferBudget) {
+                wait();
+            }
+            buffersInFlight += bytes;
+            return bytes;
+        }
+
+        synchronized void releaseBuffers(long bytes) {
+            buffersInFlight -= bytes;
+            notifyAll();
+        }
+
+        /**
+         * Учитывает завершенное чтение и при необходимости корректирует параллелизм.
+         */
+        synchronized void recordCompletion(long bytes) {
+            if (tuner == null) {
+                return;
+            }
+            sampleBytes += bytes;
+            long now = System.nanoTime();
+            if (now - sampleStart >= SAMPLE_INTERVAL_NANOS) {
+                double throughput = sampleBytes * 1e9 / (now - sampleStart);
+                setConcurrency(tuner.onSample(throughput));
+                sampleBytes = 0;
+                sampleStart = now;
+            }
+        }
+
+        synchronized void setConcurrency(int value) {
+            if (value == concurrency) {
+                return;
+            }
+            // Порядок важен: core не может превышать max
+            if (value > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(value);
+                executor.setCorePoolSize(value);
+            } else {
+                executor.setCorePoolSize(value);
+                executor.setMaximumPoolSize(value);
+            }
+            concurrency = value;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package service;
+
+import model.FileInfo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Замена копий-дубликатов ссылками на оставляемый файл вместо удаления.
+ * <p>
+ * Для каждой копии рядом с ней создается временная жесткая ссылка (или копия с общими блоками,
+ * {@code cp --reflink=always}) на оставляемый файл, которая затем атомарно переименовывается
+ * поверх копии. Поэтому ни один путь не исчезает даже на мгновение: в любой момент по пути лежит
+ * либо прежняя копия, либо ссылка с тем же содержимым. При ошибке временная ссылка удаляется,
+ * а копия остается нетронутой.
+ * <p>
+ * Замена необратима, поэтому перед ней результат сканирования проверяется заново: время изменения
+ * копии и оставляемого файла должно совпадать с записанным при сканировании (если оно известно),
+ * а содержимое файлов сравнивается побайтно. Файл, изменившийся после сканирования, не заменяется.
+ * <p>
+ * Жесткая ссылка разделяет с оставляемым файлом права и время изменения, а изменение любого
+ * из путей видно во всех; копия с общими блоками остается независимым файлом. Оба способа
+ * работают только в пределах одной файловой системы.
+ * <p>
+ * Копии обрабатываются пакетами в нескольких потоках: операции над метаданными разных директорий
+ * файловая система выполняет параллельно.
+ */
+public class LinkConsolidator {
+
+    /** Способ замены копии. */
+    public enum Mode {
+        /** Жесткая ссылка на оставляемый файл. */
+        HARD_LINK,
+        /** Копия с общими блоками (reflink) — для файловых систем с копированием при записи (Btrfs, XFS). */
+        CLONE
+    }
+
+    /** Количество копий в одном пакете. */
+    private static final int BATCH_SIZE = 256;
+
+    /** Пара "копия — файл, на который она заменяется". */
+    private static class Replacement {
+        final FileInfo copy;
+        final FileInfo target;
+
+        Replacement(FileInfo copy, FileInfo target) {
+            this.copy = copy;
+            this.target = target;
+        }
+    }
+
+    private final Mode mode;
+    private final int threads;
+
+    /**
+     * @param mode    способ замены копий.
+     * @param threads количество потоков.
+     */
+    public LinkConsolidator(Mode mode, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        this.mode = mode;
+        this.threads = threads;
+    }
+
+    /**
+     * Заменяет ссылками отмеченные файлы. В каждой группе (подряд идущие строки с одинаковым номером)
+     * ссылки указывают на первый неотмеченный обычный файл; группы без такого файла пропускаются.
+     * Записи архивов и директории не заменяются.
+     *
+     * @param results строки результатов.
+     * @return пути замененных копий в порядке строк; копии, которые заменить не удалось, в список не входят.
+     */
+    public List<Path> consolidate(List<FileInfo> results) {
+        List<Replacement> replacements = new ArrayList<>();
+        int start = 0;
+        while (start < results.size()) {
+            int groupId = results.get(start).getGroupId();
+            int end = start + 1;
+            while (end < results.size() && results.get(end).getGroupId() == groupId) {
+                end++;
+            }
+            List<FileInfo> group = results.subList(start, end);
+            FileInfo target = null;
+            for (FileInfo info : group) {
+                if (!info.isSelected() && isRegular(info)) {
+                    target = info;
+                    break;
+                }
+            }
+            if (target != null) {
+                for (FileInfo info : group) {
+                    if (info.isSelected() && isRegular(info)) {
+                        replacements.add(new Replacement(info, target));
+                    }
+                }
+            }
+            start = end;
+        }
+        List<Path> replaced = new ArrayList<>();
+        if (replacements.isEmpty()) {
+            return replaced;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "dedup-link");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<List<Path>>> batches = new ArrayList<>();
+            for (int from = 0; from < replacements.size(); from += BATCH_SIZE) {
+                List<Replacement> batch = replacements.subList(from, Math.min(from + BATCH_SIZE, replacements.size()));
+                batches.add(pool.submit(() -> {
+                    List<Path> done = new ArrayList<>();
+                    for (Replacement replacement : batch) {
+                        if (replace(replacement.copy, replacement.target)) {
+                            done.add(replacement.copy.getPath());
+                        }
+                    }
+                    return done;
+                }));
+            }
+            for (Future<List<Path>> batch : batches) {
+                replaced.addAll(batch.get());
+            }
+            return replaced;
+        } catch (InterruptedException e) {
+            // Уже выполненные замены не отменяются, поэтому возвращаются готовые результаты пакетов
+            Thread.currentThread().interrupt();
+            return replaced;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Заменяет одну копию ссылкой.
+     *
+     * @return true, если копия заменена.
+     */
+    private boolean replace(FileInfo copyInfo, FileInfo targetInfo) {
+        Path copy = copyInfo.getPath();
+        Path target = targetInfo.getPath();
+        Path temp = copy.resolveSibling("." + copy.getFileName() + ".dedup-" + Long.toHexString(ThreadLocalRandom.current().nextLong()));
+        try {
+            // Копия могла уже быть ссылкой на тот же файл
+            if (!Files.isRegularFile(copy, LinkOption.NOFOLLOW_LINKS) || Files.isSameFile(copy, target)) {
+                return false;
+            }
+            // Файлы могли измениться после сканирования: сначала дешевые проверки, затем содержимое целиком
+            if (Files.size(copy) != Files.size(target) || changedSinceScan(copyInfo) || changedSinceScan(targetInfo)
+                    || Files.mismatch(copy, target) != -1) {
+                System.err.println("Warning: " + copy + " or " + target + " changed since the scan. Skipping file.");
+                return false;
+            }
+            link(temp, target);
+            Files.move(temp, copy, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Warning: could not link " + copy + " to " + target + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // Временный файл останется, но исходная копия не затронута
+            }
+            return false;
+        }
+    }
+
+    private void link(Path link, Path target) throws IOException {
+        if (mode == Mode.HARD_LINK) {
+            Files.createLink(link, target);
+            return;
+        }
+        // В стандартной библиотеке нет клонирования файлов, поэтому используется cp из coreutils
+        Process cp = new ProcessBuilder("cp", "--reflink=always", "--preserve=mode,timestamps",
+                target.toString(), link.toString()).redirectErrorStream(true).start();
+        try {
+            String output = new String(cp.getInputStream().readAllBytes());
+            if (cp.waitFor() != 0) {
+                throw new IOException("cp --reflink failed: " + output.trim());
+            }
+        } catch (InterruptedException e) {
+            cp.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while cloning " + target, e);
+        }
+    }
+
+    /**
+     * @return true, если известное время изменения файла отличается от записанного при сканировании.
+     */
+    private static boolean changedSinceScan(FileInfo info) throws IOException {
+        return info.getLastModified() > 0
+                && Files.getLastModifiedTime(info.getPath()).toMillis() != info.getLastModified();
+    }
+
+    private static boolean isRegular(FileInfo info) {
+        return !info.isArchiveEntry() && !info.isDirectory();
+    }
+}
@@ -0,0 +1,152 @@
+package service;
+
+import util.ReadBuffers;
+import util.StorageKind;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Очередь хеширования файлов, возвращающая результаты строго в порядке постановки.
+ * Если задан {@link IoScheduler} или {@link AsyncHashEngine}, файлы хешируются параллельно,
+ * а в памяти одновременно удерживается не больше заданного "окна" незавершенных задач.
+ * Без планировщика хеширование выполняется сразу в вызывающем потоке.
+ * Сохранение порядка делает результат сканирования детерминированным независимо от параллелизма.
+ */
+class OrderedHashQueue {
+
+    /** Функция вычисления хеша файла известного размера. */
+    @FunctionalInterface
+    interface HashFunction {
+        String hash(Path file, long size, StorageKind storage) throws IOException;
+    }
+
+    /** Получатель результата. Значение hash равно null, если файл не удалось прочитать. */
+    @FunctionalInterface
+    interface ResultConsumer {
+        void accept(Path file, long size, String hash) throws IOException;
+    }
+
+    /** Способ запуска параллельного хеширования, возвращающий незавершенный результат. */
+    @FunctionalInterface
+    interface AsyncHashFunction {
+        Future<String> submit(Path file, long size) throws IOException;
+    }
+
+    /** Задача, ожидающая выдачи результата. */
+    private static class Pending {
+        final Path file;
+        final long size;
+        final Future<String> future;
+        final ResultConsumer consumer;
+
+        Pending(Path file, long size, Future<String> future, ResultConsumer consumer) {
+            this.file = file;
+            this.size = size;
+            this.future = future;
+            this.consumer = consumer;
+        }
+    }
+
+    private final HashFunction hashFunction;
+    /** Устройства файлов для последовательного хеширования. */
+    private final StorageDevices devices;
+    /** Параллельное хеширование (null — хеширование в вызывающем потоке). */
+    private final AsyncHashFunction asyncFunction;
+    private final int window;
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+
+    /**
+     * @param hashFunction функция хеширования.
+     * @param scheduler    планировщик чтений или null для последовательного хеширования.
+     * @param devices      устройства файлов, если планировщик не задан.
+     * @param window       максимальное количество незавершенных задач.
+     */
+    OrderedHashQueue(HashFunction hashFunction, IoScheduler scheduler, StorageDevices devices, int window) {
+        this.hashFunction = hashFunction;
+        this.devices = devices;
+        this.asyncFunction = scheduler == null ? null : (file, size) -> {
+            // Бюджет считается по тому же типу накопителя, по которому хешер выберет буфер
+            StorageDevices.Device device = scheduler.deviceOf(file);
+            long bufferBytes = ReadBuffers.bufferSize(size, device.kind);
+            return scheduler.submit(device, size, bufferBytes, () -> hashFunction.hash(file, size, device.kind));
+        };
+        this.window = Math.max(1, window);
+    }
+
+    /**
+     * @param asyncFunction функция, запускающая параллельное хеширование (например, через {@link AsyncHashEngine}).
+     * @param window        максимальное количество незавершенных задач.
+     */
+    OrderedHashQueue(AsyncHashFunction asyncFunction, int window) {
+        this.hashFunction = null;
+        this.devices = null;
+        this.asyncFunction = asyncFunction;
+        this.window = Math.max(1, window);
+    }
+
+    /**
+     * Ставит файл в очередь хеширования. Результат будет передан получателю
+     * после результатов всех ранее поставленных файлов.
+     */
+    void submit(Path file, long size, ResultConsumer consumer) throws IOException {
+        if (asyncFunction == null) {
+            consumer.accept(file, size, hashOrNull(file, size));
+            return;
+        }
+        Future<String> future = asyncFunction.submit(file, size);
+        pending.add(new Pending(file, size, future, consumer));
+
+        // Выдаем уже готовые результаты, а при переполнении окна ждем самый старый
+        while (!pending.isEmpty() && (pending.size() >= window || pending.peek().future.isDone())) {
+            deliver(pending.poll());
+        }
+    }
+
+    /**
+     * Дожидается завершения всех поставленных задач и выдает их результаты.
+     */
+    void finish() throws IOException {
+        while (!pending.isEmpty()) {
+            deliver(pending.poll());
+        }
+    }
+
+    /**
+     * Отменяет все незавершенные задачи (например, при ошибке сканирования).
+     */
+    void cancel() {
+        for (Pending task : pending) {
+            task.future.cancel(true);
+        }
+        pending.clear();
+    }
+
+    private void deliver(Pending task) throws IOException {
+        String hash;
+        try {
+            hash = task.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            throw new InterruptedIOException("Hashing was interrupted");
+        } catch (ExecutionException e) {
+            System.err.println("Could not read or hash file: " + task.file + ". Skipping file.");
+            hash = null;
+        }
+        task.consumer.accept(task.file, task.size, hash);
+    }
+
+    private String hashOrNull(Path file, long size) {
+        try {
+            return hashFunction.hash(file, size, devices.of(file).kind);
+        } catch (IOException e) {
+            System.err.println("Could not read or hash file: " + file + ". Skipping file.");
+            return null;
+        }
+    }
+}
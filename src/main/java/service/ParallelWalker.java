@@ -0,0 +1,287 @@
+package service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Параллельный обход дерева директорий на {@link ForkJoinPool}.
+ * <p>
+ * Каждая директория читается отдельной задачей: задача перечисляет элементы и читает их атрибуты
+ * (размер берется из того же вызова, отдельный {@code stat} не нужен). Вызывающий поток запускает
+ * задачи поддиректорий с упреждением — в первую очередь те, до которых обход дойдет раньше, — поэтому
+ * на сетевых и RAID-томах, где задержка одного листинга велика, директории читаются одновременно.
+ * <p>
+ * Вызывающий поток получает файлы в детерминированном порядке: обход в глубину с элементами
+ * каждой директории, отсортированными по имени, независимо от того, в каком порядке задачи
+ * завершились. Пока вызывающий поток обрабатывает файлы одной директории, следующие уже читаются.
+ * <p>
+ * Память ограничена: одновременно запущено или прочитано, но еще не обойдено, не больше
+ * {@value #LISTINGS_PER_THREAD} листингов на поток, а листинг директории освобождается, как только
+ * обход ее поддерева завершен. В памяти находятся только листинги директорий на пути от корня
+ * к текущей и листинги, прочитанные с упреждением, а не все файлы дерева.
+ * <p>
+ * Символьные ссылки на файлы возвращаются как файлы (как {@link Files#isRegularFile(Path, LinkOption...)}).
+ * Ссылки на директории обходятся только если это включено. Повторный вход в директорию исключается
+ * по ключу файла ({@link BasicFileAttributes#fileKey()}) в два этапа: задача не запускает обход
+ * директории, совпадающей с одним из своих предков (петля ссылок), а вызывающий поток пропускает
+ * директорию, уже встреченную раньше в порядке обхода (вторая ссылка на то же поддерево). Так решение,
+ * какой из путей к директории обходится, не зависит от порядка завершения задач.
+ * Нечитаемые поддиректории пропускаются с предупреждением.
+ */
+public class ParallelWalker {
+
+    /**
+     * Получатель найденных файлов. Вызывается в потоке, запустившем обход.
+     */
+    public interface Visitor {
+        /**
+         * @param file путь к файлу.
+         * @param size размер файла в байтах.
+         * @return false, чтобы прекратить обход.
+         * @throws IOException ошибка обработки файла; обход прекращается и ошибка передается вызывающему.
+         */
+        boolean visitFile(Path file, long size) throws IOException;
+    }
+
+    /** Количество листингов на поток, которые могут быть запущены или прочитаны с упреждением. */
+    static final int LISTINGS_PER_THREAD = 16;
+
+    /** Элемент директории: файл с размером или задача поддиректории. */
+    private static class Entry {
+        final Path path;
+        final long size;
+        /** Задача поддиректории; обнуляется, когда вызывающий поток забрал ее результат. */
+        DirectoryTask directory;
+
+        Entry(Path path, long size, DirectoryTask directory) {
+            this.path = path;
+            this.size = size;
+            this.directory = directory;
+        }
+    }
+
+    /** Ключ директории в цепочке предков задачи. */
+    private static class Ancestor {
+        final Object key;
+        final Ancestor parent;
+
+        Ancestor(Object key, Ancestor parent) {
+            this.key = key;
+            this.parent = parent;
+        }
+
+        boolean contains(Object key) {
+            for (Ancestor ancestor = this; ancestor != null; ancestor = ancestor.parent) {
+                if (key.equals(ancestor.key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final int parallelism;
+    private final boolean followLinks;
+
+    /**
+     * @param parallelism количество потоков, одновременно читающих директории.
+     * @param followLinks обходить ли директории, на которые указывают символьные ссылки.
+     */
+    public ParallelWalker(int parallelism, boolean followLinks) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        this.followLinks = followLinks;
+    }
+
+    /**
+     * Обходит дерево и передает получателю все обычные файлы.
+     *
+     * @param root    корневая директория (или файл).
+     * @param visitor получатель файлов.
+     * @throws IOException если корень не читается или получатель завершился ошибкой.
+     */
+    public void walk(Path root, Visitor visitor) throws IOException {
+        BasicFileAttributes rootAttributes = Files.readAttributes(root, BasicFileAttributes.class);
+        if (!rootAttributes.isDirectory()) {
+            if (rootAttributes.isRegularFile()) {
+                visitor.visitFile(root, rootAttributes.size());
+            }
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("dedup-walk-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        try {
+            Set<Object> visited = new HashSet<>();
+            Ancestor rootKey = null;
+            if (rootAttributes.fileKey() != null) {
+                visited.add(rootAttributes.fileKey());
+                rootKey = new Ancestor(rootAttributes.fileKey(), null);
+            }
+            DirectoryTask rootTask = new DirectoryTask(root, null, rootKey);
+            List<Entry> rootEntries = pool.invoke(rootTask);
+            if (rootTask.error != null) {
+                throw rootTask.error;
+            }
+
+            // Обход в глубину в порядке имен. Незапущенные задачи поддиректорий ждут в очереди:
+            // задачи только что открытой директории ставятся в начало, так как обход дойдет до них раньше
+            int limit = parallelism * LISTINGS_PER_THREAD;
+            Deque<DirectoryTask> waiting = new ArrayDeque<>();
+            Deque<Iterator<Entry>> stack = new ArrayDeque<>();
+            stack.push(rootEntries.iterator());
+            enqueue(rootEntries, waiting);
+            int pending = startListings(pool, waiting, 0, limit);
+            while (!stack.isEmpty()) {
+                Iterator<Entry> entries = stack.peek();
+                if (!entries.hasNext()) {
+                    stack.pop();
+                    continue;
+                }
+                Entry entry = entries.next();
+                DirectoryTask task = entry.directory;
+                if (task == null) {
+                    if (!visitor.visitFile(entry.path, entry.size)) {
+                        return;
+                    }
+                    continue;
+                }
+                // Дальше задача доступна только из этого метода, и ее листинг освобождается вместе с итератором
+                entry.directory = null;
+                if (task.started) {
+                    pending--;
+                } else {
+                    // Обычно задача стоит в начале очереди: ее директория следующая в порядке обхода
+                    waiting.removeFirstOccurrence(task);
+                }
+                if (task.key != null && !visited.add(task.key)) {
+                    // Поддерево уже обойдено по другому пути
+                    task.cancel(false);
+                } else {
+                    if (!task.started) {
+                        task.started = true;
+                        pool.execute(task);
+                    }
+                    List<Entry> children = task.join();
+                    if (task.error != null) {
+                        System.err.println("Could not list directory: " + entry.path + ". Skipping directory.");
+                    }
+                    stack.push(children.iterator());
+                    enqueue(children, waiting);
+                }
+                pending = startListings(pool, waiting, pending, limit);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Ставит задачи поддиректорий в начало очереди ожидания, сохраняя их порядок.
+     */
+    private static void enqueue(List<Entry> entries, Deque<DirectoryTask> waiting) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            if (entries.get(i).directory != null) {
+                waiting.addFirst(entries.get(i).directory);
+            }
+        }
+    }
+
+    /**
+     * Запускает ожидающие задачи, пока количество запущенных и не забранных листингов меньше предела.
+     *
+     * @return новое количество запущенных и не забранных листингов.
+     */
+    private static int startListings(ForkJoinPool pool, Deque<DirectoryTask> waiting, int pending, int limit) {
+        while (pending < limit && !waiting.isEmpty()) {
+            DirectoryTask task = waiting.pollFirst();
+            task.started = true;
+            pool.execute(task);
+            pending++;
+        }
+        return pending;
+    }
+
+    /**
+     * Чтение одной директории. Задачу запускает и забирает ее результат вызывающий поток.
+     */
+    private class DirectoryTask extends RecursiveTask<List<Entry>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        /** Ключ файла директории или null, если файловая система его не предоставляет. */
+        final Object key;
+        /** Задача запущена (поле используется только вызывающим потоком). */
+        boolean started;
+        /** Ключи директорий от корня до этой включительно. */
+        private final Ancestor ancestors;
+        /** Ошибка чтения директории (результат в этом случае пуст). */
+        IOException error;
+
+        DirectoryTask(Path directory, Object key, Ancestor ancestors) {
+            this.directory = directory;
+            this.key = key;
+            this.ancestors = ancestors;
+        }
+
+        @Override
+        protected List<Entry> compute() {
+            List<Entry> entries = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path child : stream) {
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                        boolean link = attributes.isSymbolicLink();
+                        if (link) {
+                            attributes = Files.readAttributes(child, BasicFileAttributes.class);
+                        }
+                        if (attributes.isDirectory() && (!link || followLinks)) {
+                            // Директория, совпадающая с предком, образует петлю
+                            Object childKey = attributes.fileKey();
+                            if (childKey == null) {
+                                // Без ключа петлю не обнаружить, поэтому ссылки в таком случае не обходятся
+                                if (!link) {
+                                    entries.add(new Entry(child, 0, new DirectoryTask(child, null, ancestors)));
+                                }
+                            } else if (ancestors == null || !ancestors.contains(childKey)) {
+                                entries.add(new Entry(child, 0,
+                                        new DirectoryTask(child, childKey, new Ancestor(childKey, ancestors))));
+                            }
+                        } else if (attributes.isRegularFile()) {
+                            entries.add(new Entry(child, attributes.size(), null));
+                        }
+                    } catch (IOException e) {
+                        // Битая ссылка или файл, удаленный во время обхода
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                error = e instanceof IOException ? (IOException) e : new IOException(e);
+                return new ArrayList<>();
+            }
+            entries.sort(Comparator.comparing(entry -> entry.path.getFileName().toString()));
+            return entries;
+        }
+    }
+}
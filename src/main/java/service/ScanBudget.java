@@ -0,0 +1,148 @@
+package service;
+
+import java.time.Duration;
+
+/**
+ * Бюджет сканирования: ограничение по времени, по объему прочитанных данных или по обоим сразу.
+ * <p>
+ * Сканер проверяет бюджет перед чтением каждого файла-кандидата. Когда бюджет исчерпан,
+ * новые файлы больше не читаются: сканирование завершается штатно и возвращает только
+ * полностью проверенные группы, а непрочитанные кандидаты учитываются в сводке
+ * ({@link #getUnexploredFiles()}, {@link #getUnexploredBytes()}).
+ * Файлы, чтение которых уже началось, дочитываются, поэтому время может быть превышено
+ * на время хеширования нескольких файлов. Ограничение по объему не превышается никогда.
+ * <p>
+ * Бюджет заново отсчитывается при каждом сканировании. Объект не потокобезопасен
+ * и не должен использоваться двумя сканированиями одновременно.
+ */
+public class ScanBudget {
+
+    private final long maxNanos;
+    private final long maxBytes;
+
+    private long startNanos;
+    private boolean exhausted;
+    private boolean walkComplete;
+    private long bytesRead;
+    private int unexploredFiles;
+    private long unexploredBytes;
+
+    /**
+     * @param maxTime  максимальная длительность сканирования или null без ограничения.
+     * @param maxBytes максимальный объем читаемых данных или {@link Long#MAX_VALUE} без ограничения.
+     */
+    public ScanBudget(Duration maxTime, long maxBytes) {
+        if ((maxTime != null && maxTime.isNegative()) || maxBytes < 0) {
+            throw new IllegalArgumentException("Budget must not be negative");
+        }
+        this.maxNanos = maxTime != null ? saturatedNanos(maxTime) : Long.MAX_VALUE;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Бюджет только по времени.
+     */
+    public static ScanBudget ofTime(Duration maxTime) {
+        return new ScanBudget(maxTime, Long.MAX_VALUE);
+    }
+
+    /**
+     * Бюджет только по объему прочитанных данных.
+     */
+    public static ScanBudget ofBytes(long maxBytes) {
+        return new ScanBudget(null, maxBytes);
+    }
+
+    /**
+     * Начинает отсчет бюджета для нового сканирования.
+     */
+    void start() {
+        startNanos = System.nanoTime();
+        exhausted = false;
+        walkComplete = true;
+        bytesRead = 0;
+        unexploredFiles = 0;
+        unexploredBytes = 0;
+    }
+
+    /**
+     * Резервирует чтение файла. Если бюджет исчерпан, файл учитывается как непроверенный.
+     *
+     * @param size размер файла.
+     * @return true, если файл можно читать.
+     */
+    boolean tryRead(long size) {
+        if (!checkExhausted() && bytesRead + size > maxBytes) {
+            exhausted = true;
+        }
+        if (exhausted) {
+            unexploredFiles++;
+            unexploredBytes += size;
+            return false;
+        }
+        bytesRead += size;
+        return true;
+    }
+
+    /**
+     * Отмечает, что обход дерева был остановлен из-за исчерпания бюджета.
+     */
+    void walkStopped() {
+        walkComplete = false;
+    }
+
+    /**
+     * Проверяет бюджет во время сканирования.
+     *
+     * @return true, если время или объем чтения исчерпаны.
+     */
+    boolean checkExhausted() {
+        if (!exhausted && System.nanoTime() - startNanos > maxNanos) {
+            exhausted = true;
+        }
+        return exhausted;
+    }
+
+    /**
+     * @return true, если последнее сканирование было остановлено из-за исчерпания бюджета.
+     */
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * @return false, если бюджет закончился еще во время обхода и часть дерева не была просмотрена.
+     */
+    public boolean isWalkComplete() {
+        return walkComplete;
+    }
+
+    /**
+     * @return объем данных, зарезервированный для чтения в последнем сканировании.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return количество файлов-кандидатов (с совпавшим размером), которые не были прочитаны.
+     */
+    public int getUnexploredFiles() {
+        return unexploredFiles;
+    }
+
+    /**
+     * @return суммарный размер непрочитанных файлов-кандидатов.
+     */
+    public long getUnexploredBytes() {
+        return unexploredBytes;
+    }
+
+    private static long saturatedNanos(Duration duration) {
+        try {
+            return duration.toNanos();
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package service;
+
+import model.FileInfo;
+import util.MappedFile;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Компактный двоичный индекс результатов сканирования.
+ * <p>
+ * Индекс сохраняется после сканирования и позволяет показать результаты повторно,
+ * не сканируя диск и не загружая все записи в кучу: файл отображается в память
+ * ({@link MappedFile}), а записи читаются по номеру только тогда, когда они нужны.
+ * <p>
+ * Формат файла (все числа big-endian):
+ * <pre>
+ * заголовок (64 байта):
+ *   magic "DDUPIDX1", version:int, recordSize:int, count:long,
+ *   recordsOffset:long, pathOrderOffset:long, stringsOffset:long, createdMillis:long,
+ *   rootLength:int, algorithmLength:int
+ * записи (count * 48 байт), упорядочены по (размер, хеш, путь):
+ *   size:long, lastModified:long, pathOffset:long, hashOffset:long,
+ *   groupId:int, pathLength:int, hashLength:int, flags:int
+ * порядок по путям (count * 4 байта): номера записей, упорядоченные по пути
+ * строки: корень, алгоритм, затем пути и хеши в UTF-8 без разделителей
+ * </pre>
+ * Упорядоченность записей по (размер, хеш) делает группы дубликатов непрерывными,
+ * а порядок по путям позволяет сопоставлять два индекса слиянием без сортировки.
+ */
+public class ScanIndex implements Closeable {
+
+    private static final byte[] MAGIC = "DDUPIDX1".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 48;
+
+    /** Флаг записи: файл был отмечен для удаления. */
+    private static final int FLAG_SELECTED = 1;
+    /** Флаг записи: это запись zip- или jar-архива. */
+    private static final int FLAG_ARCHIVE_ENTRY = 2;
+    /** Флаг записи: это директория из группы одинаковых директорий. */
+    private static final int FLAG_DIRECTORY = 4;
+
+    /** Порядок записей в индексе. */
+    private static final Comparator<FileInfo> RECORD_ORDER = Comparator.comparingLong(FileInfo::getSize)
+            .thenComparing(FileInfo::getHash)
+            .thenComparing(info -> info.getPath().toString());
+
+    private final MappedFile file;
+    private final int count;
+    private final long recordsOffset;
+    private final long pathOrderOffset;
+    private final long createdMillis;
+    private final Path root;
+    private final String algorithm;
+
+    private ScanIndex(MappedFile file) throws IOException {
+        this.file = file;
+        byte[] magic = new byte[MAGIC.length];
+        if (file.size() < HEADER_SIZE) {
+            throw new IOException("Scan index is truncated");
+        }
+        file.get(0, magic, 0, magic.length);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a scan index file");
+        }
+        int version = file.getInt(8);
+        if (version != VERSION || file.getInt(12) != RECORD_SIZE) {
+            throw new IOException("Unsupported scan index version: " + version);
+        }
+        long records = file.getLong(16);
+        this.recordsOffset = file.getLong(24);
+        this.pathOrderOffset = file.getLong(32);
+        long stringsOffset = file.getLong(40);
+        this.createdMillis = file.getLong(48);
+        int rootLength = file.getInt(56);
+        int algorithmLength = file.getInt(60);
+        if (records < 0 || records > Integer.MAX_VALUE
+                || stringsOffset + rootLength + algorithmLength > file.size()) {
+            throw new IOException("Scan index is corrupted");
+        }
+        this.count = (int) records;
+        this.root = Path.of(readString(stringsOffset, rootLength));
+        this.algorithm = readString(stringsOffset + rootLength, algorithmLength);
+    }
+
+    /**
+     * Записывает индекс результатов сканирования.
+     * Файл сначала пишется во временный файл рядом с целевым и затем переименовывается,
+     * поэтому прерванная запись не портит предыдущий индекс.
+     * <p>
+     * Открытый индекс остается отображенным в память до сборки мусора, а в Windows отображенный файл
+     * нельзя заменить. В этом случае новый индекс сохраняется рядом как ожидающий ({@code .pending})
+     * и занимает место прежнего при следующем открытии ({@link #open(Path)}).
+     *
+     * @param indexFile путь к файлу индекса.
+     * @param root      корневая директория сканирования.
+     * @param algorithm название алгоритма хеширования (хеши разных алгоритмов несравнимы).
+     * @param files     найденные дубликаты.
+     * @throws IOException если не удалось записать файл.
+     */
+    public static void write(Path indexFile, Path root, String algorithm, List<FileInfo> files) throws IOException {
+        FileInfo[] records = files.toArray(new FileInfo[0]);
+        Arrays.sort(records, RECORD_ORDER);
+        int count = records.length;
+
+        byte[][] paths = new byte[count][];
+        byte[][] hashes = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            paths[i] = records[i].getPath().toString().getBytes(StandardCharsets.UTF_8);
+            hashes[i] = records[i].getHash().getBytes(StandardCharsets.UTF_8);
+        }
+        Integer[] byPath = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            byPath[i] = i;
+        }
+        Arrays.sort(byPath, Comparator.comparing(i -> records[i].getPath().toString()));
+
+        byte[] rootBytes = root.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+        byte[] algorithmBytes = algorithm.getBytes(StandardCharsets.UTF_8);
+        long recordsOffset = HEADER_SIZE;
+        long pathOrderOffset = recordsOffset + (long) count * RECORD_SIZE;
+        long stringsOffset = pathOrderOffset + (long) count * Integer.BYTES;
+
+        Path parent = indexFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, "scan-", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.write(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(RECORD_SIZE);
+                out.writeLong(count);
+                out.writeLong(recordsOffset);
+                out.writeLong(pathOrderOffset);
+                out.writeLong(stringsOffset);
+                out.writeLong(System.currentTimeMillis());
+                out.writeInt(rootBytes.length);
+                out.writeInt(algorithmBytes.length);
+
+                // Номер группы определяется порядком записей: новая группа начинается при смене (размер, хеш)
+                long stringOffset = stringsOffset + rootBytes.length + algorithmBytes.length;
+                int groupId = 0;
+                for (int i = 0; i < count; i++) {
+                    FileInfo info = records[i];
+                    if (i == 0 || info.getSize() != records[i - 1].getSize()
+                            || !info.getHash().equals(records[i - 1].getHash())) {
+                        groupId++;
+                    }
+                    out.writeLong(info.getSize());
+                    out.writeLong(info.getLastModified());
+                    out.writeLong(stringOffset);
+                    out.writeLong(stringOffset + paths[i].length);
+                    out.writeInt(groupId);
+                    out.writeInt(paths[i].length);
+                    out.writeInt(hashes[i].length);
+                    out.writeInt((info.isSelected() ? FLAG_SELECTED : 0) | (info.isArchiveEntry() ? FLAG_ARCHIVE_ENTRY : 0)
+                            | (info.isDirectory() ? FLAG_DIRECTORY : 0));
+                    stringOffset += paths[i].length + hashes[i].length;
+                }
+                for (Integer record : byPath) {
+                    out.writeInt(record);
+                }
+                out.write(rootBytes);
+                out.write(algorithmBytes);
+                for (int i = 0; i < count; i++) {
+                    out.write(paths[i]);
+                    out.write(hashes[i]);
+                }
+            }
+            try {
+                Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.deleteIfExists(pendingFile(indexFile));
+            } catch (FileSystemException e) {
+                // Прежний индекс еще отображен в память
+                Files.move(temp, pendingFile(indexFile), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Открывает индекс, отображая его в память. Записи не читаются до первого обращения.
+     * Если рядом лежит ожидающий индекс, записанный, пока прежний был открыт, он сначала занимает
+     * место прежнего; если прежний все еще нельзя заменить, открывается ожидающий.
+     *
+     * @param indexFile путь к файлу индекса.
+     * @return открытый индекс.
+     * @throws IOException если файл не удалось прочитать или он не является индексом.
+     */
+    public static ScanIndex open(Path indexFile) throws IOException {
+        Path pending = pendingFile(indexFile);
+        if (Files.exists(pending)) {
+            try {
+                Files.move(pending, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileSystemException e) {
+                return new ScanIndex(MappedFile.open(pending));
+            }
+        }
+        return new ScanIndex(MappedFile.open(indexFile));
+    }
+
+    /**
+     * @return путь ожидающего индекса, записанного, пока индекс по основному пути нельзя было заменить.
+     */
+    static Path pendingFile(Path indexFile) {
+        return indexFile.resolveSibling(indexFile.getFileName() + ".pending");
+    }
+
+    /** @return количество записей. */
+    public int size() {
+        return count;
+    }
+
+    /** @return корневая директория сканирования. */
+    public Path getRoot() {
+        return root;
+    }
+
+    /** @return название алгоритма хеширования. */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /** @return время создания индекса (миллисекунды с начала эпохи). */
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    /** @return размер файла записи. */
+    public long fileSize(int record) {
+        return file.getLong(recordOffset(record));
+    }
+
+    /** @return время последнего изменения файла записи. */
+    public long lastModified(int record) {
+        return file.getLong(recordOffset(record) + 8);
+    }
+
+    /** @return путь файла записи. */
+    public String path(int record) {
+        long offset = recordOffset(record);
+        return readString(file.getLong(offset + 16), file.getInt(offset + 36));
+    }
+
+    /** @return хеш файла записи. */
+    public String hash(int record) {
+        long offset = recordOffset(record);
+        return readString(file.getLong(offset + 24), file.getInt(offset + 40));
+    }
+
+    /** @return номер группы дубликатов записи (группы нумеруются с 1 в порядке записей). */
+    public int groupId(int record) {
+        return file.getInt(recordOffset(record) + 32);
+    }
+
+    /** @return true, если файл был отмечен для удаления. */
+    public boolean isSelected(int record) {
+        return (file.getInt(recordOffset(record) + 44) & FLAG_SELECTED) != 0;
+    }
+
+    /** @return true, если запись описывает запись zip- или jar-архива. */
+    public boolean isArchiveEntry(int record) {
+        return (file.getInt(recordOffset(record) + 44) & FLAG_ARCHIVE_ENTRY) != 0;
+    }
+
+    /** @return true, если запись описывает директорию из группы одинаковых директорий. */
+    public boolean isDirectory(int record) {
+        return (file.getInt(recordOffset(record) + 44) & FLAG_DIRECTORY) != 0;
+    }
+
+    /**
+     * Возвращает номер записи, стоящей на указанной позиции в порядке сортировки по путям.
+     *
+     * @param position позиция в порядке путей (от 0 до {@link #size()}).
+     * @return номер записи.
+     */
+    public int recordByPath(int position) {
+        checkIndex(position);
+        return file.getInt(pathOrderOffset + (long) position * Integer.BYTES);
+    }
+
+    /**
+     * Создает объект {@link FileInfo} для записи.
+     *
+     * @param record номер записи.
+     * @return новый объект с данными записи.
+     */
+    public FileInfo toFileInfo(int record) {
+        FileInfo info = new FileInfo(Path.of(path(record)), fileSize(record), hash(record));
+        info.setLastModified(lastModified(record));
+        info.setGroupId(groupId(record));
+        info.setSelected(isSelected(record));
+        info.setArchiveEntry(isArchiveEntry(record));
+        info.setDirectory(isDirectory(record));
+        return info;
+    }
+
+    @Override
+    public void close() {
+        file.close();
+    }
+
+    private long recordOffset(int record) {
+        checkIndex(record);
+        return recordsOffset + (long) record * RECORD_SIZE;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + count);
+        }
+    }
+
+    private String readString(long offset, int length) {
+        byte[] bytes = new byte[length];
+        file.get(offset, bytes, 0, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
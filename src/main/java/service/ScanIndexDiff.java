@@ -0,0 +1,311 @@
+package service;
+
+/**
+ * Сравнение двух сохраненных индексов результатов сканирования ({@link ScanIndex}).
+ * <p>
+ * Оба индекса уже упорядочены, поэтому сравнение выполняется потоковым слиянием
+ * без сортировки и без загрузки записей в память:
+ * <ul>
+ *     <li>группы дубликатов сопоставляются по ключу (размер, хеш) в порядке записей; в группах,
+ *     которые есть в обоих индексах, состав сравнивается по путям (внутри группы записи упорядочены по пути);</li>
+ *     <li>файлы сопоставляются по пути в порядке, сохраненном в индексе.</li>
+ * </ul>
+ * Индекс содержит только файлы-дубликаты, поэтому изменившимся считается файл,
+ * который присутствует в обоих индексах, но с другим размером, хешем или временем изменения,
+ * а файл, который есть только в одном индексе, появился среди дубликатов или перестал быть дубликатом.
+ */
+public class ScanIndexDiff {
+
+    /**
+     * Получатель различий. Записи передаются номерами, данные читаются из индексов по необходимости.
+     */
+    public interface Listener {
+        /**
+         * Группа дубликатов есть только в новом индексе.
+         *
+         * @param index новый индекс.
+         * @param from  первая запись группы.
+         * @param to    запись, следующая за последней записью группы.
+         */
+        default void groupAdded(ScanIndex index, int from, int to) {
+        }
+
+        /**
+         * Группа дубликатов есть только в старом индексе (дубликаты устранены).
+         *
+         * @param index старый индекс.
+         * @param from  первая запись группы.
+         * @param to    запись, следующая за последней записью группы.
+         */
+        default void groupResolved(ScanIndex index, int from, int to) {
+        }
+
+        /**
+         * Файл есть в обоих индексах, но его размер, хеш или время изменения отличаются.
+         *
+         * @param oldRecord запись в старом индексе.
+         * @param newRecord запись в новом индексе.
+         */
+        default void fileChanged(int oldRecord, int newRecord) {
+        }
+
+        /**
+         * Файл вошел в группу, которая есть в обоих индексах.
+         *
+         * @param newRecord запись в новом индексе.
+         */
+        default void memberAdded(int newRecord) {
+        }
+
+        /**
+         * Файл вышел из группы, которая есть в обоих индексах.
+         *
+         * @param oldRecord запись в старом индексе.
+         */
+        default void memberRemoved(int oldRecord) {
+        }
+
+        /**
+         * Файл есть только в новом индексе (стал дубликатом).
+         *
+         * @param newRecord запись в новом индексе.
+         */
+        default void fileAdded(int newRecord) {
+        }
+
+        /**
+         * Файл есть только в старом индексе (больше не дубликат, удален или перемещен).
+         *
+         * @param oldRecord запись в старом индексе.
+         */
+        default void fileRemoved(int oldRecord) {
+        }
+    }
+
+    /**
+     * Итоги сравнения.
+     */
+    public static class Summary implements Listener {
+        private int addedGroups;
+        private int resolvedGroups;
+        private int changedFiles;
+        private int addedMembers;
+        private int removedMembers;
+        private int addedFiles;
+        private int removedFiles;
+        /** Объем, который занимают лишние копии в новых группах. */
+        private long addedWastedBytes;
+        /** Объем лишних копий в устраненных группах. */
+        private long resolvedWastedBytes;
+
+        @Override
+        public void groupAdded(ScanIndex index, int from, int to) {
+            addedGroups++;
+            addedWastedBytes += index.fileSize(from) * (to - from - 1);
+        }
+
+        @Override
+        public void groupResolved(ScanIndex index, int from, int to) {
+            resolvedGroups++;
+            resolvedWastedBytes += index.fileSize(from) * (to - from - 1);
+        }
+
+        @Override
+        public void fileChanged(int oldRecord, int newRecord) {
+            changedFiles++;
+        }
+
+        @Override
+        public void memberAdded(int newRecord) {
+            addedMembers++;
+        }
+
+        @Override
+        public void memberRemoved(int oldRecord) {
+            removedMembers++;
+        }
+
+        @Override
+        public void fileAdded(int newRecord) {
+            addedFiles++;
+        }
+
+        @Override
+        public void fileRemoved(int oldRecord) {
+            removedFiles++;
+        }
+
+        public int getAddedGroups() { return addedGroups; }
+
+        public int getResolvedGroups() { return resolvedGroups; }
+
+        public int getChangedFiles() { return changedFiles; }
+
+        public int getAddedMembers() { return addedMembers; }
+
+        public int getRemovedMembers() { return removedMembers; }
+
+        public int getAddedFiles() { return addedFiles; }
+
+        public int getRemovedFiles() { return removedFiles; }
+
+        public long getAddedWastedBytes() { return addedWastedBytes; }
+
+        public long getResolvedWastedBytes() { return resolvedWastedBytes; }
+    }
+
+    private final ScanIndex oldIndex;
+    private final ScanIndex newIndex;
+
+    /**
+     * @param oldIndex предыдущий индекс.
+     * @param newIndex текущий индекс.
+     * @throws IllegalArgumentException если индексы построены разными алгоритмами хеширования.
+     */
+    public ScanIndexDiff(ScanIndex oldIndex, ScanIndex newIndex) {
+        if (!oldIndex.getAlgorithm().equals(newIndex.getAlgorithm())) {
+            throw new IllegalArgumentException("Indexes use different hash algorithms: "
+                    + oldIndex.getAlgorithm() + " and " + newIndex.getAlgorithm());
+        }
+        this.oldIndex = oldIndex;
+        this.newIndex = newIndex;
+    }
+
+    /**
+     * Выполняет сравнение и возвращает итоги.
+     *
+     * @return итоги сравнения.
+     */
+    public Summary compare() {
+        Summary summary = new Summary();
+        compare(summary);
+        return summary;
+    }
+
+    /**
+     * Выполняет сравнение, передавая каждое различие получателю.
+     *
+     * @param listener получатель различий.
+     */
+    public void compare(Listener listener) {
+        compareGroups(listener);
+        compareFiles(listener);
+    }
+
+    /**
+     * Слияние групп по ключу (размер, хеш).
+     */
+    private void compareGroups(Listener listener) {
+        int oldFrom = 0;
+        int newFrom = 0;
+        while (oldFrom < oldIndex.size() || newFrom < newIndex.size()) {
+            int oldTo = oldFrom < oldIndex.size() ? groupEnd(oldIndex, oldFrom) : oldFrom;
+            int newTo = newFrom < newIndex.size() ? groupEnd(newIndex, newFrom) : newFrom;
+            int order;
+            if (oldFrom == oldIndex.size()) {
+                order = 1;
+            } else if (newFrom == newIndex.size()) {
+                order = -1;
+            } else {
+                order = compareKeys(oldIndex, oldFrom, newIndex, newFrom);
+            }
+
+            if (order < 0) {
+                listener.groupResolved(oldIndex, oldFrom, oldTo);
+                oldFrom = oldTo;
+            } else if (order > 0) {
+                listener.groupAdded(newIndex, newFrom, newTo);
+                newFrom = newTo;
+            } else {
+                compareMembers(listener, oldFrom, oldTo, newFrom, newTo);
+                oldFrom = oldTo;
+                newFrom = newTo;
+            }
+        }
+    }
+
+    /**
+     * Слияние состава группы, которая есть в обоих индексах, по путям.
+     */
+    private void compareMembers(Listener listener, int oldFrom, int oldTo, int newFrom, int newTo) {
+        int oldRecord = oldFrom;
+        int newRecord = newFrom;
+        while (oldRecord < oldTo || newRecord < newTo) {
+            int order;
+            if (oldRecord == oldTo) {
+                order = 1;
+            } else if (newRecord == newTo) {
+                order = -1;
+            } else {
+                order = oldIndex.path(oldRecord).compareTo(newIndex.path(newRecord));
+            }
+            if (order < 0) {
+                listener.memberRemoved(oldRecord++);
+            } else if (order > 0) {
+                listener.memberAdded(newRecord++);
+            } else {
+                oldRecord++;
+                newRecord++;
+            }
+        }
+    }
+
+    /**
+     * Слияние файлов в порядке путей.
+     */
+    private void compareFiles(Listener listener) {
+        int oldPosition = 0;
+        int newPosition = 0;
+        while (oldPosition < oldIndex.size() || newPosition < newIndex.size()) {
+            int oldRecord = oldPosition < oldIndex.size() ? oldIndex.recordByPath(oldPosition) : -1;
+            int newRecord = newPosition < newIndex.size() ? newIndex.recordByPath(newPosition) : -1;
+            int order;
+            if (oldRecord < 0) {
+                order = 1;
+            } else if (newRecord < 0) {
+                order = -1;
+            } else {
+                order = oldIndex.path(oldRecord).compareTo(newIndex.path(newRecord));
+            }
+            if (order < 0) {
+                listener.fileRemoved(oldRecord);
+                oldPosition++;
+            } else if (order > 0) {
+                listener.fileAdded(newRecord);
+                newPosition++;
+            } else {
+                if (oldIndex.fileSize(oldRecord) != newIndex.fileSize(newRecord)
+                        || oldIndex.lastModified(oldRecord) != newIndex.lastModified(newRecord)
+                        || !oldIndex.hash(oldRecord).equals(newIndex.hash(newRecord))) {
+                    listener.fileChanged(oldRecord, newRecord);
+                }
+                oldPosition++;
+                newPosition++;
+            }
+        }
+    }
+
+    /**
+     * Возвращает запись, следующую за последней записью группы, начинающейся с {@code from}.
+     * Номера групп присваиваются индексом последовательно, поэтому граница определяется по ним.
+     */
+    private static int groupEnd(ScanIndex index, int from) {
+        int groupId = index.groupId(from);
+        int to = from + 1;
+        while (to < index.size() && index.groupId(to) == groupId) {
+            to++;
+        }
+        return to;
+    }
+
+    /**
+     * Сравнивает ключи (размер, хеш) в том же порядке, в котором упорядочены записи индекса.
+     */
+    private static int compareKeys(ScanIndex a, int recordA, ScanIndex b, int recordB) {
+        int bySize = Long.compare(a.fileSize(recordA), b.fileSize(recordB));
+        if (bySize != 0) {
+            return bySize;
+        }
+        return a.hash(recordA).compareTo(b.hash(recordB));
+    }
+}
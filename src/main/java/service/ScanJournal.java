@@ -0,0 +1,365 @@
+package service;
+
+import util.CustomHashMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Журнал контрольных точек сканирования, позволяющий продолжить прерванное сканирование.
+ * <p>
+ * Журнал — файл, в который только дописываются записи:
+ * <ul>
+ *     <li>найденный файл и его размер;</li>
+ *     <li>полностью обойденная директория (все файлы ее поддерева уже записаны);</li>
+ *     <li>вычисленный хеш файла вместе с размером и временем изменения;</li>
+ *     <li>полностью захешированная группа одного размера.</li>
+ * </ul>
+ * Каждая запись снабжена длиной, поэтому недописанный "хвост" после аварийного завершения
+ * JVM распознается и отбрасывается. Буфер сбрасывается на диск при записи и перед чтением
+ * очередного файла, если с прошлого сброса прошло больше секунды, так что при повторном запуске
+ * повторяется только работа последних секунд (и хеширование файла, читавшегося в момент прерывания).
+ * <p>
+ * Хеш из журнала используется повторно, только если размер и время изменения файла не изменились.
+ * Время изменения запоминается до чтения файла ({@link #hashStarted(Path)}): файл, измененный
+ * во время хеширования, получит в журнале прежнее время и будет захеширован заново.
+ * <p>
+ * Файл, найденный в директории, обход которой прервался, при повторном обходе записывается еще раз;
+ * при загрузке учитывается только последняя запись каждого пути.
+ */
+class ScanJournal implements Closeable {
+
+    private static final int MAGIC = 0x444A524E; // "DJRN"
+    private static final byte HEADER = 1;
+    private static final byte FILE = 2;
+    private static final byte DIRECTORY_DONE = 3;
+    private static final byte DIGEST = 4;
+    private static final byte GROUP_DONE = 5;
+
+    /** Максимальный интервал между сбросами буфера журнала. */
+    private static final long FLUSH_INTERVAL_NANOS = 1_000_000_000L;
+
+    /** Файл, найденный при обходе. */
+    static class FileRecord {
+        final Path file;
+        final long size;
+
+        FileRecord(Path file, long size) {
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    /** Хеш файла, сохраненный в журнале. */
+    private static class DigestRecord {
+        final long size;
+        final long lastModified;
+        final String hash;
+
+        DigestRecord(long size, long lastModified, String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    private final Path journalFile;
+    private final FileChannel channel;
+    private final DataOutputStream out;
+    private long lastFlush = System.nanoTime();
+    /** Время изменения файлов, чтение которых начато, до записи их хешей. */
+    private final CustomHashMap<Path, Long> modifiedBeforeHashing = new CustomHashMap<>();
+
+    /** Полностью обойденные директории. */
+    private final CustomHashMap<Path, Boolean> doneDirectories = new CustomHashMap<>();
+    /** Файлы из журнала по самой верхней обойденной директории, в которой они находятся. */
+    private final CustomHashMap<Path, List<FileRecord>> filesByDoneDirectory = new CustomHashMap<>();
+    /** Хеши из журнала по пути файла. После загрузки только читается, поэтому доступен из любых потоков. */
+    private final CustomHashMap<Path, DigestRecord> digests = new CustomHashMap<>();
+    /** Полностью захешированные группы (по размеру). */
+    private final CustomHashMap<Long, Boolean> doneGroups = new CustomHashMap<>();
+    /** Количество файлов, восстановленных из журнала. */
+    private int restoredFiles;
+
+    private ScanJournal(Path journalFile, FileChannel channel) {
+        this.journalFile = journalFile;
+        this.channel = channel;
+        this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    /**
+     * Открывает журнал. Если журнал существует и создан для того же корня и тех же настроек хеширования,
+     * его содержимое загружается; иначе журнал начинается заново.
+     *
+     * @param journalFile   файл журнала.
+     * @param root          корневая директория сканирования.
+     * @param configuration описание настроек, влияющих на значения хешей.
+     * @return открытый журнал.
+     * @throws IOException если журнал не удалось прочитать или создать.
+     */
+    static ScanJournal open(Path journalFile, Path root, String configuration) throws IOException {
+        Path parent = journalFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        FileChannel channel = FileChannel.open(journalFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ScanJournal journal = new ScanJournal(journalFile, channel);
+        try {
+            String expected = root.toAbsolutePath() + "\n" + configuration;
+            List<FileRecord> files = new ArrayList<>();
+            long validLength = journal.load(expected, files);
+            if (validLength < 0) {
+                // Журнал другого сканирования или поврежденный заголовок: начинаем заново
+                channel.truncate(0);
+                channel.position(0);
+                journal.writeHeader(expected);
+            } else {
+                // Отбрасываем недописанный хвост и продолжаем запись после последней целой записи
+                channel.truncate(validLength);
+                channel.position(validLength);
+                journal.indexFiles(files);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return journal;
+    }
+
+    /**
+     * @return true, если поддерево директории было полностью обойдено до прерывания.
+     */
+    boolean isDirectoryDone(Path directory) {
+        return doneDirectories.get(directory) != null;
+    }
+
+    /**
+     * Возвращает файлы поддерева полностью обойденной директории в порядке, в котором они были найдены.
+     */
+    List<FileRecord> restoredFiles(Path directory) {
+        List<FileRecord> files = filesByDoneDirectory.get(directory);
+        return files != null ? files : new ArrayList<>();
+    }
+
+    /**
+     * @return количество файлов, восстановленных из журнала без повторного обхода.
+     */
+    int getRestoredFiles() {
+        return restoredFiles;
+    }
+
+    /**
+     * @return true, если все файлы группы данного размера были захешированы до прерывания.
+     */
+    boolean isGroupDone(long size) {
+        return doneGroups.get(size) != null;
+    }
+
+    /**
+     * Возвращает хеш из журнала, если размер и время изменения файла не изменились с момента его вычисления.
+     *
+     * @return хеш или null, если его нужно вычислить заново.
+     */
+    String knownDigest(Path file, long size) {
+        DigestRecord record = digests.get(file);
+        if (record == null || record.size != size) {
+            return null;
+        }
+        return record.lastModified == lastModified(file) ? record.hash : null;
+    }
+
+    void fileFound(Path file, long size) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(payload);
+        data.writeUTF(file.toString());
+        data.writeLong(size);
+        writeRecord(FILE, payload);
+    }
+
+    void directoryDone(Path directory) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        new DataOutputStream(payload).writeUTF(directory.toString());
+        writeRecord(DIRECTORY_DONE, payload);
+    }
+
+    /**
+     * Запоминает время изменения файла перед его чтением. Вызывается в потоке сканирования
+     * до постановки файла в очередь хеширования.
+     */
+    void hashStarted(Path file) throws IOException {
+        modifiedBeforeHashing.put(file, lastModified(file));
+        flushIfDue();
+    }
+
+    /**
+     * Записывает хеш файла вместе со временем изменения, запомненным в {@link #hashStarted(Path)}.
+     * Хеш файла, для которого чтение не отмечалось, не записывается.
+     */
+    void digestComputed(Path file, long size, String hash) throws IOException {
+        Long lastModified = modifiedBeforeHashing.remove(file);
+        DigestRecord known = digests.get(file);
+        if (hash == null || lastModified == null || lastModified < 0 || (known != null && known.hash.equals(hash))) {
+            return;
+        }
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(payload);
+        data.writeUTF(file.toString());
+        data.writeLong(size);
+        data.writeLong(lastModified);
+        data.writeUTF(hash);
+        writeRecord(DIGEST, payload);
+    }
+
+    void groupDone(long size) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        new DataOutputStream(payload).writeLong(size);
+        writeRecord(GROUP_DONE, payload);
+    }
+
+    /**
+     * Сканирование завершено: журнал больше не нужен и удаляется.
+     */
+    void complete() throws IOException {
+        close();
+        Files.deleteIfExists(journalFile);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            out.flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Читает журнал.
+     *
+     * @return длина корректной части журнала или -1, если журнал создан для другого сканирования.
+     */
+    private long load(String expectedHeader, List<FileRecord> files) throws IOException {
+        if (channel.size() == 0) {
+            return -1;
+        }
+        InputStream in = new BufferedInputStream(Channels.newInputStream(channel.position(0)));
+        DataInputStream input = new DataInputStream(in);
+        long position = 0;
+        boolean headerSeen = false;
+        while (true) {
+            byte type;
+            byte[] payload;
+            try {
+                type = input.readByte();
+                int length = input.readInt();
+                if (length < 0 || position + 5 + length > channel.size()) {
+                    break;
+                }
+                payload = new byte[length];
+                input.readFully(payload);
+            } catch (EOFException e) {
+                break;
+            }
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+            if (!headerSeen) {
+                if (type != HEADER || record.readInt() != MAGIC || !record.readUTF().equals(expectedHeader)) {
+                    return -1;
+                }
+                headerSeen = true;
+            } else if (type == FILE) {
+                files.add(new FileRecord(Path.of(record.readUTF()), record.readLong()));
+            } else if (type == DIRECTORY_DONE) {
+                doneDirectories.put(Path.of(record.readUTF()), Boolean.TRUE);
+            } else if (type == DIGEST) {
+                Path file = Path.of(record.readUTF());
+                digests.put(file, new DigestRecord(record.readLong(), record.readLong(), record.readUTF()));
+            } else if (type == GROUP_DONE) {
+                doneGroups.put(record.readLong(), Boolean.TRUE);
+            }
+            position += 5 + payload.length;
+        }
+        return headerSeen ? position : -1;
+    }
+
+    /**
+     * Распределяет файлы из журнала по самым верхним обойденным директориям.
+     * Файлы из директорий, обход которых не завершился, отбрасываются: такие директории будут обойдены заново.
+     * Путь, записанный несколько раз (директория обходилась заново после прерывания), учитывается
+     * один раз — по последней записи.
+     */
+    private void indexFiles(List<FileRecord> files) {
+        CustomHashMap<Path, Integer> lastRecord = new CustomHashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            lastRecord.put(files.get(i).file, i);
+        }
+        for (int i = 0; i < files.size(); i++) {
+            FileRecord record = files.get(i);
+            if (lastRecord.get(record.file) != i) {
+                continue;
+            }
+            Path directory = record.file.getParent();
+            if (directory == null || !isDirectoryDone(directory)) {
+                continue;
+            }
+            while (directory.getParent() != null && isDirectoryDone(directory.getParent())) {
+                directory = directory.getParent();
+            }
+            List<FileRecord> list = filesByDoneDirectory.get(directory);
+            if (list == null) {
+                list = new ArrayList<>();
+                filesByDoneDirectory.put(directory, list);
+            }
+            list.add(record);
+            restoredFiles++;
+        }
+    }
+
+    private void writeHeader(String header) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(payload);
+        data.writeInt(MAGIC);
+        data.writeUTF(header);
+        writeRecord(HEADER, payload);
+        out.flush();
+    }
+
+    private void writeRecord(byte type, ByteArrayOutputStream payload) throws IOException {
+        out.writeByte(type);
+        out.writeInt(payload.size());
+        payload.writeTo(out);
+        flushIfDue();
+    }
+
+    private void flushIfDue() throws IOException {
+        long now = System.nanoTime();
+        if (now - lastFlush >= FLUSH_INTERVAL_NANOS) {
+            out.flush();
+            lastFlush = now;
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
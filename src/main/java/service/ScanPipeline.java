@@ -0,0 +1,301 @@
+package service;
+
+import model.FileInfo;
+import util.CustomHashMap;
+import util.StorageKind;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Конвейер сканирования из связанных стадий:
+ * <ol>
+ *     <li>обход дерева (отдельный поток);</li>
+ *     <li>группировка по размеру (вызывающий поток): как только у размера появляется второй файл,
+ *     оба файла сразу отправляются на хеширование, все следующие файлы этого размера — по мере обнаружения;</li>
+ *     <li>пул потоков хеширования;</li>
+ *     <li>сборщик результатов (отдельный поток), группирующий файлы по (размер, хеш).</li>
+ * </ol>
+ * Стадии связаны ограниченными очередями: если хеширование не успевает, группировщик ждет
+ * свободного места, очередь обхода заполняется, и обход тоже приостанавливается.
+ * Поэтому чтение файлов начинается задолго до окончания обхода, а память остается ограниченной.
+ * <p>
+ * Порядок файлов в группах и порядок групп определяются порядком обнаружения,
+ * поэтому результат не зависит от того, в каком порядке завершилось хеширование.
+ */
+class ScanPipeline {
+
+    /** Файл, проходящий через стадии конвейера. */
+    private static class Entry {
+        final Path file;
+        final long size;
+        /** Порядковый номер обнаружения файла. */
+        final long sequence;
+        String hash;
+
+        Entry(Path file, long size, long sequence) {
+            this.file = file;
+            this.size = size;
+            this.sequence = sequence;
+        }
+    }
+
+    /** Признак конца потока записей. */
+    private static final Entry END = new Entry(null, -1, -1);
+    /** Метка размера, файлы которого уже отправляются на хеширование. */
+    private static final Entry CONFIRMED = new Entry(null, -1, -1);
+
+    private final OrderedHashQueue.HashFunction hashFunction;
+    private final int hashThreads;
+    private final int queueCapacity;
+    private final Consumer<Double> progressConsumer;
+    private final Consumer<String> messageConsumer;
+
+    /** Количество файлов, отправленных на хеширование (известно полностью после окончания обхода). */
+    private volatile long submitted;
+    /** Обход завершен. */
+    private volatile boolean walkFinished;
+    /** Ошибка, возникшая в потоке обхода. */
+    private volatile Throwable walkFailure;
+
+    /**
+     * @param hashFunction     функция хеширования файла.
+     * @param hashThreads      количество потоков хеширования.
+     * @param queueCapacity    емкость очередей между стадиями (и число файлов в хешировании одновременно).
+     * @param progressConsumer получатель прогресса (-1 — прогресс пока неизвестен).
+     * @param messageConsumer  получатель статусных сообщений.
+     */
+    ScanPipeline(OrderedHashQueue.HashFunction hashFunction, int hashThreads, int queueCapacity,
+                 Consumer<Double> progressConsumer, Consumer<String> messageConsumer) {
+        this.hashFunction = hashFunction;
+        this.hashThreads = hashThreads;
+        this.queueCapacity = queueCapacity;
+        this.progressConsumer = progressConsumer;
+        this.messageConsumer = messageConsumer;
+    }
+
+    /**
+     * Выполняет сканирование.
+     *
+     * @param root корневая директория.
+     * @return группы дубликатов (не меньше двух файлов в каждой) в порядке обнаружения.
+     * @throws IOException если обход дерева завершился ошибкой или был прерван.
+     */
+    List<List<FileInfo>> run(Path root) throws IOException {
+        BlockingQueue<Entry> walked = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Entry> hashed = new ArrayBlockingQueue<>(queueCapacity + 1);
+        // Разрешения ограничивают число файлов между группировщиком и сборщиком
+        Semaphore hashSlots = new Semaphore(queueCapacity);
+        ExecutorService hashPool = Executors.newFixedThreadPool(hashThreads, task -> daemon(task, "dedup-hash"));
+        Aggregator aggregator = new Aggregator(hashed, hashSlots);
+        Thread walker = daemon(() -> walk(root, walked), "dedup-walk");
+        Thread collector = daemon(aggregator, "dedup-aggregate");
+
+        messageConsumer.accept("Поиск и хеширование файлов...");
+        progressConsumer.accept(-1.0);
+        walker.start();
+        collector.start();
+        try {
+            group(walked, hashPool, hashSlots, hashed);
+            hashPool.shutdown();
+            while (!hashPool.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Ждем, пока будут захешированы все отправленные файлы
+            }
+            hashed.put(END);
+            collector.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Scan was interrupted");
+        } finally {
+            walker.interrupt();
+            hashPool.shutdownNow();
+            collector.interrupt();
+        }
+        Throwable failure = walkFailure;
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return aggregator.groups();
+    }
+
+    /**
+     * Стадия обхода: передает найденные файлы вместе с размером в очередь группировки.
+     * Признак конца ставится в очередь при любом исходе, иначе группировщик ждал бы его бесконечно.
+     */
+    private void walk(Path root, BlockingQueue<Entry> walked) {
+        try (Stream<Path> walk = Files.walk(root)) {
+            Iterator<Path> iterator = walk.filter(Files::isRegularFile).iterator();
+            long sequence = 0;
+            while (iterator.hasNext()) {
+                Path file = iterator.next();
+                long size;
+                try {
+                    size = Files.size(file);
+                } catch (IOException e) {
+                    System.err.println("Could not get file size for: " + file + ". Skipping file.");
+                    continue;
+                }
+                walked.put(new Entry(file, size, sequence++));
+            }
+        } catch (UncheckedIOException e) {
+            walkFailure = e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+            walkFailure = e;
+        } finally {
+            try {
+                walked.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Стадия группировки по размеру. Первый файл каждого размера ждет второго;
+     * после подтверждения совпадения размеров все файлы этого размера сразу идут на хеширование.
+     */
+    private void group(BlockingQueue<Entry> walked, ExecutorService hashPool, Semaphore hashSlots,
+                       BlockingQueue<Entry> hashed) throws InterruptedException {
+        CustomHashMap<Long, Entry> firstBySize = new CustomHashMap<>();
+        // Тип накопителя определяется здесь, в одном потоке, а не потоками хеширования для каждого файла
+        StorageDevices devices = new StorageDevices();
+        long walkedFiles = 0;
+        while (true) {
+            Entry entry = walked.take();
+            if (entry == END) {
+                break;
+            }
+            walkedFiles++;
+            if (walkedFiles % 10_000 == 0) {
+                messageConsumer.accept("Поиск и хеширование файлов: найдено " + walkedFiles + "...");
+            }
+
+            Entry first = firstBySize.get(entry.size);
+            if (first == null) {
+                firstBySize.put(entry.size, entry);
+                continue;
+            }
+            if (first != CONFIRMED) {
+                firstBySize.put(entry.size, CONFIRMED);
+                submit(first, devices.of(first.file).kind, hashPool, hashSlots, hashed);
+            }
+            submit(entry, devices.of(entry.file).kind, hashPool, hashSlots, hashed);
+        }
+        walkFinished = true;
+        messageConsumer.accept("Хеширование файлов и поиск дубликатов...");
+    }
+
+    private void submit(Entry entry, StorageKind storage, ExecutorService hashPool, Semaphore hashSlots,
+                        BlockingQueue<Entry> hashed) throws InterruptedException {
+        hashSlots.acquire();
+        submitted++;
+        hashPool.execute(() -> {
+            try {
+                entry.hash = hashFunction.hash(entry.file, entry.size, storage);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not read or hash file: " + entry.file + ". Skipping file.");
+            }
+            // Места в очереди хватает всегда: число файлов в работе ограничено разрешениями
+            hashed.add(entry);
+        });
+    }
+
+    private static Thread daemon(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Стадия сбора результатов: группирует захешированные файлы по (размер, хеш).
+     */
+    private class Aggregator implements Runnable {
+        private final BlockingQueue<Entry> hashed;
+        private final Semaphore hashSlots;
+        private final CustomHashMap<String, List<Entry>> byContent = new CustomHashMap<>();
+        private final List<List<Entry>> groups = new ArrayList<>();
+        private long processed;
+
+        Aggregator(BlockingQueue<Entry> hashed, Semaphore hashSlots) {
+            this.hashed = hashed;
+            this.hashSlots = hashSlots;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Entry entry = hashed.take();
+                    if (entry == END) {
+                        return;
+                    }
+                    hashSlots.release();
+                    processed++;
+                    if (walkFinished) {
+                        progressConsumer.accept((double) processed / submitted);
+                    }
+                    if (entry.hash == null) {
+                        continue;
+                    }
+                    String key = entry.size + ":" + entry.hash;
+                    List<Entry> group = byContent.get(key);
+                    if (group == null) {
+                        group = new ArrayList<>();
+                        byContent.put(key, group);
+                        groups.add(group);
+                    }
+                    group.add(entry);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Группы из двух и более файлов, упорядоченные по порядку обнаружения.
+         */
+        List<List<FileInfo>> groups() {
+            List<List<Entry>> duplicates = new ArrayList<>();
+            for (List<Entry> group : groups) {
+                if (group.size() > 1) {
+                    group.sort(Comparator.comparingLong(entry -> entry.sequence));
+                    duplicates.add(group);
+                }
+            }
+            duplicates.sort(Comparator.comparingLong(group -> group.get(0).sequence));
+
+            List<List<FileInfo>> result = new ArrayList<>(duplicates.size());
+            for (List<Entry> group : duplicates) {
+                List<FileInfo> files = new ArrayList<>(group.size());
+                for (Entry entry : group) {
+                    files.add(new FileInfo(entry.file, entry.size, entry.hash));
+                }
+                result.add(files);
+            }
+            return result;
+        }
+    }
+}
@@ -15,6 +15,10 @@ public class ScanTask extends Task<List<FileInfo>> {
 
     /** Корневая директория для сканирования. */
     private final Path root;
+    /** Файл для сохранения индекса результатов (может быть null). */
+    private final Path indexFile;
+    /** Файл журнала контрольных точек (может быть null). */
+    private final Path journalFile;
 
     /**
      * Конструктор задачи сканирования.
@@ -22,7 +26,20 @@ public class ScanTask extends Task<List<FileInfo>> {
      * @param root путь к директории, которую необходимо просканировать.
      */
     public ScanTask(Path root) {
+        this(root, null, null);
+    }
+
+    /**
+     * Конструктор задачи сканирования с сохранением индекса результатов.
+     *
+     * @param root      путь к директории, которую необходимо просканировать.
+     * @param indexFile   файл, в который будет сохранен индекс результатов ({@link ScanIndex}).
+     * @param journalFile файл журнала, по которому прерванное сканирование будет продолжено ({@link ScanJournal}).
+     */
+    public ScanTask(Path root, Path indexFile, Path journalFile) {
         this.root = root;
+        this.indexFile = indexFile;
+        this.journalFile = journalFile;
     }
 
     /**
@@ -42,6 +59,10 @@ public class ScanTask extends Task<List<FileInfo>> {
                 progress -> updateProgress(progress, 1.0),
                 this::updateMessage
         );
+        scanner.setIndexFile(indexFile);
+        scanner.setJournalFile(journalFile);
+        // Одинаковые копии целых папок показываются одной строкой на копию, а не тысячами файлов
+        scanner.setDirectoryGrouping(true);
 
         // Запускаем логику и возвращаем результат, который будет доступен
         // через getValue() в обработчике setOnSucceeded.
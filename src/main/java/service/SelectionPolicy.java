@@ -0,0 +1,373 @@
+package service;
+
+import model.FileInfo;
+import util.CustomHashMap;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Правила выбора файлов для удаления в группах дубликатов.
+ * <p>
+ * В каждой группе остается один файл: сначала учитываются предпочитаемые корни (файл под корнем,
+ * стоящим в списке раньше, предпочтительнее), затем основное правило {@link Keep}. Файлы, совпадающие
+ * с защищенными шаблонами, никогда не отмечаются для удаления; директория не отмечается, если шаблон
+ * может совпасть с чем-либо внутри нее. Записи архивов не удаляются и не могут
+ * быть оставленной копией: если в группе нет обычных файлов, в ней ничего не отмечается.
+ * <p>
+ * Группы директорий и вложенные в них группы согласуются: оставленная копия не может лежать внутри
+ * директории, отмеченной в другой группе, иначе удаление отмеченного унесло бы все копии. Если правило
+ * выбрало такую копию, вместо нее оставляется лучший файл группы вне отмеченных директорий.
+ * <p>
+ * Правила применяются ко всем группам за один проход и не обращаются к файловой системе,
+ * поэтому план для миллионов строк строится быстро и может вычисляться вне потока интерфейса.
+ */
+public class SelectionPolicy {
+
+    /** Какой файл группы оставить. */
+    public enum Keep {
+        /** Первый файл группы (порядок сканирования). */
+        FIRST,
+        /** Файл с самым ранним временем изменения. */
+        OLDEST,
+        /** Файл с самым поздним временем изменения. */
+        NEWEST,
+        /** Файл с самым коротким путем. */
+        SHORTEST_PATH
+    }
+
+    /**
+     * План выбора: какие строки будут отмечены и сколько места освободится.
+     */
+    public static class Plan {
+        private final BitSet selected;
+        private final int rows;
+        private final int groups;
+        private final int selectedCount;
+        private final long reclaimableBytes;
+
+        Plan(BitSet selected, int rows, int groups, long reclaimableBytes) {
+            this.selected = selected;
+            this.rows = rows;
+            this.groups = groups;
+            this.selectedCount = selected.cardinality();
+            this.reclaimableBytes = reclaimableBytes;
+        }
+
+        /** @return true, если строка с данным номером будет отмечена для удаления. */
+        public boolean isSelected(int row) {
+            return selected.get(row);
+        }
+
+        /** @return количество строк, которые будут отмечены. */
+        public int getSelectedCount() {
+            return selectedCount;
+        }
+
+        /** @return количество строк, по которым построен план. */
+        public int getRowCount() {
+            return rows;
+        }
+
+        /** @return количество групп. */
+        public int getGroupCount() {
+            return groups;
+        }
+
+        /** @return суммарный размер отмеченных строк. */
+        public long getReclaimableBytes() {
+            return reclaimableBytes;
+        }
+
+        /**
+         * @return номера отмеченных строк (копия).
+         */
+        public BitSet getSelection() {
+            return (BitSet) selected.clone();
+        }
+
+        /**
+         * Переносит план на строки результатов.
+         *
+         * @param results те же строки, по которым построен план.
+         */
+        public void apply(List<FileInfo> results) {
+            if (results.size() != rows) {
+                throw new IllegalArgumentException("Plan was built for " + rows + " rows, got " + results.size());
+            }
+            for (int row = 0; row < rows; row++) {
+                results.get(row).setSelected(selected.get(row));
+            }
+        }
+    }
+
+    /** Группа вариантов с разделителем внутри: такой шаблон нельзя разбить на элементы пути. */
+    private static final Pattern BRACES_WITH_SEPARATOR = Pattern.compile("\\{[^}]*/");
+
+    private final Keep keep;
+    private final List<Path> preferredRoots = new ArrayList<>();
+    private final List<PathMatcher> protectedPaths = new ArrayList<>();
+    /** Защищенные шаблоны, разбитые на элементы пути, для проверки содержимого директорий. */
+    private final List<String[]> protectedSegments = new ArrayList<>();
+
+    /**
+     * @param keep основное правило выбора оставляемого файла.
+     */
+    public SelectionPolicy(Keep keep) {
+        this.keep = keep;
+    }
+
+    /**
+     * Правило по умолчанию: оставить первый файл группы.
+     */
+    public static SelectionPolicy keepFirst() {
+        return new SelectionPolicy(Keep.FIRST);
+    }
+
+    /**
+     * Добавляет предпочитаемый корень: в группе оставляется файл под ним, если такой есть.
+     * Корни, добавленные раньше, имеют больший приоритет.
+     */
+    public SelectionPolicy addPreferredRoot(Path root) {
+        preferredRoots.add(root.toAbsolutePath().normalize());
+        return this;
+    }
+
+    /**
+     * Добавляет защищенный шаблон в синтаксисе glob (например, {@code /home/*}{@code /important/**}):
+     * совпадающие файлы никогда не отмечаются для удаления, как и директории, внутри которых шаблон
+     * может совпасть с файлом.
+     */
+    public SelectionPolicy addProtectedGlob(String glob) {
+        protectedPaths.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+        protectedSegments.add(BRACES_WITH_SEPARATOR.matcher(glob).find() ? null : glob.split("/", -1));
+        return this;
+    }
+
+    /**
+     * Строит план для результатов сканирования, не изменяя их.
+     * Группы — подряд идущие строки с одинаковым номером группы.
+     *
+     * @param results строки результатов.
+     * @return план выбора.
+     */
+    public Plan plan(List<FileInfo> results) {
+        BitSet selected = new BitSet(results.size());
+        List<Integer> starts = new ArrayList<>();
+        int start = 0;
+        while (start < results.size()) {
+            int groupId = results.get(start).getGroupId();
+            int end = start + 1;
+            while (end < results.size() && results.get(end).getGroupId() == groupId) {
+                end++;
+            }
+            select(results.subList(start, end), start, selected);
+            starts.add(start);
+            start = end;
+        }
+        starts.add(results.size());
+        CustomHashMap<Path, Boolean> removedDirectories = keepCopiesOutsideSelectedDirectories(results, starts, selected);
+
+        // Строки внутри отмеченных директорий уже учтены в размере директории
+        long reclaimable = 0;
+        for (int row = selected.nextSetBit(0); row >= 0; row = selected.nextSetBit(row + 1)) {
+            if (!isUnder(results.get(row).getPath(), removedDirectories)) {
+                reclaimable += results.get(row).getSize();
+            }
+        }
+        return new Plan(selected, results.size(), starts.size() - 1, reclaimable);
+    }
+
+    /**
+     * Переносит оставленные копии из отмеченных директорий. Пока есть группа, все неотмеченные строки
+     * которой лежат внутри отмеченных директорий, в ней оставляется лучший файл вне этих директорий,
+     * а прежняя копия отмечается (она все равно удаляется вместе с директорией). Каждый шаг только
+     * уменьшает множество удаляемых путей, поэтому цикл конечен. Группа, все строки которой лежат
+     * внутри отмеченных директорий, не меняется: ее содержимое сохраняется в копиях этих директорий.
+     *
+     * @return отмеченные директории после согласования.
+     */
+    private CustomHashMap<Path, Boolean> keepCopiesOutsideSelectedDirectories(List<FileInfo> results, List<Integer> starts,
+                                                                              BitSet selected) {
+        while (true) {
+            CustomHashMap<Path, Boolean> removedDirectories = new CustomHashMap<>();
+            boolean anyDirectory = false;
+            for (int row = selected.nextSetBit(0); row >= 0; row = selected.nextSetBit(row + 1)) {
+                if (results.get(row).isDirectory()) {
+                    removedDirectories.put(results.get(row).getPath(), Boolean.TRUE);
+                    anyDirectory = true;
+                }
+            }
+            if (!anyDirectory) {
+                return removedDirectories;
+            }
+            boolean changed = false;
+            for (int g = 0; g + 1 < starts.size(); g++) {
+                int start = starts.get(g);
+                int end = starts.get(g + 1);
+                boolean survives = false;
+                int kept = -1;
+                for (int row = start; row < end && !survives; row++) {
+                    FileInfo info = results.get(row);
+                    if (info.isArchiveEntry() || isUnder(info.getPath(), removedDirectories)) {
+                        continue;
+                    }
+                    survives = !selected.get(row);
+                    if (kept < 0 || better(info, results.get(kept))) {
+                        kept = row;
+                    }
+                }
+                if (survives || kept < 0) {
+                    continue;
+                }
+                for (int row = start; row < end; row++) {
+                    FileInfo info = results.get(row);
+                    if (!info.isArchiveEntry() && !isProtected(info) && isUnder(info.getPath(), removedDirectories)) {
+                        selected.set(row);
+                    }
+                }
+                selected.clear(kept);
+                changed = true;
+            }
+            if (!changed) {
+                return removedDirectories;
+            }
+        }
+    }
+
+    /**
+     * @return true, если путь лежит внутри одной из директорий (но не совпадает с ней).
+     */
+    private static boolean isUnder(Path path, CustomHashMap<Path, Boolean> directories) {
+        for (Path parent = path.getParent(); parent != null; parent = parent.getParent()) {
+            if (directories.get(parent) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Отмечает файлы одной группы.
+     *
+     * @param group файлы группы.
+     * @return суммарный размер отмеченных файлов.
+     */
+    public long apply(List<FileInfo> group) {
+        BitSet selected = new BitSet(group.size());
+        long reclaimable = select(group, 0, selected);
+        for (int i = 0; i < group.size(); i++) {
+            group.get(i).setSelected(selected.get(i));
+        }
+        return reclaimable;
+    }
+
+    /**
+     * Выбирает оставляемый файл группы и отмечает остальные.
+     */
+    private long select(List<FileInfo> group, int offset, BitSet selected) {
+        int kept = -1;
+        for (int i = 0; i < group.size(); i++) {
+            FileInfo candidate = group.get(i);
+            if (!candidate.isArchiveEntry() && (kept < 0 || better(candidate, group.get(kept)))) {
+                kept = i;
+            }
+        }
+        if (kept < 0) {
+            return 0;
+        }
+        long reclaimable = 0;
+        for (int i = 0; i < group.size(); i++) {
+            FileInfo info = group.get(i);
+            if (i != kept && !info.isArchiveEntry() && !isProtected(info)) {
+                selected.set(offset + i);
+                reclaimable += info.getSize();
+            }
+        }
+        return reclaimable;
+    }
+
+    /**
+     * @return true, если файл предпочтительнее текущего оставляемого.
+     */
+    private boolean better(FileInfo candidate, FileInfo current) {
+        int byRoot = Integer.compare(rootRank(candidate.getPath()), rootRank(current.getPath()));
+        if (byRoot != 0) {
+            return byRoot < 0;
+        }
+        switch (keep) {
+            case OLDEST:
+                return candidate.getLastModified() < current.getLastModified();
+            case NEWEST:
+                return candidate.getLastModified() > current.getLastModified();
+            case SHORTEST_PATH:
+                return candidate.getPath().toString().length() < current.getPath().toString().length();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return позиция первого предпочитаемого корня, под которым лежит файл, или количество корней.
+     */
+    private int rootRank(Path file) {
+        if (preferredRoots.isEmpty()) {
+            return 0;
+        }
+        Path path = file.toAbsolutePath().normalize();
+        for (int i = 0; i < preferredRoots.size(); i++) {
+            if (path.startsWith(preferredRoots.get(i))) {
+                return i;
+            }
+        }
+        return preferredRoots.size();
+    }
+
+    private boolean isProtected(FileInfo info) {
+        for (PathMatcher matcher : protectedPaths) {
+            if (matcher.matches(info.getPath())) {
+                return true;
+            }
+        }
+        if (info.isDirectory()) {
+            for (String[] segments : protectedSegments) {
+                if (segments == null || mayMatchBeneath(segments, info.getPath())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Проверяет, может ли шаблон совпасть с путем внутри директории, сопоставляя элементы шаблона
+     * с элементами пути директории по одному. Элемент с {@code **} совпадает с любым продолжением пути,
+     * поэтому проверка консервативна: она может защитить директорию, в которой защищенных файлов нет,
+     * но не пропустит ту, в которой они могут быть.
+     *
+     * @param segments элементы шаблона, разделенные {@code /}.
+     * @param directory путь директории.
+     */
+    private static boolean mayMatchBeneath(String[] segments, Path directory) {
+        String[] names = directory.toString().split(Pattern.quote(directory.getFileSystem().getSeparator()), -1);
+        for (int i = 0; i < names.length; i++) {
+            if (i >= segments.length) {
+                // Шаблон короче пути: он может совпасть только с директорией или ее предком
+                return false;
+            }
+            if (segments[i].contains("**")) {
+                return true;
+            }
+            if (!segments[i].equals(names[i]) && (names[i].isEmpty()
+                    || !FileSystems.getDefault().getPathMatcher("glob:" + segments[i]).matches(Path.of(names[i])))) {
+                return false;
+            }
+        }
+        return names.length < segments.length;
+    }
+}
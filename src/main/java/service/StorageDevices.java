@@ -0,0 +1,80 @@
+package service;
+
+import util.CustomHashMap;
+import util.StorageKind;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Определение устройства хранения, на котором лежит файл, с кешированием по родительской директории.
+ * Устройство идентифицируется номером ({@code unix:dev}), а если он недоступен — самим объектом
+ * {@link FileStore}. Имя хранилища используется только как подпись: оно не уникально
+ * (все tmpfs называются "tmpfs", все overlay — "overlay").
+ * Тип накопителя определяется один раз на устройство.
+ * Класс не потокобезопасен.
+ */
+class StorageDevices {
+
+    /** Устройство хранения. */
+    static final class Device {
+        /** Ключ устройства; устройства с равными ключами совпадают. */
+        final Object key;
+        /** Имя хранилища для отображения и настроек. */
+        final String name;
+        /** Тип накопителя. */
+        final StorageKind kind;
+
+        Device(Object key, String name, StorageKind kind) {
+            this.key = key;
+            this.name = name;
+            this.kind = kind;
+        }
+    }
+
+    /** Общее устройство для файлов, хранилище которых определить не удалось. */
+    static final Device UNKNOWN = new Device("unknown", "unknown", StorageKind.UNKNOWN);
+
+    private final CustomHashMap<Path, Device> byDirectory = new CustomHashMap<>();
+    private final CustomHashMap<Object, Device> byKey = new CustomHashMap<>();
+
+    /**
+     * Возвращает устройство файла. Хранилище запрашивается один раз на директорию.
+     *
+     * @param file файл.
+     * @return устройство, на котором лежит файл.
+     */
+    Device of(Path file) {
+        Path directory = file.toAbsolutePath().getParent();
+        Device device = byDirectory.get(directory);
+        if (device == null) {
+            device = resolve(file);
+            byDirectory.put(directory, device);
+        }
+        return device;
+    }
+
+    private Device resolve(Path file) {
+        FileStore store;
+        try {
+            store = Files.getFileStore(file);
+        } catch (IOException e) {
+            return UNKNOWN;
+        }
+        Object key;
+        try {
+            key = Files.getAttribute(file, "unix:dev");
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            // Файловая система без атрибутов unix: FileStore сравнивается по смонтированному хранилищу
+            key = store;
+        }
+        Device device = byKey.get(key);
+        if (device == null) {
+            device = new Device(key, store.name(), StorageKind.of(store));
+            byKey.put(key, device);
+        }
+        return device;
+    }
+}
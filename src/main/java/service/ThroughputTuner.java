@@ -0,0 +1,64 @@
+package service;
+
+/**
+ * Подбор степени параллелизма методом "восхождения к вершине" по измеренной пропускной способности.
+ * После каждого замера параллелизм сдвигается на один шаг: в том же направлении,
+ * если пропускная способность выросла, и в обратном, если она упала.
+ * Если заметного изменения нет, параллелизм уменьшается, чтобы не тратить потоки впустую.
+ */
+class ThroughputTuner {
+
+    /** Относительное изменение пропускной способности, которое считается значимым. */
+    private static final double TOLERANCE = 0.05;
+
+    private final int min;
+    private final int max;
+    private int current;
+    /** Направление следующего шага: +1 или -1. */
+    private int direction = 1;
+    /** Пропускная способность на предыдущем замере (отрицательная до первого замера). */
+    private double lastThroughput = -1;
+
+    /**
+     * @param initial начальная степень параллелизма.
+     * @param min     нижняя граница.
+     * @param max     верхняя граница.
+     */
+    ThroughputTuner(int initial, int min, int max) {
+        this.min = min;
+        this.max = Math.max(min, max);
+        this.current = Math.max(this.min, Math.min(this.max, initial));
+    }
+
+    /**
+     * Учитывает очередной замер и возвращает новую степень параллелизма.
+     *
+     * @param throughput пропускная способность за последний интервал (байт/с).
+     * @return рекомендуемая степень параллелизма.
+     */
+    int onSample(double throughput) {
+        if (lastThroughput >= 0) {
+            if (throughput < lastThroughput * (1 - TOLERANCE)) {
+                direction = -direction; // Стало хуже — разворачиваемся
+            } else if (throughput <= lastThroughput * (1 + TOLERANCE)) {
+                direction = -1; // Плато — лишние потоки не нужны
+            }
+        }
+        lastThroughput = throughput;
+
+        int next = current + direction;
+        if (next < min || next > max) {
+            direction = -direction;
+            next = Math.max(min, Math.min(max, current + direction));
+        }
+        current = next;
+        return current;
+    }
+
+    /**
+     * @return текущая степень параллелизма.
+     */
+    int current() {
+        return current;
+    }
+}
@@ -0,0 +1,130 @@
+package util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.SplittableRandom;
+
+/**
+ * Разбиение потока данных на блоки переменной длины, границы которых определяются содержимым
+ * (content-defined chunking). Используется скользящий Gear-хеш, как в алгоритме FastCDC:
+ * граница ставится там, где старшие биты хеша последних 64 байт равны нулю.
+ * <p>
+ * Так как граница зависит только от локального содержимого, вставка или удаление байт
+ * в начале файла сдвигает лишь ближайшие границы, а остальные блоки совпадают с блоками
+ * исходного файла. Это позволяет находить общие блоки у файлов, которые не совпадают целиком
+ * (образы виртуальных машин, дампы баз данных).
+ * <p>
+ * Поток читается порциями, в памяти находится не больше двух максимальных блоков.
+ */
+public class ContentChunker {
+
+    /** Минимальный размер блока по умолчанию. */
+    public static final int DEFAULT_MIN_SIZE = 2 * 1024;
+    /** Средний (ожидаемый) размер блока по умолчанию. */
+    public static final int DEFAULT_AVERAGE_SIZE = 8 * 1024;
+    /** Максимальный размер блока по умолчанию. */
+    public static final int DEFAULT_MAX_SIZE = 64 * 1024;
+
+    /** Таблица случайных 64-битных значений для каждого байта. Фиксированный seed делает границы воспроизводимыми. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5eed_cdc5L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Получатель очередного блока. Массив принадлежит разбивщику и
+     * действителен только во время вызова.
+     */
+    @FunctionalInterface
+    public interface ChunkConsumer {
+        void accept(byte[] data, int offset, int length) throws IOException;
+    }
+
+    private final int minSize;
+    private final int maxSize;
+    /** Маска старших битов хеша: граница ставится, когда все эти биты равны нулю. */
+    private final long cutMask;
+
+    /**
+     * Создает разбивщик с размерами блоков по умолчанию (2 КБ / 8 КБ / 64 КБ).
+     */
+    public ContentChunker() {
+        this(DEFAULT_MIN_SIZE, DEFAULT_AVERAGE_SIZE, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param minSize     минимальный размер блока.
+     * @param averageSize ожидаемый размер блока (степень двойки).
+     * @param maxSize     максимальный размер блока.
+     */
+    public ContentChunker(int minSize, int averageSize, int maxSize) {
+        if (minSize < 1 || minSize > averageSize || averageSize > maxSize || Integer.bitCount(averageSize) != 1) {
+            throw new IllegalArgumentException("Expected 0 < min <= average <= max and average to be a power of two");
+        }
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        int bits = Integer.numberOfTrailingZeros(averageSize);
+        this.cutMask = bits == 0 ? 0 : -1L << (64 - bits);
+    }
+
+    /**
+     * Разбивает поток на блоки и передает их получателю по порядку.
+     *
+     * @param in       входной поток (не закрывается этим методом).
+     * @param consumer получатель блоков.
+     * @throws IOException если возникла ошибка чтения или ошибка в получателе.
+     */
+    public void chunk(InputStream in, ChunkConsumer consumer) throws IOException {
+        byte[] buffer = new byte[maxSize * 2];
+        int start = 0;
+        int end = 0;
+        boolean eof = false;
+
+        while (true) {
+            // Поддерживаем в буфере хотя бы один максимальный блок, пока поток не закончился
+            if (!eof && end - start < maxSize) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+                while (end < buffer.length) {
+                    int read = in.read(buffer, end, buffer.length - end);
+                    if (read < 0) {
+                        eof = true;
+                        break;
+                    }
+                    end += read;
+                }
+            }
+            if (start == end) {
+                return;
+            }
+            int length = findCut(buffer, start, end);
+            consumer.accept(buffer, start, length);
+            start += length;
+        }
+    }
+
+    /**
+     * Находит длину очередного блока, начинающегося с позиции start.
+     */
+    private int findCut(byte[] buffer, int start, int end) {
+        int available = end - start;
+        if (available <= minSize) {
+            return available;
+        }
+        int limit = Math.min(available, maxSize);
+        long hash = 0;
+        // Первые minSize байт не проверяются: блок не может быть короче минимального
+        for (int i = minSize; i < limit; i++) {
+            hash = (hash << 1) + GEAR[buffer[start + i] & 0xFF];
+            if ((hash & cutMask) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+}
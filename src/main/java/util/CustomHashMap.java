@@ -126,6 +126,35 @@ public class CustomHashMap<K, V> {
         return null; // Ключ не найден
     }
 
+    /**
+     * Удаляет элемент с указанным ключом.
+     *
+     * @param key ключ удаляемого элемента.
+     * @return значение, которое было связано с ключом, или null, если ключ не найден.
+     */
+    public V remove(K key) {
+        int index = getIndex(key);
+        Entry<K, V> previous = null;
+        Entry<K, V> entry = table[index];
+
+        // Проходим по цепочке и исключаем найденный узел из нее
+        while (entry != null) {
+            if (Objects.equals(entry.key, key)) {
+                if (previous == null) {
+                    table[index] = entry.next;
+                } else {
+                    previous.next = entry.next;
+                }
+                size--;
+                return entry.value;
+            }
+            previous = entry;
+            entry = entry.next;
+        }
+
+        return null; // Ключ не найден
+    }
+
     /**
      * Возвращает список всех значений, хранящихся в хеш-таблице.
      * Порядок значений не гарантируется.
@@ -145,6 +174,23 @@ public class CustomHashMap<K, V> {
         return values;
     }
 
+    /**
+     * Возвращает список всех ключей, хранящихся в хеш-таблице.
+     * Порядок ключей не гарантируется.
+     *
+     * @return список всех ключей.
+     */
+    public List<K> keys() {
+        List<K> keys = new LinkedList<>();
+        for (Entry<K, V> entry : table) {
+            while (entry != null) {
+                keys.add(entry.key);
+                entry = entry.next;
+            }
+        }
+        return keys;
+    }
+
     /**
      * Вспомогательный метод для вычисления индекса корзины для заданного ключа.
      *
@@ -1,9 +1,7 @@
 package util;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 
 /**
@@ -11,11 +9,9 @@ import java.nio.file.Path;
  * Предоставляет высокую производительность и низкий шанс коллизий
  * при работе с файлами, но не предназначен для использования в криптографических целях.
  * Основан на идеях смешивающих функций, таких как FNV и MurmurHash.
+ * Является алгоритмом по умолчанию среди реализаций {@link FileHasher}.
  */
-public class CustomHasher {
-
-    /** Размер буфера для чтения файла в байтах. */
-    private static final int BUFFER_SIZE = 4096;
+public class CustomHasher implements FileHasher {
 
     /**
      * "Соль" — фиксированное значение, используемое в хешировании для усложнения хеш-функции.
@@ -37,35 +33,54 @@ public class CustomHasher {
      * @throws IOException если возникает ошибка при чтении файла.
      */
     public static String hash(Path path) throws IOException {
-        long hash1 = INITIAL1;
-        long hash2 = INITIAL2;
-
-        try (InputStream in = Files.newInputStream(path)) {
-            byte[] buffer = new byte[BUFFER_SIZE];
-            int len;
-            long totalBytes = 0;
-
-            // Читаем файл по частям
-            while ((len = in.read(buffer)) != -1) {
-                for (int i = 0; i < len; i++) {
-                    int b = buffer[i] & 0xFF; // Получаем беззнаковое значение байта
-
-                    // Каждый байт влияет на оба хеша
-
-                    // Обновление первого хеша
-                    hash1 ^= b ^ (SALT & 0xFF); // XOR с байтом и частью соли
-                    hash1 *= 0x100000001B3L;     // Умножение на простое число FNV
-                    hash1 = Long.rotateLeft(hash1, 13); // Битовый циклический сдвиг
+        return new CustomHasher().digest(path);
+    }
 
-                    // Обновление второго хеша
-                    hash2 += b + (hash1 ^ totalBytes); // Зависимость от первого хеша и количества байт
-                    hash2 *= 0xC6A4A7935BD1E995L;   // Умножение на простое число MurmurHash
-                    hash2 = Long.rotateRight(hash2, 17); // Другой битовый сдвиг
+    @Override
+    public HashState newState() {
+        return new State();
+    }
 
-                    totalBytes++;
-                }
+    /**
+     * Потоковое состояние алгоритма. Хранит два 64-битных хеша и количество обработанных байт.
+     */
+    private static class State implements HashState {
+        private long hash1 = INITIAL1;
+        private long hash2 = INITIAL2;
+        private long totalBytes = 0;
+
+        @Override
+        public void update(byte[] data, int offset, int length) {
+            long hash1 = this.hash1;
+            long hash2 = this.hash2;
+            long totalBytes = this.totalBytes;
+            int end = offset + length;
+
+            for (int i = offset; i < end; i++) {
+                int b = data[i] & 0xFF; // Получаем беззнаковое значение байта
+
+                // Каждый байт влияет на оба хеша
+
+                // Обновление первого хеша
+                hash1 ^= b ^ (SALT & 0xFF); // XOR с байтом и частью соли
+                hash1 *= 0x100000001B3L;     // Умножение на простое число FNV
+                hash1 = Long.rotateLeft(hash1, 13); // Битовый циклический сдвиг
+
+                // Обновление второго хеша
+                hash2 += b + (hash1 ^ totalBytes); // Зависимость от первого хеша и количества байт
+                hash2 *= 0xC6A4A7935BD1E995L;   // Умножение на простое число MurmurHash
+                hash2 = Long.rotateRight(hash2, 17); // Другой битовый сдвиг
+
+                totalBytes++;
             }
 
+            this.hash1 = hash1;
+            this.hash2 = hash2;
+            this.totalBytes = totalBytes;
+        }
+
+        @Override
+        public String finish() {
             // Дополнительное смешивание в конце, чтобы распределить биты еще лучше
             long finalHash = (hash1 ^ hash2) ^ (totalBytes * SALT);
             long secondHash = Long.rotateLeft(hash1, 32) ^ Long.rotateRight(hash2, 32);
@@ -0,0 +1,423 @@
+package util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+/**
+ * Внешняя (дисковая) сортировка пар "ключ-значение" с последующей группировкой по ключу.
+ * Используется в тех случаях, когда записей слишком много, чтобы держать их в {@link CustomHashMap}.
+ * <p>
+ * Записи накапливаются в памяти порциями ограниченного размера. Каждая заполненная порция
+ * сортируется и сбрасывается на диск в отдельный файл ("run"). При чтении все run-файлы
+ * сливаются k-путевым слиянием, и записи с одинаковым ключом выдаются одной группой.
+ * Значения группы сверх размера порции тоже сбрасываются на диск ({@link Group}).
+ * Таким образом, объем занимаемой памяти ограничен размером порции и не зависит ни от общего числа записей,
+ * ни от размера самой большой группы.
+ */
+public class ExternalGroupSorter implements Closeable {
+
+    /** Количество записей в одной порции по умолчанию. */
+    private static final int DEFAULT_RUN_SIZE = 100_000;
+    /** Максимальное число run-файлов, сливаемых за один проход (ограничивает число открытых файлов). */
+    private static final int MAX_MERGE_FAN_IN = 64;
+
+    /** Порядок записей: сначала по ключу, затем по значению, чтобы результат был детерминированным. */
+    private static final Comparator<Record> RECORD_ORDER =
+            Comparator.comparing((Record r) -> r.key).thenComparing(r -> r.value);
+
+    /**
+     * Функция, получающая очередную группу записей с одинаковым ключом.
+     */
+    @FunctionalInterface
+    public interface GroupConsumer {
+        /**
+         * @param key    общий ключ группы.
+         * @param values значения всех записей группы в отсортированном порядке;
+         *               действительны только до возврата из метода.
+         * @throws IOException если обработка группы требует ввода-вывода и он завершился ошибкой.
+         */
+        void accept(String key, Group values) throws IOException;
+    }
+
+    /**
+     * Значения одной группы. Первые значения (не больше размера порции) хранятся в памяти,
+     * остальные по мере слияния записываются во временный файл, так что даже очень большая группа
+     * не загружается в память целиком. Перебирать значения можно несколько раз, но только внутри
+     * {@link GroupConsumer#accept}. Ошибка чтения временного файла при переборе передается
+     * как {@link UncheckedIOException}.
+     */
+    public static final class Group implements Iterable<String> {
+        private final List<String> head = new ArrayList<>();
+        private final int memoryLimit;
+        private final Path spillFile;
+        private DataOutputStream spill;
+        /** Незакрытые чтения временного файла (перебор мог быть прерван). */
+        private final List<DataInputStream> spillReaders = new ArrayList<>();
+        private int size;
+
+        private Group(int memoryLimit, Path spillFile) {
+            this.memoryLimit = memoryLimit;
+            this.spillFile = spillFile;
+        }
+
+        /**
+         * @return количество значений в группе.
+         */
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<>() {
+                private int position = 0;
+                private DataInputStream in;
+
+                @Override
+                public boolean hasNext() {
+                    return position < size;
+                }
+
+                @Override
+                public String next() {
+                    if (position >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    if (position < head.size()) {
+                        return head.get(position++);
+                    }
+                    try {
+                        if (in == null) {
+                            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(spillFile)));
+                            spillReaders.add(in);
+                        }
+                        String value = in.readUTF();
+                        if (++position == size) {
+                            spillReaders.remove(in);
+                            in.close();
+                        }
+                        return value;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            };
+        }
+
+        private void add(String value) throws IOException {
+            if (head.size() < memoryLimit) {
+                head.add(value);
+            } else {
+                if (spill == null) {
+                    spill = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile)));
+                }
+                spill.writeUTF(value);
+            }
+            size++;
+        }
+
+        /**
+         * Завершает запись группы перед передачей потребителю.
+         */
+        private void seal() throws IOException {
+            if (spill != null) {
+                spill.close();
+                spill = null;
+            }
+        }
+
+        /**
+         * Очищает группу для следующего ключа и удаляет временный файл.
+         */
+        private void clear() throws IOException {
+            seal();
+            for (DataInputStream in : spillReaders) {
+                in.close();
+            }
+            spillReaders.clear();
+            head.clear();
+            size = 0;
+            Files.deleteIfExists(spillFile);
+        }
+    }
+
+    /** Одна пара "ключ-значение". */
+    private static class Record {
+        final String key;
+        final String value;
+
+        Record(String key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /** Временная директория, в которой хранятся run-файлы этого экземпляра. */
+    private final Path workDir;
+    /** Максимальное количество записей, удерживаемых в памяти до сброса на диск. */
+    private final int runSize;
+    /** Текущая (еще не сброшенная) порция записей. */
+    private List<Record> buffer = new ArrayList<>();
+    /** Уже записанные на диск отсортированные run-файлы. */
+    private final List<Path> runs = new ArrayList<>();
+    /** Общее количество добавленных записей. */
+    private long size = 0;
+
+    /**
+     * Создает сортировщик с размером порции по умолчанию.
+     *
+     * @param tempDir директория, в которой будет создана рабочая папка для run-файлов.
+     * @throws IOException если не удалось создать рабочую папку.
+     */
+    public ExternalGroupSorter(Path tempDir) throws IOException {
+        this(tempDir, DEFAULT_RUN_SIZE);
+    }
+
+    /**
+     * Создает сортировщик с указанным размером порции.
+     *
+     * @param tempDir директория, в которой будет создана рабочая папка для run-файлов.
+     * @param runSize максимальное количество записей в памяти.
+     * @throws IOException если не удалось создать рабочую папку.
+     */
+    public ExternalGroupSorter(Path tempDir, int runSize) throws IOException {
+        if (runSize < 1) {
+            throw new IllegalArgumentException("runSize must be positive: " + runSize);
+        }
+        this.workDir = Files.createTempDirectory(tempDir, "dedup-sort-");
+        this.runSize = runSize;
+    }
+
+    /**
+     * Добавляет запись. При заполнении порции она сортируется и записывается на диск.
+     *
+     * @param key   ключ, по которому записи будут сгруппированы.
+     * @param value значение записи.
+     * @throws IOException если не удалось записать run-файл.
+     */
+    public void add(String key, String value) throws IOException {
+        buffer.add(new Record(key, value));
+        size++;
+        if (buffer.size() >= runSize) {
+            flushBuffer();
+        }
+    }
+
+    /**
+     * Возвращает общее количество добавленных записей.
+     * @return количество записей.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Сливает все run-файлы и передает потребителю группы записей с одинаковым ключом
+     * в порядке возрастания ключей. В памяти одновременно находятся не больше размера порции значений
+     * текущей группы и по одной записи из каждого сливаемого файла.
+     *
+     * @param consumer получатель групп.
+     * @throws IOException если произошла ошибка чтения run-файлов или ошибка в самом потребителе.
+     */
+    public void forEachGroup(GroupConsumer consumer) throws IOException {
+        flushBuffer();
+        // Если run-файлов слишком много, предварительно укрупняем их в несколько проходов
+        while (runs.size() > MAX_MERGE_FAN_IN) {
+            List<Path> merged = new ArrayList<>();
+            for (int from = 0; from < runs.size(); from += MAX_MERGE_FAN_IN) {
+                List<Path> batch = runs.subList(from, Math.min(from + MAX_MERGE_FAN_IN, runs.size()));
+                merged.add(mergeToRun(batch));
+            }
+            runs.clear();
+            runs.addAll(merged);
+        }
+
+        List<RunReader> readers = openReaders(runs);
+        Group group = new Group(runSize, workDir.resolve("group.bin"));
+        try {
+            PriorityQueue<RunReader> queue = new PriorityQueue<>(Comparator.comparing(r -> r.current, RECORD_ORDER));
+            for (RunReader reader : readers) {
+                if (reader.current != null) {
+                    queue.add(reader);
+                }
+            }
+
+            String groupKey = null;
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                Record record = reader.current;
+                if (groupKey != null && !groupKey.equals(record.key)) {
+                    deliver(consumer, groupKey, group);
+                }
+                groupKey = record.key;
+                group.add(record.value);
+
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+            if (groupKey != null) {
+                deliver(consumer, groupKey, group);
+            }
+        } finally {
+            try {
+                group.clear();
+            } finally {
+                closeReaders(readers);
+            }
+        }
+    }
+
+    private static void deliver(GroupConsumer consumer, String key, Group group) throws IOException {
+        group.seal();
+        try {
+            consumer.accept(key, group);
+        } catch (UncheckedIOException e) {
+            // Ошибка чтения значений группы, сброшенных на диск
+            throw e.getCause();
+        }
+        group.clear();
+    }
+
+    /**
+     * Удаляет все run-файлы и рабочую папку.
+     *
+     * @throws IOException если не удалось удалить временные файлы.
+     */
+    @Override
+    public void close() throws IOException {
+        buffer = new ArrayList<>();
+        runs.clear();
+        if (Files.exists(workDir)) {
+            try (Stream<Path> files = Files.list(workDir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(workDir);
+        }
+    }
+
+    /**
+     * Сортирует текущую порцию и записывает ее в новый run-файл.
+     */
+    private void flushBuffer() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        buffer.sort(RECORD_ORDER);
+        Path run = Files.createTempFile(workDir, "run-", ".bin");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+            for (Record record : buffer) {
+                writeRecord(out, record);
+            }
+        }
+        runs.add(run);
+        buffer = new ArrayList<>();
+    }
+
+    /**
+     * Сливает несколько run-файлов в один новый и удаляет исходные.
+     */
+    private Path mergeToRun(List<Path> batch) throws IOException {
+        Path merged = Files.createTempFile(workDir, "merge-", ".bin");
+        List<RunReader> readers = openReaders(batch);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(merged)))) {
+            PriorityQueue<RunReader> queue = new PriorityQueue<>(Comparator.comparing(r -> r.current, RECORD_ORDER));
+            for (RunReader reader : readers) {
+                if (reader.current != null) {
+                    queue.add(reader);
+                }
+            }
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                writeRecord(out, reader.current);
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+        } finally {
+            closeReaders(readers);
+        }
+        for (Path run : batch) {
+            Files.deleteIfExists(run);
+        }
+        return merged;
+    }
+
+    private static void writeRecord(DataOutputStream out, Record record) throws IOException {
+        out.writeUTF(record.key);
+        out.writeUTF(record.value);
+    }
+
+    private static List<RunReader> openReaders(List<Path> files) throws IOException {
+        List<RunReader> readers = new ArrayList<>();
+        try {
+            for (Path file : files) {
+                readers.add(new RunReader(file));
+            }
+        } catch (IOException e) {
+            closeReaders(readers);
+            throw e;
+        }
+        return readers;
+    }
+
+    private static void closeReaders(List<RunReader> readers) throws IOException {
+        IOException failure = null;
+        for (RunReader reader : readers) {
+            try {
+                reader.in.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Последовательное чтение одного run-файла с "подглядыванием" текущей записи.
+     */
+    private static class RunReader {
+        final DataInputStream in;
+        Record current;
+
+        RunReader(Path file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+            advance();
+        }
+
+        /**
+         * Читает следующую запись.
+         * @return false, если файл закончился.
+         */
+        boolean advance() throws IOException {
+            try {
+                String key = in.readUTF();
+                String value = in.readUTF();
+                current = new Record(key, value);
+                return true;
+            } catch (EOFException e) {
+                current = null;
+                return false;
+            }
+        }
+    }
+}
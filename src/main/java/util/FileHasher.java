@@ -0,0 +1,71 @@
+package util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Стратегия хеширования содержимого файлов.
+ * Реализация передается в {@link service.DuplicateScanner} через конструктор,
+ * что позволяет выбирать алгоритм (быстрый некриптографический или надежный криптографический)
+ * без изменения логики сканирования.
+ */
+public interface FileHasher {
+
+    /**
+     * Создает новое состояние для потокового вычисления хеша.
+     *
+     * @return пустое состояние хеша.
+     */
+    HashState newState();
+
+    /**
+     * Вычисляет хеш содержимого файла, читая его по частям,
+     * чтобы не загружать большие файлы в память целиком.
+     *
+     * @param path путь к файлу.
+     * @return хеш в виде шестнадцатеричной строки.
+     * @throws IOException если возникает ошибка при чтении файла.
+     */
+    default String digest(Path path) throws IOException {
+        return digest(path, -1, StorageKind.UNKNOWN);
+    }
+
+    /**
+     * Вычисляет хеш содержимого файла с буфером, подобранным по размеру файла и типу накопителя.
+     * Буфер берется из пула текущего потока ({@link ReadBuffers}), поэтому при хешировании
+     * множества файлов память под буферы не выделяется заново.
+     *
+     * @param path    путь к файлу.
+     * @param size    размер файла в байтах или -1, если он неизвестен.
+     * @param storage тип накопителя, на котором находится файл.
+     * @return хеш в виде шестнадцатеричной строки.
+     * @throws IOException если возникает ошибка при чтении файла.
+     */
+    default String digest(Path path, long size, StorageKind storage) throws IOException {
+        HashState state = newState();
+        byte[] buffer = ReadBuffers.acquire(ReadBuffers.bufferSize(size, storage));
+        try (InputStream in = Files.newInputStream(path)) {
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                state.update(buffer, 0, len);
+            }
+        }
+        return state.finish();
+    }
+
+    /**
+     * Вычисляет хеш массива байт, уже находящегося в памяти.
+     *
+     * @param data   массив с данными.
+     * @param offset смещение первого байта.
+     * @param length количество байт.
+     * @return хеш в виде шестнадцатеричной строки.
+     */
+    default String digest(byte[] data, int offset, int length) {
+        HashState state = newState();
+        state.update(data, offset, length);
+        return state.finish();
+    }
+}
@@ -0,0 +1,100 @@
+package util;
+
+/**
+ * Индекс 128-битных хешей на примитивных массивах (открытая адресация, линейное пробирование),
+ * как {@link LongCountSet}. Ключ — хеш, упакованный в два числа, и длина хешированных данных.
+ * Каждому различному ключу присваивается номер в порядке добавления (0, 1, 2, ...),
+ * по которому вызывающий код хранит связанные с ключом значения в собственных массивах.
+ * Объекты на ключ не создаются.
+ */
+public class Hash128Index {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] high;
+    private long[] low;
+    private int[] lengths;
+    /** Номер ключа плюс один по ячейкам; 0 — ячейка свободна. */
+    private int[] ids;
+    private int size;
+
+    public Hash128Index() {
+        high = new long[INITIAL_CAPACITY];
+        low = new long[INITIAL_CAPACITY];
+        lengths = new int[INITIAL_CAPACITY];
+        ids = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Добавляет ключ, если его еще нет.
+     *
+     * @param keyHigh старшие 64 бита хеша.
+     * @param keyLow  младшие 64 бита хеша.
+     * @param length  длина хешированных данных.
+     * @return номер ключа; для нового ключа он равен {@link #size()} до вызова.
+     */
+    public int add(long keyHigh, long keyLow, int length) {
+        int slot = find(keyHigh, keyLow, length);
+        if (ids[slot] != 0) {
+            return ids[slot] - 1;
+        }
+        high[slot] = keyHigh;
+        low[slot] = keyLow;
+        lengths[slot] = length;
+        ids[slot] = ++size;
+        // Заполнение не больше половины, чтобы цепочки пробирования оставались короткими
+        if (size * 2 > ids.length) {
+            resize();
+        }
+        return size - 1;
+    }
+
+    /**
+     * @param keyHigh старшие 64 бита хеша.
+     * @param keyLow  младшие 64 бита хеша.
+     * @param length  длина хешированных данных.
+     * @return номер ключа или -1, если ключа нет.
+     */
+    public int indexOf(long keyHigh, long keyLow, int length) {
+        return ids[find(keyHigh, keyLow, length)] - 1;
+    }
+
+    /**
+     * @return количество различных ключей.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return ячейка с ключом или первая свободная ячейка на пути пробирования.
+     */
+    private int find(long keyHigh, long keyLow, int length) {
+        int mask = ids.length - 1;
+        int slot = LongCountSet.mix(keyHigh ^ Long.rotateLeft(keyLow, 17) ^ length) & mask;
+        while (ids[slot] != 0 && (high[slot] != keyHigh || low[slot] != keyLow || lengths[slot] != length)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        long[] oldHigh = high;
+        long[] oldLow = low;
+        int[] oldLengths = lengths;
+        int[] oldIds = ids;
+        high = new long[oldIds.length * 2];
+        low = new long[oldIds.length * 2];
+        lengths = new int[oldIds.length * 2];
+        ids = new int[oldIds.length * 2];
+        for (int slot = 0; slot < oldIds.length; slot++) {
+            if (oldIds[slot] != 0) {
+                int target = find(oldHigh[slot], oldLow[slot], oldLengths[slot]);
+                high[target] = oldHigh[slot];
+                low[target] = oldLow[slot];
+                lengths[target] = oldLengths[slot];
+                ids[target] = oldIds[slot];
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package util;
+
+/**
+ * Перечисление доступных алгоритмов хеширования файлов.
+ * Используется там, где алгоритм нужно выбрать по имени (настройки, сохраненные результаты).
+ */
+public enum HashAlgorithm {
+
+    /** Исходный алгоритм приложения ({@link CustomHasher}). Используется по умолчанию. */
+    CUSTOM,
+    /** Быстрый некриптографический 128-битный MurmurHash3 ({@link Murmur3Hasher}). */
+    MURMUR3_128,
+    /** Криптографический SHA-256 ({@link Sha256Hasher}) для надежной проверки. */
+    SHA_256;
+
+    /**
+     * Создает реализацию хешера для данного алгоритма.
+     *
+     * @return новый экземпляр {@link FileHasher}.
+     */
+    public FileHasher create() {
+        switch (this) {
+            case MURMUR3_128:
+                return new Murmur3Hasher();
+            case SHA_256:
+                return new Sha256Hasher();
+            default:
+                return new CustomHasher();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package util;
+
+/**
+ * Промежуточное состояние потокового вычисления хеша.
+ * Данные подаются порциями через {@link #update(byte[], int, int)},
+ * после чего {@link #finish()} возвращает итоговый хеш.
+ * Экземпляр не потокобезопасен и предназначен для вычисления одного хеша.
+ */
+public interface HashState {
+
+    /**
+     * Добавляет очередную порцию данных к хешу.
+     *
+     * @param data   массив с данными.
+     * @param offset смещение первого байта порции.
+     * @param length количество байт в порции.
+     */
+    void update(byte[] data, int offset, int length);
+
+    /**
+     * Завершает вычисление и возвращает хеш в виде шестнадцатеричной строки.
+     * После вызова этого метода состояние больше не используется.
+     *
+     * @return хеш в виде шестнадцатеричной строки.
+     */
+    String finish();
+
+    /**
+     * Завершает вычисление и записывает первые 128 бит хеша в два числа без построения строки:
+     * {@code bits[0]} — первые 16 шестнадцатеричных цифр, {@code bits[1]} — следующие 16.
+     * Биты хешей длиннее 128 бит складываются в те же два числа по XOR.
+     * После вызова этого метода состояние больше не используется.
+     *
+     * @param bits массив не короче двух элементов для результата.
+     */
+    default void finish(long[] bits) {
+        String digest = finish();
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < digest.length(); i++) {
+            long digit = Character.digit(digest.charAt(i), 16) & 0xf;
+            if (i < 16) {
+                high = high << 4 | digit;
+            } else if (i < 32) {
+                low = low << 4 | digit;
+            } else if (i % 32 < 16) {
+                high ^= digit << (4 * (15 - i % 32));
+            } else {
+                low ^= digit << (4 * (31 - i % 32));
+            }
+        }
+        bits[0] = high;
+        bits[1] = low;
+    }
+}
@@ -0,0 +1,102 @@
+package util;
+
+/**
+ * Счетчик вхождений чисел типа long на примитивных массивах (открытая адресация, линейное пробирование).
+ * <p>
+ * В отличие от {@link CustomHashMap} с ключами {@link Long}, ключ и счетчик хранятся в массивах
+ * без объектов-оберток и узлов цепочек: одно различное значение занимает около 18 байт
+ * (с учетом запаса под заполнение), а не сотню. Счетчики насыщаются на {@link #MAX_COUNT} —
+ * структура предназначена для вопросов вида "встречалось ли значение больше одного раза".
+ */
+public class LongCountSet {
+
+    /** Максимальное значение счетчика; дальнейшие вхождения не увеличивают его. */
+    public static final int MAX_COUNT = 255;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] keys;
+    /** Счетчики по ячейкам; 0 — ячейка свободна. */
+    private byte[] counts;
+    private int size;
+
+    public LongCountSet() {
+        keys = new long[INITIAL_CAPACITY];
+        counts = new byte[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Учитывает еще одно вхождение значения.
+     *
+     * @param key значение.
+     */
+    public void add(long key) {
+        int slot = find(keys, counts, key);
+        int count = counts[slot] & 0xff;
+        if (count == 0) {
+            keys[slot] = key;
+            size++;
+        }
+        if (count < MAX_COUNT) {
+            counts[slot] = (byte) (count + 1);
+        }
+        // Заполнение не больше половины, чтобы цепочки пробирования оставались короткими
+        if (size * 2 > keys.length) {
+            resize();
+        }
+    }
+
+    /**
+     * @param key значение.
+     * @return количество вхождений (не больше {@link #MAX_COUNT}).
+     */
+    public int count(long key) {
+        return counts[find(keys, counts, key)] & 0xff;
+    }
+
+    /**
+     * @return количество различных значений.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return ячейка со значением или первая свободная ячейка на пути пробирования.
+     */
+    private static int find(long[] keys, byte[] counts, long key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (counts[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        long[] newKeys = new long[keys.length * 2];
+        byte[] newCounts = new byte[counts.length * 2];
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (counts[slot] != 0) {
+                int target = find(newKeys, newCounts, keys[slot]);
+                newKeys[target] = keys[slot];
+                newCounts[target] = counts[slot];
+            }
+        }
+        keys = newKeys;
+        counts = newCounts;
+    }
+
+    /**
+     * Перемешивание битов (финализатор MurmurHash3), чтобы близкие размеры файлов не скапливались в соседних ячейках.
+     * Используется также {@link Hash128Index}.
+     */
+    static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -0,0 +1,113 @@
+package util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Файл, отображенный в память только для чтения.
+ * Файлы больше 2 ГБ отображаются несколькими "окнами" по 1 ГБ, поэтому
+ * чтение по произвольному смещению типа long работает для файла любого размера.
+ * Данные не загружаются в кучу: страницы подгружаются операционной системой по мере обращения.
+ */
+public class MappedFile implements Closeable {
+
+    /** Размер одного окна отображения. */
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    private final MappedByteBuffer[] windows;
+    private final long size;
+
+    private MappedFile(MappedByteBuffer[] windows, long size) {
+        this.windows = windows;
+        this.size = size;
+    }
+
+    /**
+     * Отображает файл в память.
+     *
+     * @param file путь к файлу.
+     * @return отображенный файл.
+     * @throws IOException если файл не удалось открыть или отобразить.
+     */
+    public static MappedFile open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int count = (int) ((size + WINDOW_SIZE - 1) / WINDOW_SIZE);
+            MappedByteBuffer[] windows = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = i * WINDOW_SIZE;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start));
+            }
+            // Отображение остается действительным и после закрытия канала
+            return new MappedFile(windows, size);
+        }
+    }
+
+    /**
+     * @return размер файла в байтах.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Читает 64-битное значение (big-endian) по смещению.
+     */
+    public long getLong(long position) {
+        int window = (int) (position / WINDOW_SIZE);
+        int offset = (int) (position % WINDOW_SIZE);
+        if (offset + Long.BYTES <= windows[window].limit()) {
+            return windows[window].getLong(offset);
+        }
+        byte[] bytes = new byte[Long.BYTES];
+        get(position, bytes, 0, bytes.length);
+        long value = 0;
+        for (byte b : bytes) {
+            value = (value << 8) | (b & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Читает 32-битное значение (big-endian) по смещению.
+     */
+    public int getInt(long position) {
+        int window = (int) (position / WINDOW_SIZE);
+        int offset = (int) (position % WINDOW_SIZE);
+        if (offset + Integer.BYTES <= windows[window].limit()) {
+            return windows[window].getInt(offset);
+        }
+        byte[] bytes = new byte[Integer.BYTES];
+        get(position, bytes, 0, bytes.length);
+        return ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF);
+    }
+
+    /**
+     * Копирует байты, начиная со смещения, в массив. Диапазон может пересекать границу окон.
+     */
+    public void get(long position, byte[] destination, int offset, int length) {
+        while (length > 0) {
+            int window = (int) (position / WINDOW_SIZE);
+            int windowOffset = (int) (position % WINDOW_SIZE);
+            int chunk = Math.min(length, windows[window].limit() - windowOffset);
+            windows[window].get(windowOffset, destination, offset, chunk);
+            position += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Отображение освобождается сборщиком мусора; метод существует для единообразия с другими ресурсами.
+     */
+    @Override
+    public void close() {
+        for (int i = 0; i < windows.length; i++) {
+            windows[i] = null;
+        }
+    }
+}
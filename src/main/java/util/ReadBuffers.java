@@ -0,0 +1,68 @@
+package util;
+
+/**
+ * Пул буферов чтения, привязанных к потокам.
+ * Каждый поток хранит не больше одного буфера каждого размера (степени двойки),
+ * поэтому при хешировании множества файлов новые буферы не создаются:
+ * после "прогрева" путь чтения не выделяет память под буферы.
+ * <p>
+ * Размер буфера подбирается по размеру файла и типу накопителя: маленькому файлу
+ * не нужен большой буфер, а большой файл на жестком диске выгоднее читать крупными блоками.
+ * Буфер, полученный через {@link #acquire(int)}, нельзя использовать повторно в том же потоке
+ * до окончания работы с ним (методы хеширования не вызывают друг друга рекурсивно).
+ */
+public final class ReadBuffers {
+
+    /** Минимальный размер буфера. */
+    public static final int MIN_BUFFER_SIZE = 4 * 1024;
+    /** Размер буфера, если размер файла неизвестен. */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    /** Максимальный буфер для твердотельных накопителей. */
+    private static final int MAX_SOLID_STATE_BUFFER = 256 * 1024;
+    /** Максимальный буфер для жестких дисков: крупные чтения уменьшают число перемещений головки. */
+    private static final int MAX_ROTATIONAL_BUFFER = 1024 * 1024;
+
+    /** Буферы текущего потока, индекс — двоичный логарифм размера. */
+    private static final ThreadLocal<byte[][]> POOL = ThreadLocal.withInitial(() -> new byte[31][]);
+
+    private ReadBuffers() {
+    }
+
+    /**
+     * Вычисляет размер буфера для файла.
+     *
+     * @param fileSize размер файла в байтах или отрицательное значение, если он неизвестен.
+     * @param storage  тип накопителя.
+     * @return размер буфера (степень двойки).
+     */
+    public static int bufferSize(long fileSize, StorageKind storage) {
+        if (fileSize < 0) {
+            return DEFAULT_BUFFER_SIZE;
+        }
+        int max = storage == StorageKind.ROTATIONAL ? MAX_ROTATIONAL_BUFFER : MAX_SOLID_STATE_BUFFER;
+        if (fileSize >= max) {
+            return max;
+        }
+        // Ближайшая степень двойки, не меньшая размера файла (+1, чтобы чтение сразу увидело конец файла)
+        int size = Integer.highestOneBit((int) Math.max(fileSize, 1)) << 1;
+        return Math.max(MIN_BUFFER_SIZE, Math.min(size, max));
+    }
+
+    /**
+     * Возвращает буфер текущего потока размером не меньше указанного.
+     *
+     * @param minSize минимальный размер буфера.
+     * @return буфер размером, равным ближайшей степени двойки.
+     */
+    public static byte[] acquire(int minSize) {
+        int size = Math.max(MIN_BUFFER_SIZE, minSize);
+        int index = 32 - Integer.numberOfLeadingZeros(size - 1);
+        byte[][] buffers = POOL.get();
+        byte[] buffer = buffers[index];
+        if (buffer == null) {
+            buffer = new byte[1 << index];
+            buffers[index] = buffer;
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,200 @@
+package util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Хешер, который делит файл на сегменты фиксированного размера и хеширует их параллельно.
+ * Каждый сегмент читается позиционным чтением {@link FileChannel#read(ByteBuffer, long)}
+ * и хешируется базовым алгоритмом, после чего хеши сегментов попарно объединяются
+ * в дерево (по принципу дерева Меркла) до одного корневого значения.
+ * <p>
+ * Границы сегментов и форма дерева зависят только от размера файла и размера сегмента,
+ * поэтому результат детерминирован и не зависит от количества потоков.
+ * Для файлов не больше одного сегмента результат совпадает с хешем базового алгоритма.
+ */
+public class SegmentedHasher implements FileHasher {
+
+    /**
+     * Версия формата дерева. Меняется вместе со способом объединения узлов,
+     * чтобы сохраненные хеши прежнего формата не сравнивались с новыми.
+     */
+    public static final int FORMAT_VERSION = 2;
+
+    /** Алгоритм, которым хешируются сегменты и узлы дерева. */
+    private final FileHasher base;
+    /** Размер одного сегмента в байтах. */
+    private final long segmentSize;
+    /** Пул потоков, в котором хешируются сегменты. Жизненным циклом пула управляет вызывающий код. */
+    private final ExecutorService executor;
+
+    /**
+     * @param base        алгоритм для хеширования сегментов.
+     * @param segmentSize размер сегмента в байтах.
+     * @param executor    пул потоков для параллельного хеширования сегментов.
+     */
+    public SegmentedHasher(FileHasher base, long segmentSize, ExecutorService executor) {
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException("segmentSize must be positive: " + segmentSize);
+        }
+        this.base = base;
+        this.segmentSize = segmentSize;
+        this.executor = executor;
+    }
+
+    /**
+     * Возвращает потоковое состояние, которое вычисляет тот же сегментированный хеш
+     * последовательно (без параллелизма). Используется для данных, уже находящихся в памяти.
+     */
+    @Override
+    public HashState newState() {
+        return new HashState() {
+            private final List<String> leaves = new ArrayList<>();
+            private HashState current = base.newState();
+            private long currentLength = 0;
+
+            @Override
+            public void update(byte[] data, int offset, int length) {
+                while (length > 0) {
+                    int chunk = (int) Math.min(length, segmentSize - currentLength);
+                    current.update(data, offset, chunk);
+                    currentLength += chunk;
+                    offset += chunk;
+                    length -= chunk;
+                    if (currentLength == segmentSize) {
+                        leaves.add(current.finish());
+                        current = base.newState();
+                        currentLength = 0;
+                    }
+                }
+            }
+
+            @Override
+            public String finish() {
+                // Пустой файл или неполный последний сегмент также дают лист дерева
+                if (currentLength > 0 || leaves.isEmpty()) {
+                    leaves.add(current.finish());
+                }
+                return combine(leaves);
+            }
+        };
+    }
+
+    /**
+     * Вычисляет сегментированный хеш файла, распределяя сегменты по потокам пула.
+     *
+     * @param path путь к файлу.
+     * @return корневой хеш дерева сегментов.
+     * @throws IOException если возникает ошибка при чтении файла.
+     */
+    @Override
+    public String digest(Path path) throws IOException {
+        return digest(path, -1, StorageKind.UNKNOWN);
+    }
+
+    /**
+     * Вычисляет сегментированный хеш файла, распределяя сегменты по потокам пула.
+     * Размер буфера каждого сегмента подбирается по типу накопителя.
+     *
+     * @param path     путь к файлу.
+     * @param sizeHint размер файла (не используется: размер берется из открытого канала).
+     * @param storage  тип накопителя.
+     * @return корневой хеш дерева сегментов.
+     * @throws IOException если возникает ошибка при чтении файла.
+     */
+    @Override
+    public String digest(Path path, long sizeHint, StorageKind storage) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= segmentSize) {
+                return base.digest(path, size, storage);
+            }
+
+            int segments = (int) ((size + segmentSize - 1) / segmentSize);
+            List<Future<String>> futures = new ArrayList<>(segments);
+            for (int i = 0; i < segments; i++) {
+                long start = i * segmentSize;
+                long length = Math.min(segmentSize, size - start);
+                futures.add(executor.submit(() -> hashSegment(channel, start, length, storage)));
+            }
+
+            List<String> leaves = new ArrayList<>(segments);
+            try {
+                for (Future<String> future : futures) {
+                    leaves.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                futures.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while hashing " + path, e);
+            } catch (ExecutionException e) {
+                futures.forEach(f -> f.cancel(true));
+                Throwable cause = e.getCause();
+                if (cause instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) cause).getCause();
+                }
+                throw new IOException("Could not hash segment of " + path, cause);
+            }
+            return combine(leaves);
+        }
+    }
+
+    /**
+     * Хеширует один сегмент файла позиционными чтениями, не изменяя позицию канала.
+     */
+    private String hashSegment(FileChannel channel, long start, long length, StorageKind storage) {
+        HashState state = base.newState();
+        byte[] array = ReadBuffers.acquire(ReadBuffers.bufferSize(length, storage));
+        ByteBuffer buffer = ByteBuffer.wrap(array);
+        long position = start;
+        long end = start + length;
+        try {
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(array.length, end - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of file at position " + position);
+                }
+                state.update(array, 0, read);
+                position += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return state.finish();
+    }
+
+    /**
+     * Попарно объединяет хеши уровня, пока не останется один корень.
+     * Непарный последний узел переходит на следующий уровень без изменений.
+     * Перед парой записывается длина левого хеша, поэтому разные пары хешей
+     * (например, хеши разной длины) не могут дать одну и ту же строку для хеширования.
+     */
+    private String combine(List<String> leaves) {
+        List<String> level = leaves;
+        while (level.size() > 1) {
+            List<String> next = new ArrayList<>((level.size() + 1) / 2);
+            for (int i = 0; i + 1 < level.size(); i += 2) {
+                String left = level.get(i);
+                byte[] pair = (left.length() + ":" + left + level.get(i + 1)).getBytes(StandardCharsets.US_ASCII);
+                next.add(base.digest(pair, 0, pair.length));
+            }
+            if (level.size() % 2 == 1) {
+                next.add(level.get(level.size() - 1));
+            }
+            level = next;
+        }
+        return level.get(0);
+    }
+}
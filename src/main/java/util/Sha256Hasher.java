@@ -0,0 +1,35 @@
+package util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Хешер на основе криптографического алгоритма SHA-256.
+ * Медленнее некриптографических алгоритмов, но практически исключает коллизии,
+ * поэтому подходит для окончательной проверки перед удалением файлов.
+ */
+public class Sha256Hasher implements FileHasher {
+
+    @Override
+    public HashState newState() {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 обязан поддерживаться любой реализацией Java
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        return new HashState() {
+            @Override
+            public void update(byte[] data, int offset, int length) {
+                digest.update(data, offset, length);
+            }
+
+            @Override
+            public String finish() {
+                return HexFormat.of().formatHex(digest.digest());
+            }
+        };
+    }
+}
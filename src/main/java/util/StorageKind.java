@@ -0,0 +1,70 @@
+package util;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Тип накопителя, на котором находится файл. Влияет на выбор размера буфера чтения:
+ * жестким дискам выгоднее крупные последовательные чтения, твердотельным — умеренные.
+ */
+public enum StorageKind {
+
+    /** Твердотельный накопитель (SSD, NVMe) или память. */
+    SOLID_STATE,
+    /** Вращающийся жесткий диск. */
+    ROTATIONAL,
+    /** Тип накопителя определить не удалось. */
+    UNKNOWN;
+
+    /**
+     * Определяет тип накопителя для файла. Результат не кешируется; при обработке многих файлов
+     * тип следует определять один раз на устройство через {@link #of(FileStore)}.
+     * На Linux используется признак {@code /sys/class/block/<устройство>/queue/rotational},
+     * на остальных системах возвращается {@link #UNKNOWN}.
+     *
+     * @param file файл.
+     * @return тип накопителя.
+     */
+    public static StorageKind of(Path file) {
+        try {
+            return of(Files.getFileStore(file));
+        } catch (IOException | RuntimeException e) {
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * Определяет тип накопителя, на котором расположено хранилище. Результат не кешируется:
+     * вызывающий код должен определять тип один раз на устройство, а не для каждого файла.
+     *
+     * @param store файловое хранилище.
+     * @return тип накопителя.
+     */
+    public static StorageKind of(FileStore store) {
+        try {
+            String name = store.name();
+            if (!name.startsWith("/dev/")) {
+                // tmpfs, overlay и подобные файловые системы не имеют собственного блочного устройства
+                return "tmpfs".equals(store.type()) ? SOLID_STATE : UNKNOWN;
+            }
+            Path device = Path.of("/sys/class/block", Path.of(name).getFileName().toString());
+            if (!Files.exists(device)) {
+                return UNKNOWN;
+            }
+            // Для раздела (sda1) признак находится у родительского диска (sda)
+            Path real = device.toRealPath();
+            Path flag = real.resolve("queue/rotational");
+            if (!Files.exists(flag)) {
+                flag = real.getParent().resolve("queue/rotational");
+            }
+            if (!Files.exists(flag)) {
+                return UNKNOWN;
+            }
+            return "1".equals(Files.readString(flag).trim()) ? ROTATIONAL : SOLID_STATE;
+        } catch (IOException | RuntimeException e) {
+            return UNKNOWN;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package benchmark;
+
+import service.DuplicateScanner;
+import service.HashOrder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Бенчмарк порядка хеширования ({@link HashOrder}).
+ * Генерирует дерево одинаковых по размеру файлов (все они попадают в кандидаты),
+ * после чего сканирует его в каждом из порядков и выводит время и пропускную способность.
+ * <p>
+ * Запуск (после {@code mvn test-compile}):
+ * <pre>
+ * CP=$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)
+ * java -cp target/classes:target/test-classes:$CP benchmark.HashOrderBenchmark [директория] [файлов] [размер файла]
+ * </pre>
+ * Эффект заметен на вращающихся дисках и при холодном кеше: под root бенчмарк
+ * сбрасывает страничный кеш перед каждым проходом, иначе предупреждает, что данные читаются из памяти.
+ */
+public class HashOrderBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Path root = args.length > 0 ? Path.of(args[0]) : Files.createTempDirectory("hash-order-bench");
+        int files = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int fileSize = args.length > 2 ? Integer.parseInt(args[2]) : 256 * 1024;
+
+        long totalBytes = SyntheticTree.generate(root, files, 64, fileSize, 0.3, 42);
+        System.out.printf("Tree: %s, %d files, %.1f MB%n", root, files, totalBytes / 1e6);
+
+        for (HashOrder order : HashOrder.values()) {
+            boolean cold = SyntheticTree.dropPageCache();
+            DuplicateScanner scanner = new DuplicateScanner(progress -> {}, message -> {});
+            scanner.setHashOrder(order);
+
+            long start = System.nanoTime();
+            int found = scanner.findDuplicates(root).size();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("%-10s %8.2f s %8.1f MB/s  duplicates=%d%s%n", order, seconds,
+                    totalBytes / 1e6 / seconds, found, cold ? "" : "  (warm page cache)");
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package benchmark;
+
+import service.AsyncHashEngine;
+import service.DuplicateScanner;
+import service.IoScheduler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Сквозной бенчмарк сканирования на синтетическом дереве ({@link SyntheticTree#generate(Path, SyntheticTree.Spec)}).
+ * Для каждого режима сканера записывает время, пиковый RSS процесса и объем прочитанных данных.
+ * Результаты дописываются в файл в формате JSON Lines (одна строка на прогон),
+ * чтобы прогоны на разных версиях можно было сравнивать.
+ * <p>
+ * Запуск (после {@code mvn test-compile}):
+ * <pre>
+ * CP=$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)
+ * java -cp target/classes:target/test-classes:$CP benchmark.MacroBenchmark \
+ *     dir=/data/bench files=1000000 min=512 max=65536 dup=0.2 sameSize=0.1 depth=4 fanout=10 \
+ *     modes=default,pipelined,async runs=3 out=macro.jsonl
+ * </pre>
+ * Дерево создается один раз: если директория уже содержит дерево с теми же параметрами, оно используется повторно.
+ * Пиковый RSS и счетчики чтения берутся из {@code /proc/self} и доступны только на Linux;
+ * перед каждым прогоном пик RSS сбрасывается, а под root сбрасывается и страничный кеш.
+ */
+public class MacroBenchmark {
+
+    /** Файл в корне дерева с параметрами, по которым оно создано. */
+    private static final String SPEC_FILE = ".synthetic-tree";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected key=value: " + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        SyntheticTree.Spec spec = new SyntheticTree.Spec();
+        spec.fileCount = Integer.parseInt(options.getOrDefault("files", String.valueOf(spec.fileCount)));
+        spec.minFileSize = Integer.parseInt(options.getOrDefault("min", String.valueOf(spec.minFileSize)));
+        spec.maxFileSize = Integer.parseInt(options.getOrDefault("max", String.valueOf(spec.maxFileSize)));
+        spec.duplicateRatio = Double.parseDouble(options.getOrDefault("dup", String.valueOf(spec.duplicateRatio)));
+        spec.sameSizeRatio = Double.parseDouble(options.getOrDefault("sameSize", String.valueOf(spec.sameSizeRatio)));
+        spec.depth = Integer.parseInt(options.getOrDefault("depth", String.valueOf(spec.depth)));
+        spec.fanout = Integer.parseInt(options.getOrDefault("fanout", String.valueOf(spec.fanout)));
+        spec.seed = Long.parseLong(options.getOrDefault("seed", String.valueOf(spec.seed)));
+        List<String> modes = List.of(options.getOrDefault("modes", "default,pipelined").split(","));
+        int runs = Integer.parseInt(options.getOrDefault("runs", "1"));
+        Path out = Path.of(options.getOrDefault("out", "macro-benchmark.jsonl"));
+        Path root = options.containsKey("dir")
+                ? Path.of(options.get("dir"))
+                : Files.createTempDirectory("macro-bench");
+
+        prepareTree(root, spec);
+
+        for (int run = 1; run <= runs; run++) {
+            for (String mode : modes) {
+                boolean cold = SyntheticTree.dropPageCache();
+                resetPeakRss();
+                Map<String, Long> ioBefore = readProcFile("/proc/self/io");
+
+                long start = System.nanoTime();
+                int duplicates = scan(root, mode.trim());
+                long wallNanos = System.nanoTime() - start;
+
+                Map<String, Long> ioAfter = readProcFile("/proc/self/io");
+                Map<String, Long> status = readProcFile("/proc/self/status");
+
+                Map<String, Object> record = new LinkedHashMap<>();
+                record.put("timestamp", Instant.now().toString());
+                record.put("mode", mode.trim());
+                record.put("run", run);
+                record.put("spec", spec.toString());
+                record.put("files", spec.fileCount);
+                record.put("duplicates", duplicates);
+                record.put("wallMillis", wallNanos / 1_000_000);
+                record.put("peakRssKb", status.getOrDefault("VmHWM", -1L));
+                record.put("readBytes", delta(ioBefore, ioAfter, "read_bytes"));
+                record.put("readSyscallBytes", delta(ioBefore, ioAfter, "rchar"));
+                record.put("coldCache", cold);
+                record.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+                record.put("javaVersion", System.getProperty("java.version"));
+
+                String line = toJson(record);
+                System.out.println(line);
+                Files.writeString(out, line + System.lineSeparator(), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+        }
+    }
+
+    /**
+     * Создает дерево, если в директории еще нет дерева с такими же параметрами.
+     * Дерево с другими параметрами удаляется целиком, чтобы его файлы не попали в новое дерево;
+     * непустая директория без файла параметров не трогается.
+     */
+    private static void prepareTree(Path root, SyntheticTree.Spec spec) throws IOException {
+        Path specFile = root.resolve(SPEC_FILE);
+        if (Files.isRegularFile(specFile)) {
+            if (Files.readString(specFile).equals(spec.toString())) {
+                System.err.println("Reusing tree " + root + " (" + spec + ")");
+                return;
+            }
+            System.err.println("Deleting tree " + root + " generated with other parameters...");
+            deleteTree(root);
+        } else if (Files.isDirectory(root)) {
+            try (Stream<Path> children = Files.list(root)) {
+                if (children.findAny().isPresent()) {
+                    throw new IOException("Directory is not empty and was not generated by the benchmark: " + root);
+                }
+            }
+        }
+        System.err.println("Generating tree " + root + " (" + spec + ")...");
+        long start = System.nanoTime();
+        // Недостроенное дерево помечается, чтобы при следующем запуске оно было удалено
+        Files.createDirectories(root);
+        Files.writeString(specFile, "incomplete");
+        SyntheticTree.Stats stats = SyntheticTree.generate(root, spec);
+        Files.writeString(specFile, spec.toString());
+        System.err.printf("Generated %.1f MB (%d duplicates, %.1f MB reclaimable) in %.1f s%n",
+                stats.totalBytes / 1e6, stats.duplicateFiles, stats.duplicateBytes / 1e6,
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Удаляет директорию со всем содержимым.
+     */
+    private static void deleteTree(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            List<Path> paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+            for (Path path : paths) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Сканирует дерево в указанном режиме и возвращает количество найденных файлов-дубликатов.
+     */
+    private static int scan(Path root, String mode) throws IOException {
+        DuplicateScanner scanner = new DuplicateScanner(progress -> {}, message -> {});
+        int threads = Runtime.getRuntime().availableProcessors();
+        switch (mode) {
+            case "default":
+                return scanner.findDuplicates(root).size();
+            case "pipelined":
+                scanner.setPipelinedScan(threads, 1024);
+                return scanner.findDuplicates(root).size();
+            case "async":
+                try (AsyncHashEngine engine = new AsyncHashEngine(64, threads)) {
+                    scanner.setAsyncHashEngine(engine);
+                    return scanner.findDuplicates(root).size();
+                }
+            case "scheduler":
+                try (IoScheduler scheduler = new IoScheduler()) {
+                    scheduler.setAdaptive(true, 64);
+                    scanner.setIoScheduler(scheduler);
+                    return scanner.findDuplicates(root).size();
+                }
+            default:
+                throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+    }
+
+    /**
+     * Сбрасывает пиковый RSS процесса (Linux 4.0+), чтобы VmHWM отражал только текущий прогон.
+     */
+    private static void resetPeakRss() {
+        try {
+            Files.writeString(Path.of("/proc/self/clear_refs"), "5");
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            // Не Linux или нет доступа: пик будет учитывать и предыдущие прогоны
+        }
+    }
+
+    /**
+     * Читает файл вида "ключ: число [единица]" из /proc. Значения в кБ остаются в кБ.
+     */
+    private static Map<String, Long> readProcFile(String file) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        try {
+            for (String line : Files.readAllLines(Path.of(file))) {
+                int separator = line.indexOf(':');
+                if (separator < 0) {
+                    continue;
+                }
+                String[] parts = line.substring(separator + 1).trim().split("\\s+");
+                try {
+                    values.put(line.substring(0, separator).trim(), Long.parseLong(parts[0]));
+                } catch (NumberFormatException e) {
+                    // Нечисловые поля (например, имя процесса) не нужны
+                }
+            }
+        } catch (IOException | SecurityException e) {
+            // Нет /proc: метрики будут записаны как -1
+        }
+        return values;
+    }
+
+    private static long delta(Map<String, Long> before, Map<String, Long> after, String key) {
+        if (!before.containsKey(key) || !after.containsKey(key)) {
+            return -1;
+        }
+        return after.get(key) - before.get(key);
+    }
+
+    /**
+     * Формирует однострочный JSON-объект из строк, чисел и логических значений.
+     */
+    private static String toJson(Map<String, Object> record) {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, Object> entry : record.entrySet()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(entry.getKey()).append("\":");
+            Object value = entry.getValue();
+            if (value instanceof Number || value instanceof Boolean) {
+                json.append(value);
+            } else {
+                json.append('"').append(value.toString().replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+            }
+        }
+        return json.append('}').toString();
+    }
+}
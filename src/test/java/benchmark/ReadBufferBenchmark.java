@@ -0,0 +1,94 @@
+package benchmark;
+
+import util.FileHasher;
+import util.HashState;
+import util.Murmur3Hasher;
+import util.StorageKind;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Бенчмарк буферов чтения при хешировании.
+ * Сравнивает прежний способ (новый буфер 4 КБ на каждый файл) с адаптивными буферами
+ * из пула потока ({@link util.ReadBuffers}) на двух деревьях: множество маленьких файлов
+ * и несколько больших. Выводит время, пропускную способность и объем выделенной памяти.
+ * <p>
+ * Запуск (после {@code mvn test-compile}):
+ * <pre>
+ * CP=$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)
+ * java -cp target/classes:target/test-classes:$CP benchmark.ReadBufferBenchmark [директория] [маленьких файлов] [больших файлов, МБ каждый]
+ * </pre>
+ */
+public class ReadBufferBenchmark {
+
+    /** Размер буфера, который раньше выделялся для каждого файла. */
+    private static final int LEGACY_BUFFER_SIZE = 4096;
+
+    public static void main(String[] args) throws Exception {
+        Path root = args.length > 0 ? Path.of(args[0]) : Files.createTempDirectory("read-buffer-bench");
+        int smallFiles = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int hugeFileMb = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+
+        Path small = root.resolve("small");
+        Path huge = root.resolve("huge");
+        long smallBytes = SyntheticTree.generate(small, smallFiles, 100, 2 * 1024, 0.0, 1);
+        long hugeBytes = SyntheticTree.generate(huge, 4, 1, hugeFileMb * 1024L * 1024, 0.0, 2);
+
+        FileHasher hasher = new Murmur3Hasher();
+        // Тип накопителя определяется один раз на дерево, как при сканировании
+        StorageKind storage = StorageKind.of(root);
+        for (int round = 0; round < 3; round++) {
+            System.out.println("Round " + (round + 1));
+            run("small files, legacy  ", small, smallBytes, file -> legacyDigest(hasher, file));
+            run("small files, adaptive", small, smallBytes, file -> hasher.digest(file, Files.size(file), storage));
+            run("huge files,  legacy  ", huge, hugeBytes, file -> legacyDigest(hasher, file));
+            run("huge files,  adaptive", huge, hugeBytes, file -> hasher.digest(file, Files.size(file), storage));
+        }
+    }
+
+    private interface Digest {
+        String apply(Path file) throws IOException;
+    }
+
+    private static void run(String label, Path tree, long totalBytes, Digest digest) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(tree)) {
+            files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        SyntheticTree.dropPageCache();
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (Path file : files) {
+            digest.apply(file);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        System.out.printf("  %s %8.3f s %9.1f MB/s  allocated %8.1f KB/file%n", label, seconds,
+                totalBytes / 1e6 / seconds, allocated / 1024.0 / files.size());
+    }
+
+    /**
+     * Прежняя схема чтения: новый буфер фиксированного размера для каждого файла.
+     */
+    private static String legacyDigest(FileHasher hasher, Path file) throws IOException {
+        HashState state = hasher.newState();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[LEGACY_BUFFER_SIZE];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                state.update(buffer, 0, len);
+            }
+        }
+        return state.finish();
+    }
+}
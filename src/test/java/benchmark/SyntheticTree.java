@@ -0,0 +1,200 @@
+package benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Генератор синтетического дерева файлов для бенчмарков.
+ * Файлы создаются в случайном порядке по разным директориям, поэтому порядок путей,
+ * порядок inode и порядок групп по размеру не совпадают — как на реальных архивах,
+ * которые наполнялись годами.
+ */
+public final class SyntheticTree {
+
+    /** Размер порции записи файла. */
+    private static final int WRITE_CHUNK = 1024 * 1024;
+
+    private SyntheticTree() {
+    }
+
+    /**
+     * Создает дерево файлов.
+     *
+     * @param root           корневая директория (будет создана при необходимости).
+     * @param fileCount      количество файлов.
+     * @param directoryCount количество директорий, по которым распределяются файлы.
+     * @param fileSize       размер каждого файла в байтах.
+     * @param duplicateRatio доля файлов, являющихся копиями других файлов (от 0 до 1).
+     * @param seed           начальное значение генератора случайных чисел.
+     * @return суммарный размер созданных файлов в байтах.
+     * @throws IOException если не удалось создать файлы.
+     */
+    public static long generate(Path root, int fileCount, int directoryCount, long fileSize,
+                                double duplicateRatio, long seed) throws IOException {
+        Random random = new Random(seed);
+        List<Path> directories = new ArrayList<>();
+        for (int i = 0; i < directoryCount; i++) {
+            directories.add(Files.createDirectories(root.resolve(String.format("dir%04d", i))));
+        }
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < fileCount; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, random);
+
+        // Содержимое файла задается начальным значением генератора: копия повторяет значение предыдущего файла.
+        // Файлы пишутся порциями, поэтому размер файла не ограничен размером массива
+        byte[] chunk = new byte[(int) Math.min(fileSize, WRITE_CHUNK)];
+        long previousSeed = 0;
+        boolean first = true;
+        long total = 0;
+        for (int index : order) {
+            long contentSeed = !first && random.nextDouble() < duplicateRatio ? previousSeed : random.nextLong();
+            Random content = new Random(contentSeed);
+            Path directory = directories.get(index % directoryCount);
+            try (OutputStream out = Files.newOutputStream(directory.resolve(String.format("file%07d.bin", index)))) {
+                for (long written = 0; written < fileSize; written += chunk.length) {
+                    content.nextBytes(chunk);
+                    out.write(chunk, 0, (int) Math.min(chunk.length, fileSize - written));
+                }
+            }
+            previousSeed = contentSeed;
+            first = false;
+            total += fileSize;
+        }
+        return total;
+    }
+
+    /**
+     * Параметры дерева для {@link #generate(Path, Spec)}.
+     */
+    public static final class Spec {
+        /** Количество файлов. */
+        public int fileCount = 10_000;
+        /** Минимальный размер файла в байтах. */
+        public int minFileSize = 1024;
+        /** Максимальный размер файла в байтах; размеры распределены лог-равномерно между границами. */
+        public int maxFileSize = 1024 * 1024;
+        /** Доля файлов, являющихся копиями ранее созданных файлов. */
+        public double duplicateRatio = 0.2;
+        /** Доля уникальных файлов, имеющих размер ранее созданного файла, но другое содержимое. */
+        public double sameSizeRatio = 0.1;
+        /** Глубина вложенности директорий. */
+        public int depth = 3;
+        /** Количество поддиректорий на каждом уровне. */
+        public int fanout = 8;
+        /** Начальное значение генератора случайных чисел. */
+        public long seed = 42;
+
+        @Override
+        public String toString() {
+            return String.format("files=%d size=%d..%d duplicates=%.2f sameSize=%.2f depth=%d fanout=%d seed=%d",
+                    fileCount, minFileSize, maxFileSize, duplicateRatio, sameSizeRatio, depth, fanout, seed);
+        }
+    }
+
+    /**
+     * Итоги генерации дерева.
+     */
+    public static final class Stats {
+        /** Суммарный размер файлов. */
+        public long totalBytes;
+        /** Количество файлов-копий. */
+        public int duplicateFiles;
+        /** Объем, который занимают копии (его можно освободить). */
+        public long duplicateBytes;
+        /** Количество уникальных файлов, чей размер совпадает с размером другого файла. */
+        public int sameSizeFiles;
+    }
+
+    /**
+     * Создает дерево файлов по параметрам. Результат воспроизводим: одинаковые параметры дают
+     * одинаковые пути и содержимое. Содержимое не хранится в памяти: для копий оно заново
+     * генерируется из начального значения, поэтому можно создавать деревья из миллионов файлов.
+     *
+     * @param root корневая директория.
+     * @param spec параметры дерева.
+     * @return итоги генерации.
+     * @throws IOException если не удалось создать файлы.
+     */
+    public static Stats generate(Path root, Spec spec) throws IOException {
+        Random random = new Random(spec.seed);
+        Stats stats = new Stats();
+        // Уникальное содержимое описывается парой (начальное значение, размер)
+        long[] contentSeeds = new long[Math.max(16, spec.fileCount)];
+        int[] contentSizes = new int[contentSeeds.length];
+        int contents = 0;
+        Set<Path> createdDirectories = new HashSet<>();
+
+        for (int i = 0; i < spec.fileCount; i++) {
+            long contentSeed;
+            int size;
+            if (contents > 0 && random.nextDouble() < spec.duplicateRatio) {
+                int source = random.nextInt(contents);
+                contentSeed = contentSeeds[source];
+                size = contentSizes[source];
+                stats.duplicateFiles++;
+                stats.duplicateBytes += size;
+            } else {
+                contentSeed = random.nextLong();
+                if (contents > 0 && random.nextDouble() < spec.sameSizeRatio) {
+                    size = contentSizes[random.nextInt(contents)];
+                    stats.sameSizeFiles++;
+                } else {
+                    size = logUniform(random, spec.minFileSize, spec.maxFileSize);
+                }
+                contentSeeds[contents] = contentSeed;
+                contentSizes[contents] = size;
+                contents++;
+            }
+
+            Path directory = root;
+            for (int level = 0; level < spec.depth; level++) {
+                directory = directory.resolve(String.format("d%02d", random.nextInt(spec.fanout)));
+            }
+            if (createdDirectories.add(directory)) {
+                Files.createDirectories(directory);
+            }
+
+            byte[] content = new byte[size];
+            new Random(contentSeed).nextBytes(content);
+            Files.write(directory.resolve(String.format("file%08d.bin", i)), content);
+            stats.totalBytes += size;
+        }
+        return stats;
+    }
+
+    private static int logUniform(Random random, int min, int max) {
+        if (max <= min) {
+            return min;
+        }
+        double logMin = Math.log(Math.max(1, min));
+        double logMax = Math.log(max);
+        return (int) Math.min(max, Math.max(min, Math.round(Math.exp(logMin + random.nextDouble() * (logMax - logMin)))));
+    }
+
+    /**
+     * Пытается сбросить страничный кеш ОС, чтобы замер отражал реальные чтения с диска.
+     * Требует прав root на Linux; в остальных случаях просто возвращает false.
+     *
+     * @return true, если кеш удалось сбросить.
+     */
+    public static boolean dropPageCache() {
+        try {
+            new ProcessBuilder("sync").inheritIO().start().waitFor();
+            Files.writeString(Path.of("/proc/sys/vm/drop_caches"), "3");
+            return true;
+        } catch (IOException | InterruptedException | UnsupportedOperationException | SecurityException e) {
+            return false;
+        }
+    }
+}
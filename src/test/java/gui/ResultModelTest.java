@@ -0,0 +1,92 @@
+package gui;
+
+import model.FileInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Тесты для фоновой сортировки и фильтрации результатов {@link ResultModel}.
+ */
+class ResultModelTest {
+
+    private final BlockingQueue<List<FileInfo>> published = new ArrayBlockingQueue<>(16);
+    private ResultModel model;
+
+    @BeforeEach
+    void setUp() {
+        List<FileInfo> rows = new ArrayList<>();
+        rows.add(new FileInfo(Path.of("/data/photos/a.JPG"), 300, "h1"));
+        rows.add(new FileInfo(Path.of("/data/backup/a.jpg"), 300, "h1"));
+        rows.add(new FileInfo(Path.of("/data/docs/report.pdf"), 1000, "h2"));
+        rows.add(new FileInfo(Path.of("/data/backup/report.pdf"), 1000, "h2"));
+        rows.add(new FileInfo(Path.of("/data/backup/README"), 10, "h3"));
+        rows.add(new FileInfo(Path.of("/data/README"), 10, "h3"));
+        model = ResultModel.of(rows, Runnable::run);
+        model.setListener(published::add);
+    }
+
+    @AfterEach
+    void tearDown() {
+        model.close();
+    }
+
+    @Test
+    void testSortsBySizeAndPath() throws InterruptedException {
+        model.setSort(ResultModel.SortKey.SIZE, false);
+        assertEquals(List.of("/data/backup/README", "/data/README", "/data/photos/a.JPG",
+                "/data/backup/a.jpg", "/data/docs/report.pdf", "/data/backup/report.pdf"), paths(next()));
+
+        // По убыванию первыми идут самые большие файлы
+        model.setSort(ResultModel.SortKey.SIZE, true);
+        assertEquals(List.of("/data/backup/report.pdf", "/data/docs/report.pdf"), paths(next()).subList(0, 2));
+
+        model.setSort(ResultModel.SortKey.PATH, true);
+        assertEquals(List.of("/data/photos/a.JPG", "/data/docs/report.pdf"), paths(next()).subList(0, 2));
+    }
+
+    @Test
+    void testFiltersBySubstringPrefixAndExtension() throws InterruptedException {
+        model.setSearch("readme");
+        assertEquals(List.of("/data/backup/README", "/data/README"), paths(next()));
+
+        // Префикс пути выбирает диапазон, результат остается в порядке групп
+        model.setSearch("/data/backup/");
+        assertEquals(List.of("/data/backup/a.jpg", "/data/backup/report.pdf", "/data/backup/README"), paths(next()));
+
+        model.setSearch("");
+        model.setExtension("jpg");
+        assertEquals(List.of("/data/photos/a.JPG", "/data/backup/a.jpg"), paths(next()));
+
+        model.setExtension("");
+        assertEquals(List.of("/data/backup/README", "/data/README"), paths(next()));
+        assertTrue(model.getExtensions().containsAll(List.of("jpg", "pdf", "")));
+    }
+
+    private List<FileInfo> next() throws InterruptedException {
+        // Устаревшие запросы не публикуются, поэтому берем последнее опубликованное представление
+        List<FileInfo> view = published.poll(10, TimeUnit.SECONDS);
+        assertNotNull(view, "Представление не опубликовано");
+        List<FileInfo> later;
+        while ((later = published.poll(100, TimeUnit.MILLISECONDS)) != null) {
+            view = later;
+        }
+        return view;
+    }
+
+    private static List<String> paths(List<FileInfo> view) {
+        return view.stream().map(info -> info.getPath().toString()).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,62 @@
+package service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import util.FileHasher;
+import util.HashAlgorithm;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AsyncHashEngineTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testDigestsMatchSynchronousHashing() throws Exception {
+        Random random = new Random(42);
+        List<Path> files = new ArrayList<>();
+        for (int size : new int[]{0, 1, 999, 1000, 1001, 25_000}) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            files.add(Files.write(tempDir.resolve("file-" + size), data));
+        }
+
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            FileHasher hasher = algorithm.create();
+            // Буферов меньше, чем файлов: submit должен дожидаться освобождения буфера
+            try (AsyncHashEngine engine = new AsyncHashEngine(2, 2, 1000)) {
+                List<CompletableFuture<String>> futures = new ArrayList<>();
+                for (Path file : files) {
+                    futures.add(engine.submit(file, hasher));
+                }
+                for (int i = 0; i < files.size(); i++) {
+                    assertEquals(hasher.digest(files.get(i)), futures.get(i).get(5, TimeUnit.SECONDS),
+                            algorithm + ": " + files.get(i).getFileName());
+                }
+            }
+        }
+    }
+
+    @Test
+    void testMissingFileFailsFutureAndReleasesBuffer() throws Exception {
+        Path existing = Files.writeString(tempDir.resolve("ok.txt"), "данные");
+        FileHasher hasher = HashAlgorithm.CUSTOM.create();
+        try (AsyncHashEngine engine = new AsyncHashEngine(1, 1)) {
+            CompletableFuture<String> missing = engine.submit(tempDir.resolve("missing.txt"), hasher);
+            assertThrows(ExecutionException.class, () -> missing.get(5, TimeUnit.SECONDS));
+            // Единственный буфер должен вернуться в пул, иначе этот вызов заблокируется
+            assertEquals(hasher.digest(existing), engine.submit(existing, hasher).get(5, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package service;
+
+import model.SharedContentInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkAnalyzerTest {
+
+    @TempDir
+    Path rootDir;
+
+    @Test
+    void testReportsBytesSharedWithOtherFiles() throws IOException {
+        // Arrange: образ и его копия с измененным фрагментом в середине, плюс независимый файл
+        byte[] image = randomBytes(1_000_000, 1);
+        byte[] modified = image.clone();
+        byte[] patch = randomBytes(20_000, 2);
+        System.arraycopy(patch, 0, modified, 500_000, patch.length);
+
+        Path imageFile = Files.write(rootDir.resolve("vm.img"), image);
+        Path modifiedFile = Files.write(rootDir.resolve("vm-snapshot.img"), modified);
+        Path unrelatedFile = Files.write(rootDir.resolve("other.img"), randomBytes(300_000, 3));
+        Files.writeString(rootDir.resolve("small.txt"), "слишком маленький файл");
+
+        ChunkAnalyzer analyzer = new ChunkAnalyzer(progress -> {}, message -> {});
+
+        // Act
+        List<SharedContentInfo> report = analyzer.analyze(rootDir, 1024);
+
+        // Assert
+        assertEquals(3, report.size(), "Файлы меньше порога не анализируются.");
+        SharedContentInfo unrelated = find(report, unrelatedFile);
+        assertEquals(0, unrelated.getSharedBytes(), "У независимого файла нет общих блоков.");
+        for (Path file : List.of(imageFile, modifiedFile)) {
+            SharedContentInfo info = find(report, file);
+            assertTrue(info.getSharedRatio() > 0.9,
+                    "Почти совпадающие файлы должны разделять большую часть блоков: " + info.getSharedRatio());
+            assertTrue(info.getSharedBytes() < info.getSize(), "Измененный фрагмент не может быть общим.");
+        }
+        assertEquals(unrelatedFile, report.get(report.size() - 1).getPath(),
+                "Результат отсортирован по убыванию общих байт.");
+    }
+
+    @Test
+    void testRepeatedChunksOfFirstFileAreCountedOnceShared() throws IOException {
+        // Первый файл содержит один и тот же фрагмент дважды, второй — один раз
+        byte[] block = randomBytes(200_000, 4);
+        byte[] twice = new byte[block.length * 2];
+        System.arraycopy(block, 0, twice, 0, block.length);
+        System.arraycopy(block, 0, twice, block.length, block.length);
+        Path first = Files.write(rootDir.resolve("twice.bin"), twice);
+        Path second = Files.write(rootDir.resolve("once.bin"), block);
+
+        ChunkAnalyzer analyzer = new ChunkAnalyzer(progress -> {}, message -> {});
+        List<SharedContentInfo> report = analyzer.analyze(List.of(first, second));
+
+        SharedContentInfo once = find(report, second);
+        assertEquals(once.getSize(), once.getSharedBytes(), "Все блоки второго файла есть в первом.");
+        SharedContentInfo repeated = find(report, first);
+        assertTrue(repeated.getSharedBytes() > block.length,
+                "Оба вхождения общего фрагмента засчитываются первому файлу: " + repeated.getSharedBytes());
+    }
+
+    private static SharedContentInfo find(List<SharedContentInfo> report, Path file) {
+        return report.stream().filter(info -> info.getPath().equals(file)).findFirst().orElseThrow();
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
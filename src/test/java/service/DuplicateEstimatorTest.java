@@ -0,0 +1,101 @@
+package service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import util.CustomHasher;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Тесты для выборочной оценки дубликатов {@link DuplicateEstimator}.
+ */
+class DuplicateEstimatorTest {
+
+    @TempDir
+    Path rootDir;
+
+    @Test
+    void testFullSampleIsExactAndPartialSampleBoundsTruth() throws IOException {
+        // 120 групп по три файла: в каждой третьей группе все файлы одинаковы, в остальных различны
+        long truth = 0;
+        for (int group = 0; group < 120; group++) {
+            int size = 100 + group * 7;
+            boolean duplicates = group % 3 == 0;
+            for (int copy = 0; copy < 3; copy++) {
+                byte[] content = new byte[size];
+                Arrays.fill(content, (byte) (duplicates ? group : group * 3 + copy + 1));
+                content[0] = (byte) group;
+                Files.write(rootDir.resolve("g" + group + "_" + copy + ".bin"), content);
+            }
+            if (duplicates) {
+                truth += 2L * size;
+            }
+        }
+        Files.writeString(rootDir.resolve("unique.txt"), "уникальный файл с неповторимым размером!!");
+
+        DuplicateEstimator.Estimate full = new DuplicateEstimator(new CustomHasher(), 1.0, 2, 1).estimate(rootDir);
+        assertEquals(361, full.getFiles());
+        assertEquals(120, full.getCandidateGroups());
+        assertEquals(120, full.getSampledGroups());
+        assertEquals(truth, full.getConfirmedBytes());
+        assertEquals(truth, full.getEstimatedBytes(), 0.5);
+        assertEquals(truth, full.getLowerBound(), 0.5);
+        assertEquals(truth, full.getUpperBound(), 0.5);
+
+        DuplicateEstimator.Estimate sampled = new DuplicateEstimator(new CustomHasher(), 0.1, 5, 42).estimate(rootDir);
+        assertTrue(sampled.getSampledGroups() < 60, "Хешируется только выборка групп");
+        assertTrue(sampled.getBytesHashed() < full.getBytesHashed() / 2);
+        assertTrue(sampled.getLowerBound() <= truth && truth <= sampled.getUpperBound(),
+                "Интервал [" + sampled.getLowerBound() + ", " + sampled.getUpperBound() + "] должен содержать " + truth);
+        assertTrue(sampled.getLowerBound() >= sampled.getConfirmedBytes());
+        assertTrue(sampled.getUpperBound() <= sampled.getUpperBoundBytes());
+    }
+
+    @Test
+    void testHeavyTailedGroupIsSampledWithinByteCap() throws IOException {
+        // Много мелких групп и одна крупная: 40 файлов по 64 КБ, 30 из которых одинаковы
+        long truth = 0;
+        for (int group = 0; group < 50; group++) {
+            int size = 50 + group;
+            for (int copy = 0; copy < 2; copy++) {
+                byte[] content = new byte[size];
+                Arrays.fill(content, (byte) (group % 2 == 0 ? group : group * 2 + copy + 1));
+                Files.write(rootDir.resolve("s" + group + "_" + copy + ".bin"), content);
+            }
+            if (group % 2 == 0) {
+                truth += size;
+            }
+        }
+        int bigSize = 64 * 1024;
+        for (int copy = 0; copy < 40; copy++) {
+            byte[] content = new byte[bigSize];
+            Arrays.fill(content, (byte) (copy < 30 ? 7 : copy));
+            Files.write(rootDir.resolve("big" + copy + ".bin"), content);
+        }
+        truth += 29L * bigSize;
+
+        DuplicateScanner grouping = new DuplicateScanner(progress -> { }, message -> { });
+        grouping.setTwoPassSizeCounting(true);
+        grouping.setExternalGroupingThreshold(10);
+        grouping.setTempDirectory(rootDir.getParent());
+        DuplicateEstimator estimator = new DuplicateEstimator(new CustomHasher(), 1.0, 2, 3);
+        estimator.setSizeGrouping(grouping);
+        estimator.setMaxBytesPerGroup(4L * bigSize);
+        DuplicateEstimator.Estimate estimate = estimator.estimate(rootDir);
+
+        assertEquals(140, estimate.getFiles());
+        assertEquals(51, estimate.getCandidateGroups());
+        assertTrue(estimate.getBytesHashed() <= 4L * bigSize + 100 * 100,
+                "Крупная группа читается не больше заданного объема: " + estimate.getBytesHashed());
+        assertTrue(estimate.getConfirmedBytes() <= truth);
+        assertTrue(estimate.getLowerBound() <= truth && truth <= estimate.getUpperBound(),
+                "Интервал [" + estimate.getLowerBound() + ", " + estimate.getUpperBound() + "] должен содержать " + truth);
+        assertTrue(estimate.getUpperBound() <= estimate.getUpperBoundBytes());
+    }
+}
@@ -5,16 +5,26 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import util.CustomHasher;
+import util.FileHasher;
+import util.HashAlgorithm;
+import util.Sha256Hasher;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Unit-тесты для класса DuplicateScanner.
@@ -173,4 +183,568 @@ class DuplicateScannerTest {
         assertFalse(fileAFound, "Файл с уникальным контентом не должен быть в списке дубликатов.");
         assertFalse(fileBFound, "Файл с уникальным контентом не должен быть в списке дубликатов.");
     }
-}
\ No newline at end of file
+
+    /**
+     * Проверяет, что режим внешней группировки (через run-файлы на диске)
+     * находит те же группы дубликатов, что и группировка в памяти.
+     */
+    @Test
+    void testExternalGroupingFindsSameDuplicates(@TempDir Path sortDir) throws Exception {
+        // Arrange
+        DuplicateScanner scanner = new DuplicateScanner(progress -> {}, message -> {});
+        scanner.setExternalGroupingThreshold(1); // Переключение на диск уже после первого файла
+        scanner.setTempDirectory(sortDir);
+
+        // Act
+        List<FileInfo> duplicates = scanner.findDuplicates(rootDir);
+
+        // Assert
+        assertEquals(5, duplicates.size(), "Должно быть найдено ровно 5 файлов-дубликатов.");
+        Map<String, List<FileInfo>> groups = duplicates.stream().collect(Collectors.groupingBy(FileInfo::getHash));
+        assertEquals(2, groups.size(), "Должно быть найдено ровно 2 группы дубликатов.");
+        assertEquals(3, duplicates.stream().filter(FileInfo::isSelected).count());
+        assertFalse(duplicates.stream().anyMatch(f -> f.getPath().equals(uniqueFile)));
+    }
+
+    /**
+     * Проверяет, что сканер использует переданную через конструктор стратегию хеширования.
+     */
+    @Test
+    void testUsesInjectedHasher() throws Exception {
+        // Arrange
+        DuplicateScanner scanner = new DuplicateScanner(progress -> {}, message -> {}, HashAlgorithm.SHA_256.create());
+
+        // Act
+        List<FileInfo> duplicates = scanner.findDuplicates(rootDir);
+
+        // Assert
+        assertEquals(5, duplicates.size(), "Должно быть найдено ровно 5 файлов-дубликатов.");
+        String expected = new Sha256Hasher().digest(file2_original);
+        Assertions.assertTrue(duplicates.stream().anyMatch(f -> f.getHash().equals(expected)),
+                "Хеши в результате должны быть вычислены переданным алгоритмом.");
+    }
+
+    /**
+     * Проверяет, что при сегментированном хешировании больших файлов результат сканирования не меняется.
+     */
+    @Test
+    void testSegmentedHashingFindsSameDuplicates() throws Exception {
+        // Arrange
+        DuplicateScanner scanner = new DuplicateScanner(progress -> {}, message -> {});
+        scanner.setSegmentedHashing(1, 8, 4); // Все файлы делятся на сегменты по 8 байт
+
+        // Act
+        List<FileInfo> duplicates = scanner.findDuplicates(rootDir);
+
+        // Assert
+        assertEquals(5, duplicates.size(), "Должно быть найдено ровно 5 файлов-дубликатов.");
+        Map<String, List<FileInfo>> groups = duplicates.stream().collect(Collectors.groupingBy(FileInfo::getHash));
+        assertEquals(2, groups.size(), "Должно быть найдено ровно 2 группы дубликатов.");
+    }
+
+    /**
+     * Проверяет, что параллельное хеширование через планировщик устройств дает тот же результат,
+     * что и последовательное, включая выбор файла, который остается в каждой группе.
+     */
+    @Test
+    void testIoSchedulerGivesSameResultAsSequentialHashing() throws Exception {
+        // Arrange
+        DuplicateScanner sequential = new DuplicateScanner(progress -> {}, message -> {});
+        DuplicateScanner parallel = new DuplicateScanner(progress -> {}, message -> {});
+
+        try (IoScheduler scheduler = new IoScheduler(4, 1024)) {
+            parallel.setIoScheduler(scheduler);
+
+            // Act
+            List<FileInfo> expected = sequential.findDuplicates(rootDir);
+            List<FileInfo> actual = parallel.findDuplicates(rootDir);
+
+            // Assert
+            assertEquals(expected.stream().map(FileInfo::getPath).collect(Collectors.toList()),
+                    actual.stream().map(FileInfo::getPath).collect(Collectors.toList()));
+            assertEquals(expected.stream().map(FileInfo::isSelected).collect(Collectors.toList()),
+                    actual.stream().map(FileInfo::isSelected).collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * Проверяет, что асинхронный движок хеширования дает тот же результат, что и последовательное хеширование.
+     */
+    @Test
+    void testAsyncHashEngineGivesSameResultAsSequentialHashing() throws Exception {
+        // Arrange
+        DuplicateScanner sequential = new DuplicateScanner(progress -> {}, message -> {});
+        DuplicateScanner async = new DuplicateScanner(progress -> {}, message -> {});
+
+        try (AsyncHashEngine engine = new AsyncHashEngine(3, 2, 16)) {
+            async.setAsyncHashEngine(engine);
+
+            // Act
+            List<FileInfo> expected = sequential.findDuplicates(rootDir);
+            List<FileInfo> actual = async.findDuplicates(rootDir);
+
+            // Assert
+            assertEquals(expected.stream().map(FileInfo::getPath).collect(Collectors.toList()),
+                    actual.stream().map(FileInfo::getPath).collect(Collectors.toList()));
+            assertEquals(expected.stream().map(FileInfo::getHash).collect(Collectors.toList()),
+                    actual.stream().map(FileInfo::getHash).collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * Проверяет, что конвейерное сканирование находит те же группы и оставляет те же файлы.
+     */
+    @Test
+    void testPipelinedScanFindsSameDuplicates() throws Exception {
+        // Arrange
+        DuplicateScanner sequential = new DuplicateScanner(progress -> {}, message -> {});
+        DuplicateScanner pipelined = new DuplicateScanner(progress -> {}, message -> {});
+        pipelined.setPipelinedScan(3, 2);
+
+        // Act
+        List<FileInfo> expected = sequential.findDuplicates(rootDir);
+        List<FileInfo> actual = pipelined.findDuplicates(rootDir);
+
+        // Assert
+        assertEquals(describe(expected), describe(actual));
+    }
+
+    /**
+     * Проверяет, что быстрый путь для маленьких файлов дает те же группы и те же хеши,
+     * что и потоковое хеширование, в том числе при внешней группировке.
+     */
+    @Test
+    void testSmallFileFastPathMatchesStreamingHashing(@TempDir Path sortDir) throws Exception {
+        // Файлы одного размера с разным содержимым должны оказаться в разных группах
+        createFile(rootDir.resolve("same-size-a.txt"), "AAAA");
+        createFile(rootDir.resolve("same-size-b.txt"), "BBBB");
+        createFile(subDir.resolve("same-size-a-copy.txt"), "AAAA");
+
+        for (long threshold : new long[]{DuplicateScanner.DEFAULT_EXTERNAL_GROUPING_THRESHOLD, 1}) {
+            // Arrange
+            DuplicateScanner streaming = new DuplicateScanner(progress -> {}, message -> {});
+            streaming.setSmallFileThreshold(0);
+            streaming.setExternalGroupingThreshold(threshold);
+            streaming.setTempDirectory(sortDir);
+            AtomicInteger digests = new AtomicInteger();
+            FileHasher counting = () -> {
+                digests.incrementAndGet();
+                return new CustomHasher().newState();
+            };
+            DuplicateScanner fastPath = new DuplicateScanner(progress -> {}, message -> {}, counting);
+            fastPath.setExternalGroupingThreshold(threshold);
+            fastPath.setTempDirectory(sortDir);
+
+            // Act
+            List<FileInfo> expected = streaming.findDuplicates(rootDir);
+            List<FileInfo> actual = fastPath.findDuplicates(rootDir);
+
+            // Assert
+            assertEquals(7, actual.size());
+            assertEquals(describe(expected), describe(actual));
+            // Хешируется только повторяющееся содержимое: две группы по 36 байт и AAAA; уникальные файлы не хешируются
+            assertEquals(3, digests.get());
+        }
+    }
+
+    /**
+     * Проверяет, что прерванное сканирование продолжается по журналу:
+     * уже вычисленные хеши не вычисляются повторно, а результат совпадает с полным сканированием.
+     */
+    @Test
+    void testInterruptedScanResumesFromJournal(@TempDir Path stateDir) throws Exception {
+        // Arrange
+        Path journalFile = stateDir.resolve("scan.journal");
+        DuplicateScanner clean = new DuplicateScanner(progress -> {}, message -> {});
+        clean.setSmallFileThreshold(0);
+        List<FileInfo> expected = clean.findDuplicates(rootDir);
+
+        AtomicInteger hashed = new AtomicInteger();
+        AtomicInteger limit = new AtomicInteger(2);
+        FileHasher flaky = () -> {
+            if (hashed.incrementAndGet() > limit.get()) {
+                throw new IllegalStateException("Имитация сбоя");
+            }
+            return new CustomHasher().newState();
+        };
+
+        // Act: первое сканирование обрывается на третьем файле
+        DuplicateScanner interrupted = new DuplicateScanner(progress -> {}, message -> {}, flaky);
+        interrupted.setSmallFileThreshold(0);
+        interrupted.setJournalFile(journalFile);
+        assertThrows(IllegalStateException.class, () -> interrupted.findDuplicates(rootDir));
+        assertTrue(Files.exists(journalFile), "Журнал прерванного сканирования должен сохраниться.");
+        // Недописанная запись в конце журнала (как после аварийного завершения) должна быть отброшена
+        Files.write(journalFile, new byte[]{4, 0, 0}, StandardOpenOption.APPEND);
+
+        hashed.set(0);
+        limit.set(Integer.MAX_VALUE);
+        DuplicateScanner resumed = new DuplicateScanner(progress -> {}, message -> {}, flaky);
+        resumed.setSmallFileThreshold(0);
+        resumed.setJournalFile(journalFile);
+        List<FileInfo> actual = resumed.findDuplicates(rootDir);
+
+        // Assert
+        // Все шесть файлов имеют одинаковый размер; два хеша уже есть в журнале
+        assertEquals(4, hashed.get(), "Повторно должны хешироваться только файлы без сохраненного хеша.");
+        assertEquals(describe(expected), describe(actual));
+        assertFalse(Files.exists(journalFile), "После успешного сканирования журнал удаляется.");
+    }
+
+    /**
+     * Проверяет, что файл, записанный в журнал при двух прерванных обходах, восстанавливается один раз
+     * и не образует группу из двух одинаковых путей.
+     */
+    @Test
+    void testJournalOfTwoInterruptedRunsRestoresFileOnce(@TempDir Path tree, @TempDir Path stateDir) throws Exception {
+        // Arrange: первый запуск прерван до завершения обхода, второй — после обхода, во время хеширования
+        Path file = createFile(tree.resolve("a1.txt"), "единственная копия");
+        Path journalFile = stateDir.resolve("scan.journal");
+        String configuration = CustomHasher.class.getName();
+        try (ScanJournal first = ScanJournal.open(journalFile, tree, configuration)) {
+            first.fileFound(file, Files.size(file));
+        }
+        try (ScanJournal second = ScanJournal.open(journalFile, tree, configuration)) {
+            second.fileFound(file, Files.size(file));
+            second.directoryDone(tree);
+        }
+
+        // Act
+        DuplicateScanner scanner = new DuplicateScanner(progress -> {}, message -> {});
+        scanner.setJournalFile(journalFile);
+        List<FileInfo> result = scanner.findDuplicates(tree);
+
+        // Assert
+        assertTrue(result.isEmpty(), "Единственный файл не может быть дубликатом самого себя.");
+    }
+
+    /**
+     * Описание результата, не зависящее от порядка групп: путь, хеш и отметка для каждого файла.
+     */
+    private static List<String> describe(List<FileInfo> result) {
+        return result.stream()
+                .map(info -> info.getPath() + " " + info.getHash() + " " + info.isSelected())
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Проверяет, что упорядочивание хеширования по расположению файлов не влияет на найденные группы.
+     */
+    @Test
+    void testLocalityOrdersFindSameDuplicates(@TempDir Path sortDir) throws Exception {
+        for (HashOrder order : HashOrder.values()) {
+            for (long threshold : new long[]{DuplicateScanner.DEFAULT_EXTERNAL_GROUPING_THRESHOLD, 1}) {
+                // Arrange
+                DuplicateScanner scanner = new DuplicateScanner(progress -> {}, message -> {});
+                scanner.setHashOrder(order);
+                scanner.setExternalGroupingThreshold(threshold);
+                scanner.setTempDirectory(sortDir);
+
+                // Act
+                List<FileInfo> duplicates = scanner.findDuplicates(rootDir);
+
+                // Assert
+                assertEquals(5, duplicates.size(), "Неверное количество дубликатов для порядка " + order);
+                assertEquals(3, duplicates.stream().filter(FileInfo::isSelected).count());
+            }
+        }
+    }
+
+    /**
+     * Проверяет, что группы, освобождающие больше места, находятся первыми
+     * и передаются получателю групп в том же порядке, что и в результате.
+     */
+    @Test
+    void testGroupsAreReportedByReclaimableSpace(@TempDir Path sortDir) throws Exception {
+        // Arrange: 2 x 300 байт (300 байт к освобождению) и 6 x 50 байт (250 байт);
+        // шесть файлов фикстуры одного размера дают меньше 250 байт
+        Path data = Files.createDirectory(rootDir.resolve("data"));
+        for (int i = 0; i < 2; i++) {
+            Files.write(data.resolve("large" + i + ".bin"), new byte[300]);
+        }
+        for (int i = 0; i < 6; i++) {
+            Files.write(data.resolve("small" + i + ".bin"), new byte[50]);
+        }
+
+        for (long threshold : new long[]{DuplicateScanner.DEFAULT_EXTERNAL_GROUPING_THRESHOLD, 1}) {
+            List<List<FileInfo>> reported = new ArrayList<>();
+            DuplicateScanner scanner = new DuplicateScanner(progress -> {}, message -> {});
+            scanner.setExternalGroupingThreshold(threshold);
+            scanner.setTempDirectory(sortDir);
+            scanner.setGroupListener(group -> reported.add(List.copyOf(group)));
+
+            // Act
+            List<FileInfo> duplicates = scanner.findDuplicates(rootDir);
+
+            // Assert
+            List<Long> sizes = reported.stream().map(group -> group.get(0).getSize()).collect(Collectors.toList());
+            assertEquals(List.of(300L, 50L), sizes.subList(0, 2), "Порог внешней группировки " + threshold);
+            assertEquals(4, reported.size());
+            assertEquals(reported.stream().flatMap(List::stream).collect(Collectors.toList()), duplicates);
+        }
+    }
+
+    /**
+     * Проверяет, что при исчерпании бюджета по объему чтения возвращаются только полностью
+     * проверенные группы, а непрочитанные кандидаты попадают в сводку.
+     */
+    @Test
+    void testByteBudgetReturnsConfirmedGroupsAndSummary(@TempDir Path sortDir) throws Exception {
+        // Arrange: группа 2 x 300 байт хешируется первой и целиком помещается в бюджет,
+        // из следующей группы 6 x 50 байт бюджета хватает только на два файла
+        Path data = Files.createDirectory(rootDir.resolve("data"));
+        for (int i = 0; i < 2; i++) {
+            Files.write(data.resolve("large" + i + ".bin"), new byte[300]);
+        }
+        for (int i = 0; i < 6; i++) {
+            Files.write(data.resolve("small" + i + ".bin"), new byte[50]);
+        }
+        long fixtureBytes = Files.size(file1_original) * 6;
+
+        for (long threshold : new long[]{DuplicateScanner.DEFAULT_EXTERNAL_GROUPING_THRESHOLD, 1}) {
+            ScanBudget budget = ScanBudget.ofBytes(700);
+            DuplicateScanner scanner = new DuplicateScanner(progress -> {}, message -> {});
+            scanner.setExternalGroupingThreshold(threshold);
+            scanner.setTempDirectory(sortDir);
+            scanner.setBudget(budget);
+
+            // Act
+            List<FileInfo> duplicates = scanner.findDuplicates(rootDir);
+
+            // Assert
+            assertEquals(2, duplicates.size(), "Порог внешней группировки " + threshold);
+            assertTrue(duplicates.stream().allMatch(info -> info.getSize() == 300));
+            assertTrue(budget.isExhausted());
+            assertTrue(budget.isWalkComplete());
+            assertEquals(700, budget.getBytesRead());
+            assertEquals(10, budget.getUnexploredFiles());
+            assertEquals(200 + fixtureBytes, budget.getUnexploredBytes());
+        }
+    }
+
+    /**
+     * Проверяет, что нулевой бюджет времени останавливает сканирование без ошибки,
+     * а достаточный бюджет не меняет результат.
+     */
+    @Test
+    void testTimeBudget() throws Exception {
+        ScanBudget empty = ScanBudget.ofTime(java.time.Duration.ZERO);
+        DuplicateScanner stopped = new DuplicateScanner(progress -> {}, message -> {});
+        stopped.setBudget(empty);
+        assertTrue(stopped.findDuplicates(rootDir).isEmpty());
+        assertTrue(empty.isExhausted());
+        assertFalse(empty.isWalkComplete());
+
+        ScanBudget generous = new ScanBudget(java.time.Duration.ofHours(1), Long.MAX_VALUE);
+        DuplicateScanner scanner = new DuplicateScanner(progress -> {}, message -> {});
+        scanner.setBudget(generous);
+        assertEquals(5, scanner.findDuplicates(rootDir).size());
+        assertFalse(generous.isExhausted());
+        assertEquals(0, generous.getUnexploredFiles());
+    }
+
+    /**
+     * Проверяет, что записи архивов сравниваются с файлами и друг с другом, но никогда не отмечаются для удаления.
+     */
+    @Test
+    void testArchiveEntriesTakePartInGrouping(@TempDir Path sortDir) throws Exception {
+        // Arrange: одинаковая запись в двух архивах и такой же обычный файл
+        Path data = Files.createDirectory(rootDir.resolve("data"));
+        byte[] content = "shared archive entry content".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        Path plain = Files.write(data.resolve("plain.txt"), content);
+        writeZip(data.resolve("a.jar"), Map.of("com/example/Shared.txt", content, "only-in-a.txt", new byte[]{1}));
+        writeZip(data.resolve("b.zip"), Map.of("copy/Shared.txt", content));
+
+        for (long threshold : new long[]{DuplicateScanner.DEFAULT_EXTERNAL_GROUPING_THRESHOLD, 1, 11}) {
+            DuplicateScanner scanner = new DuplicateScanner(progress -> {}, message -> {});
+            scanner.setArchiveScanning(true);
+            scanner.setExternalGroupingThreshold(threshold);
+            scanner.setTempDirectory(sortDir);
+
+            // Act
+            List<FileInfo> duplicates = scanner.findDuplicates(rootDir);
+
+            // Assert
+            List<FileInfo> shared = duplicates.stream()
+                    .filter(info -> info.getSize() == content.length)
+                    .collect(Collectors.toList());
+            assertEquals(List.of(data.resolve("a.jar") + "!/com/example/Shared.txt",
+                            data.resolve("b.zip") + "!/copy/Shared.txt",
+                            plain.toString()),
+                    shared.stream().map(info -> info.getPath().toString()).sorted().collect(Collectors.toList()));
+            for (FileInfo info : shared) {
+                assertEquals(!info.getPath().equals(plain), info.isArchiveEntry());
+                assertFalse(info.isSelected(), "Ни одна копия не должна быть отмечена: " + info.getPath());
+            }
+            assertEquals(5, duplicates.size() - shared.size());
+        }
+
+        // Без включенного режима архивы сравниваются только как файлы
+        DuplicateScanner plainScanner = new DuplicateScanner(progress -> {}, message -> {});
+        assertEquals(5, plainScanner.findDuplicates(rootDir).size());
+    }
+
+    /**
+     * Проверяет, что запись с недопустимым для файловой системы именем пропускается, а не прерывает сканирование.
+     */
+    @Test
+    void testArchiveEntryWithInvalidNameIsSkipped(@TempDir Path tree) throws Exception {
+        byte[] content = "entry next to an invalid one".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        Path plain = Files.write(tree.resolve("plain.txt"), content);
+        writeZip(tree.resolve("a.zip"), Map.of("bad\u0000name.txt", content, "good.txt", content));
+
+        for (boolean twoPass : new boolean[]{false, true}) {
+            DuplicateScanner scanner = new DuplicateScanner(progress -> {}, message -> {});
+            scanner.setArchiveScanning(true);
+            scanner.setTwoPassSizeCounting(twoPass);
+
+            List<FileInfo> duplicates = scanner.findDuplicates(tree);
+
+            assertEquals(List.of(tree.resolve("a.zip") + "!/good.txt", plain.toString()),
+                    duplicates.stream().map(info -> info.getPath().toString()).sorted().collect(Collectors.toList()));
+        }
+    }
+
+    private static void writeZip(Path file, Map<String, byte[]> entries) throws IOException {
+        try (java.util.zip.ZipOutputStream zip = new java.util.zip.ZipOutputStream(Files.newOutputStream(file))) {
+            for (Map.Entry<String, byte[]> entry : new java.util.TreeMap<>(entries).entrySet()) {
+                zip.putNextEntry(new java.util.zip.ZipEntry(entry.getKey()));
+                zip.write(entry.getValue());
+                zip.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Проверяет, что одинаковые поддеревья сообщаются одной группой директорий,
+     * а их файлы не перечисляются по отдельности.
+     */
+    @Test
+    void testIdenticalDirectoriesAreReportedAsOneGroup(@TempDir Path tree) throws Exception {
+        // Arrange: три копии проекта, одна из них вложена глубже, и отдельная копия одного файла
+        for (Path project : new Path[]{tree.resolve("p1"), tree.resolve("p2"), tree.resolve("backup/p3")}) {
+            Files.createDirectories(project.resolve("src"));
+            createFile(project.resolve("readme.txt"), "project readme");
+            createFile(project.resolve("src/Main.java"), "class Main {}");
+        }
+        createFile(tree.resolve("loose-readme.txt"), "project readme");
+        createFile(tree.resolve("backup/notes.txt"), "unique notes");
+
+        DuplicateScanner scanner = new DuplicateScanner(progress -> {}, message -> {});
+        scanner.setDirectoryGrouping(true);
+
+        // Act
+        List<FileInfo> result = scanner.findDuplicates(tree);
+
+        // Assert
+        Map<Integer, List<FileInfo>> groups = result.stream().collect(Collectors.groupingBy(FileInfo::getGroupId));
+        assertEquals(2, groups.size());
+
+        List<FileInfo> directories = groups.get(1);
+        assertEquals(List.of(tree.resolve("backup/p3"), tree.resolve("p1"), tree.resolve("p2")),
+                directories.stream().map(FileInfo::getPath).collect(Collectors.toList()));
+        assertTrue(directories.stream().allMatch(FileInfo::isDirectory));
+        assertEquals("project readme".length() + "class Main {}".length(), directories.get(0).getSize());
+        assertEquals(List.of(false, true, true), directories.stream().map(FileInfo::isSelected).collect(Collectors.toList()));
+
+        // Отдельная копия файла остается в группе вместе с одной копией из одинаковых директорий
+        List<FileInfo> readme = groups.get(2);
+        assertEquals(2, readme.size());
+        assertEquals(tree.resolve("loose-readme.txt"), readme.get(1).getPath());
+        assertFalse(readme.get(0).isSelected());
+        assertTrue(readme.get(1).isSelected());
+    }
+
+    /**
+     * Проверяет, что вложенная группа не оставляет копию внутри директории, отмеченной в другой группе:
+     * после удаления отмеченного у каждой группы остается хотя бы одна копия.
+     */
+    @Test
+    void testNestedDirectoryGroupsKeepOneCopy(@TempDir Path tree) throws Exception {
+        // Arrange: a и a-b одинаковы целиком, c содержит такую же s и уникальный файл.
+        // "/a-b/s" сортируется раньше "/a/s", поэтому группы s и {a, a-b} по умолчанию выбирают разные стороны
+        for (String directory : new String[]{"a", "a-b", "c"}) {
+            Files.createDirectories(tree.resolve(directory).resolve("s"));
+            createFile(tree.resolve(directory).resolve("s/data.txt"), "shared content");
+        }
+        createFile(tree.resolve("c/unique.txt"), "only in c");
+        // Самые новые копии лежат в разных сторонах вложенности
+        Files.setLastModifiedTime(tree.resolve("a-b"), FileTime.fromMillis(3_000_000L));
+        Files.setLastModifiedTime(tree.resolve("a"), FileTime.fromMillis(2_000_000L));
+        Files.setLastModifiedTime(tree.resolve("c/s"), FileTime.fromMillis(1_000_000L));
+        Files.setLastModifiedTime(tree.resolve("a/s"), FileTime.fromMillis(4_000_000L));
+
+        for (SelectionPolicy policy : new SelectionPolicy[]{SelectionPolicy.keepFirst(),
+                new SelectionPolicy(SelectionPolicy.Keep.NEWEST), new SelectionPolicy(SelectionPolicy.Keep.OLDEST)}) {
+            DuplicateScanner scanner = new DuplicateScanner(progress -> {}, message -> {});
+            scanner.setDirectoryGrouping(true);
+            scanner.setSelectionPolicy(policy);
+
+            // Act
+            List<FileInfo> result = scanner.findDuplicates(tree);
+
+            // Assert: в каждой группе есть неотмеченная строка вне отмеченных директорий
+            List<Path> selectedDirectories = result.stream().filter(info -> info.isDirectory() && info.isSelected())
+                    .map(FileInfo::getPath).collect(Collectors.toList());
+            Map<Integer, List<FileInfo>> groups = result.stream().collect(Collectors.groupingBy(FileInfo::getGroupId));
+            assertEquals(2, groups.size());
+            for (List<FileInfo> group : groups.values()) {
+                assertTrue(group.stream().anyMatch(info -> !info.isSelected() && selectedDirectories.stream()
+                        .noneMatch(directory -> info.getPath().startsWith(directory) && !info.getPath().equals(directory))),
+                        "group " + group.get(0).getGroupId() + " loses every copy");
+            }
+        }
+    }
+
+    /**
+     * Проверяет, что группировка в два прохода находит те же группы, не сохраняя пути файлов с уникальным размером.
+     */
+    @Test
+    void testTwoPassSizeCountingFindsSameDuplicates(@TempDir Path sortDir) throws Exception {
+        createFile(rootDir.resolve("other-size.bin"), "файл другого размера");
+        List<String> messages = new ArrayList<>();
+        DuplicateScanner onePass = new DuplicateScanner(progress -> {}, message -> {});
+        DuplicateScanner twoPass = new DuplicateScanner(progress -> {}, messages::add);
+        twoPass.setTwoPassSizeCounting(true);
+        // Порог внешней группировки считается по кандидатам: 6 файлов одного размера помещаются в память
+        twoPass.setExternalGroupingThreshold(6);
+        twoPass.setTempDirectory(sortDir);
+
+        List<FileInfo> expected = onePass.findDuplicates(rootDir);
+        List<FileInfo> actual = twoPass.findDuplicates(rootDir);
+        assertEquals(expected.stream().map(FileInfo::getPath).collect(Collectors.toList()),
+                actual.stream().map(FileInfo::getPath).collect(Collectors.toList()));
+        assertTrue(messages.contains("Подсчет размеров файлов..."));
+        assertFalse(messages.stream().anyMatch(message -> message.contains("на диск")));
+
+        // Если все размеры уникальны, пути вообще не сохраняются
+        Path unique = Files.createDirectory(sortDir.resolve("unique"));
+        createFile(unique.resolve("a.txt"), "a");
+        createFile(unique.resolve("b.txt"), "bb");
+        messages.clear();
+        assertTrue(twoPass.findDuplicates(unique).isEmpty());
+        assertTrue(messages.contains("Дубликаты не найдены."));
+    }
+
+    /**
+     * Проверяет, что параллельный обход находит те же группы, что и обход в одном потоке.
+     */
+    @Test
+    void testParallelWalkFindsSameDuplicates() throws Exception {
+        DuplicateScanner sequential = new DuplicateScanner(progress -> {}, message -> {});
+        DuplicateScanner parallel = new DuplicateScanner(progress -> {}, message -> {});
+        parallel.setParallelWalk(4);
+        parallel.setTwoPassSizeCounting(true);
+
+        Map<String, List<Path>> expected = sequential.findDuplicates(rootDir).stream().collect(
+                Collectors.groupingBy(FileInfo::getHash, Collectors.mapping(FileInfo::getPath, Collectors.toList())));
+        Map<String, List<Path>> actual = parallel.findDuplicates(rootDir).stream().collect(
+                Collectors.groupingBy(FileInfo::getHash, Collectors.mapping(FileInfo::getPath, Collectors.toList())));
+        assertEquals(expected.keySet(), actual.keySet());
+        for (String hash : expected.keySet()) {
+            assertEquals(expected.get(hash).stream().sorted().collect(Collectors.toList()),
+                    actual.get(hash).stream().sorted().collect(Collectors.toList()));
+        }
+    }
+}
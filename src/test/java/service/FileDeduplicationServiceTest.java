@@ -93,4 +93,42 @@ class FileDeduplicationServiceTest {
         assertEquals(0, deletedCount);
     }
 
-}
\ No newline at end of file
+    @Test
+    void testLinkSelectedDuplicatesKeepsAllPaths() throws IOException {
+        Path kept = Files.writeString(tempDir.resolve("original.txt"), "same content");
+        Path copy1 = Files.writeString(tempDir.resolve("copy1.txt"), "same content");
+        Path copy2 = Files.writeString(Files.createDirectory(tempDir.resolve("sub")).resolve("copy2.txt"), "same content");
+        Path changed = Files.writeString(tempDir.resolve("changed.txt"), "other");
+        // Тот же размер, но другое содержимое, и копия с другим временем изменения, чем при сканировании
+        Path sameSize = Files.writeString(tempDir.resolve("same-size.txt"), "SAME CONTENT");
+        Path touched = Files.writeString(tempDir.resolve("touched.txt"), "same content");
+        List<FileInfo> rows = new ArrayList<>();
+        for (Path path : List.of(kept, copy1, copy2, changed, sameSize, touched)) {
+            FileInfo info = new FileInfo(path, 12, "hash");
+            info.setGroupId(1);
+            info.setSelected(path != kept);
+            if (path == touched) {
+                info.setLastModified(Files.getLastModifiedTime(path).toMillis() - 60_000);
+            }
+            rows.add(info);
+        }
+        // Группа без оставляемого файла не трогается
+        FileInfo orphan = new FileInfo(fileToDelete1, 0, "empty");
+        orphan.setGroupId(2);
+        orphan.setSelected(true);
+        rows.add(orphan);
+
+        assertEquals(List.of(copy1, copy2), service.linkSelectedDuplicates(rows, LinkConsolidator.Mode.HARD_LINK));
+        assertTrue(Files.isSameFile(kept, copy1));
+        assertTrue(Files.isSameFile(kept, copy2));
+        assertEquals("same content", Files.readString(copy2));
+        // Файл, изменившийся после сканирования, остается самостоятельным
+        assertFalse(Files.isSameFile(kept, changed));
+        assertFalse(Files.isSameFile(kept, sameSize));
+        assertFalse(Files.isSameFile(kept, touched));
+        assertTrue(Files.exists(fileToDelete1));
+        try (var listing = Files.list(tempDir)) {
+            assertTrue(listing.noneMatch(path -> path.getFileName().toString().contains(".dedup-")));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package service;
+
+import model.FileInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Тесты для встроенной корзины {@link FreedesktopTrash}.
+ */
+@EnabledOnOs({OS.LINUX, OS.FREEBSD, OS.OPENBSD})
+class FreedesktopTrashTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testMoveToTrashWritesInfoAndRestores() throws IOException {
+        FreedesktopTrash trash = new FreedesktopTrash(tempDir.resolve("Trash"));
+        Path first = Files.writeString(Files.createDirectories(tempDir.resolve("a b")).resolve("photo.jpg"), "first");
+        Path second = Files.writeString(Files.createDirectories(tempDir.resolve("other")).resolve("photo.jpg"), "second");
+
+        Path firstTrashed = trash.moveToTrash(first);
+        Path secondTrashed = trash.moveToTrash(second);
+        assertFalse(Files.exists(first));
+        assertFalse(Files.exists(second));
+        assertEquals(tempDir.resolve("Trash").resolve("files"), firstTrashed.getParent());
+        // Одинаковые имена получают разные места в корзине
+        assertNotEquals(firstTrashed, secondTrashed);
+        assertEquals("second", Files.readString(secondTrashed));
+
+        List<String> info = Files.readAllLines(
+                tempDir.resolve("Trash").resolve("info").resolve(firstTrashed.getFileName() + ".trashinfo"), StandardCharsets.UTF_8);
+        assertEquals("[Trash Info]", info.get(0));
+        assertEquals("Path=" + FreedesktopTrash.encodePath(first.toString()), info.get(1));
+        assertTrue(info.get(1).contains("a%20b/photo.jpg"));
+        assertTrue(info.get(2).startsWith("DeletionDate="));
+
+        assertEquals(first, trash.restore(firstTrashed));
+        assertEquals("first", Files.readString(first));
+        assertFalse(Files.exists(firstTrashed));
+
+        // Занятый исходный путь не перезаписывается
+        Files.writeString(second, "new");
+        assertThrows(IOException.class, () -> trash.restore(secondTrashed));
+        assertEquals("new", Files.readString(second));
+    }
+
+    @Test
+    void testServiceUsesNativeTrashAndUndoesDelete() throws IOException {
+        FileDeduplicationService service = new FileDeduplicationService(new FreedesktopTrash(tempDir.resolve("Trash")));
+        Path kept = Files.writeString(tempDir.resolve("kept.txt"), "same");
+        Path copy = Files.writeString(tempDir.resolve("copy.txt"), "same");
+        FileInfo keptInfo = new FileInfo(kept, 4, "h");
+        FileInfo copyInfo = new FileInfo(copy, 4, "h");
+        copyInfo.setSelected(true);
+
+        assertTrue(service.isTrashSupported());
+        assertFalse(service.canUndoDelete());
+        assertEquals(1, service.deleteSelectedDuplicates(List.of(keptInfo, copyInfo)));
+        assertTrue(Files.exists(kept));
+        assertFalse(Files.exists(copy));
+        assertTrue(service.canUndoDelete());
+
+        assertEquals(1, service.undoLastDelete());
+        assertEquals("same", Files.readString(copy));
+        assertFalse(service.canUndoDelete());
+    }
+
+    @Test
+    void testPathEncodingRoundTrip() {
+        String path = "/home/user/Фото 100%/a#b.txt";
+        String encoded = FreedesktopTrash.encodePath(path);
+        assertFalse(encoded.contains(" "));
+        assertEquals(path, FreedesktopTrash.decodePath(encoded));
+    }
+}
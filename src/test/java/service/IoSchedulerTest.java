@@ -0,0 +1,134 @@
+package service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import util.StorageKind;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IoSchedulerTest {
+
+    private IoScheduler scheduler;
+
+    @AfterEach
+    void tearDown() {
+        if (scheduler != null) {
+            scheduler.close();
+        }
+    }
+
+    /**
+     * Устройство определяется по первой компоненте пути: "/hdd/..." и "/ssd/...".
+     */
+    private static StorageDevices.Device deviceOf(Path file) {
+        String name = file.getName(0).toString();
+        return new StorageDevices.Device(name, name, StorageKind.UNKNOWN);
+    }
+
+    @Test
+    void testConcurrencyLimitIsRespectedPerDevice() throws Exception {
+        scheduler = new IoScheduler(4, Long.MAX_VALUE, IoSchedulerTest::deviceOf);
+        scheduler.setDeviceLimits("hdd", 1, Long.MAX_VALUE);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(scheduler.submit(Path.of("/hdd/file" + i), 1, 1, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(5);
+                running.decrementAndGet();
+                return 1;
+            }));
+        }
+        for (Future<Integer> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(1, maxRunning.get(), "Для HDD задано не больше одного чтения одновременно.");
+        assertEquals(1, scheduler.getConcurrency("hdd"));
+    }
+
+    @Test
+    void testSlowDeviceDoesNotBlockOtherDevice() throws Exception {
+        scheduler = new IoScheduler(1, Long.MAX_VALUE, IoSchedulerTest::deviceOf);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<Integer> blocked = scheduler.submit(Path.of("/hdd/slow"), 1, 1, () -> {
+            release.await();
+            return 1;
+        });
+        Future<Integer> fast = scheduler.submit(Path.of("/ssd/fast"), 1, 1, () -> 2);
+
+        assertEquals(2, fast.get(5, TimeUnit.SECONDS), "Очередь SSD не должна ждать занятый HDD.");
+        assertFalse(blocked.isDone());
+        release.countDown();
+        assertEquals(1, blocked.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testDevicesWithSameNameGetSeparateQueues() throws Exception {
+        // Оба устройства называются "tmpfs", но это разные файловые системы
+        scheduler = new IoScheduler(1, Long.MAX_VALUE, file -> new StorageDevices.Device(
+                file.getName(0).toString(), "tmpfs", StorageKind.SOLID_STATE));
+        scheduler.setDeviceLimits("tmpfs", 1, Long.MAX_VALUE);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<Integer> blocked = scheduler.submit(Path.of("/first/slow"), 1, 1, () -> {
+            release.await();
+            return 1;
+        });
+        Future<Integer> other = scheduler.submit(Path.of("/second/fast"), 1, 1, () -> 2);
+
+        assertEquals(2, other.get(5, TimeUnit.SECONDS), "Одинаковое имя хранилища не должно объединять очереди.");
+        assertFalse(blocked.isDone());
+        release.countDown();
+        assertEquals(1, blocked.get(5, TimeUnit.SECONDS));
+        assertEquals(1, scheduler.getConcurrency("tmpfs"));
+    }
+
+    @Test
+    void testBufferBudgetLimitsTasksInFlight() throws Exception {
+        // Параллелизм 8, но бюджета хватает только на два буфера по 100 байт
+        scheduler = new IoScheduler(8, 200, IoSchedulerTest::deviceOf);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            futures.add(scheduler.submit(Path.of("/ssd/file" + i), 100, 100, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(5);
+                running.decrementAndGet();
+                return 1;
+            }));
+        }
+        for (Future<Integer> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+
+        assertTrue(maxRunning.get() <= 2, "Одновременно в полете не может быть больше двух буферов.");
+    }
+
+    @Test
+    void testTunerClimbsWhileThroughputGrowsAndBacksOff() {
+        ThroughputTuner tuner = new ThroughputTuner(1, 1, 8);
+
+        // Пропускная способность растет до 4 потоков, дальше падает
+        double[] throughputByLevel = {0, 100, 190, 270, 300, 280, 250, 220, 200};
+        int level = tuner.current();
+        for (int i = 0; i < 20; i++) {
+            level = tuner.onSample(throughputByLevel[level]);
+        }
+
+        assertTrue(level >= 3 && level <= 5, "Параллелизм должен колебаться около оптимума, а был " + level);
+    }
+}
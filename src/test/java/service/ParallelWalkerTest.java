@@ -0,0 +1,93 @@
+package service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Тесты для параллельного обхода {@link ParallelWalker}.
+ */
+class ParallelWalkerTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void testOrderIsDeterministicAndSizesAreReported() throws IOException {
+        List<String> expected = new ArrayList<>();
+        for (int d = 0; d < 8; d++) {
+            Path directory = Files.createDirectories(root.resolve("d" + d).resolve("inner"));
+            Files.writeString(root.resolve("d" + d).resolve("b.txt"), "x".repeat(d));
+            Files.writeString(directory.resolve("a.txt"), "inner" + d);
+            expected.add("d" + d + "/b.txt:" + d);
+            expected.add("d" + d + "/inner/a.txt:" + ("inner" + d).length());
+        }
+        Files.writeString(root.resolve("top.txt"), "top");
+        Files.createDirectory(root.resolve("empty"));
+        expected.add("top.txt:3");
+        // Внутри директории элементы идут по имени: b.txt раньше inner/
+        expected.sort(null);
+
+        for (int threads : new int[] {1, 4}) {
+            List<String> visited = new ArrayList<>();
+            new ParallelWalker(threads, false).walk(root, (file, size) -> {
+                visited.add(root.relativize(file).toString().replace('\\', '/') + ":" + size);
+                return true;
+            });
+            assertEquals(expected, visited);
+        }
+
+        // Получатель может остановить обход
+        List<Path> first = new ArrayList<>();
+        new ParallelWalker(2, false).walk(root, (file, size) -> first.add(file) && first.size() < 3);
+        assertEquals(3, first.size());
+    }
+
+    @Test
+    void testTreeWiderThanListingLimitIsWalkedCompletely() throws IOException {
+        // Директорий больше, чем листингов, которые можно запустить с упреждением
+        int directories = 3 * ParallelWalker.LISTINGS_PER_THREAD;
+        List<String> expected = new ArrayList<>();
+        for (int d = 0; d < directories; d++) {
+            String name = String.format("d%03d", d);
+            Path nested = Files.createDirectories(root.resolve(name).resolve("n1").resolve("n2"));
+            Files.writeString(nested.resolve("f.txt"), name);
+            expected.add(name + "/n1/n2/f.txt");
+        }
+
+        List<String> visited = new ArrayList<>();
+        new ParallelWalker(1, false).walk(root, (file, size) -> {
+            visited.add(root.relativize(file).toString().replace('\\', '/'));
+            return true;
+        });
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void testSymlinkLoopsAreVisitedOnce() throws IOException {
+        Path directory = Files.createDirectory(root.resolve("dir"));
+        Files.writeString(directory.resolve("file.txt"), "data");
+        Files.createSymbolicLink(directory.resolve("loop"), root);
+        Files.createSymbolicLink(root.resolve("alias"), directory);
+        Files.createSymbolicLink(root.resolve("file-link.txt"), directory.resolve("file.txt"));
+
+        List<String> followed = new ArrayList<>();
+        new ParallelWalker(3, true).walk(root, (file, size) -> followed.add(root.relativize(file).toString()));
+        // Директория dir доступна по двум путям, но обходится один раз (первым по имени — через alias)
+        assertEquals(List.of("alias/file.txt", "file-link.txt"), followed);
+
+        List<String> notFollowed = new ArrayList<>();
+        new ParallelWalker(3, false).walk(root, (file, size) -> notFollowed.add(root.relativize(file).toString()));
+        assertEquals(List.of("dir/file.txt", "file-link.txt"), notFollowed);
+    }
+}
@@ -0,0 +1,143 @@
+package service;
+
+import model.FileInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Тесты для сравнения индексов {@link ScanIndexDiff}.
+ */
+class ScanIndexDiffTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testReportsAddedResolvedAndChanged() throws IOException {
+        List<FileInfo> before = List.of(
+                fileInfo("/r/a1", 100, "aaaa", 1),
+                fileInfo("/r/a2", 100, "aaaa", 1),
+                fileInfo("/r/b1", 50, "bbbb", 1),
+                fileInfo("/r/b2", 50, "bbbb", 1),
+                fileInfo("/r/b3", 50, "bbbb", 1));
+        List<FileInfo> after = List.of(
+                fileInfo("/r/a1", 100, "aaaa", 1),
+                fileInfo("/r/a2", 100, "aaaa", 1),
+                fileInfo("/r/b1", 70, "cccc", 2),
+                fileInfo("/r/c1", 70, "cccc", 2));
+
+        try (ScanIndex oldIndex = write("old.idx", before); ScanIndex newIndex = write("new.idx", after)) {
+            List<String> events = new ArrayList<>();
+            new ScanIndexDiff(oldIndex, newIndex).compare(new ScanIndexDiff.Listener() {
+                @Override
+                public void groupAdded(ScanIndex index, int from, int to) {
+                    events.add("added " + index.hash(from) + " x" + (to - from));
+                }
+
+                @Override
+                public void groupResolved(ScanIndex index, int from, int to) {
+                    events.add("resolved " + index.hash(from) + " x" + (to - from));
+                }
+
+                @Override
+                public void fileChanged(int oldRecord, int newRecord) {
+                    events.add("changed " + newIndex.path(newRecord));
+                }
+            });
+            assertEquals(List.of("resolved bbbb x3", "added cccc x2", "changed /r/b1"), events);
+
+            ScanIndexDiff.Summary summary = new ScanIndexDiff(oldIndex, newIndex).compare();
+            assertEquals(1, summary.getAddedGroups());
+            assertEquals(1, summary.getResolvedGroups());
+            assertEquals(1, summary.getChangedFiles());
+            assertEquals(70, summary.getAddedWastedBytes());
+            assertEquals(100, summary.getResolvedWastedBytes());
+            assertEquals(1, summary.getAddedFiles());
+            assertEquals(2, summary.getRemovedFiles());
+        }
+    }
+
+    @Test
+    void testReportsMembershipChangesAndFilesInOneIndex() throws IOException {
+        List<FileInfo> before = List.of(
+                fileInfo("/r/a1", 100, "aaaa", 1),
+                fileInfo("/r/a2", 100, "aaaa", 1),
+                fileInfo("/r/a3", 100, "aaaa", 1));
+        List<FileInfo> after = List.of(
+                fileInfo("/r/a1", 100, "aaaa", 1),
+                fileInfo("/r/a3", 100, "aaaa", 1),
+                fileInfo("/r/a4", 100, "aaaa", 1));
+
+        try (ScanIndex oldIndex = write("old.idx", before); ScanIndex newIndex = write("new.idx", after)) {
+            List<String> events = new ArrayList<>();
+            new ScanIndexDiff(oldIndex, newIndex).compare(new ScanIndexDiff.Listener() {
+                @Override
+                public void memberAdded(int newRecord) {
+                    events.add("joined " + newIndex.path(newRecord));
+                }
+
+                @Override
+                public void memberRemoved(int oldRecord) {
+                    events.add("left " + oldIndex.path(oldRecord));
+                }
+
+                @Override
+                public void fileAdded(int newRecord) {
+                    events.add("added " + newIndex.path(newRecord));
+                }
+
+                @Override
+                public void fileRemoved(int oldRecord) {
+                    events.add("removed " + oldIndex.path(oldRecord));
+                }
+            });
+            assertEquals(List.of("left /r/a2", "joined /r/a4", "removed /r/a2", "added /r/a4"), events);
+
+            ScanIndexDiff.Summary summary = new ScanIndexDiff(oldIndex, newIndex).compare();
+            assertEquals(0, summary.getAddedGroups() + summary.getResolvedGroups() + summary.getChangedFiles());
+            assertEquals(1, summary.getAddedMembers());
+            assertEquals(1, summary.getRemovedMembers());
+            assertEquals(1, summary.getAddedFiles());
+            assertEquals(1, summary.getRemovedFiles());
+        }
+    }
+
+    @Test
+    void testIdenticalIndexesHaveNoDifferences() throws IOException {
+        List<FileInfo> files = List.of(fileInfo("/r/x", 10, "ffff", 5), fileInfo("/r/y", 10, "ffff", 5));
+        try (ScanIndex a = write("a.idx", files); ScanIndex b = write("b.idx", files)) {
+            ScanIndexDiff.Summary summary = new ScanIndexDiff(a, b).compare();
+            assertEquals(0, summary.getAddedGroups() + summary.getResolvedGroups() + summary.getChangedFiles());
+            assertEquals(0, summary.getAddedMembers() + summary.getRemovedMembers()
+                    + summary.getAddedFiles() + summary.getRemovedFiles());
+        }
+    }
+
+    @Test
+    void testRejectsDifferentAlgorithms() throws IOException {
+        ScanIndex.write(tempDir.resolve("sha.idx"), tempDir, "Sha256Hasher", new ArrayList<>());
+        try (ScanIndex a = write("custom.idx", new ArrayList<>()); ScanIndex b = ScanIndex.open(tempDir.resolve("sha.idx"))) {
+            assertThrows(IllegalArgumentException.class, () -> new ScanIndexDiff(a, b));
+        }
+    }
+
+    private ScanIndex write(String name, List<FileInfo> files) throws IOException {
+        Path indexFile = tempDir.resolve(name);
+        ScanIndex.write(indexFile, Path.of("/r"), "CustomHasher", files);
+        return ScanIndex.open(indexFile);
+    }
+
+    private static FileInfo fileInfo(String path, long size, String hash, long lastModified) {
+        FileInfo info = new FileInfo(Path.of(path), size, hash);
+        info.setLastModified(lastModified);
+        return info;
+    }
+}
@@ -0,0 +1,168 @@
+package service;
+
+import model.FileInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Тесты для двоичного индекса результатов {@link ScanIndex}.
+ */
+class ScanIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRoundTripKeepsAllFields() throws IOException {
+        List<FileInfo> files = new ArrayList<>();
+        files.add(fileInfo("/data/b.txt", 10, "bbbb", 1000, false));
+        files.add(fileInfo("/data/a.txt", 10, "bbbb", 2000, true));
+        files.add(fileInfo("/data/sub/c.bin", 5, "aaaa", 3000, true));
+        files.add(fileInfo("/data/d.bin", 5, "aaaa", 4000, false));
+        files.get(3).setArchiveEntry(true);
+        Path indexFile = tempDir.resolve("scan.idx");
+
+        ScanIndex.write(indexFile, Path.of("/data"), "CustomHasher", files);
+
+        try (ScanIndex index = ScanIndex.open(indexFile)) {
+            assertEquals(4, index.size());
+            assertEquals(Path.of("/data").toAbsolutePath(), index.getRoot());
+            assertEquals("CustomHasher", index.getAlgorithm());
+
+            // Записи упорядочены по (размер, хеш, путь), группы нумеруются подряд
+            assertEquals("/data/d.bin", index.path(0));
+            assertEquals("/data/sub/c.bin", index.path(1));
+            assertEquals("/data/a.txt", index.path(2));
+            assertEquals("/data/b.txt", index.path(3));
+            assertEquals(1, index.groupId(0));
+            assertEquals(1, index.groupId(1));
+            assertEquals(2, index.groupId(2));
+            assertEquals(2, index.groupId(3));
+
+            FileInfo restored = index.toFileInfo(1);
+            assertEquals(Path.of("/data/sub/c.bin"), restored.getPath());
+            assertEquals(5, restored.getSize());
+            assertEquals("aaaa", restored.getHash());
+            assertEquals(3000, restored.getLastModified());
+            assertTrue(restored.isSelected());
+            assertFalse(restored.isArchiveEntry());
+            assertFalse(index.isSelected(0));
+            assertTrue(index.isArchiveEntry(0));
+
+            // Порядок по путям
+            List<String> byPath = new ArrayList<>();
+            for (int i = 0; i < index.size(); i++) {
+                byPath.add(index.path(index.recordByPath(i)));
+            }
+            assertEquals(List.of("/data/a.txt", "/data/b.txt", "/data/d.bin", "/data/sub/c.bin"), byPath);
+        }
+    }
+
+    @Test
+    void testEmptyIndex() throws IOException {
+        Path indexFile = tempDir.resolve("empty.idx");
+        ScanIndex.write(indexFile, tempDir, "CustomHasher", new ArrayList<>());
+        try (ScanIndex index = ScanIndex.open(indexFile)) {
+            assertEquals(0, index.size());
+            assertThrows(IndexOutOfBoundsException.class, () -> index.path(0));
+        }
+    }
+
+    @Test
+    void testRejectsForeignFile() throws IOException {
+        Path notIndex = Files.writeString(tempDir.resolve("notes.idx"), "это не индекс, а обычный текстовый файл......................");
+        assertThrows(IOException.class, () -> ScanIndex.open(notIndex));
+    }
+
+    @Test
+    void testScannerWritesIndexMatchingResult() throws IOException {
+        Path root = Files.createDirectory(tempDir.resolve("root"));
+        Files.writeString(root.resolve("one.txt"), "одинаковое содержимое");
+        Files.writeString(root.resolve("two.txt"), "одинаковое содержимое");
+        Files.writeString(root.resolve("other.txt"), "другое содержимое!!!!");
+        Files.writeString(root.resolve("other-copy.txt"), "другое содержимое!!!!");
+        Path indexFile = tempDir.resolve("result.idx");
+
+        DuplicateScanner scanner = new DuplicateScanner(p -> {}, m -> {});
+        scanner.setIndexFile(indexFile);
+        List<FileInfo> result = scanner.findDuplicates(root);
+
+        assertEquals(4, result.size());
+        for (FileInfo info : result) {
+            assertNotEquals(0, info.getGroupId());
+            assertEquals(Files.getLastModifiedTime(info.getPath()).toMillis(), info.getLastModified());
+        }
+
+        try (ScanIndex index = ScanIndex.open(indexFile)) {
+            assertEquals(result.size(), index.size());
+            int selected = 0;
+            for (int i = 0; i < index.size(); i++) {
+                FileInfo restored = index.toFileInfo(i);
+                FileInfo original = result.stream()
+                        .filter(info -> info.getPath().equals(restored.getPath()))
+                        .findFirst().orElseThrow();
+                assertEquals(original.getHash(), restored.getHash());
+                assertEquals(original.getSize(), restored.getSize());
+                assertEquals(original.isSelected(), restored.isSelected());
+                selected += restored.isSelected() ? 1 : 0;
+            }
+            assertEquals(2, selected);
+        }
+    }
+
+    @Test
+    void testScanResultSurvivesIndexWriteFailure() throws IOException {
+        Path root = Files.createDirectory(tempDir.resolve("root"));
+        Files.writeString(root.resolve("one.txt"), "одинаковое содержимое");
+        Files.writeString(root.resolve("two.txt"), "одинаковое содержимое");
+        // Родитель индекса — обычный файл, поэтому индекс записать нельзя
+        Path blocker = Files.writeString(tempDir.resolve("blocker"), "не директория");
+        List<String> messages = new ArrayList<>();
+
+        DuplicateScanner scanner = new DuplicateScanner(p -> {}, messages::add);
+        scanner.setIndexFile(blocker.resolve("result.idx"));
+        List<FileInfo> result = scanner.findDuplicates(root);
+
+        assertEquals(2, result.size());
+        String last = messages.get(messages.size() - 1);
+        assertTrue(last.startsWith("Сканирование завершено. Индекс результатов не сохранен"), last);
+    }
+
+    @Test
+    void testPendingIndexReplacesPreviousOnOpen() throws IOException {
+        Path indexFile = tempDir.resolve("last.idx");
+        ScanIndex.write(indexFile, tempDir, "CustomHasher", new ArrayList<>());
+        // Так остается новый индекс, если прежний был отображен в память и не заменялся
+        List<FileInfo> files = List.of(fileInfo("/data/a.txt", 10, "aaaa", 1000, false),
+                fileInfo("/data/b.txt", 10, "aaaa", 2000, true));
+        ScanIndex.write(tempDir.resolve("new.idx"), tempDir, "CustomHasher", files);
+        Files.move(tempDir.resolve("new.idx"), ScanIndex.pendingFile(indexFile));
+
+        try (ScanIndex index = ScanIndex.open(indexFile)) {
+            assertEquals(2, index.size());
+        }
+        assertFalse(Files.exists(ScanIndex.pendingFile(indexFile)));
+        try (ScanIndex index = ScanIndex.open(indexFile)) {
+            assertEquals(2, index.size());
+        }
+    }
+
+    private static FileInfo fileInfo(String path, long size, String hash, long lastModified, boolean selected) {
+        FileInfo info = new FileInfo(Path.of(path), size, hash);
+        info.setLastModified(lastModified);
+        info.setSelected(selected);
+        return info;
+    }
+}
@@ -0,0 +1,130 @@
+package service;
+
+import model.FileInfo;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Тесты для правил выбора файлов {@link SelectionPolicy}.
+ */
+class SelectionPolicyTest {
+
+    @Test
+    void testKeepRulesAndPlanTotals() {
+        List<FileInfo> rows = rows();
+
+        SelectionPolicy.Plan first = SelectionPolicy.keepFirst().plan(rows);
+        assertEquals(2, first.getGroupCount());
+        assertEquals(3, first.getSelectedCount());
+        assertEquals(2 * 100 + 40, first.getReclaimableBytes());
+        assertFalse(first.isSelected(0));
+
+        // План не меняет строки, пока его не применили
+        assertFalse(rows.stream().anyMatch(FileInfo::isSelected));
+
+        SelectionPolicy.Plan oldest = new SelectionPolicy(SelectionPolicy.Keep.OLDEST).plan(rows);
+        assertEquals(List.of(true, false, true, true, false), selection(oldest, rows.size()));
+
+        SelectionPolicy.Plan newest = new SelectionPolicy(SelectionPolicy.Keep.NEWEST).plan(rows);
+        assertEquals(List.of(true, true, false, false, true), selection(newest, rows.size()));
+
+        SelectionPolicy.Plan shortest = new SelectionPolicy(SelectionPolicy.Keep.SHORTEST_PATH).plan(rows);
+        assertEquals(List.of(true, true, false, true, false), selection(shortest, rows.size()));
+
+        shortest.apply(rows);
+        assertTrue(rows.get(0).isSelected());
+        assertFalse(rows.get(2).isSelected());
+    }
+
+    @Test
+    void testPreferredRootsProtectedGlobsAndArchiveEntries() {
+        List<FileInfo> rows = rows();
+        SelectionPolicy policy = new SelectionPolicy(SelectionPolicy.Keep.SHORTEST_PATH)
+                .addPreferredRoot(Path.of("/data/photos"))
+                .addProtectedGlob("/data/backup/**");
+        SelectionPolicy.Plan plan = policy.plan(rows);
+        // Первая группа: остается файл под предпочитаемым корнем, защищенная копия не отмечается
+        // Вторая группа: предпочитаемого корня нет, поэтому действует основное правило
+        assertEquals(List.of(false, false, true, true, false), selection(plan, rows.size()));
+        assertEquals(100 + 40, plan.getReclaimableBytes());
+
+        List<FileInfo> group = new ArrayList<>();
+        group.add(entry("/data/lib.jar!/a.txt", 10));
+        group.add(file("/data/a.txt", 10, 1, 0));
+        group.add(file("/data/old/a.txt", 10, 1, 0));
+        assertEquals(10, SelectionPolicy.keepFirst().apply(group));
+        // Запись архива не может быть оставленной копией и не отмечается
+        assertFalse(group.get(0).isSelected());
+        assertFalse(group.get(1).isSelected());
+        assertTrue(group.get(2).isSelected());
+
+        List<FileInfo> entriesOnly = List.of(entry("/a.zip!/x", 5), entry("/b.zip!/x", 5));
+        assertEquals(0, SelectionPolicy.keepFirst().plan(entriesOnly).getSelectedCount());
+    }
+
+    @Test
+    void testDirectoryIsNotSelectedWhenProtectedGlobMayMatchInside() {
+        List<FileInfo> rows = new ArrayList<>();
+        rows.add(directory("/r/a", 1));
+        rows.add(directory("/r/b", 1));
+        rows.add(directory("/r/c", 1));
+        rows.add(directory("/r/x/d", 2));
+        rows.add(directory("/r/y/d", 2));
+
+        SelectionPolicy policy = SelectionPolicy.keepFirst()
+                .addProtectedGlob("/r/b/**/important")
+                .addProtectedGlob("/r/[xy]/d/keep.txt");
+        // Шаблоны не совпадают с путями директорий, но могут совпасть с файлами внутри /r/b и обеих копий d
+        assertEquals(List.of(false, false, true, false, false), selection(policy.plan(rows), rows.size()));
+
+        // Без шаблонов отмечаются все копии, кроме оставляемой
+        assertEquals(List.of(false, true, true, false, true), selection(SelectionPolicy.keepFirst().plan(rows), rows.size()));
+    }
+
+    /**
+     * Две группы: три файла по 100 байт и два файла по 40 байт.
+     */
+    private static List<FileInfo> rows() {
+        List<FileInfo> rows = new ArrayList<>();
+        rows.add(file("/data/backup/2020/photo.jpg", 100, 1, 2000));
+        rows.add(file("/data/photos/photo.jpg", 100, 1, 1000));
+        rows.add(file("/data/photo.jpg", 100, 1, 3000));
+        rows.add(file("/data/docs/archive/report.pdf", 40, 2, 5000));
+        rows.add(file("/data/docs/report.pdf", 40, 2, 4000));
+        return rows;
+    }
+
+    private static FileInfo file(String path, long size, int groupId, long lastModified) {
+        FileInfo info = new FileInfo(Path.of(path), size, "h" + groupId);
+        info.setGroupId(groupId);
+        info.setLastModified(lastModified);
+        return info;
+    }
+
+    private static FileInfo directory(String path, int groupId) {
+        FileInfo info = file(path, 10, groupId, 0);
+        info.setDirectory(true);
+        return info;
+    }
+
+    private static FileInfo entry(String path, long size) {
+        FileInfo info = file(path, size, 1, 0);
+        info.setArchiveEntry(true);
+        return info;
+    }
+
+    private static List<Boolean> selection(SelectionPolicy.Plan plan, int rows) {
+        List<Boolean> selected = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            selected.add(plan.isSelected(row));
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,79 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentChunkerTest {
+
+    private final ContentChunker chunker = new ContentChunker(256, 1024, 4096);
+
+    @Test
+    void testChunksCoverInputAndRespectSizeLimits() throws IOException {
+        byte[] data = randomBytes(200_000, 1);
+        List<byte[]> chunks = chunk(data);
+
+        int total = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            int length = chunks.get(i).length;
+            total += length;
+            assertTrue(length <= 4096, "Блок не может быть длиннее максимального.");
+            if (i < chunks.size() - 1) {
+                assertTrue(length >= 256, "Блок (кроме последнего) не может быть короче минимального.");
+            }
+        }
+        assertEquals(data.length, total, "Блоки должны покрывать весь поток без пропусков.");
+    }
+
+    @Test
+    void testInsertionAtStartKeepsMostChunks() throws IOException {
+        byte[] original = randomBytes(200_000, 2);
+        byte[] shifted = new byte[original.length + 7];
+        System.arraycopy(original, 0, shifted, 7, original.length);
+
+        Set<String> originalChunks = digests(chunk(original));
+        List<byte[]> shiftedChunks = chunk(shifted);
+        long common = digests(shiftedChunks).stream().filter(originalChunks::contains).count();
+
+        assertTrue(common >= shiftedChunks.size() - 3,
+                "Вставка в начало должна менять только первые блоки, совпало " + common + " из " + shiftedChunks.size());
+    }
+
+    @Test
+    void testEmptyInputProducesNoChunks() throws IOException {
+        assertTrue(chunk(new byte[0]).isEmpty());
+    }
+
+    private List<byte[]> chunk(byte[] data) throws IOException {
+        List<byte[]> chunks = new ArrayList<>();
+        chunker.chunk(new ByteArrayInputStream(data), (buffer, offset, length) -> {
+            byte[] copy = new byte[length];
+            System.arraycopy(buffer, offset, copy, 0, length);
+            chunks.add(copy);
+        });
+        return chunks;
+    }
+
+    private static Set<String> digests(List<byte[]> chunks) {
+        Murmur3Hasher hasher = new Murmur3Hasher();
+        Set<String> result = new HashSet<>();
+        for (byte[] chunk : chunks) {
+            result.add(hasher.digest(chunk, 0, chunk.length));
+        }
+        return result;
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
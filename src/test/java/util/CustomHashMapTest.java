@@ -46,6 +46,18 @@ class CustomHashMapTest {
         assertEquals(999, map.get(null));
     }
 
+    @Test
+    void testRemove() {
+        map.put("one", 1);
+        map.put("two", 2);
+
+        assertEquals(1, map.remove("one"));
+        assertNull(map.get("one"));
+        assertNull(map.remove("one")); // Повторное удаление ничего не находит
+        assertEquals(2, map.get("two"));
+        assertEquals(List.of("two"), map.keys());
+    }
+
     /**
      * Этот тест проверяет обработку коллизий.
      * Мы создаем два класса с одинаковым hashCode, но не равных через equals().
@@ -111,4 +123,17 @@ class CustomHashMapTest {
         assertTrue(values.contains(2));
         assertTrue(values.contains(3));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testKeysMethod() {
+        map.put("A", 1);
+        map.put("B", 2);
+        map.put("A", 3);
+
+        List<String> keys = map.keys();
+
+        assertEquals(2, keys.size());
+        assertTrue(keys.contains("A"));
+        assertTrue(keys.contains("B"));
+    }
+}
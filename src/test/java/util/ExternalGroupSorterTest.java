@@ -0,0 +1,113 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExternalGroupSorterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testGroupsEqualKeysAcrossRuns() throws IOException {
+        List<String> keys = new ArrayList<>();
+        List<List<String>> groups = new ArrayList<>();
+
+        // Маленький размер порции, чтобы записи одной группы оказались в разных run-файлах
+        try (ExternalGroupSorter sorter = new ExternalGroupSorter(tempDir, 2)) {
+            sorter.add("b", "b2");
+            sorter.add("a", "a1");
+            sorter.add("c", "c1");
+            sorter.add("b", "b1");
+            sorter.add("a", "a2");
+
+            assertEquals(5, sorter.size());
+            sorter.forEachGroup((key, values) -> {
+                keys.add(key);
+                groups.add(toList(values));
+            });
+        }
+
+        assertEquals(List.of("a", "b", "c"), keys, "Группы должны выдаваться в порядке возрастания ключей.");
+        assertEquals(List.of("a1", "a2"), groups.get(0));
+        assertEquals(List.of("b1", "b2"), groups.get(1));
+        assertEquals(List.of("c1"), groups.get(2));
+    }
+
+    @Test
+    void testMultiPassMergeKeepsAllRecords() throws IOException {
+        int[] total = {0};
+        int[] groupCount = {0};
+
+        // 1000 записей при порции 5 дают 200 run-файлов, что требует нескольких проходов слияния
+        try (ExternalGroupSorter sorter = new ExternalGroupSorter(tempDir, 5)) {
+            for (int i = 0; i < 1000; i++) {
+                sorter.add(String.format("%04d", i % 100), "value" + i);
+            }
+            sorter.forEachGroup((key, values) -> {
+                total[0] += values.size();
+                groupCount[0]++;
+                assertEquals(10, values.size(), "Каждый ключ был добавлен 10 раз.");
+            });
+        }
+
+        assertEquals(1000, total[0]);
+        assertEquals(100, groupCount[0]);
+    }
+
+    @Test
+    void testLargeGroupIsSpilledAndCanBeIteratedAgain() throws IOException {
+        List<List<String>> passes = new ArrayList<>();
+        int[] sizes = {0};
+
+        // Порция из 3 записей: значения группы сверх трех уходят во временный файл
+        try (ExternalGroupSorter sorter = new ExternalGroupSorter(tempDir, 3)) {
+            for (int i = 9; i >= 0; i--) {
+                sorter.add("same", "v" + i);
+            }
+            sorter.add("tail", "t");
+            sorter.forEachGroup((key, values) -> {
+                if (key.equals("same")) {
+                    sizes[0] = values.size();
+                    passes.add(toList(values));
+                    passes.add(toList(values));
+                    // Прерванный перебор не должен мешать следующей группе
+                    values.iterator().next();
+                }
+            });
+        }
+
+        List<String> expected = List.of("v0", "v1", "v2", "v3", "v4", "v5", "v6", "v7", "v8", "v9");
+        assertEquals(10, sizes[0]);
+        assertEquals(expected, passes.get(0));
+        assertEquals(expected, passes.get(1), "Группу можно перебрать повторно.");
+    }
+
+    @Test
+    void testCloseRemovesRunFiles() throws IOException {
+        ExternalGroupSorter sorter = new ExternalGroupSorter(tempDir, 1);
+        sorter.add("key", "value");
+        sorter.add("key", "other");
+        sorter.forEachGroup((key, values) -> { });
+        sorter.close();
+
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(0, files.count(), "После закрытия не должно оставаться временных файлов.");
+        }
+    }
+
+    private static List<String> toList(Iterable<String> values) {
+        List<String> list = new ArrayList<>();
+        values.forEach(list::add);
+        return list;
+    }
+}
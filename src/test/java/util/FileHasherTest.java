@@ -0,0 +1,129 @@
+package util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Общие тесты для всех реализаций {@link FileHasher}.
+ * Каждый алгоритм из {@link HashAlgorithm} проходит те же проверки, что и {@link CustomHasher}.
+ */
+class FileHasherTest {
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @EnumSource(HashAlgorithm.class)
+    void testIdenticalFilesHaveSameHash(HashAlgorithm algorithm) throws IOException {
+        FileHasher hasher = algorithm.create();
+        Path fileA = Files.writeString(tempDir.resolve("fileA.txt"), "Это одинаковый контент для проверки хеша.");
+        Path fileB = Files.writeString(tempDir.resolve("fileB.txt"), "Это одинаковый контент для проверки хеша.");
+
+        String hashA = hasher.digest(fileA);
+        String hashB = hasher.digest(fileB);
+
+        Assertions.assertNotNull(hashA);
+        Assertions.assertEquals(hashA, hashB, "Хеши одинаковых файлов должны совпадать.");
+    }
+
+    @ParameterizedTest
+    @EnumSource(HashAlgorithm.class)
+    void testDifferentFilesHaveDifferentHashes(HashAlgorithm algorithm) throws IOException {
+        FileHasher hasher = algorithm.create();
+        Path fileA = Files.writeString(tempDir.resolve("fileA.txt"), "Это контент файла А.");
+        Path fileB = Files.writeString(tempDir.resolve("fileB.txt"), "Это совершенно другой контент файла Б.");
+
+        Assertions.assertNotEquals(hasher.digest(fileA), hasher.digest(fileB), "Хеши разных файлов не должны совпадать.");
+    }
+
+    @ParameterizedTest
+    @EnumSource(HashAlgorithm.class)
+    void testEmptyFileHasConsistentHash(HashAlgorithm algorithm) throws IOException {
+        FileHasher hasher = algorithm.create();
+        Path fileA = Files.createFile(tempDir.resolve("emptyA.txt"));
+        Path fileB = Files.createFile(tempDir.resolve("emptyB.txt"));
+
+        String hashA = hasher.digest(fileA);
+
+        Assertions.assertNotNull(hashA);
+        Assertions.assertFalse(hashA.isEmpty());
+        Assertions.assertEquals(hashA, hasher.digest(fileB), "Хеши пустых файлов должны быть одинаковыми и консистентными.");
+    }
+
+    /**
+     * Хеш не должен зависеть от того, какими порциями данные подаются в состояние,
+     * и должен совпадать с хешем файла с тем же содержимым.
+     */
+    @ParameterizedTest
+    @EnumSource(HashAlgorithm.class)
+    void testStreamingMatchesWholeInput(HashAlgorithm algorithm) throws IOException {
+        FileHasher hasher = algorithm.create();
+        byte[] data = new byte[3 * ReadBuffers.DEFAULT_BUFFER_SIZE + 13];
+        Random random = new Random(42);
+        random.nextBytes(data);
+        Path file = Files.write(tempDir.resolve("random.bin"), data);
+
+        HashState state = hasher.newState();
+        int offset = 0;
+        while (offset < data.length) {
+            int length = Math.min(data.length - offset, 1 + random.nextInt(37));
+            state.update(data, offset, length);
+            offset += length;
+        }
+
+        String whole = hasher.digest(data, 0, data.length);
+        Assertions.assertEquals(whole, state.finish());
+        Assertions.assertEquals(whole, hasher.digest(file));
+    }
+
+    @ParameterizedTest
+    @EnumSource(HashAlgorithm.class)
+    void testRawBitsMatchHexDigest(HashAlgorithm algorithm) {
+        FileHasher hasher = algorithm.create();
+        byte[] data = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8);
+        String hex = hasher.digest(data, 0, data.length);
+
+        HashState state = hasher.newState();
+        state.update(data, 0, data.length);
+        long[] bits = new long[2];
+        state.finish(bits);
+
+        // Первые 128 бит хеша; остаток длинных хешей складывается по XOR
+        long high = Long.parseUnsignedLong(hex.substring(0, Math.min(16, hex.length())), 16);
+        long low = hex.length() > 16 ? Long.parseUnsignedLong(hex.substring(16, Math.min(32, hex.length())), 16) : 0;
+        for (int i = 32; i + 32 <= hex.length(); i += 32) {
+            high ^= Long.parseUnsignedLong(hex.substring(i, i + 16), 16);
+            low ^= Long.parseUnsignedLong(hex.substring(i + 16, i + 32), 16);
+        }
+        Assertions.assertEquals(high, bits[0]);
+        Assertions.assertEquals(low, bits[1]);
+    }
+
+    @Test
+    void testMurmur3MatchesReferenceVectors() {
+        FileHasher hasher = new Murmur3Hasher();
+        byte[] empty = new byte[0];
+        byte[] hello = "hello".getBytes(StandardCharsets.UTF_8);
+        byte[] fox = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8);
+
+        Assertions.assertEquals("00000000000000000000000000000000", hasher.digest(empty, 0, 0));
+        Assertions.assertEquals("029bbd41b3a7d8cb191dae486a901e5b", hasher.digest(hello, 0, hello.length));
+        Assertions.assertEquals("6c1b07bc7bbc4be347939ac4a93c437a", hasher.digest(fox, 0, fox.length));
+    }
+
+    @Test
+    void testSha256MatchesReferenceVector() {
+        byte[] abc = "abc".getBytes(StandardCharsets.UTF_8);
+        Assertions.assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                new Sha256Hasher().digest(abc, 0, abc.length));
+    }
+}
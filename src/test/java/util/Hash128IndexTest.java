@@ -0,0 +1,25 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class Hash128IndexTest {
+
+    @Test
+    void testKeysGetStableIdsAndSurviveResize() {
+        Hash128Index index = new Hash128Index();
+        for (long key = 0; key < 10_000; key++) {
+            assertEquals(key, index.add(key * 4096, ~key, 100));
+        }
+        // Тот же хеш с другой длиной — другой ключ
+        assertEquals(10_000, index.add(0, ~0L, 200));
+
+        assertEquals(10_001, index.size());
+        assertEquals(0, index.add(0, ~0L, 100));
+        assertEquals(9_999, index.indexOf(9_999L * 4096, ~9_999L, 100));
+        assertEquals(10_000, index.indexOf(0, ~0L, 200));
+        assertEquals(-1, index.indexOf(0, 0, 100));
+        assertEquals(10_001, index.size());
+    }
+}
@@ -0,0 +1,31 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LongCountSetTest {
+
+    @Test
+    void testCountsSaturateAndSurviveResize() {
+        LongCountSet counts = new LongCountSet();
+        for (long key = 0; key < 10_000; key++) {
+            counts.add(key * 4096);
+            if (key % 2 == 0) {
+                counts.add(key * 4096);
+            }
+        }
+        counts.add(-1);
+        for (int i = 0; i < 300; i++) {
+            counts.add(Long.MAX_VALUE);
+        }
+
+        assertEquals(10_002, counts.size());
+        assertEquals(2, counts.count(0));
+        assertEquals(1, counts.count(4096));
+        assertEquals(2, counts.count(9998L * 4096));
+        assertEquals(1, counts.count(-1));
+        assertEquals(LongCountSet.MAX_COUNT, counts.count(Long.MAX_VALUE));
+        assertEquals(0, counts.count(7));
+    }
+}
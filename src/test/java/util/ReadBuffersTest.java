@@ -0,0 +1,36 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadBuffersTest {
+
+    @Test
+    void testBufferSizeAdaptsToFileSize() {
+        assertEquals(ReadBuffers.MIN_BUFFER_SIZE, ReadBuffers.bufferSize(10, StorageKind.SOLID_STATE),
+                "Маленькому файлу достаточно минимального буфера.");
+        assertEquals(16 * 1024, ReadBuffers.bufferSize(10_000, StorageKind.SOLID_STATE));
+        assertEquals(ReadBuffers.DEFAULT_BUFFER_SIZE, ReadBuffers.bufferSize(-1, StorageKind.UNKNOWN),
+                "Для файла неизвестного размера используется буфер по умолчанию.");
+    }
+
+    @Test
+    void testRotationalDisksGetLargerBuffers() {
+        long huge = 10L * 1024 * 1024 * 1024;
+        int solidState = ReadBuffers.bufferSize(huge, StorageKind.SOLID_STATE);
+        int rotational = ReadBuffers.bufferSize(huge, StorageKind.ROTATIONAL);
+
+        assertTrue(rotational > solidState, "Жесткому диску выгоднее читать крупными блоками.");
+    }
+
+    @Test
+    void testBuffersAreReusedWithinThread() {
+        byte[] first = ReadBuffers.acquire(5000);
+        byte[] second = ReadBuffers.acquire(8192);
+
+        assertEquals(8192, first.length, "Размер округляется до степени двойки.");
+        assertSame(first, second, "Повторный запрос того же размера не должен выделять новый буфер.");
+        assertNotSame(first, ReadBuffers.acquire(100_000));
+    }
+}
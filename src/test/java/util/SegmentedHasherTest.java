@@ -0,0 +1,109 @@
+package util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+class SegmentedHasherTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final List<ExecutorService> pools = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        pools.forEach(ExecutorService::shutdownNow);
+    }
+
+    @Test
+    void testDigestDoesNotDependOnThreadCount() throws IOException {
+        Path file = createRandomFile("large.bin", 100_000, 1);
+
+        String singleThread = hasher(1000, 1).digest(file);
+        String manyThreads = hasher(1000, 8).digest(file);
+
+        Assertions.assertEquals(singleThread, manyThreads, "Результат не должен зависеть от количества потоков.");
+    }
+
+    @Test
+    void testParallelDigestMatchesSequentialState() throws IOException {
+        byte[] data = new byte[10_500];
+        new Random(7).nextBytes(data);
+        Path file = Files.write(tempDir.resolve("data.bin"), data);
+        SegmentedHasher hasher = hasher(1000, 4);
+
+        HashState state = hasher.newState();
+        state.update(data, 0, 3333);
+        state.update(data, 3333, data.length - 3333);
+
+        Assertions.assertEquals(state.finish(), hasher.digest(file));
+    }
+
+    @Test
+    void testDifferentContentInOneSegmentChangesDigest() throws IOException {
+        Path fileA = createRandomFile("a.bin", 50_000, 3);
+        byte[] data = Files.readAllBytes(fileA);
+        data[42_000] ^= 1; // Изменяем один байт в одном из последних сегментов
+        Path fileB = Files.write(tempDir.resolve("b.bin"), data);
+        SegmentedHasher hasher = hasher(4096, 4);
+
+        Assertions.assertNotEquals(hasher.digest(fileA), hasher.digest(fileB));
+    }
+
+    @Test
+    void testSmallFileMatchesBaseAlgorithm() throws IOException {
+        Path file = createRandomFile("small.bin", 500, 5);
+
+        Assertions.assertEquals(new Murmur3Hasher().digest(file), hasher(1000, 2).digest(file),
+                "Файл из одного сегмента должен хешироваться как базовым алгоритмом.");
+    }
+
+    @Test
+    void testSegmentDigestsOfDifferentLengthDoNotCollide() throws IOException {
+        // Базовый "хеш" — само содержимое без ведущих нулей, как у Long.toHexString: длина хешей сегментов различается
+        FileHasher stripping = () -> new HashState() {
+            private final StringBuilder text = new StringBuilder();
+
+            @Override
+            public void update(byte[] data, int offset, int length) {
+                text.append(new String(data, offset, length, java.nio.charset.StandardCharsets.US_ASCII));
+            }
+
+            @Override
+            public String finish() {
+                return text.toString().replaceFirst("^0+", "");
+            }
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        pools.add(pool);
+        SegmentedHasher hasher = new SegmentedHasher(stripping, 2, pool);
+        // Сегменты "0a" + "bc" и "ab" + "0c" дают хеши "a" + "bc" и "ab" + "c"
+        Path fileA = Files.writeString(tempDir.resolve("a.txt"), "0abc");
+        Path fileB = Files.writeString(tempDir.resolve("b.txt"), "ab0c");
+
+        Assertions.assertNotEquals(hasher.digest(fileA), hasher.digest(fileB));
+    }
+
+    private SegmentedHasher hasher(long segmentSize, int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        pools.add(pool);
+        return new SegmentedHasher(new Murmur3Hasher(), segmentSize, pool);
+    }
+
+    private Path createRandomFile(String name, int size, long seed) throws IOException {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return Files.write(tempDir.resolve(name), data);
+    }
+}